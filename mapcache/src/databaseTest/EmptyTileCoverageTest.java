@@ -0,0 +1,89 @@
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageFactory;
+import mil.nga.geopackage.GeoPackageManager;
+import mil.nga.mapcache.load.EmptyTileCoverage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class EmptyTileCoverageTest {
+
+    private static final String GEOPACKAGE_NAME = "empty_tile_coverage_test";
+
+    private static final String TABLE_NAME = "coastal_tiles";
+
+    private GeoPackageManager manager;
+
+    private GeoPackage geoPackage;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        manager = GeoPackageFactory.getManager(context);
+        if (manager.exists(GEOPACKAGE_NAME)) {
+            manager.delete(GEOPACKAGE_NAME);
+        }
+        manager.create(GEOPACKAGE_NAME);
+        geoPackage = manager.open(GEOPACKAGE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        geoPackage.close();
+        manager.delete(GEOPACKAGE_NAME);
+    }
+
+    @Test
+    public void testRunsPerColumn() {
+        EmptyTileCoverage coverage = new EmptyTileCoverage(geoPackage);
+        coverage.setColumn(TABLE_NAME, 10, 5, Arrays.asList(new long[]{0, 99}, new long[]{150, 199}));
+        coverage.setColumn(TABLE_NAME, 10, 6, Collections.singletonList(new long[]{20, 20}));
+
+        assertEquals(151, coverage.getEmptyCount(TABLE_NAME));
+        assertTrue(coverage.isEmpty(TABLE_NAME, 10, 5, 0));
+        assertTrue(coverage.isEmpty(TABLE_NAME, 10, 5, 175));
+        assertFalse(coverage.isEmpty(TABLE_NAME, 10, 5, 100));
+        assertTrue(coverage.isEmpty(TABLE_NAME, 10, 6, 20));
+        assertFalse(coverage.isEmpty(TABLE_NAME, 11, 6, 20));
+    }
+
+    @Test
+    public void testColumnDownloadedAgainReplacesRuns() {
+        EmptyTileCoverage coverage = new EmptyTileCoverage(geoPackage);
+        coverage.setColumn(TABLE_NAME, 10, 5, Collections.singletonList(new long[]{0, 49}));
+        coverage.setColumn(TABLE_NAME, 10, 5, Collections.singletonList(new long[]{0, 99}));
+        assertEquals(100, coverage.getEmptyCount(TABLE_NAME));
+
+        coverage.setColumn(TABLE_NAME, 10, 5, Collections.emptyList());
+        assertEquals(0, coverage.getEmptyCount(TABLE_NAME));
+    }
+
+    @Test
+    public void testRenameAndClear() {
+        EmptyTileCoverage coverage = new EmptyTileCoverage(geoPackage);
+        coverage.setColumn(TABLE_NAME, 3, 1, Collections.singletonList(new long[]{2, 4}));
+        coverage.rename(TABLE_NAME, "renamed");
+        assertEquals(0, coverage.getEmptyCount(TABLE_NAME));
+        assertEquals(3, coverage.getEmptyCount("renamed"));
+
+        coverage.clear("renamed");
+        assertEquals(0, coverage.getEmptyCount("renamed"));
+    }
+}
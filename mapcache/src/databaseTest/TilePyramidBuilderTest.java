@@ -0,0 +1,136 @@
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageFactory;
+import mil.nga.geopackage.GeoPackageManager;
+import mil.nga.geopackage.tiles.matrix.TileMatrix;
+import mil.nga.geopackage.tiles.user.TileDao;
+import mil.nga.geopackage.tiles.user.TileRow;
+import mil.nga.geopackage.tiles.user.TileTableMetadata;
+import mil.nga.mapcache.load.TilePyramidBuilder;
+import mil.nga.mapcache.load.TileWriteBatcher;
+import mil.nga.proj.ProjectionConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TilePyramidBuilderTest {
+
+    private static final String GEOPACKAGE_NAME = "tile_pyramid_builder_test";
+
+    private static final String TABLE_NAME = "pyramid_tiles";
+
+    private static final int DOWNLOAD_ZOOM = 2;
+
+    private static final int TILE_SIZE = 256;
+
+    private static final double WORLD_WIDTH = ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH * 2;
+
+    private GeoPackageManager manager;
+
+    private GeoPackage geoPackage;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        manager = GeoPackageFactory.getManager(context);
+        if (manager.exists(GEOPACKAGE_NAME)) {
+            manager.delete(GEOPACKAGE_NAME);
+        }
+        manager.create(GEOPACKAGE_NAME);
+        geoPackage = manager.open(GEOPACKAGE_NAME);
+
+        BoundingBox world = new BoundingBox(
+                -ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                -ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH);
+        geoPackage.createTileTable(TileTableMetadata.create(TABLE_NAME, world,
+                ProjectionConstants.EPSG_WEB_MERCATOR, world,
+                ProjectionConstants.EPSG_WEB_MERCATOR));
+
+        // Only the download zoom level has a tile matrix, like a download that skipped the rest
+        int matrixSize = 1 << DOWNLOAD_ZOOM;
+        TileMatrix tileMatrix = new TileMatrix();
+        tileMatrix.setContents(geoPackage.getTileMatrixSetDao()
+                .queryForId(TABLE_NAME).getContents());
+        tileMatrix.setZoomLevel(DOWNLOAD_ZOOM);
+        tileMatrix.setMatrixWidth(matrixSize);
+        tileMatrix.setMatrixHeight(matrixSize);
+        tileMatrix.setTileWidth(TILE_SIZE);
+        tileMatrix.setTileHeight(TILE_SIZE);
+        tileMatrix.setPixelXSize(WORLD_WIDTH / matrixSize / TILE_SIZE);
+        tileMatrix.setPixelYSize(WORLD_WIDTH / matrixSize / TILE_SIZE);
+        geoPackage.getTileMatrixDao().create(tileMatrix);
+
+        TileDao tileDao = geoPackage.getTileDao(TABLE_NAME);
+        byte[] tile = createTile();
+        for (int row = 0; row < matrixSize; row++) {
+            for (int column = 0; column < matrixSize; column++) {
+                TileRow tileRow = tileDao.newRow();
+                tileRow.setZoomLevel(DOWNLOAD_ZOOM);
+                tileRow.setTileColumn(column);
+                tileRow.setTileRow(row);
+                tileRow.setTileData(tile);
+                tileDao.create(tileRow);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        geoPackage.close();
+        manager.delete(GEOPACKAGE_NAME);
+    }
+
+    @Test
+    public void testBuildsFromStoredChildren() throws Exception {
+        TilePyramidBuilder builder = new TilePyramidBuilder(geoPackage, TABLE_NAME,
+                new TileWriteBatcher(geoPackage, 200, 60000), 2);
+        assertTrue(builder.build(0, DOWNLOAD_ZOOM, null));
+        assertEquals(5, builder.getBuiltCount());
+
+        TileDao tileDao = geoPackage.getTileDao(TABLE_NAME);
+        TileMatrix downloaded = tileDao.getTileMatrix(DOWNLOAD_ZOOM);
+        for (int zoom = DOWNLOAD_ZOOM - 1; zoom >= 0; zoom--) {
+            TileMatrix tileMatrix = tileDao.getTileMatrix(zoom);
+            assertNotNull("Zoom " + zoom + " should have a tile matrix", tileMatrix);
+            int scale = 1 << (DOWNLOAD_ZOOM - zoom);
+            assertEquals(downloaded.getMatrixWidth() / scale, tileMatrix.getMatrixWidth());
+            assertEquals(downloaded.getMatrixHeight() / scale, tileMatrix.getMatrixHeight());
+            assertEquals(TILE_SIZE, tileMatrix.getTileWidth());
+            assertEquals(TILE_SIZE, tileMatrix.getTileHeight());
+            assertEquals(downloaded.getPixelXSize() * scale, tileMatrix.getPixelXSize(), 1e-9);
+            assertEquals(downloaded.getPixelYSize() * scale, tileMatrix.getPixelYSize(), 1e-9);
+            assertEquals(tileMatrix.getMatrixWidth() * tileMatrix.getMatrixHeight(),
+                    tileDao.count(zoom));
+        }
+        assertNotNull(tileDao.queryForTile(0, 0, 0));
+    }
+
+    private static byte[] createTile() {
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+        bitmap.recycle();
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageFactory;
+import mil.nga.geopackage.GeoPackageManager;
+import mil.nga.geopackage.tiles.user.TileDao;
+import mil.nga.geopackage.tiles.user.TileRow;
+import mil.nga.geopackage.tiles.user.TileTableMetadata;
+import mil.nga.mapcache.load.TileWriteBatcher;
+import mil.nga.proj.ProjectionConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TileWriteBatcherTest {
+
+    private static final String GEOPACKAGE_NAME = "tile_write_batcher_test";
+
+    private static final String TABLE_NAME = "batched_tiles";
+
+    private GeoPackageManager manager;
+
+    private GeoPackage geoPackage;
+
+    private TileDao tileDao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        manager = GeoPackageFactory.getManager(context);
+        if (manager.exists(GEOPACKAGE_NAME)) {
+            manager.delete(GEOPACKAGE_NAME);
+        }
+        manager.create(GEOPACKAGE_NAME);
+        geoPackage = manager.open(GEOPACKAGE_NAME);
+
+        BoundingBox world = new BoundingBox(
+                -ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                -ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH);
+        geoPackage.createTileTable(TileTableMetadata.create(TABLE_NAME, world,
+                ProjectionConstants.EPSG_WEB_MERCATOR, world,
+                ProjectionConstants.EPSG_WEB_MERCATOR));
+        tileDao = geoPackage.getTileDao(TABLE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        geoPackage.close();
+        manager.delete(GEOPACKAGE_NAME);
+    }
+
+    @Test
+    public void testCommitsFullBatches() {
+        TileWriteBatcher batcher = new TileWriteBatcher(geoPackage, 200, 60000);
+        writeTiles(batcher, 1000);
+        assertEquals(4, batcher.getCommitCount());
+
+        batcher.finish();
+        assertEquals(5, batcher.getCommitCount());
+        assertEquals(1000, tileDao.count());
+    }
+
+    @Test
+    public void testBatchBeginsAtFirstWrite() {
+        TileWriteBatcher batcher = new TileWriteBatcher(geoPackage, 200, 60000);
+        assertEquals("No batch is open until a tile is ready", -1, batcher.getMillisUntilDue());
+        batcher.finish();
+        assertEquals(0, batcher.getCommitCount());
+
+        writeTiles(batcher, 1);
+        long due = batcher.getMillisUntilDue();
+        assertTrue(due > 0 && due <= 60000);
+
+        batcher.finish();
+        assertEquals(-1, batcher.getMillisUntilDue());
+        assertEquals(1, batcher.getCommitCount());
+        assertEquals(1, tileDao.count());
+    }
+
+    @Test
+    public void testCommitsDueBatches() {
+        TileWriteBatcher batcher = new TileWriteBatcher(geoPackage, 200, 0);
+        writeTiles(batcher, 1);
+        assertEquals("A batch past its time is due at once", 0, batcher.getMillisUntilDue());
+
+        writeTiles(batcher, 2);
+        assertEquals(2, batcher.getCommitCount());
+        batcher.finish();
+        assertEquals(3, tileDao.count());
+    }
+
+    private void writeTiles(TileWriteBatcher batcher, int count) {
+        int start = tileDao.count();
+        for (int i = start; i < start + count; i++) {
+            batcher.beforeWrite();
+            TileRow row = tileDao.newRow();
+            row.setZoomLevel(10);
+            row.setTileColumn(i % 100);
+            row.setTileRow(i / 100);
+            row.setTileData(new byte[]{(byte) i});
+            tileDao.create(row);
+        }
+    }
+}
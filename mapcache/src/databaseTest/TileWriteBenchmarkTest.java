@@ -0,0 +1,118 @@
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageFactory;
+import mil.nga.geopackage.GeoPackageManager;
+import mil.nga.geopackage.tiles.user.TileDao;
+import mil.nga.geopackage.tiles.user.TileRow;
+import mil.nga.geopackage.tiles.user.TileTableMetadata;
+import mil.nga.mapcache.R;
+import mil.nga.mapcache.load.TileWriteBatcher;
+import mil.nga.proj.ProjectionConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TileWriteBenchmarkTest {
+
+    private static final String GEOPACKAGE_NAME = "tile_write_benchmark_test";
+
+    private static final String TABLE_NAME = "benchmark_tiles";
+
+    private static final int TILE_COUNT = 1000;
+
+    private static final int TILE_SIZE = 16 * 1024;
+
+    private Context context;
+
+    private GeoPackageManager manager;
+
+    private GeoPackage geoPackage;
+
+    private TileDao tileDao;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        manager = GeoPackageFactory.getManager(context);
+        if (manager.exists(GEOPACKAGE_NAME)) {
+            manager.delete(GEOPACKAGE_NAME);
+        }
+        manager.create(GEOPACKAGE_NAME);
+        geoPackage = manager.open(GEOPACKAGE_NAME);
+
+        BoundingBox world = new BoundingBox(
+                -ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                -ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+                ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH);
+        geoPackage.createTileTable(TileTableMetadata.create(TABLE_NAME, world,
+                ProjectionConstants.EPSG_WEB_MERCATOR, world,
+                ProjectionConstants.EPSG_WEB_MERCATOR));
+        tileDao = geoPackage.getTileDao(TABLE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        geoPackage.close();
+        manager.delete(GEOPACKAGE_NAME);
+    }
+
+    @Test
+    public void testBatchedCommitsAreFaster() {
+        byte[] tile = new byte[TILE_SIZE];
+        new Random(0).nextBytes(tile);
+
+        long start = System.nanoTime();
+        writeTiles(0, tile, null);
+        long perTileMillis = (System.nanoTime() - start) / 1000000;
+
+        int batchSize = context.getResources().getInteger(R.integer.load_tiles_write_batch_size);
+        TileWriteBatcher batcher = new TileWriteBatcher(geoPackage, batchSize,
+                context.getResources().getInteger(R.integer.load_tiles_write_batch_millis));
+        start = System.nanoTime();
+        writeTiles(1, tile, batcher);
+        batcher.finish();
+        long batchedMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println(String.format(Locale.US,
+                "%d tiles of %d KB: one commit per tile %d ms, batches of %d (%d commits) %d ms,"
+                        + " %.1fx faster", TILE_COUNT, TILE_SIZE / 1024, perTileMillis,
+                batchSize, batcher.getCommitCount(), batchedMillis,
+                perTileMillis / (double) Math.max(1, batchedMillis)));
+
+        assertEquals(2 * TILE_COUNT, tileDao.count());
+        assertTrue(batcher.getCommitCount() < TILE_COUNT / 10);
+        assertTrue("Batched writes took " + batchedMillis + " ms, one commit per tile took "
+                + perTileMillis + " ms", batchedMillis < perTileMillis);
+    }
+
+    private void writeTiles(int zoom, byte[] tile, TileWriteBatcher batcher) {
+        for (int i = 0; i < TILE_COUNT; i++) {
+            if (batcher != null) {
+                batcher.beforeWrite();
+            }
+            TileRow row = tileDao.newRow();
+            row.setZoomLevel(zoom);
+            row.setTileColumn(i % 100);
+            row.setTileRow(i / 100);
+            row.setTileData(tile);
+            tileDao.create(row);
+        }
+    }
+}
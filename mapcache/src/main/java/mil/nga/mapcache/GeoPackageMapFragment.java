@@ -156,8 +156,13 @@ import mil.nga.mapcache.listeners.OnDialogButtonClickListener;
 import mil.nga.mapcache.listeners.SensorCallback;
 import mil.nga.mapcache.load.Downloader;
 import mil.nga.mapcache.load.ILoadTilesTask;
+import mil.nga.mapcache.load.LoadTilesTask;
 import mil.nga.mapcache.load.ImportTask;
+import mil.nga.mapcache.load.RecompressTilesTask;
 import mil.nga.mapcache.load.ShareTask;
+import mil.nga.mapcache.load.TileDownloadJobsDialog;
+import mil.nga.mapcache.load.TileDownloadManager;
+import mil.nga.mapcache.load.TileDownloadProgress;
 import mil.nga.mapcache.preferences.GridType;
 import mil.nga.mapcache.preferences.PreferencesActivity;
 import mil.nga.mapcache.repository.GeoPackageModifier;
@@ -606,6 +611,9 @@ public class GeoPackageMapFragment extends Fragment implements
     private final GoogleMap.OnCameraMoveListener moveListener = new GoogleMap.OnCameraMoveListener() {
         @Override
         public void onCameraMove() {
+            if (basemapApplier != null && map != null) {
+                basemapApplier.cameraMoved(map);
+            }
             if (zoomLevelText.getVisibility() == View.VISIBLE && map != null) {
                 zoomLevelText.setText(getResources().getString(
                         R.string.zoom_level,
@@ -683,6 +691,10 @@ public class GeoPackageMapFragment extends Fragment implements
         createGeoPackageRecycler();
         subscribeGeoPackageRecycler();
 
+        // Follow tile downloads running in the background, resuming any cut short last time
+        subscribeTileDownloads();
+        TileDownloadManager.getInstance().resumeInterrupted(getActivity(), geoPackageViewModel);
+
         // Show disclaimer
         showDisclaimer();
 
@@ -829,6 +841,43 @@ public class GeoPackageMapFragment extends Fragment implements
         }
     }
 
+    /**
+     * Subscribe to the tile download queue.  The queue opens when a download is queued, and the
+     * download jobs icon reopens it while there are downloads.
+     */
+    private void subscribeTileDownloads() {
+        TileDownloadJobsDialog jobsDialog = new TileDownloadJobsDialog(getActivity(),
+                geoPackageViewModel);
+        jobsDialog.observe(getViewLifecycleOwner());
+        ImageButton downloadJobsIcon = view.findViewById(R.id.downloadJobsIcon);
+        downloadJobsIcon.setOnClickListener((View v) -> jobsDialog.show());
+        TileDownloadManager.getInstance().getJobs().observe(getViewLifecycleOwner(), jobs ->
+                downloadJobsIcon.setVisibility(jobs.isEmpty() ? View.GONE : View.VISIBLE));
+        TileDownloadManager.getInstance().getEnded().observe(getViewLifecycleOwner(),
+                this::tileDownloadsEnded);
+    }
+
+    /**
+     * Reports how the ended downloads went and refreshes their layers.  Downloads outlive the
+     * screen that started them, so whichever screen is showing reports them.
+     *
+     * @param ended The final progress of each ended download.
+     */
+    private void tileDownloadsEnded(List<TileDownloadProgress> ended) {
+        if (ended.isEmpty()) {
+            return;
+        }
+        for (TileDownloadProgress progress : ended) {
+            if (progress.getMessage() != null
+                    && progress.getState() != TileDownloadProgress.State.PAUSED) {
+                GeoPackageUtils.showMessage(getActivity(),
+                        getString(R.string.geopackage_create_tiles_label), progress.getMessage());
+            }
+        }
+        TileDownloadManager.getInstance().clearEnded();
+        loadTilesFinished();
+    }
+
     /**
      * Subscribe to populate the list of GeoPackages for the recyclerview.
      * Gets a list of GeoPackageTables and sends them to the adapter.
@@ -1006,6 +1055,78 @@ public class GeoPackageMapFragment extends Fragment implements
         } else if (actionType == DetailActionListener.EDIT_FEATURES) {
             // Open edit features mode with the geopackage and layer already selected
             openEditFeatures(gpName, layerName);
+        } else if (actionType == DetailActionListener.RESUME_DOWNLOAD) {
+            resumeTileDownload(gpName, layerName);
+        } else if (actionType == DetailActionListener.RETRY_FAILED_TILES) {
+            retryFailedTiles(gpName, layerName);
+        } else if (actionType == DetailActionListener.REFRESH_TILES) {
+            refreshTiles(gpName, layerName);
+        } else if (actionType == DetailActionListener.RECOMPRESS_TILES) {
+            recompressTiles(gpName, layerName);
+        }
+    }
+
+    /**
+     * Resumes an unfinished tile download for the layer
+     *
+     * @param gpName    GeoPackage name
+     * @param layerName Name of the partially downloaded tile layer
+     */
+    private void resumeTileDownload(String gpName, String layerName) {
+        try {
+            LoadTilesTask.resumeTiles(getActivity(), geoPackageViewModel, gpName, layerName);
+        } catch (Exception e) {
+            GeoPackageUtils.showMessage(getActivity(),
+                    getString(R.string.geopackage_create_tiles_label),
+                    "Error resuming tile layer: \n\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Downloads the tiles of the layer that failed to download after being retried
+     *
+     * @param gpName    GeoPackage name
+     * @param layerName Name of the tile layer with failed tiles
+     */
+    private void retryFailedTiles(String gpName, String layerName) {
+        try {
+            LoadTilesTask.retryFailedTiles(getActivity(), geoPackageViewModel, gpName, layerName);
+        } catch (Exception e) {
+            GeoPackageUtils.showMessage(getActivity(),
+                    getString(R.string.geopackage_create_tiles_label),
+                    "Error retrying failed tiles: \n\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Refreshes a downloaded tile layer, only downloading the tiles that changed on the server
+     *
+     * @param gpName    GeoPackage name
+     * @param layerName Name of the tile layer to refresh
+     */
+    private void refreshTiles(String gpName, String layerName) {
+        try {
+            LoadTilesTask.refreshTiles(getActivity(), geoPackageViewModel, gpName, layerName);
+        } catch (Exception e) {
+            GeoPackageUtils.showMessage(getActivity(),
+                    getString(R.string.geopackage_create_tiles_label),
+                    "Error refreshing tile layer: \n\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Recompresses the stored tiles of a tile layer into the tile format chosen in the settings
+     *
+     * @param gpName    GeoPackage name
+     * @param layerName Name of the tile layer to recompress
+     */
+    private void recompressTiles(String gpName, String layerName) {
+        try {
+            RecompressTilesTask.recompressTiles(getActivity(), geoPackageViewModel, gpName, layerName);
+        } catch (Exception e) {
+            GeoPackageUtils.showMessage(getActivity(),
+                    getString(R.string.geopackage_create_tiles_label),
+                    "Error compressing tile layer: \n\n" + e.getMessage());
         }
     }
 
@@ -1901,7 +2022,7 @@ public class GeoPackageMapFragment extends Fragment implements
     private void newTileLayerWizard(final String geopackageName) {
         NewTileLayerUI newTileLayerUI = new NewTileLayerUI(geoPackageRecycler, this,
                 this, getActivity(), getContext(), this,
-                geoPackageViewModel, this, geopackageName);
+                geoPackageViewModel, geopackageName);
         newTileLayerUI.show();
     }
 
@@ -2272,6 +2393,10 @@ public class GeoPackageMapFragment extends Fragment implements
     @Override
     public void onCameraIdle() {
 
+        if (basemapApplier != null && map != null) {
+            basemapApplier.cameraIdle(map);
+        }
+
         // If visible & not editing a shape, update the feature shapes for the current map view region
         if (visible && (!model.isEditFeaturesMode() || editFeatureType == null || (editPoints.isEmpty() && editFeatureMarker == null))) {
 
@@ -4394,7 +4519,10 @@ public class GeoPackageMapFragment extends Fragment implements
      */
     @Override
     public void onLoadTilesCancelled() {
-        loadTilesFinished();
+        // Downloads outlive the screen that started them
+        if (getActivity() != null) {
+            loadTilesFinished();
+        }
     }
 
     /**
@@ -4402,12 +4530,16 @@ public class GeoPackageMapFragment extends Fragment implements
      */
     @Override
     public void onLoadTilesPostExecute(String result) {
-        if (result != null && getActivity() != null) {
-            getActivity().runOnUiThread(() ->
-                    GeoPackageUtils.showMessage(getActivity(),
-                            getString(R.string.geopackage_create_tiles_label), result));
+        // Downloads outlive the screen that started them
+        Activity activity = getActivity();
+        if (activity != null) {
+            if (result != null) {
+                activity.runOnUiThread(() ->
+                        GeoPackageUtils.showMessage(activity,
+                                getString(R.string.geopackage_create_tiles_label), result));
+            }
+            loadTilesFinished();
         }
-        loadTilesFinished();
     }
 
     /**
@@ -21,6 +21,9 @@ import org.piwik.sdk.TrackerConfig;
 import org.piwik.sdk.extra.TrackHelper;
 
 import mil.nga.mapcache.io.MapCacheFileUtils;
+import mil.nga.mapcache.load.TileDownloadManager;
+import mil.nga.mapcache.utils.ActivityTracker;
+import mil.nga.mapcache.utils.ThreadUtils;
 
 /**
  * Main Activity
@@ -49,6 +52,11 @@ public class MainActivity extends AppCompatActivity {
      */
     public static final int MANAGER_PERMISSIONS_REQUEST_ACCESS_EXPORT_DATABASE = 202;
 
+    /**
+     * Download permissions request code for showing the tile download notification
+     */
+    public static final int DOWNLOAD_PERMISSIONS_REQUEST_POST_NOTIFICATIONS = 300;
+
     /**
      * Map fragment
      */
@@ -58,6 +66,10 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Downloads running in the background use whichever activity is current
+        ActivityTracker.getInstance().register(this);
+        TileDownloadManager.getInstance().setContext(this);
+
         // Set the content view
         setContentView(R.layout.activity_main);
 
@@ -140,6 +152,17 @@ public class MainActivity extends AppCompatActivity {
         super.onSaveInstanceState(outState);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (isFinishing() && !TileDownloadManager.getInstance().isDownloading()) {
+            ThreadUtils.shutdown();
+        }
+    }
+
 
     /**
      * Hide the action bar
@@ -171,7 +171,7 @@ public class MapFeaturesUpdateTask implements Runnable {
         this.mapViewBoundingBox = mapViewBoundingBox;
         this.toleranceDistance = toleranceDistance;
         this.filter = filter;
-        ThreadUtils.getInstance().runBackground(this);
+        ThreadUtils.getInstance().runDatabase(this);
     }
 
     /**
@@ -338,7 +338,7 @@ public class MapFeaturesUpdateTask implements Runnable {
                                             this, database, featureDao, row, count, maxFeatures, editable, converter,
                                             styleCache, filterBoundingBox, filterMaxLongitude,
                                             filter, model, activity);
-                                    ThreadUtils.getInstance().runBackground(processor);
+                                    ThreadUtils.getInstance().runGeometry(processor);
                                 } catch (Exception e) {
                                     Log.e(GeoPackageMapFragment.class.getSimpleName(),
                                             "Failed to display feature. database: " + database
@@ -393,7 +393,7 @@ public class MapFeaturesUpdateTask implements Runnable {
                     FeatureRowProcessor processor = new FeatureRowProcessor(
                             this, database, featureDao, row, count, maxFeatures, editable, converter,
                             styleCache, null, 0, true, model, activity);
-                    ThreadUtils.getInstance().runBackground(processor);
+                    ThreadUtils.getInstance().runGeometry(processor);
 
                 } catch (Exception e) {
                     Log.e(GeoPackageMapFragment.class.getSimpleName(),
@@ -113,7 +113,7 @@ public class MapUpdateTask implements Runnable {
      * Runs this task within a background thread.
      */
     public void execute() {
-        ThreadUtils.getInstance().runBackground(this);
+        ThreadUtils.getInstance().runDatabase(this);
     }
 
     /**
@@ -24,6 +24,21 @@ public class GeoPackageTileTable extends GeoPackageTable implements Serializable
      */
     private long minZoom = -1;
 
+    /**
+     * True if the tile layer has an unfinished download that can be resumed
+     */
+    private boolean resumable = false;
+
+    /**
+     * Number of tiles that still failed to download after being retried
+     */
+    private int failedTileCount = 0;
+
+    /**
+     * True if the tile layer was downloaded and can be refreshed from its tile server
+     */
+    private boolean refreshable = false;
+
     /**
      * Create a new tile table
      *
@@ -56,4 +71,58 @@ public class GeoPackageTileTable extends GeoPackageTable implements Serializable
     public void setMinZoom(long minZoom) {
         this.minZoom = minZoom;
     }
+
+    /**
+     * Check if the tile layer has an unfinished download that can be resumed
+     *
+     * @return true if resumable
+     */
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Set if the tile layer has an unfinished download that can be resumed
+     *
+     * @param resumable true if resumable
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * Get the number of tiles that still failed to download after being retried
+     *
+     * @return failed tile count
+     */
+    public int getFailedTileCount() {
+        return failedTileCount;
+    }
+
+    /**
+     * Set the number of tiles that still failed to download after being retried
+     *
+     * @param failedTileCount failed tile count
+     */
+    public void setFailedTileCount(int failedTileCount) {
+        this.failedTileCount = failedTileCount;
+    }
+
+    /**
+     * Check if the tile layer was downloaded and can be refreshed from its tile server
+     *
+     * @return true if refreshable
+     */
+    public boolean isRefreshable() {
+        return refreshable;
+    }
+
+    /**
+     * Set if the tile layer was downloaded and can be refreshed from its tile server
+     *
+     * @param refreshable true if refreshable
+     */
+    public void setRefreshable(boolean refreshable) {
+        this.refreshable = refreshable;
+    }
 }
@@ -0,0 +1,240 @@
+package mil.nga.mapcache.io.network;
+
+import android.webkit.CookieManager;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores the cookies of each host already parsed into name value pairs, so requests can add them
+ * without parsing cookie strings again.  Safe to use from several threads at once.
+ */
+public class CookieJar {
+
+    /**
+     * The cookies of each host, keyed by cookie name with the name=value pair as the value.
+     */
+    private final Map<String, Map<String, String>> hostCookies = new ConcurrentHashMap<>();
+
+    /**
+     * The last cookie string the web view had for each host and its parsed cookies.
+     */
+    private final Map<String, ParsedCookies> webViewCookies = new ConcurrentHashMap<>();
+
+    /**
+     * A cookie string and the cookies parsed from it.
+     */
+    private static class ParsedCookies {
+
+        /**
+         * The cookie string.
+         */
+        private final String cookieString;
+
+        /**
+         * The name=value pairs in the cookie string.
+         */
+        private final List<String> cookies;
+
+        /**
+         * Constructor.
+         *
+         * @param cookieString The cookie string.
+         */
+        private ParsedCookies(String cookieString) {
+            this.cookieString = cookieString;
+            this.cookies = Collections.unmodifiableList(new ArrayList<>(
+                    parseCookieHeader(cookieString).values()));
+        }
+    }
+
+    /**
+     * The formats of the Expires attribute, the http date format and the older Netscape format.
+     */
+    private static final String[] EXPIRES_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz", "EEE, dd-MMM-yyyy HH:mm:ss zzz"};
+
+    /**
+     * Stores the cookie from a Set-Cookie response header.  A cookie that has expired removes
+     * the stored cookie of the same name, which is how servers delete cookies.
+     *
+     * @param host      The host that set the cookie.
+     * @param setCookie The Set-Cookie header value.
+     */
+    public void storeSetCookie(String host, String setCookie) {
+        storeSetCookie(host, setCookie, System.currentTimeMillis());
+    }
+
+    /**
+     * Stores the cookie from a Set-Cookie response header.  A cookie that has expired removes
+     * the stored cookie of the same name, which is how servers delete cookies.
+     *
+     * @param host      The host that set the cookie.
+     * @param setCookie The Set-Cookie header value.
+     * @param now       The current time in milliseconds.
+     */
+    public void storeSetCookie(String host, String setCookie, long now) {
+        String[] parts = setCookie.split(";");
+        String cookie = parts[0].trim();
+        int equals = cookie.indexOf('=');
+        if (equals <= 0) {
+            return;
+        }
+
+        String name = cookie.substring(0, equals).trim();
+        Boolean maxAgeExpired = null;
+        boolean expiresExpired = false;
+        for (int i = 1; i < parts.length; i++) {
+            String attribute = parts[i].trim();
+            String lowerAttribute = attribute.toLowerCase(Locale.US);
+            if (lowerAttribute.startsWith("max-age=")) {
+                try {
+                    maxAgeExpired = Long.parseLong(attribute.substring(8).trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    maxAgeExpired = null;
+                }
+            } else if (lowerAttribute.startsWith("expires=")) {
+                Date expires = parseExpires(attribute.substring(8).trim());
+                expiresExpired = expires != null && expires.getTime() <= now;
+            }
+        }
+        // Max-Age takes precedence over Expires
+        boolean expired = maxAgeExpired != null ? maxAgeExpired : expiresExpired;
+
+        if (expired) {
+            Map<String, String> cookies = hostCookies.get(host);
+            if (cookies != null) {
+                cookies.remove(name);
+            }
+        } else {
+            hostCookies.computeIfAbsent(host, (key) -> new ConcurrentHashMap<>())
+                    .put(name, name + "=" + cookie.substring(equals + 1).trim());
+        }
+    }
+
+    /**
+     * Stores the cookies of a Cookie header, such as the cookies a web view has for the host.
+     *
+     * @param host         The host the cookies are for.
+     * @param cookieHeader The cookies separated by semicolons.
+     */
+    public void storeCookieHeader(String host, String cookieHeader) {
+        Map<String, String> parsed = parseCookieHeader(cookieHeader);
+        if (!parsed.isEmpty()) {
+            hostCookies.computeIfAbsent(host, (key) -> new ConcurrentHashMap<>()).putAll(parsed);
+        }
+    }
+
+    /**
+     * Gets the cookies stored for the host.
+     *
+     * @param host The host.
+     * @return The name=value pair of each cookie, empty if the host has no cookies.
+     */
+    public List<String> getCookies(String host) {
+        List<String> cookies = Collections.emptyList();
+        Map<String, String> stored = hostCookies.get(host);
+        if (stored != null && !stored.isEmpty()) {
+            cookies = new ArrayList<>(stored.values());
+        }
+
+        return cookies;
+    }
+
+    /**
+     * Gets the cookies the web view has for the url.  The web view's cookie string is only parsed
+     * again when it changes.
+     *
+     * @param host The host of the url.
+     * @param url  The url.
+     * @return The name=value pair of each cookie, empty if the web view has no cookies.
+     */
+    public List<String> getWebViewCookies(String host, String url) {
+        List<String> cookies = Collections.emptyList();
+        String cookieString = CookieManager.getInstance().getCookie(url);
+        if (cookieString != null) {
+            ParsedCookies parsed = webViewCookies.get(host);
+            if (parsed == null || !parsed.cookieString.equals(cookieString)) {
+                parsed = new ParsedCookies(cookieString);
+                webViewCookies.put(host, parsed);
+            }
+            cookies = parsed.cookies;
+        }
+
+        return cookies;
+    }
+
+    /**
+     * Stores the cookies the web view has for the url as the host's cookies, so requests made
+     * outside of the web view, including redirects, carry the session it logged in to.
+     *
+     * @param host The host of the url.
+     * @param url  The url.
+     * @return True if the web view had cookies for the url.
+     */
+    public boolean harvestWebViewCookies(String host, String url) {
+        String cookieString = CookieManager.getInstance().getCookie(url);
+        boolean harvested = cookieString != null && !cookieString.isEmpty();
+        if (harvested) {
+            storeCookieHeader(host, cookieString);
+        }
+
+        return harvested;
+    }
+
+    /**
+     * Removes every stored cookie.
+     */
+    public void clear() {
+        hostCookies.clear();
+        webViewCookies.clear();
+    }
+
+    /**
+     * Parses the date of an Expires attribute.
+     *
+     * @param value The attribute value.
+     * @return The date, or null if it couldn't be parsed.
+     */
+    private static Date parseExpires(String value) {
+        Date date = null;
+        for (String pattern : EXPIRES_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            try {
+                date = format.parse(value);
+                break;
+            } catch (ParseException e) {
+                date = null;
+            }
+        }
+
+        return date;
+    }
+
+    /**
+     * Parses the cookies of a Cookie header.
+     *
+     * @param cookieHeader The cookies separated by semicolons.
+     * @return The name=value pair of each cookie keyed by name, in header order.
+     */
+    private static Map<String, String> parseCookieHeader(String cookieHeader) {
+        Map<String, String> cookies = new LinkedHashMap<>();
+        for (String cookie : cookieHeader.split(";")) {
+            String trimmed = cookie.trim();
+            int equals = trimmed.indexOf('=');
+            if (equals > 0) {
+                cookies.put(trimmed.substring(0, equals).trim(), trimmed);
+            }
+        }
+
+        return cookies;
+    }
+}
@@ -0,0 +1,348 @@
+package mil.nga.mapcache.io.network;
+
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Adapts the number of requests sent to each host at once to how well the host keeps up.  The
+ * limit grows by one request each time a full window of requests is answered promptly, and is cut
+ * in half when the host answers 429 or 503 or times out, and by a quarter when its response times
+ * grow well past the fastest it has answered.  A host asking us to retry after a while gets no
+ * new requests until then.  The limit is enforced by the request scheduler, which checks a host has
+ * room before taking its next request, so requests to a busy host wait in the queue instead of on
+ * a worker and higher priority requests get the next turn.  Requests made in a web view hold a
+ * turn too, until the web view is done with them.
+ */
+public class HostConcurrencyController implements RequestScheduler.HostCapacity {
+
+    /**
+     * Too many requests response code, not defined by HttpURLConnection.
+     */
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Used to turn debug logging on.
+     */
+    private static final boolean isDebug = false;
+
+    /**
+     * The number of requests a host starts out allowed to have in flight.
+     */
+    private static final double INITIAL_LIMIT = 2;
+
+    /**
+     * The limit is multiplied by this when the host is overloaded.
+     */
+    private static final double OVERLOAD_DECREASE = 0.5;
+
+    /**
+     * The limit is multiplied by this when the host's response times grow.
+     */
+    private static final double LATENCY_DECREASE = 0.75;
+
+    /**
+     * Response times this many times the baseline mean the host is falling behind.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * Response times within this many milliseconds of the baseline are never counted as falling
+     * behind, so jitter on fast hosts isn't mistaken for overload.
+     */
+    private static final double LATENCY_SLACK_MILLIS = 50;
+
+    /**
+     * Weight of each new response time in the smoothed response time.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * How quickly the baseline drifts up towards slower response times, so a host that becomes
+     * slower for good isn't held back forever.
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    /**
+     * The concurrency of a single host.
+     */
+    public class HostLimit {
+
+        /**
+         * The host.
+         */
+        private final String host;
+
+        /**
+         * The number of requests allowed in flight.
+         */
+        private double limit = Math.min(INITIAL_LIMIT, maxRequestsPerHost);
+
+        /**
+         * The number of requests in flight.
+         */
+        private int inFlight = 0;
+
+        /**
+         * The fastest recent response time, in milliseconds, or 0 before the first response.
+         */
+        private double baselineMillis = 0;
+
+        /**
+         * The smoothed response time, in milliseconds.
+         */
+        private double smoothedMillis = 0;
+
+        /**
+         * No requests are sent before this time, in milliseconds since the epoch.
+         */
+        private long pausedUntil = 0;
+
+        /**
+         * The last time every allowed request was in flight, in milliseconds since the epoch.
+         */
+        private long lastFullTime = 0;
+
+        /**
+         * The limit isn't decreased again before this time, so a burst of slow responses to the
+         * same window of requests only counts once.
+         */
+        private long nextDecrease = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param host The host.
+         */
+        private HostLimit(String host) {
+            this.host = host;
+        }
+
+        /**
+         * Takes a turn to send another request to the host if it has room, without waiting.
+         *
+         * @return True if the request can be sent, release must then be called once it is done.
+         */
+        public synchronized boolean tryAcquire() {
+            long now = clock.getAsLong();
+            boolean acquired = inFlight < getLimit() && now >= pausedUntil;
+            if (acquired) {
+                inFlight++;
+                if (inFlight >= getLimit()) {
+                    lastFullTime = now;
+                }
+            }
+
+            return acquired;
+        }
+
+        /**
+         * Gets how long until the host accepts requests again, if it asked us to wait.
+         *
+         * @return The milliseconds to wait, or 0 if the host isn't waiting.
+         */
+        public synchronized long getPausedMillis() {
+            return Math.max(0, pausedUntil - clock.getAsLong());
+        }
+
+        /**
+         * Releases a request that is complete.
+         */
+        public void release() {
+            synchronized (this) {
+                inFlight = Math.max(0, inFlight - 1);
+            }
+            capacityChanged();
+        }
+
+        /**
+         * Gets the number of requests in flight.
+         *
+         * @return The number of requests holding a turn.
+         */
+        public synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Gets the number of requests allowed in flight.
+         *
+         * @return The current limit, at least 1.
+         */
+        public synchronized int getLimit() {
+            return Math.max(1, (int) Math.min(limit, maxRequestsPerHost));
+        }
+
+        /**
+         * Gets the smoothed response time.
+         *
+         * @return The smoothed response time in milliseconds.
+         */
+        public synchronized double getSmoothedMillis() {
+            return smoothedMillis;
+        }
+
+        /**
+         * Records a response from the host.
+         *
+         * @param responseMillis   How long the host took to respond.
+         * @param responseCode     The http response code.
+         * @param retryAfterMillis The wait the host asked for, or null if it didn't ask.
+         */
+        public void onResponse(long responseMillis, int responseCode, Long retryAfterMillis) {
+            synchronized (this) {
+                long now = clock.getAsLong();
+                if (responseCode == HTTP_TOO_MANY_REQUESTS || responseCode == 503) {
+                    decrease(OVERLOAD_DECREASE, now);
+                    if (retryAfterMillis != null && retryAfterMillis > 0) {
+                        pausedUntil = Math.max(pausedUntil, now + retryAfterMillis);
+                    }
+                } else {
+                    if (baselineMillis == 0 || responseMillis < baselineMillis) {
+                        baselineMillis = Math.max(1, responseMillis);
+                    } else {
+                        baselineMillis += (responseMillis - baselineMillis) * BASELINE_DRIFT;
+                    }
+                    smoothedMillis = smoothedMillis == 0 ? responseMillis
+                            : smoothedMillis + (responseMillis - smoothedMillis) * SMOOTHING;
+
+                    if (smoothedMillis
+                            > baselineMillis * LATENCY_TOLERANCE + LATENCY_SLACK_MILLIS) {
+                        decrease(LATENCY_DECREASE, now);
+                    } else if (now - lastFullTime <= Math.max(smoothedMillis, 1) * 2) {
+                        // Only grow while the window is in use, one request per window answered
+                        limit = Math.min(maxRequestsPerHost, limit + 1 / limit);
+                    }
+                }
+            }
+            capacityChanged();
+        }
+
+        /**
+         * Records a request to the host that timed out.
+         */
+        public synchronized void onTimeout() {
+            decrease(OVERLOAD_DECREASE, clock.getAsLong());
+        }
+
+        /**
+         * Decreases the limit, at most once per smoothed response time.
+         *
+         * @param factor The limit is multiplied by this.
+         * @param now    The current time.
+         */
+        private void decrease(double factor, long now) {
+            if (now >= nextDecrease) {
+                limit = Math.max(1, limit * factor);
+                nextDecrease = now + Math.max(1, (long) smoothedMillis);
+                if (isDebug) {
+                    Log.d(HostConcurrencyController.class.getSimpleName(),
+                            "Decreased " + host + " to " + limit + " requests");
+                }
+            }
+        }
+    }
+
+    /**
+     * The limits of each host.
+     */
+    private final Map<String, HostLimit> hostLimits = new ConcurrentHashMap<>();
+
+    /**
+     * The most requests sent to a single host at once, however well it keeps up.
+     */
+    private volatile int maxRequestsPerHost;
+
+    /**
+     * Gives the current time in milliseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Told whenever a host may have room for more requests, or null.
+     */
+    private volatile Runnable capacityListener = null;
+
+    /**
+     * Constructor.
+     *
+     * @param maxRequestsPerHost The most requests sent to a single host at once.
+     */
+    public HostConcurrencyController(int maxRequestsPerHost) {
+        this(maxRequestsPerHost, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor, public so tests can control the time.
+     *
+     * @param maxRequestsPerHost The most requests sent to a single host at once.
+     * @param clock              Gives the current time in milliseconds.
+     */
+    public HostConcurrencyController(int maxRequestsPerHost, LongSupplier clock) {
+        this.maxRequestsPerHost = Math.max(1, maxRequestsPerHost);
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the most requests sent to a single host at once.
+     *
+     * @param maxRequestsPerHost The maximum number of requests per host.
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = Math.max(1, maxRequestsPerHost);
+        capacityChanged();
+    }
+
+    /**
+     * Gets the most requests sent to a single host at once.
+     *
+     * @return The maximum number of requests per host.
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Gets the limit of the host.
+     *
+     * @param host The host.
+     * @return The host's limit.
+     */
+    public HostLimit getHostLimit(String host) {
+        return hostLimits.computeIfAbsent(host, HostLimit::new);
+    }
+
+    @Override
+    public boolean tryAcquire(String host, RequestPriority priority) {
+        // The scheduler offers turns in priority order, so the priority doesn't matter here
+        return getHostLimit(host).tryAcquire();
+    }
+
+    @Override
+    public void release(String host) {
+        getHostLimit(host).release();
+    }
+
+    @Override
+    public long getPausedMillis(String host) {
+        return getHostLimit(host).getPausedMillis();
+    }
+
+    @Override
+    public void setCapacityListener(Runnable listener) {
+        capacityListener = listener;
+    }
+
+    /**
+     * Tells the listener a host may have room for more requests.  Called without holding a host's
+     * lock, since the listener takes the scheduler's lock which is held while checking hosts.
+     */
+    private void capacityChanged() {
+        Runnable listener = capacityListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+}
@@ -5,16 +5,13 @@ import android.util.Log;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 import mil.nga.mapcache.io.network.slowserver.SlowServerNotifier;
-import mil.nga.mapcache.utils.ThreadUtils;
 
 /**
- * Makes http requests asynchronously.
+ * Makes http requests asynchronously.  Requests are dispatched without locking so any number of
+ * threads can send requests at once, and run in order of their priority.
  */
 public class HttpClient implements SessionManager {
 
@@ -31,17 +28,18 @@ public class HttpClient implements SessionManager {
     /**
      * Any cookies being stored for http requests.
      */
-    private final Map<String, Map<String, String>> allCookies = new HashMap<>();
+    private final CookieJar cookieJar = new CookieJar();
 
     /**
-     * The hosts that require a web view in order to download from given urls.
+     * Tracks the hosts that require a web view in order to download from given urls, and the ones
+     * whose web view login can be used for plain http requests.
      */
-    private final Set<String> webViewHosts = new HashSet<>();
+    private final WebViewSessions webViewSessions = new WebViewSessions();
 
     /**
      * If the server is slow, this will notify the user of that.
      */
-    private SlowServerNotifier notifier = null;
+    private volatile SlowServerNotifier notifier = null;
 
     /**
      * Gets the instance of this class.
@@ -59,23 +57,50 @@ public class HttpClient implements SessionManager {
      * @param handler The response handler, called when request is complete.
      * @param activity Used to get the app name and version for the user agent.
      */
-    public synchronized void sendGet(String url, IResponseHandler handler, Activity activity) {
+    public void sendGet(String url, IResponseHandler handler, Activity activity) {
+        sendGet(url, handler, null, RequestPriority.METADATA, activity);
+    }
+
+    /**
+     * Sends a http get to the specified url.
+     *
+     * @param url      The url to send a get request to.
+     * @param handler  The response handler, called when request is complete.
+     * @param priority The priority of the request.
+     * @param activity Used to get the app name and version for the user agent.
+     */
+    public void sendGet(String url, IResponseHandler handler, RequestPriority priority,
+                        Activity activity) {
+        sendGet(url, handler, null, priority, activity);
+    }
+
+    /**
+     * Sends a http get to the specified url with additional request headers.  The headers are
+     * not sent if the host requires a web view.
+     *
+     * @param url            The url to send a get request to.
+     * @param handler        The response handler, called when request is complete.
+     * @param requestHeaders Additional headers to add to the request, or null.
+     * @param priority       The priority of the request.
+     * @param activity       Used to get the app name and version for the user agent.
+     */
+    public void sendGet(String url, IResponseHandler handler, Map<String, String> requestHeaders,
+                        RequestPriority priority, Activity activity) {
         try {
             URL theUrl = new URL(url);
             String host = theUrl.getHost();
-            boolean requiresWebView = webViewHosts.contains(host);
-
-            if(notifier == null) {
-                notifier = new SlowServerNotifier(activity);
-            }
+            boolean requiresWebView = webViewSessions.requiresWebView(host);
 
-            ResponseMonitor monitor = new ResponseMonitor(host, handler, notifier);
+            ResponseMonitor monitor = new ResponseMonitor(host, handler, getNotifier(activity),
+                    HttpConnectionPool.getInstance().getConcurrencyController().getHostLimit(host));
             monitor.start();
             if(requiresWebView) {
-                requestRequiresWebView(url, monitor, activity);
+                executeInWebView(url, host, monitor, priority, activity);
             } else {
                 HttpGetRequest request = new HttpGetRequest(url, monitor, this, activity);
-                ThreadUtils.getInstance().runBackground(request);
+                request.setRequestHeaders(requestHeaders);
+                request.setPriority(priority);
+                RequestScheduler.getInstance().execute(request, host, priority);
             }
         } catch (MalformedURLException e) {
             Log.e(HttpClient.class.getSimpleName(), e.getMessage(), e);
@@ -88,30 +113,99 @@ public class HttpClient implements SessionManager {
     private HttpClient() {
     }
 
-    @Override
-    public synchronized void storeCookies(String host, Map<String, String> cookies) {
-        allCookies.put(host, cookies);
+    /**
+     * Gets the slow server notifier, creating it on the first request.
+     *
+     * @param activity The applications activity.
+     * @return The slow server notifier.
+     */
+    private SlowServerNotifier getNotifier(Activity activity) {
+        SlowServerNotifier current = notifier;
+        if (current == null) {
+            synchronized (this) {
+                current = notifier;
+                if (current == null) {
+                    current = new SlowServerNotifier(activity);
+                    notifier = current;
+                }
+            }
+        }
+
+        return current;
     }
 
     @Override
-    public synchronized Map<String, String> getCookies(String host) {
-        return allCookies.get(host);
+    public CookieJar getCookieJar() {
+        return cookieJar;
     }
 
     @Override
-    public synchronized void requestRequiresWebView(String url, IResponseHandler handler, Activity activity) {
+    public void requestRequiresWebView(String url, IResponseHandler handler, long requestTime,
+                                       RequestPriority priority, Activity activity) {
         try {
             URL theUrl = new URL(url);
-            webViewHosts.add(theUrl.getHost());
+            WebViewSessions.State state = webViewSessions.loginRequired(theUrl.getHost(),
+                    requestTime);
+            if (state == WebViewSessions.State.WEB_VIEW_ONLY) {
+                Log.i(HttpClient.class.getSimpleName(), "Login to " + theUrl.getHost()
+                        + " only works in a web view");
+            }
+            executeInWebView(url, theUrl.getHost(), handler, priority, activity);
         } catch (MalformedURLException e) {
             Log.e(HttpClient.class.getSimpleName(), e.getMessage(), e);
         }
+    }
+
+    @Override
+    public void requestSucceeded(String url) {
+        try {
+            webViewSessions.nativeSucceeded(new URL(url).getHost());
+        } catch (MalformedURLException e) {
+            Log.e(HttpClient.class.getSimpleName(), e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void webViewRequestSucceeded(String url) {
+        try {
+            String host = new URL(url).getHost();
+            if (webViewSessions.webViewSucceeded(host, System.currentTimeMillis())) {
+                // Send the rest of the host's requests over http with the web view's session
+                boolean harvested = cookieJar.harvestWebViewCookies(host, url);
+                if (isDebug) {
+                    Log.d(HttpClient.class.getSimpleName(), "Using web view session for "
+                            + host + (harvested ? "" : " without cookies"));
+                }
+            }
+        } catch (MalformedURLException e) {
+            Log.e(HttpClient.class.getSimpleName(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Executes the request at the specified url using a WebView.  The request waits its turn for
+     * the host like any other, and keeps the turn until the web view is done with it.
+     *
+     * @param url      The request url.
+     * @param host     The host of the request url.
+     * @param handler  The response handler.
+     * @param priority The priority of the request.
+     * @param activity The activity that initiated the request.
+     */
+    private void executeInWebView(String url, String host, IResponseHandler handler,
+                                  RequestPriority priority, Activity activity) {
         if(isDebug) {
             Log.d(HttpClient.class.getSimpleName(), "Using web view for request " + url);
         }
-        activity.runOnUiThread(()->{
-            WebViewRequest request = new WebViewRequest(url, handler, activity);
-            request.execute();
-        });
+        RequestScheduler.getInstance().executeAsync((done) -> {
+            if (handler instanceof ResponseMonitor) {
+                // Time the response from when the request is sent, not while it waited its turn
+                ((ResponseMonitor) handler).start();
+            }
+            activity.runOnUiThread(()->{
+                WebViewRequest request = new WebViewRequest(url, handler, this, activity, done);
+                request.execute();
+            });
+        }, host, priority);
     }
 }
@@ -0,0 +1,129 @@
+package mil.nga.mapcache.io.network;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * Shares one http client between all requests so connections are kept alive and reused, and
+ * requests to servers supporting HTTP/2 are multiplexed over a single connection.  Also holds the
+ * controller limiting the number of requests sent to a single host at once, adapting the limit to
+ * how well the host keeps up.
+ */
+public class HttpConnectionPool {
+
+    /**
+     * The default maximum number of requests sent to a single host at once.
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 8;
+
+    /**
+     * The number of milliseconds to wait for a connection before giving up.
+     */
+    private static final int connectTimeout = 30000;
+
+    /**
+     * The number of milliseconds to wait for data before giving up.
+     */
+    private static final int readTimeout = 60000;
+
+    /**
+     * The number of idle connections kept open.
+     */
+    private static final int maxIdleConnections = 16;
+
+    /**
+     * The number of minutes an idle connection is kept open.
+     */
+    private static final int keepAliveMinutes = 5;
+
+    /**
+     * The instance of this class.
+     */
+    private static final HttpConnectionPool instance = new HttpConnectionPool(
+            new OkHttpClient.Builder());
+
+    /**
+     * The shared client.
+     */
+    private final OkHttpClient client;
+
+    /**
+     * Adapts the number of requests sent to each host at once.
+     */
+    private final HostConcurrencyController concurrencyController =
+            new HostConcurrencyController(DEFAULT_MAX_REQUESTS_PER_HOST);
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return This class instance.
+     */
+    public static HttpConnectionPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Constructor, public so tests can use their own pool.
+     *
+     * @param builder The builder of the shared client.  Redirects are followed by the caller so
+     *                cookies can be captured along the way.
+     */
+    public HttpConnectionPool(OkHttpClient.Builder builder) {
+        client = builder
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMinutes,
+                        TimeUnit.MINUTES))
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .build();
+    }
+
+    /**
+     * Gets the shared client.
+     *
+     * @return The http client.
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Gets the controller adapting the number of requests sent to each host at once.
+     *
+     * @return The concurrency controller.
+     */
+    public HostConcurrencyController getConcurrencyController() {
+        return concurrencyController;
+    }
+
+    /**
+     * Sets the maximum number of requests sent to a single host at once, however well the host
+     * keeps up.
+     *
+     * @param maxRequestsPerHost The maximum number of requests per host.
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        concurrencyController.setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * Gets the maximum number of requests sent to a single host at once.
+     *
+     * @return The maximum number of requests per host.
+     */
+    public int getMaxRequestsPerHost() {
+        return concurrencyController.getMaxRequestsPerHost();
+    }
+
+    /**
+     * Gets the number of idle and active connections in the pool.
+     *
+     * @return The connection count.
+     */
+    public int getConnectionCount() {
+        return client.connectionPool().connectionCount();
+    }
+}
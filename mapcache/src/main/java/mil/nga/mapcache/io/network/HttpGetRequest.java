@@ -3,25 +3,28 @@ package mil.nga.mapcache.io.network;
 import android.app.Activity;
 import android.util.Base64;
 import android.util.Log;
-import android.webkit.CookieManager;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 import mil.nga.mapcache.auth.Authenticator;
 import mil.nga.mapcache.auth.UserLoggerInner;
 import mil.nga.mapcache.utils.HttpUtils;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
- * An http get request class that performs any specified http get.
+ * An http get request class that performs any specified http get.  Requests share the pooled
+ * connections of the HttpConnectionPool, so a response must be closed for its connection to be
+ * reused.
  */
 public class HttpGetRequest implements Runnable, Authenticator {
 
@@ -51,9 +54,14 @@ public class HttpGetRequest implements Runnable, Authenticator {
     private UserLoggerInner loggerInner = null;
 
     /**
-     * The http connection.
+     * Sends the requests over pooled connections.
      */
-    private HttpURLConnection connection = null;
+    private final HttpConnectionPool pool;
+
+    /**
+     * The current http response.
+     */
+    private Response response = null;
 
     /**
      * The authorization string from previous Http request.
@@ -61,20 +69,40 @@ public class HttpGetRequest implements Runnable, Authenticator {
     private String authorization = null;
 
     /**
-     * A cookie to set in request if need be.
+     * The host of the requested url, the cookies of any redirects are stored for this host.
      */
-    private Map<String, String> cookies = null;
+    private String cookieHost = null;
 
     /**
      * Contains any previously saved cookies.
      */
     private final SessionManager sessionManager;
 
+    /**
+     * The time the request was sent.
+     */
+    private long requestTime = 0;
+
     /**
      * True if the WebViewRequest is handling the request.
      */
     private boolean webViewHandlingRequest = false;
 
+    /**
+     * Additional headers to add to the request, or null.
+     */
+    private Map<String, String> requestHeaders = null;
+
+    /**
+     * Why the last connection failed, or null if it didn't.
+     */
+    private IOException connectFailure = null;
+
+    /**
+     * The priority of the request, kept if the request moves to a web view.
+     */
+    private RequestPriority priority = RequestPriority.METADATA;
+
     /**
      * Constructs a new HttpGetRequest.
      *
@@ -84,39 +112,93 @@ public class HttpGetRequest implements Runnable, Authenticator {
      * @param activity Used to get the app name and version for the user agent.
      */
     public HttpGetRequest(String url, IResponseHandler handler, SessionManager sessionManager, Activity activity) {
+        this(url, handler, sessionManager, activity, HttpConnectionPool.getInstance());
+    }
+
+    /**
+     * Constructs a new HttpGetRequest using the specified connection pool.
+     *
+     * @param url            The url of the get request.
+     * @param handler        Object this is called when request is completed.
+     * @param sessionManager Contains any saved cookies.
+     * @param activity       Used to get the app name and version for the user agent.
+     * @param pool           Sends the requests over pooled connections.
+     */
+    public HttpGetRequest(String url, IResponseHandler handler, SessionManager sessionManager,
+                          Activity activity, HttpConnectionPool pool) {
         this.urlString = url;
         this.handler = handler;
         this.activity = activity;
         this.sessionManager = sessionManager;
+        this.pool = pool;
+    }
+
+    /**
+     * Sets additional headers to add to the request, such as conditional request headers.
+     *
+     * @param requestHeaders The header names and values, or null.
+     */
+    public void setRequestHeaders(Map<String, String> requestHeaders) {
+        this.requestHeaders = requestHeaders;
+    }
+
+    /**
+     * Sets the priority of the request, used if the host needs the request made in a web view.
+     *
+     * @param priority The priority of the request.
+     */
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority;
     }
 
     @Override
     public void run() {
+        if (!handler.notCancelled()) {
+            // Given up on while it waited its turn
+            return;
+        }
         try {
+            // The request scheduler already waited for the host to have room for this request
             authorization = null;
             webViewHandlingRequest = false;
             URL url = new URL(urlString);
-            cookies = sessionManager.getCookies(url.getHost());
+            requestTime = System.currentTimeMillis();
+            if (handler instanceof ResponseMonitor) {
+                // Time the response from when the request is sent, not while it waited its turn
+                ((ResponseMonitor) handler).start();
+            }
+            cookieHost = url.getHost();
             connect(url);
 
             if(!webViewHandlingRequest) {
-                int responseCode = connection.getResponseCode();
+                if (response == null) {
+                    throw new IOException("Failed to connect to " + urlString, connectFailure);
+                }
+                int responseCode = response.code();
 //                if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED
 //                        && (urlString.startsWith("https") || urlString.contains("10.0.2.2"))) {
                 if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED){
 
-                    addBasicAuth(connection.getURL());
-                    responseCode = connection.getResponseCode();
+                    addBasicAuth(response.request().url().url());
+                    responseCode = response.code();
+                }
+
+                if (responseCode == HttpURLConnection.HTTP_OK
+                        || responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    sessionManager.requestSucceeded(urlString);
                 }
 
-                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                if (this.handler instanceof ResponseHeaderConsumer) {
+                    ((ResponseHeaderConsumer) this.handler).setResponseHeaders(
+                            response.headers().toMultimap());
+                }
+
+                ResponseBody body = response.body();
+                if (responseCode != HttpURLConnection.HTTP_OK || body == null) {
                     this.handler.handleResponse(null, responseCode);
                 } else {
-                    InputStream stream = connection.getInputStream();
-                    String encoding = connection.getHeaderField(HttpUtils.getInstance().getContentEncodingKey());
-                    if (encoding != null && encoding.equals("gzip")) {
-                        stream = new GZIPInputStream(stream);
-                    }
+                    // The client decompresses gzip responses itself
+                    InputStream stream = body.byteStream();
                     this.handler.handleResponse(stream, responseCode);
                     if (this.handler instanceof RequestHeaderConsumer) {
                         Map<String, List<String>> headers = new HashMap<>();
@@ -126,9 +208,9 @@ public class HttpGetRequest implements Runnable, Authenticator {
                             headers.put(HttpUtils.getInstance().getBasicAuthKey(), authorizations);
                         }
 
-                        if (this.cookies != null) {
-                            List<String> cookieValues = new ArrayList<>(this.cookies.values());
-                            headers.put(HttpUtils.getInstance().getCookieKey(), cookieValues);
+                        List<String> cookies = sessionManager.getCookieJar().getCookies(cookieHost);
+                        if (!cookies.isEmpty()) {
+                            headers.put(HttpUtils.getInstance().getCookieKey(), cookies);
                         }
                         ((RequestHeaderConsumer) this.handler).setRequestHeaders(headers);
                     }
@@ -137,8 +219,9 @@ public class HttpGetRequest implements Runnable, Authenticator {
         } catch (IOException e) {
             this.handler.handleException(e);
         } finally {
-            if (connection != null) {
-                connection.disconnect();
+            // Closing the response returns its connection to the pool
+            if (response != null) {
+                response.close();
             }
         }
     }
@@ -147,20 +230,17 @@ public class HttpGetRequest implements Runnable, Authenticator {
     public boolean authenticate(URL url, String userName, String password) {
         boolean authorized = false;
 
-        try {
-            if (connection != null) {
-                connection.disconnect();
-            }
+        if (response != null) {
+            response.close();
+        }
 
-            String usernamePass = userName + ":" + password;
-            authorization = "Basic " + Base64.encodeToString(usernamePass.getBytes(), Base64.NO_WRAP);
-            if (isDebug)
-                Log.d(HttpGetRequest.class.getSimpleName(), "Authenticating to " + urlString);
-            connect(url);
-            int responseCode = connection.getResponseCode();
-            authorized = responseCode != HttpURLConnection.HTTP_UNAUTHORIZED;
-        } catch (IOException e) {
-            Log.e(HttpGetRequest.class.getSimpleName(), e.getMessage(), e);
+        String usernamePass = userName + ":" + password;
+        authorization = "Basic " + Base64.encodeToString(usernamePass.getBytes(), Base64.NO_WRAP);
+        if (isDebug)
+            Log.d(HttpGetRequest.class.getSimpleName(), "Authenticating to " + urlString);
+        connect(url);
+        if (response != null) {
+            authorized = response.code() != HttpURLConnection.HTTP_UNAUTHORIZED;
         }
 
         return authorized;
@@ -184,75 +264,93 @@ public class HttpGetRequest implements Runnable, Authenticator {
     }
 
     /**
-     * Adds the user agent to the http header.
+     * Creates the request with the user agent, authorization, and cookie headers.
      *
-     * @param connection The connection to add the user agent to.
+     * @param url        The url to request.
+     * @param isRedirect True if the request is following a redirect.
+     * @return The request.
      */
-    private void configureRequest(HttpURLConnection connection, boolean isRedirect) {
-        connection.addRequestProperty(
+    private Request configureRequest(URL url, boolean isRedirect) {
+        Request.Builder builder = new Request.Builder().url(url);
+        builder.addHeader(
                 HttpUtils.getInstance().getUserAgentKey(),
                 HttpUtils.getInstance().getUserAgentValue(activity));
 
         // Used for debugging connection issues
-        connection.addRequestProperty("Accept", "application/json, text/plain, */*");
-        connection.addRequestProperty("Accept-Encoding", "gzip, deflate, br");
-        connection.addRequestProperty("Accept-Language", "en-US");
-        connection.addRequestProperty("Connection", "keep-alive");
-        connection.addRequestProperty("Host", connection.getURL().getHost());
-        connection.addRequestProperty("Origin", "null");
-        connection.addRequestProperty("Sec-Fetch-Dest", "empty");
-        connection.addRequestProperty("Sec-Fetch-Mode", "cors");
-        connection.addRequestProperty("Sec-Fetch-Site", "cross-site");
+        builder.addHeader("Accept", "application/json, text/plain, */*");
+        builder.addHeader("Accept-Language", "en-US");
+        builder.addHeader("Origin", "null");
+        builder.addHeader("Sec-Fetch-Dest", "empty");
+        builder.addHeader("Sec-Fetch-Mode", "cors");
+        builder.addHeader("Sec-Fetch-Site", "cross-site");
 
         if (authorization != null) {
-            connection.addRequestProperty(HttpUtils.getInstance().getBasicAuthKey(), authorization);
+            builder.addHeader(HttpUtils.getInstance().getBasicAuthKey(), authorization);
         }
 
-        String cookieString = CookieManager.getInstance().getCookie(connection.getURL().toString());
-        if(!isRedirect && cookieString != null) {
-            String [] allCookies = cookieString.split(";");
-            for(String cookie : allCookies) {
-                connection.addRequestProperty(HttpUtils.getInstance().getCookieKey(), cookie);
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                builder.addHeader(header.getKey(), header.getValue());
             }
-        } else if (cookies != null) {
-            for (String cookie : cookies.values()) {
-                connection.addRequestProperty(HttpUtils.getInstance().getCookieKey(), cookie);
+        }
+
+        CookieJar cookieJar = sessionManager.getCookieJar();
+        List<String> cookies = isRedirect ? Collections.emptyList()
+                : cookieJar.getWebViewCookies(url.getHost(), url.toString());
+        if (cookies.isEmpty()) {
+            cookies = cookieJar.getCookies(cookieHost);
+        }
+        for (String cookie : cookies) {
+            builder.addHeader(HttpUtils.getInstance().getCookieKey(), cookie);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Sends the request over a pooled connection.
+     *
+     * @param url        The url to request.
+     * @param isRedirect True if the request is following a redirect.
+     * @throws IOException If the request failed.
+     */
+    private void execute(URL url, boolean isRedirect) throws IOException {
+        Request request = configureRequest(url, isRedirect);
+        if (isDebug) {
+            Log.d(HttpGetRequest.class.getSimpleName(), (isRedirect ? "Redirecting to " : "Connecting to ") + url);
+            for (String name : request.headers().names()) {
+                Log.d(HttpGetRequest.class.getSimpleName(), name + ": " + request.headers(name));
+            }
+        }
+        response = pool.getClient().newCall(request).execute();
+        if (isDebug) {
+            Log.d(HttpGetRequest.class.getSimpleName(), "Response code " + response.code() + " " + url
+                    + " over " + response.protocol());
+            for (Map.Entry<String, List<String>> entries : response.headers().toMultimap().entrySet()) {
+                Log.d(HttpGetRequest.class.getSimpleName(), entries.getKey() + ": " + entries.getValue());
             }
         }
     }
 
     /**
-     * Connects to the specified url.
+     * Connects to the specified url, following redirects.  The response is left null and the
+     * failure kept if the connection failed.
      *
      * @param url The url to connect to.
      */
     private void connect(URL url) {
         try {
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setInstanceFollowRedirects(false);
-            configureRequest(connection, false);
-            if (isDebug) {
-                Log.d(HttpGetRequest.class.getSimpleName(), "Connecting to " + url);
-                for (Map.Entry<String, List<String>> entry : connection.getRequestProperties().entrySet()) {
-                    Log.d(HttpGetRequest.class.getSimpleName(), entry.getKey() + ": " + entry.getValue());
-                }
-            }
-            connection.connect();
-
-            int responseCode = connection.getResponseCode();
+            response = null;
+            connectFailure = null;
+            execute(url, false);
 
-            if (isDebug) {
-                Log.d(HttpGetRequest.class.getSimpleName(), "Response code " + responseCode + " " + url);
-                for (Map.Entry<String, List<String>> entries : connection.getHeaderFields().entrySet()) {
-                    Log.d(HttpGetRequest.class.getSimpleName(), entries.getKey() + ": " + entries.getValue());
-                }
-            }
+            int responseCode = response.code();
             checkCookie();
             while (responseCode == HttpURLConnection.HTTP_MOVED_PERM
                     || responseCode == HttpURLConnection.HTTP_MOVED_TEMP
                     || responseCode == HttpURLConnection.HTTP_SEE_OTHER) {
                 authorization = null;
-                String redirect = connection.getHeaderField(HttpUtils.getInstance().getLocationKey());
+                String redirect = response.header(HttpUtils.getInstance().getLocationKey());
                 if (!redirect.startsWith("http")) {
                     URL original = new URL(urlString);
                     String hostAndPort = original.getAuthority();
@@ -260,55 +358,38 @@ public class HttpGetRequest implements Runnable, Authenticator {
                     redirect = protocol + "://" + hostAndPort + redirect;
                     authorization = null;
                 }
-                connection.disconnect();
+                response.close();
                 url = new URL(redirect);
 
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setInstanceFollowRedirects(false);
-                configureRequest(connection, true);
-                if (isDebug) {
-                    Log.d(HttpGetRequest.class.getSimpleName(), "Redirecting to " + url);
-                    for (Map.Entry<String, List<String>> entry : connection.getRequestProperties().entrySet()) {
-                        Log.d(HttpGetRequest.class.getSimpleName(), entry.getKey() + ": " + entry.getValue());
-                    }
-                }
-                connection.connect();
-                responseCode = connection.getResponseCode();
-                if (isDebug) {
-                    Log.d(HttpGetRequest.class.getSimpleName(), "Response code " + responseCode + " " + url);
-                    for (Map.Entry<String, List<String>> entries : connection.getHeaderFields().entrySet()) {
-                        Log.d(HttpGetRequest.class.getSimpleName(), entries.getKey() + ": " + entries.getValue());
-                    }
-                }
+                execute(url, true);
+                responseCode = response.code();
                 checkCookie();
 
                 if(responseCode == HttpURLConnection.HTTP_OK) {
-                    sessionManager.requestRequiresWebView(urlString, handler, activity);
+                    sessionManager.requestRequiresWebView(urlString, handler, requestTime,
+                            priority, activity);
                     webViewHandlingRequest = true;
                 }
             }
         } catch (IOException e) {
             Log.e(HttpGetRequest.class.getSimpleName(), e.getMessage(), e);
+            connectFailure = e;
+            if (response != null) {
+                response.close();
+                response = null;
+            }
         }
     }
 
     /**
      * Checks to see if the response has a cookie.
      */
-    private void checkCookie() throws MalformedURLException {
-        List<String> cookies = connection.getHeaderFields().get(HttpUtils.getInstance().getSetCookieKey());
-        if (cookies != null && !cookies.isEmpty()) {
-            if (this.cookies == null) {
-                this.cookies = new HashMap<>();
-            }
-            for (String cookie : cookies) {
-                if (isDebug)
-                    Log.d(HttpGetRequest.class.getSimpleName(), "Cookie found: " + cookie);
-                String[] nameValue = cookie.split("=", 2);
-                this.cookies.put(nameValue[0], cookie);
-            }
-            URL originalUrl = new URL(urlString);
-            sessionManager.storeCookies(originalUrl.getHost(), this.cookies);
+    private void checkCookie() {
+        List<String> cookies = response.headers(HttpUtils.getInstance().getSetCookieKey());
+        for (String cookie : cookies) {
+            if (isDebug)
+                Log.d(HttpGetRequest.class.getSimpleName(), "Cookie found: " + cookie);
+            sessionManager.getCookieJar().storeSetCookie(cookieHost, cookie);
         }
     }
 }
@@ -0,0 +1,22 @@
+package mil.nga.mapcache.io.network;
+
+/**
+ * The priority classes of http requests, highest priority first.
+ */
+public enum RequestPriority {
+
+    /**
+     * Tiles for the map the user is looking at.
+     */
+    INTERACTIVE,
+
+    /**
+     * Capabilities documents and other metadata the user is waiting on.
+     */
+    METADATA,
+
+    /**
+     * Tiles downloaded into a GeoPackage.
+     */
+    BULK
+}
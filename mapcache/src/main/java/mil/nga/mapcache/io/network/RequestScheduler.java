@@ -0,0 +1,368 @@
+package mil.nga.mapcache.io.network;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs http requests on a pool of worker threads in priority order.  Queued requests of a higher
+ * priority always run before queued requests of a lower priority, and within a priority the hosts
+ * take turns so one busy host can't starve the others.  A host with no capacity for another
+ * request is passed over, its requests stay queued without holding a worker until it has room.
+ * Bulk requests are kept off a few of the workers so map tiles can start right away while a
+ * download is running.
+ */
+public class RequestScheduler {
+
+    /**
+     * Decides whether another request can be sent to a host.
+     */
+    public interface HostCapacity {
+
+        /**
+         * Takes a turn to send a request to the host if it has room for another, without waiting.
+         *
+         * @param host     The host.
+         * @param priority The priority of the request.
+         * @return True if the request can be sent, release must then be called once it is done.
+         */
+        boolean tryAcquire(String host, RequestPriority priority);
+
+        /**
+         * Gives back the turn of a request that is done.
+         *
+         * @param host The host the request was sent to.
+         */
+        void release(String host);
+
+        /**
+         * Gets how long until a host that asked us to wait accepts requests again.
+         *
+         * @param host The host.
+         * @return The milliseconds to wait, or 0 if the host isn't waiting.
+         */
+        long getPausedMillis(String host);
+
+        /**
+         * Sets the listener told whenever a host may have room for more requests.
+         *
+         * @param listener The listener, called from any thread.
+         */
+        void setCapacityListener(Runnable listener);
+    }
+
+    /**
+     * A request that keeps its host's turn after it starts, until it says it is done.  Used for
+     * requests finished by another thread, such as in a web view.
+     */
+    public interface AsyncRequest {
+
+        /**
+         * Starts the request.
+         *
+         * @param done Must be called once the request is done, from any thread, to give back its
+         *             host's turn.
+         */
+        void start(Runnable done);
+    }
+
+    /**
+     * Capacity for hosts that never runs out.
+     */
+    private static final HostCapacity UNLIMITED = new HostCapacity() {
+        @Override
+        public boolean tryAcquire(String host, RequestPriority priority) {
+            return true;
+        }
+
+        @Override
+        public void release(String host) {
+        }
+
+        @Override
+        public long getPausedMillis(String host) {
+            return 0;
+        }
+
+        @Override
+        public void setCapacityListener(Runnable listener) {
+        }
+    };
+
+    /**
+     * The number of worker threads.
+     */
+    private static final int WORKERS = 16;
+
+    /**
+     * The number of workers bulk requests can never use.
+     */
+    private static final int RESERVED_WORKERS = 4;
+
+    /**
+     * The instance of this class.
+     */
+    private static final RequestScheduler instance = new RequestScheduler(WORKERS, RESERVED_WORKERS,
+            HttpConnectionPool.getInstance().getConcurrencyController());
+
+    /**
+     * The queued requests of each priority, grouped by host in the order the hosts take turns.
+     */
+    private final Map<RequestPriority, LinkedHashMap<String, ArrayDeque<AsyncRequest>>> queues =
+            new EnumMap<>(RequestPriority.class);
+
+    /**
+     * Decides whether another request can be sent to a host.
+     */
+    private final HostCapacity capacity;
+
+    /**
+     * The most bulk requests run at once.
+     */
+    private final int maxBulkWorkers;
+
+    /**
+     * The number of bulk requests running.
+     */
+    private int runningBulk = 0;
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return This class instance.
+     */
+    public static RequestScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Constructor, public so tests can use their own scheduler.  Hosts are never out of capacity.
+     *
+     * @param workers         The number of worker threads.
+     * @param reservedWorkers The number of workers bulk requests can never use.
+     */
+    public RequestScheduler(int workers, int reservedWorkers) {
+        this(workers, reservedWorkers, UNLIMITED);
+    }
+
+    /**
+     * Constructor, public so tests can use their own scheduler.
+     *
+     * @param workers         The number of worker threads.
+     * @param reservedWorkers The number of workers bulk requests can never use.
+     * @param capacity        Decides whether another request can be sent to a host.
+     */
+    public RequestScheduler(int workers, int reservedWorkers, HostCapacity capacity) {
+        this.capacity = capacity;
+        capacity.setCapacityListener(this::capacityChanged);
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+        }
+        int workerCount = Math.max(1, workers);
+        maxBulkWorkers = Math.max(1, workerCount - Math.max(0, reservedWorkers));
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "RequestScheduler-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues the request, its host's turn is given back once it has run.
+     *
+     * @param request  The request to run.
+     * @param host     The host the request is sent to.
+     * @param priority The priority of the request.
+     */
+    public void execute(Runnable request, String host, RequestPriority priority) {
+        executeAsync((done) -> {
+            try {
+                request.run();
+            } finally {
+                done.run();
+            }
+        }, host, priority);
+    }
+
+    /**
+     * Queues a request that keeps its host's turn after it starts until it says it is done.
+     *
+     * @param request  The request to start.
+     * @param host     The host the request is sent to.
+     * @param priority The priority of the request.
+     */
+    public synchronized void executeAsync(AsyncRequest request, String host,
+                                          RequestPriority priority) {
+        LinkedHashMap<String, ArrayDeque<AsyncRequest>> hosts = queues.get(priority);
+        ArrayDeque<AsyncRequest> queue = hosts.get(host);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            hosts.put(host, queue);
+        }
+        queue.add(request);
+        notifyAll();
+    }
+
+    /**
+     * Gets the number of requests waiting to run.
+     *
+     * @param priority The priority of the requests.
+     * @return The number of queued requests.
+     */
+    public synchronized int getQueuedCount(RequestPriority priority) {
+        int count = 0;
+        for (ArrayDeque<AsyncRequest> queue : queues.get(priority).values()) {
+            count += queue.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Wakes the workers to look for requests to hosts that may now have room.
+     */
+    private synchronized void capacityChanged() {
+        notifyAll();
+    }
+
+    /**
+     * Runs queued requests until the thread is interrupted.
+     */
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Turn turn;
+            synchronized (this) {
+                turn = nextTurn();
+                while (turn == null) {
+                    try {
+                        long waitMillis = getPausedMillis();
+                        if (waitMillis > 0) {
+                            wait(waitMillis);
+                        } else {
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    turn = nextTurn();
+                }
+                if (turn.priority == RequestPriority.BULK) {
+                    runningBulk++;
+                }
+            }
+
+            String host = turn.host;
+            AtomicBoolean released = new AtomicBoolean(false);
+            Runnable done = () -> {
+                if (released.compareAndSet(false, true)) {
+                    capacity.release(host);
+                }
+            };
+            try {
+                turn.request.start(done);
+            } catch (RuntimeException e) {
+                Log.e(RequestScheduler.class.getSimpleName(), "Request failed", e);
+                done.run();
+            } finally {
+                if (turn.priority == RequestPriority.BULK) {
+                    synchronized (this) {
+                        runningBulk--;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the highest priority request whose host has room for it.  Within a priority the hosts
+     * are tried in the order of their turns, and the host served goes to the back of the line.
+     *
+     * @return The request and its host, or null if no request can run now.
+     */
+    private Turn nextTurn() {
+        for (Map.Entry<RequestPriority, LinkedHashMap<String, ArrayDeque<AsyncRequest>>> entry
+                : queues.entrySet()) {
+            RequestPriority priority = entry.getKey();
+            if (priority == RequestPriority.BULK && runningBulk >= maxBulkWorkers) {
+                continue;
+            }
+
+            LinkedHashMap<String, ArrayDeque<AsyncRequest>> hosts = entry.getValue();
+            Iterator<Map.Entry<String, ArrayDeque<AsyncRequest>>> iterator =
+                    hosts.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ArrayDeque<AsyncRequest>> hostQueue = iterator.next();
+                if (capacity.tryAcquire(hostQueue.getKey(), priority)) {
+                    iterator.remove();
+                    AsyncRequest request = hostQueue.getValue().poll();
+                    if (!hostQueue.getValue().isEmpty()) {
+                        hosts.put(hostQueue.getKey(), hostQueue.getValue());
+                    }
+                    return new Turn(hostQueue.getKey(), priority, request);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets how long until the first host with queued requests that asked us to wait accepts
+     * requests again.
+     *
+     * @return The milliseconds to wait, or 0 if no queued host is waiting.
+     */
+    private long getPausedMillis() {
+        long pausedMillis = 0;
+        for (LinkedHashMap<String, ArrayDeque<AsyncRequest>> hosts : queues.values()) {
+            for (String host : hosts.keySet()) {
+                long hostMillis = capacity.getPausedMillis(host);
+                if (hostMillis > 0 && (pausedMillis == 0 || hostMillis < pausedMillis)) {
+                    pausedMillis = hostMillis;
+                }
+            }
+        }
+
+        return pausedMillis;
+    }
+
+    /**
+     * A request taken from the queues along with its host's turn.
+     */
+    private static class Turn {
+
+        /**
+         * The host the request is sent to.
+         */
+        final String host;
+
+        /**
+         * The priority of the request.
+         */
+        final RequestPriority priority;
+
+        /**
+         * The request.
+         */
+        final AsyncRequest request;
+
+        /**
+         * Constructor.
+         *
+         * @param host     The host the request is sent to.
+         * @param priority The priority of the request.
+         * @param request  The request.
+         */
+        Turn(String host, RequestPriority priority, AsyncRequest request) {
+            this.host = host;
+            this.priority = priority;
+            this.request = request;
+        }
+    }
+}
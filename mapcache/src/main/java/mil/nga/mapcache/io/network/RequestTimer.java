@@ -0,0 +1,247 @@
+package mil.nga.mapcache.io.network;
+
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mil.nga.mapcache.utils.ThreadUtils;
+
+/**
+ * Runs request timeouts, retries and other delayed work from the scheduled thread, so waiting
+ * doesn't hold a worker thread.  Scheduled tasks must be quick, work taking any time is handed to
+ * another thread.  Keeps how often each host's requests time out.
+ */
+public class RequestTimer {
+
+    /**
+     * The instance of this class.
+     */
+    private static final RequestTimer instance = new RequestTimer();
+
+    /**
+     * The timeout counts of each host.
+     */
+    private final Map<String, HostTimeouts> hostTimeouts = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return The instance of this class.
+     */
+    public static RequestTimer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Private constructor, keep it a singleton.
+     */
+    private RequestTimer() {
+    }
+
+    /**
+     * Runs a task after a delay.
+     *
+     * @param task        The task, run on the scheduled thread.
+     * @param delayMillis The delay in milliseconds.
+     * @return Cancels the task.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return ThreadUtils.getInstance().getScheduled().schedule(task, delayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts timing a request to a host.
+     *
+     * @param host          The host the request is sent to.
+     * @param timeoutMillis The milliseconds the request has to complete.
+     * @param onTimeout     Run on the scheduled thread if the request didn't complete in time.
+     * @return The timeout, which must be completed when the request completes.
+     */
+    public Timeout startTimeout(String host, long timeoutMillis, Runnable onTimeout) {
+        HostTimeouts timeouts = hostTimeouts.computeIfAbsent(host, (key) -> new HostTimeouts());
+        Timeout timeout = new Timeout(timeouts, onTimeout);
+        timeouts.started.incrementAndGet();
+        timeout.future = schedule(timeout::expire, timeoutMillis);
+
+        return timeout;
+    }
+
+    /**
+     * Gets how often a host's requests timed out.
+     *
+     * @param host The host.
+     * @return The timeout counts, or null if no requests to the host were timed.
+     */
+    public HostTimeouts getTimeouts(String host) {
+        return hostTimeouts.get(host);
+    }
+
+    /**
+     * Gets how often each host's requests timed out.
+     *
+     * @return The timeout counts keyed by host.
+     */
+    public Map<String, HostTimeouts> getAllTimeouts() {
+        return Collections.unmodifiableMap(new HashMap<>(hostTimeouts));
+    }
+
+    /**
+     * A running request timeout.
+     */
+    public static class Timeout {
+
+        /**
+         * The timeout counts of the request's host.
+         */
+        private final HostTimeouts timeouts;
+
+        /**
+         * Run if the request didn't complete in time.
+         */
+        private final Runnable onTimeout;
+
+        /**
+         * The time the request started.
+         */
+        private final long startTime = System.currentTimeMillis();
+
+        /**
+         * True once the request completed or timed out.
+         */
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        /**
+         * Runs the timeout, or null until scheduled.
+         */
+        private volatile ScheduledFuture<?> future = null;
+
+        /**
+         * Constructor.
+         *
+         * @param timeouts  The timeout counts of the request's host.
+         * @param onTimeout Run if the request didn't complete in time.
+         */
+        private Timeout(HostTimeouts timeouts, Runnable onTimeout) {
+            this.timeouts = timeouts;
+            this.onTimeout = onTimeout;
+        }
+
+        /**
+         * Stops the timeout because the request completed or was abandoned.
+         *
+         * @return True if the request completed in time, false if it had already timed out.
+         */
+        public boolean complete() {
+            boolean inTime = done.compareAndSet(false, true);
+            if (inTime) {
+                ScheduledFuture<?> scheduled = future;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                timeouts.completed.incrementAndGet();
+                timeouts.completedMillis.addAndGet(System.currentTimeMillis() - startTime);
+            }
+
+            return inTime;
+        }
+
+        /**
+         * Times the request out if it hasn't completed.
+         */
+        private void expire() {
+            if (done.compareAndSet(false, true)) {
+                timeouts.expired.incrementAndGet();
+                try {
+                    onTimeout.run();
+                } catch (RuntimeException e) {
+                    Log.e(RequestTimer.class.getSimpleName(), "Request timeout failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * How often a host's requests timed out.
+     */
+    public static class HostTimeouts {
+
+        /**
+         * The number of requests timed.
+         */
+        private final AtomicInteger started = new AtomicInteger();
+
+        /**
+         * The number of requests that completed in time.
+         */
+        private final AtomicInteger completed = new AtomicInteger();
+
+        /**
+         * The number of requests that timed out.
+         */
+        private final AtomicInteger expired = new AtomicInteger();
+
+        /**
+         * The total milliseconds of the requests that completed in time.
+         */
+        private final AtomicLong completedMillis = new AtomicLong();
+
+        /**
+         * Gets the number of requests timed.
+         *
+         * @return The number of requests.
+         */
+        public int getStarted() {
+            return started.get();
+        }
+
+        /**
+         * Gets the number of requests that completed in time.
+         *
+         * @return The number of requests.
+         */
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        /**
+         * Gets the number of requests that timed out.
+         *
+         * @return The number of requests.
+         */
+        public int getExpired() {
+            return expired.get();
+        }
+
+        /**
+         * Gets the average time of the requests that completed in time.
+         *
+         * @return The average milliseconds, or 0 if none completed.
+         */
+        public long getAverageCompletionMillis() {
+            int count = completed.get();
+            return count > 0 ? completedMillis.get() / count : 0;
+        }
+
+        /**
+         * Describes how often the host's requests timed out.
+         *
+         * @param host The host.
+         * @return The description.
+         */
+        public String describe(String host) {
+            return String.format(Locale.US, "%s: %d requests timed, %d completed avg %d ms,"
+                            + " %d timed out", host, getStarted(), getCompleted(),
+                    getAverageCompletionMillis(), getExpired());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package mil.nga.mapcache.io.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads response bodies into byte arrays without the garbage of growing a new buffer for every
+ * response.  When the length of the body is known it is read straight into an array of that size,
+ * which is then stored as is.  Otherwise it is read into a scratch buffer borrowed from a small
+ * pool and copied out once.
+ */
+public class ResponseBuffers {
+
+    /**
+     * The size of a new scratch buffer, big enough for most tiles.
+     */
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    /**
+     * Scratch buffers grown past this size are dropped instead of pooled.
+     */
+    private static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+    /**
+     * The most scratch buffers kept, one for each request running at once.
+     */
+    private static final int MAX_POOLED = 16;
+
+    /**
+     * Content lengths above this aren't trusted to size an array up front, that is well above any
+     * tile or metatile.  Bigger bodies are read into a scratch buffer that grows as they arrive.
+     */
+    private static final long MAX_CONTENT_LENGTH = 4 * 1024 * 1024;
+
+    /**
+     * The instance of this class.
+     */
+    private static final ResponseBuffers instance = new ResponseBuffers();
+
+    /**
+     * The idle scratch buffers.
+     */
+    private final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return The instance of this class.
+     */
+    public static ResponseBuffers getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the length of the response body from its headers.
+     *
+     * @param headers The response headers.
+     * @return The Content-Length, or -1 if not known.
+     */
+    public static long getContentLength(Map<String, List<String>> headers) {
+        long contentLength = -1;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if ("Content-Length".equalsIgnoreCase(header.getKey()) && header.getValue() != null
+                    && !header.getValue().isEmpty()) {
+                try {
+                    contentLength = Long.parseLong(header.getValue().get(0).trim());
+                } catch (NumberFormatException e) {
+                    contentLength = -1;
+                }
+                break;
+            }
+        }
+
+        return contentLength;
+    }
+
+    /**
+     * Reads the whole stream.
+     *
+     * @param stream        The stream to read.
+     * @param contentLength The number of bytes in the stream, or -1 if not known.
+     * @return The bytes of the stream.
+     * @throws IOException If the stream couldn't be read or ended before its content length.
+     */
+    public byte[] readFully(InputStream stream, long contentLength) throws IOException {
+        if (contentLength < 0 && stream instanceof ByteArrayInputStream) {
+            // Content extracted from a web view is already in memory and knows its size, it is
+            // still copied once into an array of exactly that size
+            contentLength = stream.available();
+        }
+
+        byte[] bytes;
+        if (contentLength >= 0 && contentLength <= MAX_CONTENT_LENGTH) {
+            bytes = new byte[(int) contentLength];
+            int count = 0;
+            while (count < bytes.length) {
+                int read = stream.read(bytes, count, bytes.length - count);
+                if (read < 0) {
+                    throw new EOFException("Response ended after " + count + " of "
+                            + contentLength + " bytes");
+                }
+                count += read;
+            }
+            int next = stream.read();
+            if (next >= 0) {
+                // The server sent more than it said it would, keep reading the rest
+                bytes = readRemaining(stream, bytes, next);
+            }
+        } else {
+            bytes = readRemaining(stream, new byte[0], -1);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Reads the rest of the stream into a scratch buffer.
+     *
+     * @param stream The stream to read.
+     * @param start  The bytes already read.
+     * @param next   The byte read after the start bytes, or -1 if none.
+     * @return The start bytes followed by the rest of the stream.
+     * @throws IOException If the stream couldn't be read.
+     */
+    private byte[] readRemaining(InputStream stream, byte[] start, int next) throws IOException {
+        byte[] buffer = acquire(start.length + 1);
+        try {
+            System.arraycopy(start, 0, buffer, 0, start.length);
+            int count = start.length;
+            if (next >= 0) {
+                buffer[count++] = (byte) next;
+            }
+            while (true) {
+                if (count == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = stream.read(buffer, count, buffer.length - count);
+                if (read < 0) {
+                    break;
+                }
+                count += read;
+            }
+
+            return Arrays.copyOf(buffer, count);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Borrows a scratch buffer from the pool.
+     *
+     * @param minSize The smallest size the buffer can be.
+     * @return The buffer.
+     */
+    private byte[] acquire(int minSize) {
+        byte[] buffer;
+        synchronized (pool) {
+            buffer = pool.pollFirst();
+        }
+        if (buffer == null || buffer.length < minSize) {
+            buffer = new byte[Math.max(SCRATCH_SIZE, Integer.highestOneBit(minSize) << 1)];
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Returns a scratch buffer to the pool.
+     *
+     * @param buffer The buffer.
+     */
+    private void release(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_SIZE) {
+            synchronized (pool) {
+                if (pool.size() < MAX_POOLED) {
+                    pool.addFirst(buffer);
+                }
+            }
+        }
+    }
+}
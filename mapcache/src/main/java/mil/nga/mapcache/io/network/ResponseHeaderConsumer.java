@@ -0,0 +1,17 @@
+package mil.nga.mapcache.io.network;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interface to objects interested in the headers of an Http response.
+ */
+public interface ResponseHeaderConsumer {
+
+    /**
+     * Sets the response headers, called before the response is handled.
+     *
+     * @param headers The response headers.
+     */
+    void setResponseHeaders(Map<String, List<String>> headers);
+}
@@ -2,14 +2,19 @@ package mil.nga.mapcache.io.network;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Map;
 
 import mil.nga.mapcache.io.network.slowserver.SlowServerNotifier;
+import mil.nga.mapcache.load.TileRetryPolicy;
 
 /**
- * Monitors for a download response and records the time.  Routes all handler calls to the original
- * handler.
+ * Monitors for a download response and records the time.  The time and response code are fed to
+ * the host's concurrency limit so it can adapt to how well the host keeps up.  Routes all handler
+ * calls to the original handler.
  */
-public class ResponseMonitor implements IResponseHandler {
+public class ResponseMonitor implements IResponseHandler, ResponseHeaderConsumer {
 
     /**
      * The host waiting for download from.
@@ -26,22 +31,35 @@ public class ResponseMonitor implements IResponseHandler {
      */
     private final SlowServerNotifier notifier;
 
+    /**
+     * Adapts the number of requests sent to the host at once.
+     */
+    private final HostConcurrencyController.HostLimit hostLimit;
+
     /**
      * The start time of the download.
      */
     private long startTime;
 
+    /**
+     * The wait the server asked for in its Retry-After header, or null if it didn't ask.
+     */
+    private Long retryAfterMillis = null;
+
     /**
      * Constructor.
      *
      * @param host     The host we are downloading from.
      * @param handler  The original handler to route calls too.
      * @param notifier If the server is slow, this will notify the user of that.
+     * @param hostLimit Adapts the number of requests sent to the host at once.
      */
-    public ResponseMonitor(String host, IResponseHandler handler, SlowServerNotifier notifier) {
+    public ResponseMonitor(String host, IResponseHandler handler, SlowServerNotifier notifier,
+                           HostConcurrencyController.HostLimit hostLimit) {
         this.host = host;
         this.handler = handler;
         this.notifier = notifier;
+        this.hostLimit = hostLimit;
     }
 
     /**
@@ -56,11 +74,31 @@ public class ResponseMonitor implements IResponseHandler {
         long endTime = System.currentTimeMillis();
         long duration = endTime - startTime;
         notifier.responseTime(host, duration);
+        hostLimit.onResponse(duration, responseCode, retryAfterMillis);
+        if (handler instanceof ResponseTimeConsumer) {
+            ((ResponseTimeConsumer) handler).setResponseTime(duration);
+        }
         handler.handleResponse(stream, responseCode);
     }
 
+    @Override
+    public void setResponseHeaders(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if ("Retry-After".equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                retryAfterMillis = TileRetryPolicy.parseRetryAfter(header.getValue().get(0),
+                        System.currentTimeMillis());
+            }
+        }
+        if (handler instanceof ResponseHeaderConsumer) {
+            ((ResponseHeaderConsumer) handler).setResponseHeaders(headers);
+        }
+    }
+
     @Override
     public void handleException(IOException exception) {
+        if (exception instanceof SocketTimeoutException) {
+            hostLimit.onTimeout();
+        }
         handler.handleException(exception);
     }
 
@@ -0,0 +1,15 @@
+package mil.nga.mapcache.io.network;
+
+/**
+ * Interface to objects interested in how long an Http request took to get a response.
+ */
+public interface ResponseTimeConsumer {
+
+    /**
+     * Sets the time from sending the request until the response started, called before the
+     * response is handled.
+     *
+     * @param millis The response time in milliseconds.
+     */
+    void setResponseTime(long millis);
+}
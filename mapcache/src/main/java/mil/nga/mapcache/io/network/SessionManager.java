@@ -2,35 +2,43 @@ package mil.nga.mapcache.io.network;
 
 import android.app.Activity;
 
-import java.util.Map;
-
 /**
- * Stores cookies for specific servers.
+ * Stores cookies for specific servers, and the sessions of servers that need a WebView to login.
  */
 public interface SessionManager {
 
     /**
-     * Stores the cookies for the specified host.
+     * Gets the cookies stored for each host.
+     *
+     * @return The cookie jar, safe to use from any thread.
+     */
+    CookieJar getCookieJar();
+
+    /**
+     * Executes the request at the specified url using a WebView, because the host sent an http
+     * request to a login page.
      *
-     * @param host    The host to store cookies for.
-     * @param cookies The cookies to store.
+     * @param url         The request url.
+     * @param handler     The response handler.
+     * @param requestTime The time the http request was sent.
+     * @param priority    The priority of the request.
+     * @param activity    The activity that initiated the request.
      */
-    void storeCookies(String host, Map<String, String> cookies);
+    void requestRequiresWebView(String url, IResponseHandler handler, long requestTime,
+                                RequestPriority priority, Activity activity);
 
     /**
-     * Gets the cookies for the specified host.
+     * Called when an http request got its content without needing a WebView.
      *
-     * @param host The host to get the cookies for.
-     * @return The cookies for the host, or null if there aren't any.
+     * @param url The request url.
      */
-    Map<String, String> getCookies(String host);
+    void requestSucceeded(String url);
 
     /**
-     * Executes the request at the specified url using a WebView.
+     * Called when a request made in a WebView got its content, so its session can be used for
+     * http requests.
      *
-     * @param url      The request url.
-     * @param handler  The response handler.
-     * @param activity The activity that initiated the request.
+     * @param url The request url.
      */
-    void requestRequiresWebView(String url, IResponseHandler handler, Activity activity);
+    void webViewRequestSucceeded(String url);
 }
@@ -0,0 +1,31 @@
+package mil.nga.mapcache.io.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * A byte array output stream whose bytes can be read back as a stream without first copying them
+ * into a new array, as toByteArray does.
+ */
+public class SharedByteArrayOutputStream extends ByteArrayOutputStream {
+
+    /**
+     * Constructor.
+     *
+     * @param size The initial size of the buffer, a good estimate saves growing it.
+     */
+    public SharedByteArrayOutputStream(int size) {
+        super(size);
+    }
+
+    /**
+     * Gets a stream reading the bytes written so far.  The stream shares this stream's buffer, so
+     * nothing should be written after calling this.
+     *
+     * @return The input stream.
+     */
+    public synchronized InputStream toInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+}
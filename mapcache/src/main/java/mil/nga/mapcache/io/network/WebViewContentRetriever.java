@@ -10,8 +10,6 @@ import java.io.InputStream;
 import java.util.Observable;
 import java.util.Observer;
 
-import mil.nga.mapcache.utils.ThreadUtils;
-
 /**
  * Class that is called from within the web view page.
  */
@@ -22,6 +20,11 @@ public class WebViewContentRetriever implements Observer, ValueCallback<String>
      */
     private static final boolean isDebug = false;
 
+    /**
+     * The milliseconds to let the web page load before trying to extract its content again.
+     */
+    private static final long EXTRACT_DELAY_MILLIS = 100;
+
     /**
      * The javascript that returns the urls html content.
      */
@@ -92,6 +95,11 @@ public class WebViewContentRetriever implements Observer, ValueCallback<String>
      */
     public void close() {
         this.model.deleteObserver(this);
+        synchronized (this) {
+            // The web view goes back to the pool, so an extraction still waiting must not touch it
+            currentExtractor = null;
+            currentHtml = null;
+        }
     }
 
     @Override
@@ -108,26 +116,21 @@ public class WebViewContentRetriever implements Observer, ValueCallback<String>
         }
 
         if (extractor != null) {
-            ThreadUtils.getInstance().runBackground(this::waitBackBeforeExtract);
+            waitBackBeforeExtract();
         }
     }
 
     /**
-     * Waits in a background thread for the web page to fully load before extracting its content.
+     * Gives the web page a little while longer to fully load before extracting its content.
      */
     private void waitBackBeforeExtract() {
-        try {
-            if (isDebug) {
-                Log.d(
-                        WebViewContentRetriever.class.getSimpleName(),
-                        "Wait back before extract " + this.model.getCurrentUrl());
-            }
-            Thread.sleep(100);
-        } catch (InterruptedException e) {
-            Log.d(WebViewContentRetriever.class.getSimpleName(), e.getMessage(), e);
+        if (isDebug) {
+            Log.d(
+                    WebViewContentRetriever.class.getSimpleName(),
+                    "Wait back before extract " + this.model.getCurrentUrl());
         }
-
-        this.activity.runOnUiThread(this::extractContent);
+        RequestTimer.getInstance().schedule(() -> this.activity.runOnUiThread(this::extractContent),
+                EXTRACT_DELAY_MILLIS);
     }
 
     /**
@@ -164,7 +167,7 @@ public class WebViewContentRetriever implements Observer, ValueCallback<String>
                                 WebViewContentRetriever.class.getSimpleName(),
                                 "Not ready for extraction " + this.model.getCurrentUrl());
                     }
-                    ThreadUtils.getInstance().runBackground(this::waitBackBeforeExtract);
+                    waitBackBeforeExtract();
                 }
             }
         }
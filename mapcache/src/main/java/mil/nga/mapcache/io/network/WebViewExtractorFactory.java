@@ -41,7 +41,7 @@ public class WebViewExtractorFactory {
         if (html.startsWith("\"This XML file")) {
             extractor = new WebViewXmlExtractor();
         } else if (html.contains("\"\"") && this.model.getCurrentUrl().contains("format=image")) {
-            extractor = new WebViewImageExtractor(this.webView);
+            extractor = new WebViewFetchExtractor(this.webView);
         }
 
         return extractor;
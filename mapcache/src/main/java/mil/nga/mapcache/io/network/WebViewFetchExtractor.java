@@ -0,0 +1,169 @@
+package mil.nga.mapcache.io.network;
+
+import android.util.Base64;
+import android.util.Log;
+import android.webkit.WebView;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Gets the original bytes of the image displayed on the web page, by having the page fetch its own
+ * url with the session it logged in with and hand back the body as base64.  The image keeps its
+ * format and transparency, and isn't drawn and compressed again.  If the page can't fetch the
+ * image, the image is taken from a drawing of the page instead.
+ */
+public class WebViewFetchExtractor implements WebViewExtractor {
+
+    /**
+     * Debug logging flag.
+     */
+    private static final boolean isDebug = false;
+
+    /**
+     * The script that starts fetching the page's url the first time it runs, and returns the
+     * image as a data url once fetched, "error:" and the reason if it failed, or null until then.
+     */
+    private static final String FETCH_SCRIPT = "(function() {"
+            + " var key = 'mapcacheImage';"
+            + " if (window[key] === undefined) {"
+            + "  window[key] = null;"
+            + "  fetch(window.location.href, {credentials: 'include', cache: 'force-cache'})"
+            + "   .then(function(response) {"
+            + "    if (!response.ok) { throw new Error('HTTP ' + response.status); }"
+            + "    return response.blob(); })"
+            + "   .then(function(blob) {"
+            + "    if (blob.type.indexOf('image/') !== 0) { throw new Error(blob.type); }"
+            + "    return new Promise(function(resolve, reject) {"
+            + "     var reader = new FileReader();"
+            + "     reader.onload = function() { resolve(reader.result); };"
+            + "     reader.onerror = function() { reject(reader.error); };"
+            + "     reader.readAsDataURL(blob); }); })"
+            + "   .then(function(data) { window[key] = data; })"
+            + "   .catch(function(error) { window[key] = 'error:' + error; });"
+            + " }"
+            + " return window[key];"
+            + "})();";
+
+    /**
+     * How long to wait for the page to fetch the image before drawing it instead.
+     */
+    private static final long FETCH_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * The web view to get the image from.
+     */
+    private final WebView webView;
+
+    /**
+     * Takes the image from a drawing of the page when it can't be fetched.
+     */
+    private final WebViewImageExtractor fallback;
+
+    /**
+     * The time the fetch started, or 0 if it hasn't.
+     */
+    private long fetchStart = 0;
+
+    /**
+     * True while waiting for the result of the script.
+     */
+    private boolean evaluating = false;
+
+    /**
+     * The image bytes, or null until fetched.
+     */
+    private byte[] image = null;
+
+    /**
+     * True if the image couldn't be fetched and is being drawn instead.
+     */
+    private boolean useFallback = false;
+
+    /**
+     * Constructor.
+     *
+     * @param view The web view to get the image from.
+     */
+    public WebViewFetchExtractor(WebView view) {
+        this.webView = view;
+        this.fallback = new WebViewImageExtractor(view);
+    }
+
+    @Override
+    public boolean readyForExtraction(String html) {
+        boolean isReady;
+        if (useFallback) {
+            isReady = fallback.readyForExtraction(html);
+        } else {
+            isReady = image != null;
+            if (!isReady && !evaluating) {
+                if (fetchStart == 0) {
+                    fetchStart = System.currentTimeMillis();
+                } else if (System.currentTimeMillis() - fetchStart > FETCH_TIMEOUT_MILLIS) {
+                    fail("timed out");
+                    return fallback.readyForExtraction(html);
+                }
+                evaluating = true;
+                webView.evaluateJavascript(FETCH_SCRIPT, this::onScriptResult);
+            }
+        }
+
+        return isReady;
+    }
+
+    @Override
+    public InputStream extractContent(String html) {
+        InputStream content;
+        if (useFallback) {
+            content = fallback.extractContent(html);
+        } else {
+            content = new ByteArrayInputStream(image);
+            image = null;
+        }
+
+        return content;
+    }
+
+    /**
+     * Takes the result of the fetch script.
+     *
+     * @param result The json result of the script.
+     */
+    private void onScriptResult(String result) {
+        evaluating = false;
+        try {
+            Object value = result != null ? new JSONTokener(result).nextValue() : null;
+            if (value instanceof String) {
+                String data = (String) value;
+                int base64 = data.indexOf(";base64,");
+                if (data.startsWith("data:") && base64 > 0) {
+                    image = Base64.decode(data.substring(base64 + 8), Base64.DEFAULT);
+                    if (isDebug) {
+                        Log.d(WebViewFetchExtractor.class.getSimpleName(), "Fetched "
+                                + image.length + " byte " + data.substring(5, base64)
+                                + " image from " + webView.getUrl());
+                    }
+                } else {
+                    fail(data);
+                }
+            }
+        } catch (JSONException | IllegalArgumentException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Falls back to drawing the page.
+     *
+     * @param reason Why the image couldn't be fetched.
+     */
+    private void fail(String reason) {
+        Log.w(WebViewFetchExtractor.class.getSimpleName(), "Drawing the image of "
+                + webView.getUrl() + ", fetching it failed: " + reason);
+        useFallback = true;
+    }
+}
@@ -8,16 +8,24 @@ import android.util.Log;
 import android.view.View.MeasureSpec;
 import android.webkit.WebView;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Gets the image displayed on the web page and returns it in an input stream.
+ * Gets the image displayed on the web page by drawing the page, and returns it as a jpeg in an
+ * input stream.  Used when the image can't be fetched by the page itself.
  */
 public class WebViewImageExtractor implements WebViewExtractor {
 
+    /**
+     * The jpeg quality of the extracted image, higher qualities grow the tile without visible gain.
+     */
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * The expected compressed bytes per pixel of the extracted image, used to size its buffer.
+     */
+    private static final double JPEG_BYTES_PER_PIXEL = 0.25;
+
     /**
      * The web view to get the image from.
      */
@@ -51,8 +59,7 @@ public class WebViewImageExtractor implements WebViewExtractor {
         int width = webView.getMeasuredWidth();
         int height = webView.getMeasuredHeight();
         webView.layout(0, 0, width, height);
-        webView.setDrawingCacheEnabled(true);
-        webView.buildDrawingCache();
+        recycle();
         if (height > 0 && width > 0) {
             bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
             Canvas c = new Canvas(bitmap);
@@ -78,26 +85,34 @@ public class WebViewImageExtractor implements WebViewExtractor {
 
     @Override
     public InputStream extractContent(String html) {
-        InputStream is = null;
-
-        bitmap = Bitmap.createBitmap(
+        Bitmap image = Bitmap.createBitmap(
                 bitmap,
                 offsetsWidthHeight[0],
                 offsetsWidthHeight[1],
                 offsetsWidthHeight[2],
                 offsetsWidthHeight[3]);
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, os);
-        try {
-            os.flush();
-            byte[] theBytes = os.toByteArray();
-            os.close();
-            is = new ByteArrayInputStream(theBytes);
-        } catch (IOException e) {
-            Log.e(WebViewImageExtractor.class.getSimpleName(), e.getMessage(), e);
+        if (image != bitmap) {
+            recycle();
         }
+        bitmap = image;
 
-        return is;
+        // Compress into a buffer the handler reads from, it copies the image out once
+        SharedByteArrayOutputStream os = new SharedByteArrayOutputStream((int) Math.max(1024,
+                image.getWidth() * image.getHeight() * JPEG_BYTES_PER_PIXEL));
+        image.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, os);
+        recycle();
+
+        return os.toInputStream();
+    }
+
+    /**
+     * Frees the bitmap of the web page.
+     */
+    private void recycle() {
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
     }
 
     /**
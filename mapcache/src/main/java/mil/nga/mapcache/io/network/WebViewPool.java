@@ -0,0 +1,315 @@
+package mil.nga.mapcache.io.network;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Lends web views to WebViewRequests so a web view isn't created for every request.  At most a few
+ * web views are in use at once, requests wait their turn for one.  Returned web views are reset to
+ * a blank page and kept warm for the next request, and one is created ahead of time while the UI
+ * thread is idle.  Idle web views are destroyed when memory runs low.  Only used on the UI thread.
+ */
+public class WebViewPool implements ComponentCallbacks2 {
+
+    /**
+     * Debug logging flag.
+     */
+    private static final boolean isDebug = false;
+
+    /**
+     * The most web views in use at once.
+     */
+    private static final int MAX_WEB_VIEWS = 4;
+
+    /**
+     * The most idle web views kept.
+     */
+    private static final int MAX_IDLE = 2;
+
+    /**
+     * The instance of this class.
+     */
+    private static final WebViewPool instance = new WebViewPool();
+
+    /**
+     * An idle web view.
+     */
+    private static class IdleWebView {
+
+        /**
+         * The web view.
+         */
+        private final WebView webView;
+
+        /**
+         * The activity the web view was created for.
+         */
+        private final Activity activity;
+
+        /**
+         * Constructor.
+         *
+         * @param webView  The web view.
+         * @param activity The activity the web view was created for.
+         */
+        private IdleWebView(WebView webView, Activity activity) {
+            this.webView = webView;
+            this.activity = activity;
+        }
+    }
+
+    /**
+     * A request waiting for a web view.
+     */
+    private static class Waiting {
+
+        /**
+         * The activity the web view is for.
+         */
+        private final Activity activity;
+
+        /**
+         * Given the web view.
+         */
+        private final Consumer<WebView> consumer;
+
+        /**
+         * Constructor.
+         *
+         * @param activity The activity the web view is for.
+         * @param consumer Given the web view.
+         */
+        private Waiting(Activity activity, Consumer<WebView> consumer) {
+            this.activity = activity;
+            this.consumer = consumer;
+        }
+    }
+
+    /**
+     * The idle web views, most recently used first.
+     */
+    private final ArrayDeque<IdleWebView> idle = new ArrayDeque<>();
+
+    /**
+     * The requests waiting for a web view, in order.
+     */
+    private final ArrayDeque<Waiting> waiting = new ArrayDeque<>();
+
+    /**
+     * The number of web views lent out.
+     */
+    private int inUse = 0;
+
+    /**
+     * True once the pool listens for low memory.
+     */
+    private boolean registered = false;
+
+    /**
+     * True if a web view will be created when the UI thread is idle.
+     */
+    private boolean prewarmScheduled = false;
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return The instance of this class.
+     */
+    public static WebViewPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Private constructor, keep it a singleton.
+     */
+    private WebViewPool() {
+    }
+
+    /**
+     * Lends a web view, as soon as one is free.
+     *
+     * @param activity The activity the web view is for.
+     * @param consumer Given the web view on the UI thread, must give it back by calling release.
+     */
+    public void acquire(Activity activity, Consumer<WebView> consumer) {
+        if (!registered) {
+            activity.getApplicationContext().registerComponentCallbacks(this);
+            registered = true;
+        }
+
+        if (inUse < MAX_WEB_VIEWS) {
+            lend(activity, consumer);
+        } else {
+            if (isDebug) {
+                Log.d(WebViewPool.class.getSimpleName(), "Waiting for a web view, "
+                        + waiting.size() + " already waiting");
+            }
+            waiting.addLast(new Waiting(activity, consumer));
+        }
+    }
+
+    /**
+     * Takes back a web view, resetting it for the next request.  The web view goes back into the
+     * pool once the blank page has loaded, so the next request never sees the last one's page.
+     *
+     * @param webView  The web view.
+     * @param activity The activity the web view was lent for.
+     */
+    public void release(WebView webView, Activity activity) {
+        ViewParent parent = webView.getParent();
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup) parent).removeView(webView);
+        }
+        webView.stopLoading();
+        if (activity.isDestroyed()) {
+            webView.destroy();
+            returned();
+            return;
+        }
+
+        webView.setWebViewClient(new WebViewClient() {
+
+            private boolean reset = false;
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                // The last request's page may still finish before the blank page
+                if (!reset && "about:blank".equals(url)) {
+                    reset = true;
+                    // Clearing before the blank page loads would keep the last request's page
+                    view.clearHistory();
+                    keep(view, activity);
+                }
+            }
+        });
+        webView.loadUrl("about:blank");
+    }
+
+    /**
+     * Keeps a web view that was reset for the next request, or destroys it if enough are idle.
+     *
+     * @param webView  The web view.
+     * @param activity The activity the web view was lent for.
+     */
+    private void keep(WebView webView, Activity activity) {
+        if (!activity.isDestroyed() && idle.size() < MAX_IDLE) {
+            idle.addFirst(new IdleWebView(webView, activity));
+        } else {
+            webView.destroy();
+        }
+        returned();
+    }
+
+    /**
+     * Counts a lent web view as returned and lends one to the next waiting request.
+     */
+    private void returned() {
+        inUse--;
+        Waiting next = waiting.pollFirst();
+        if (next != null) {
+            lend(next.activity, next.consumer);
+        }
+    }
+
+    /**
+     * Destroys the idle web views.
+     */
+    public void trim() {
+        if (isDebug) {
+            Log.d(WebViewPool.class.getSimpleName(), "Destroying " + idle.size()
+                    + " idle web views");
+        }
+        for (IdleWebView idleWebView : idle) {
+            idleWebView.webView.destroy();
+        }
+        idle.clear();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trim();
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim();
+    }
+
+    /**
+     * Gives a web view to a request.
+     *
+     * @param activity The activity the web view is for.
+     * @param consumer Given the web view.
+     */
+    private void lend(Activity activity, Consumer<WebView> consumer) {
+        inUse++;
+        WebView webView = takeIdle(activity);
+        if (webView == null) {
+            webView = new WebView(activity);
+        }
+        consumer.accept(webView);
+        schedulePrewarm(activity);
+    }
+
+    /**
+     * Takes an idle web view created for the activity, destroying any created for a destroyed
+     * activity.
+     *
+     * @param activity The activity the web view is for.
+     * @return The web view, or null if none are idle.
+     */
+    private WebView takeIdle(Activity activity) {
+        WebView webView = null;
+        Iterator<IdleWebView> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            IdleWebView idleWebView = iterator.next();
+            if (idleWebView.activity.isDestroyed()) {
+                iterator.remove();
+                idleWebView.webView.destroy();
+            } else if (webView == null && idleWebView.activity == activity) {
+                iterator.remove();
+                webView = idleWebView.webView;
+            }
+        }
+
+        return webView;
+    }
+
+    /**
+     * Creates a web view for the next request once the UI thread is idle, if none are idle and
+     * more can be lent out.
+     *
+     * @param activity The activity the web view is for.
+     */
+    private void schedulePrewarm(Activity activity) {
+        if (!prewarmScheduled && idle.isEmpty() && inUse < MAX_WEB_VIEWS) {
+            prewarmScheduled = true;
+            Looper.myQueue().addIdleHandler(() -> {
+                prewarmScheduled = false;
+                if (idle.isEmpty() && inUse < MAX_WEB_VIEWS && !activity.isDestroyed()) {
+                    idle.addFirst(new IdleWebView(new WebView(activity), activity));
+                }
+                return false;
+            });
+        }
+    }
+}
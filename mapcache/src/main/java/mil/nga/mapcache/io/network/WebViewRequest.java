@@ -5,14 +5,16 @@ import android.app.AlertDialog;
 import android.util.Log;
 import android.webkit.WebView;
 
+import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Observable;
 import java.util.Observer;
 
-import mil.nga.mapcache.utils.ThreadUtils;
-
 /**
- * Performs a get request using a WebView to do so.
+ * Performs a get request using a WebView to do so.  The WebView is borrowed from the WebViewPool
+ * and given back once the request gets its content or gives up.
  */
 public class WebViewRequest implements Observer {
 
@@ -21,11 +23,26 @@ public class WebViewRequest implements Observer {
      */
     private static final boolean isDebug = false;
 
+    /**
+     * The milliseconds a request has to get its content before it is considered stale.
+     */
+    private static final long STALE_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * The milliseconds the user has to log in before the request gives up.
+     */
+    private static final long LOGIN_TIMEOUT_MILLIS = 5 * 60000;
+
     /**
      * The get request url.
      */
     private final String urlString;
 
+    /**
+     * The host of the request url, its timeouts are counted for the host.
+     */
+    private final String host;
+
     /**
      * The object to notify of the response values.
      */
@@ -37,9 +54,19 @@ public class WebViewRequest implements Observer {
     private final Activity activity;
 
     /**
-     * The WebView used to make the request.
+     * Told when the request gets its content, so the web view's session can be reused.
      */
-    private final WebView webView;
+    private final SessionManager sessionManager;
+
+    /**
+     * Gives back the host's turn once the request is done, or null once given back.
+     */
+    private Runnable done;
+
+    /**
+     * The WebView used to make the request, or null until one is free or once it's given back.
+     */
+    private WebView webView = null;
 
     /**
      * The dialog showing the web page.
@@ -64,7 +91,7 @@ public class WebViewRequest implements Observer {
     /**
      * Used to get the html for the current url.
      */
-    private final WebViewContentRetriever jsInterface;
+    private WebViewContentRetriever jsInterface;
 
     /**
      * True if this request has already received a response.
@@ -76,70 +103,140 @@ public class WebViewRequest implements Observer {
      */
     private int retryCount = 0;
 
+    /**
+     * Checks if the request went stale or the login was abandoned, or null if not loading.
+     */
+    private RequestTimer.Timeout staleTimeout = null;
+
     /**
      * Constructor.
      *
-     * @param url      The request url.
-     * @param handler  The object to be notified of the results.
-     * @param activity The activity that initiated the request.
+     * @param url            The request url.
+     * @param handler        The object to be notified of the results.
+     * @param sessionManager Told when the request gets its content.
+     * @param activity       The activity that initiated the request.
+     * @param done           Gives back the host's turn once the request is done.
      */
-    public WebViewRequest(String url, IResponseHandler handler, Activity activity) {
+    public WebViewRequest(String url, IResponseHandler handler, SessionManager sessionManager,
+                          Activity activity, Runnable done) {
         this.urlString = url;
+        this.host = getHost(url);
         this.handler = handler;
+        this.sessionManager = sessionManager;
         this.activity = activity;
-        this.webView = new WebView(activity);
+        this.done = done;
         this.model.addObserver(this);
-        WebViewRequestClient client = new WebViewRequestClient(this.activity, this.model);
-        this.webView.setWebViewClient(client);
-        this.jsInterface = new WebViewContentRetriever(this.activity, this.webView, this.model);
     }
 
     /**
-     * Executes the request.
+     * Executes the request once a WebView is free.
      */
     public void execute() {
         if (urlString.contains("format=image")) {
             isImageUrl = true;
         }
+        WebViewPool.getInstance().acquire(this.activity, this::start);
+    }
+
+    /**
+     * Starts the request in the WebView.
+     *
+     * @param webView The WebView to make the request in.
+     */
+    private void start(WebView webView) {
+        this.webView = webView;
+        WebViewRequestClient client = new WebViewRequestClient(this.activity, this.model);
+        this.webView.setWebViewClient(client);
+        this.jsInterface = new WebViewContentRetriever(this.activity, this.webView, this.model);
+        load();
+    }
+
+    /**
+     * Loads the request url.
+     */
+    private void load() {
         this.webView.layout(0, 0, 1000, 1000);
         if (isDebug) {
             Log.d(WebViewRequest.class.getSimpleName(), "Executing request " + this.urlString);
         }
         this.webView.loadUrl(this.urlString);
-        ThreadUtils.getInstance().runBackground(this::checkIfDead);
+        startTimeout(STALE_TIMEOUT_MILLIS, this::checkIfDead);
     }
 
     /**
-     * Checks to see if the WebView object crashed and we need to restart it.
+     * Replaces the current timeout of the request.
+     *
+     * @param timeoutMillis The milliseconds until the request times out.
+     * @param onTimeout     Called on the UI thread if the request times out.
      */
-    private void checkIfDead() {
-        try {
-            Thread.sleep(60000);
-        } catch (InterruptedException e) {
-            Log.d(WebViewRequest.class.getSimpleName(), e.getMessage(), e);
+    private void startTimeout(long timeoutMillis, Runnable onTimeout) {
+        if (staleTimeout != null) {
+            staleTimeout.complete();
         }
+        staleTimeout = RequestTimer.getInstance().startTimeout(host, timeoutMillis,
+                () -> this.activity.runOnUiThread(onTimeout));
+    }
 
-        if (!receivedResponse && !isCurrentPageALogin() && this.handler.notCancelled()) {
-            if (retryCount < 3) {
+    /**
+     * Checks to see if the WebView object crashed and we need to restart it.
+     */
+    private void checkIfDead() {
+        if (!receivedResponse && this.webView != null && !isCurrentPageALogin()) {
+            if (!this.handler.notCancelled()) {
+                finish();
+            } else if (retryCount < 3) {
                 retryCount++;
                 Log.i(
                         WebViewRequest.class.getSimpleName(),
                         "Connection went stale attempting to reconnect " + this.urlString);
-                this.activity.runOnUiThread(() -> {
-                    this.webView.stopLoading();
-                    this.execute();
-                });
+                this.webView.stopLoading();
+                this.load();
             } else {
-                Log.w(
-                        WebViewRequest.class.getSimpleName(),
-                        "Attempted to connect " + retryCount
-                                + " times. Giving up on " + this.urlString);
+                giveUp("Gave up on " + this.urlString + " after " + retryCount + " attempts");
             }
         }
     }
 
     /**
-     * Shows the login web page in an alert dialog.
+     * Gives up on the request, giving back the WebView and telling the handler it failed.  Does
+     * nothing if the request already finished.
+     *
+     * @param reason Why the request was given up on.
+     */
+    private void giveUp(String reason) {
+        if (!receivedResponse && this.webView != null) {
+            Log.w(WebViewRequest.class.getSimpleName(), reason);
+            finish();
+            handler.handleException(new IOException(reason));
+        }
+    }
+
+    /**
+     * Gives the WebView back to the pool and the turn back to the host.
+     */
+    private void finish() {
+        if (staleTimeout != null) {
+            staleTimeout.complete();
+            staleTimeout = null;
+        }
+        if (this.webView != null) {
+            jsInterface.close();
+            if (isShown) {
+                isShown = false;
+                alert.dismiss();
+            }
+            WebViewPool.getInstance().release(this.webView, this.activity);
+            this.webView = null;
+        }
+        if (done != null) {
+            done.run();
+            done = null;
+        }
+    }
+
+    /**
+     * Shows the login web page in an alert dialog.  If the user backs out of the dialog or doesn't
+     * log in before the login timeout the request gives up, so its WebView goes back to the pool.
      */
     private void show() {
         if (isDebug) {
@@ -150,10 +247,21 @@ public class WebViewRequest implements Observer {
             AlertDialog.Builder alertBuilder = new AlertDialog.Builder(this.activity);
             alertBuilder.setView(this.webView);
             alert = alertBuilder.create();
+            alert.setOnCancelListener(
+                    (dialog) -> giveUp("Login cancelled for " + this.urlString));
+            alert.setOnDismissListener((dialog) -> {
+                // We clear isShown before dismissing, so this is the user closing the dialog
+                if (isShown) {
+                    isShown = false;
+                    giveUp("Login closed for " + this.urlString);
+                }
+            });
         }
 
         alert.show();
         isShown = true;
+        startTimeout(LOGIN_TIMEOUT_MILLIS,
+                () -> giveUp("Login timed out for " + this.urlString));
     }
 
     @Override
@@ -168,23 +276,22 @@ public class WebViewRequest implements Observer {
                 // redirected to a login page so we need to show the WebView.
                 show();
             } else if (isShown && !isImageUrl) {
-                alert.dismiss();
+                // Logged in, so the request is back to loading its content
                 isShown = false;
-            }
-        } else if (WebViewRequestModel.CURRENT_CONTENT_PROP.equals(o)) {
-            jsInterface.close();
-            if (isShown) {
                 alert.dismiss();
-                isShown = false;
+                startTimeout(STALE_TIMEOUT_MILLIS, this::checkIfDead);
             }
+        } else if (WebViewRequestModel.CURRENT_CONTENT_PROP.equals(o)) {
+            finish();
 
             if (isDebug) {
                 Log.d(
                         WebViewRequest.class.getSimpleName(),
                         "Send response to handler " + this.model.getCurrentUrl());
             }
-            handler.handleResponse(this.model.getCurrentContent(), HttpURLConnection.HTTP_OK);
+            sessionManager.webViewRequestSucceeded(this.urlString);
             this.receivedResponse = true;
+            handler.handleResponse(this.model.getCurrentContent(), HttpURLConnection.HTTP_OK);
         }
     }
 
@@ -194,6 +301,24 @@ public class WebViewRequest implements Observer {
      * @return True if its a login page, false otherwise.
      */
     private boolean isCurrentPageALogin() {
-        return this.model.getCurrentUrl().contains("login.");
+        String currentUrl = this.model.getCurrentUrl();
+        return currentUrl != null && currentUrl.contains("login.");
+    }
+
+    /**
+     * Gets the host of the url.
+     *
+     * @param url The url.
+     * @return The host, or the url if it isn't valid.
+     */
+    private static String getHost(String url) {
+        String host = url;
+        try {
+            host = new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            Log.e(WebViewRequest.class.getSimpleName(), e.getMessage(), e);
+        }
+
+        return host;
     }
 }
@@ -105,7 +105,7 @@ public class WebViewRequestClient extends android.webkit.WebViewClient implement
         if(isDebug) {
             Log.d(WebViewRequestClient.class.getSimpleName(), "On receive http auth request " + url);
         }
-        ThreadUtils.getInstance().runBackground(() -> {
+        ThreadUtils.getInstance().runNetwork(() -> {
             if(loggerInner == null) {
                 loggerInner = new UserLoggerInner(this.activity);
             }
@@ -0,0 +1,148 @@
+package mil.nga.mapcache.io.network;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of which hosts need their requests made in a web view.  A host that redirects to a
+ * login page needs a web view until the login has been done, then the session cookies the web view
+ * got are sent with plain http requests, which are far faster.  If the session later expires the
+ * host goes back to the web view for another login.  Hosts the session cookies don't work for
+ * outside of the web view keep using the web view.
+ */
+public class WebViewSessions {
+
+    /**
+     * The session state of a host.
+     */
+    public enum State {
+
+        /**
+         * Requests must use a web view until a login is done in it.
+         */
+        WEB_VIEW,
+
+        /**
+         * A web view request succeeded, requests now try its session over http.
+         */
+        HARVESTED,
+
+        /**
+         * An http request succeeded with the web view's session.
+         */
+        NATIVE,
+
+        /**
+         * The web view's session didn't work over http, requests always use a web view.
+         */
+        WEB_VIEW_ONLY
+    }
+
+    /**
+     * The session of a host.
+     */
+    private static class Session {
+
+        /**
+         * The session state.
+         */
+        private final State state;
+
+        /**
+         * The time the web view's session was harvested, or 0 if it hasn't been.
+         */
+        private final long harvestTime;
+
+        /**
+         * Constructor.
+         *
+         * @param state       The session state.
+         * @param harvestTime The time the web view's session was harvested, or 0 if it hasn't been.
+         */
+        private Session(State state, long harvestTime) {
+            this.state = state;
+            this.harvestTime = harvestTime;
+        }
+    }
+
+    /**
+     * The session of each host that has needed a web view.
+     */
+    private final Map<String, Session> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the session state of a host.
+     *
+     * @param host The host.
+     * @return The state, or null if the host hasn't needed a web view.
+     */
+    public State getState(String host) {
+        Session session = hosts.get(host);
+        return session != null ? session.state : null;
+    }
+
+    /**
+     * Checks if requests to the host must use a web view.
+     *
+     * @param host The host.
+     * @return True if requests must use a web view.
+     */
+    public boolean requiresWebView(String host) {
+        State state = getState(host);
+        return state == State.WEB_VIEW || state == State.WEB_VIEW_ONLY;
+    }
+
+    /**
+     * Called when an http request to the host was sent to a login page.
+     *
+     * @param host        The host.
+     * @param requestTime The time the request was sent.
+     * @return The new state of the host.
+     */
+    public State loginRequired(String host, long requestTime) {
+        return hosts.compute(host, (key, session) -> {
+            Session newSession = new Session(State.WEB_VIEW, 0);
+            if (session != null && session.state == State.HARVESTED
+                    && requestTime <= session.harvestTime) {
+                // Sent before the session was harvested, so it says nothing about the session
+                newSession = session;
+            } else if (session != null && (session.state == State.HARVESTED
+                    || session.state == State.WEB_VIEW_ONLY)) {
+                // The session never worked over http, so another login won't help
+                newSession = new Session(State.WEB_VIEW_ONLY, session.harvestTime);
+            }
+            return newSession;
+        }).state;
+    }
+
+    /**
+     * Called when a web view request to the host got its content.
+     *
+     * @param host The host.
+     * @param now  The current time.
+     * @return True if the web view's session should be harvested for http requests.
+     */
+    public boolean webViewSucceeded(String host, long now) {
+        boolean[] harvest = {false};
+        hosts.computeIfPresent(host, (key, session) -> {
+            Session newSession = session;
+            if (session.state == State.WEB_VIEW) {
+                newSession = new Session(State.HARVESTED, now);
+                harvest[0] = true;
+            }
+            return newSession;
+        });
+
+        return harvest[0];
+    }
+
+    /**
+     * Called when an http request to the host got its content.
+     *
+     * @param host The host.
+     */
+    public void nativeSucceeded(String host) {
+        hosts.computeIfPresent(host, (key, session) -> session.state == State.HARVESTED
+                ? new Session(State.NATIVE, session.harvestTime) : session);
+    }
+}
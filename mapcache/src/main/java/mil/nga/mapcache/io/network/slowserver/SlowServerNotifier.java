@@ -2,10 +2,9 @@ package mil.nga.mapcache.io.network.slowserver;
 
 import android.app.Activity;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Notifies the user of a slow server depending on its response times.
@@ -25,12 +24,12 @@ public class SlowServerNotifier {
     /**
      * The current slow response counts per server.
      */
-    private final Map<String, Integer> slowResponseCounts = new HashMap<>();
+    private final Map<String, Integer> slowResponseCounts = new ConcurrentHashMap<>();
 
     /**
      * The slow servers we have already notified the user about.
      */
-    private final Set<String> notified = new HashSet<>();
+    private final Set<String> notified = ConcurrentHashMap.newKeySet();
 
     /**
      * The applications activity.
@@ -55,19 +54,13 @@ public class SlowServerNotifier {
      */
     public void responseTime(String host, long responseTime) {
         if (responseTime >= slowResponseTime) {
-            Integer slowCount = slowResponseCounts.get(host);
-            if (slowCount == null) {
-                slowCount = 0;
-            }
-            slowCount++;
-            slowResponseCounts.put(host, slowCount);
-            if (slowCount >= slowResponseCount && !notified.contains(host)) {
+            int slowCount = slowResponseCounts.merge(host, 1, Integer::sum);
+            if (slowCount >= slowResponseCount && notified.add(host)) {
                 SlowServerModel model = new SlowServerModel();
                 model.setMessage("Downloads from " + host + " are taking a long time.  " +
                         "Either your connection is poor or the server's performance is slow.");
                 SlowServerView view = new SlowServerView(model);
                 view.show(this.activity);
-                notified.add(host);
             }
         }
     }
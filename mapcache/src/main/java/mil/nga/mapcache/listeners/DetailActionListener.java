@@ -12,12 +12,14 @@ public interface DetailActionListener {
      */
     int DELETE_GP = 0, SHARE_GP = 1, DETAIL_GP = 2, RENAME_GP = 3, COPY_GP = 4,
             DELETE_LAYER = 5, RENAME_LAYER = 6, COPY_LAYER = 7, EDIT_FEATURES = 8,
-            ADD_FEATURE_COLUMN = 9;
+            ADD_FEATURE_COLUMN = 9, RESUME_DOWNLOAD = 10,
+            RETRY_FAILED_TILES = 11, REFRESH_TILES = 12, RECOMPRESS_TILES = 13;
 
     /**
      * Button click on the detail page
      * @param view HeaderView
-     * @param actionType - DELETE_GP, SHARE_GP, RENAME_GP, COPY_GP, DELETE_LAYER, RENAME_LAYER, COPY_LAYER
+     * @param actionType - DELETE_GP, SHARE_GP, RENAME_GP, COPY_GP, DELETE_LAYER, RENAME_LAYER, COPY_LAYER,
+     *                   RESUME_DOWNLOAD, RETRY_FAILED_TILES, REFRESH_TILES, RECOMPRESS_TILES
      * @param name Name of the clicked GeoPackage
      * @param layer Name of the Layer to delete, if applicable (only on the layer detail page)
      */
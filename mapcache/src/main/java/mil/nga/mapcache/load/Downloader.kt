@@ -9,10 +9,10 @@ import androidx.appcompat.widget.AppCompatImageView
 import androidx.fragment.app.FragmentActivity
 import mil.nga.geopackage.io.GeoPackageProgress
 import mil.nga.mapcache.R
+import mil.nga.mapcache.utils.ThreadUtils
 import mil.nga.mapcache.viewmodel.GeoPackageViewModel
 import java.net.URL
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 /**
  * Downloads a GeoPackage via the GeoPackageViewModel, providing feedback and cancel action via
@@ -23,7 +23,7 @@ class Downloader(val activity : FragmentActivity) : GeoPackageProgress{
     private var max: Int = 0
     private var progress: Int = 0
     private val alertDialog: AlertDialog
-    private val myExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+    private var task: Future<*>? = null
     private var geoPackageName : String = ""
 
     /**
@@ -47,7 +47,7 @@ class Downloader(val activity : FragmentActivity) : GeoPackageProgress{
 
         // Cancel button
         builder.setPositiveButton("Cancel") {alertDialog, which ->
-            myExecutor.shutdownNow()
+            task?.cancel(true)
         }
 
         builder.setView(alertView)
@@ -66,7 +66,7 @@ class Downloader(val activity : FragmentActivity) : GeoPackageProgress{
         var completeMessage : String = "Import failed"
         geoPackageName = database
         alertDialog.show()
-        myExecutor.submit {
+        task = ThreadUtils.getInstance().network.submit {
             try {
                 if (!viewModel.importGeoPackage(database, theUrl, this)) {
                     completeMessage = "Failed to import GeoPackage '$database' at url '$url'"
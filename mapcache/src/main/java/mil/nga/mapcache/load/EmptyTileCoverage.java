@@ -0,0 +1,224 @@
+package mil.nga.mapcache.load;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.attributes.AttributesColumn;
+import mil.nga.geopackage.attributes.AttributesCursor;
+import mil.nga.geopackage.attributes.AttributesDao;
+import mil.nga.geopackage.attributes.AttributesRow;
+import mil.nga.geopackage.attributes.AttributesTableMetadata;
+import mil.nga.geopackage.db.GeoPackageDataType;
+
+/**
+ * Records where tiles were downloaded but not stored because they were completely transparent,
+ * so the layer's coverage is still known.  Empty tiles come in large blocks over oceans and blank
+ * areas, so each column keeps the runs of consecutive empty rows rather than a row per tile.  The
+ * coverage is an attributes table inside the GeoPackage.
+ */
+public class EmptyTileCoverage {
+
+    /**
+     * The name of the attributes table containing the coverage.
+     */
+    public static final String TABLE_NAME = "mapcache_empty_tiles";
+
+    /**
+     * Tile table name column.
+     */
+    private static final String COLUMN_TILE_TABLE = "tile_table";
+
+    /**
+     * Zoom level column.
+     */
+    private static final String COLUMN_ZOOM = "zoom";
+
+    /**
+     * Tile x column.
+     */
+    private static final String COLUMN_X = "x";
+
+    /**
+     * First tile y of the run column.
+     */
+    private static final String COLUMN_MIN_Y = "min_y";
+
+    /**
+     * Last tile y of the run column.
+     */
+    private static final String COLUMN_MAX_Y = "max_y";
+
+    /**
+     * The GeoPackage containing the coverage.
+     */
+    private final GeoPackage geoPackage;
+
+    /**
+     * Constructor.
+     *
+     * @param geoPackage The GeoPackage containing the coverage.
+     */
+    public EmptyTileCoverage(GeoPackage geoPackage) {
+        this.geoPackage = geoPackage;
+    }
+
+    /**
+     * Records the empty tiles of a column, replacing what was recorded for the column, so a column
+     * downloaded again after a resume isn't counted twice.
+     *
+     * @param tableName The tile table name.
+     * @param z         The zoom level of the column.
+     * @param x         The x coordinate of the column.
+     * @param runs      The first and last y of each run of empty tiles in the column.
+     */
+    public void setColumn(String tableName, int z, long x, List<long[]> runs) {
+        try {
+            AttributesDao dao = getDao(!runs.isEmpty());
+            if (dao != null) {
+                dao.delete(COLUMN_TILE_TABLE + " = ? AND " + COLUMN_ZOOM + " = ? AND "
+                                + COLUMN_X + " = ?",
+                        new String[]{tableName, String.valueOf(z), String.valueOf(x)});
+                for (long[] run : runs) {
+                    AttributesRow row = dao.newRow();
+                    row.setValue(COLUMN_TILE_TABLE, tableName);
+                    row.setValue(COLUMN_ZOOM, (long) z);
+                    row.setValue(COLUMN_X, x);
+                    row.setValue(COLUMN_MIN_Y, run[0]);
+                    row.setValue(COLUMN_MAX_Y, run[1]);
+                    dao.create(row);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(EmptyTileCoverage.class.getSimpleName(), "Failed to record empty tiles for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Moves the tile table's empty tiles to the renamed tile table.
+     *
+     * @param tableName    The tile table name.
+     * @param newTableName The new tile table name.
+     */
+    public void rename(String tableName, String newTableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_TILE_TABLE, newTableName);
+                dao.update(values, COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(EmptyTileCoverage.class.getSimpleName(), "Failed to rename empty tiles for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Removes all of the tile table's empty tiles from the coverage.
+     *
+     * @param tableName The tile table name.
+     */
+    public void clear(String tableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                dao.delete(COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(EmptyTileCoverage.class.getSimpleName(), "Failed to clear empty tiles for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Checks if the tile was downloaded as an empty tile and not stored.
+     *
+     * @param tableName The tile table name.
+     * @param z         The zoom level of the tile.
+     * @param x         The x coordinate of the tile.
+     * @param y         The y coordinate of the tile.
+     * @return True if the tile is empty.
+     */
+    public boolean isEmpty(String tableName, int z, long x, long y) {
+        boolean empty = false;
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                empty = dao.count(COLUMN_TILE_TABLE + " = ? AND " + COLUMN_ZOOM + " = ? AND "
+                                + COLUMN_X + " = ? AND " + COLUMN_MIN_Y + " <= ? AND "
+                                + COLUMN_MAX_Y + " >= ?",
+                        new String[]{tableName, String.valueOf(z), String.valueOf(x),
+                                String.valueOf(y), String.valueOf(y)}) > 0;
+            }
+        } catch (Exception e) {
+            Log.e(EmptyTileCoverage.class.getSimpleName(), "Failed to read empty tiles for "
+                    + tableName, e);
+        }
+
+        return empty;
+    }
+
+    /**
+     * Gets the number of empty tiles recorded for the tile table.
+     *
+     * @param tableName The tile table name.
+     * @return The number of empty tiles.
+     */
+    public long getEmptyCount(String tableName) {
+        long count = 0;
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                AttributesCursor cursor = dao.queryForEq(COLUMN_TILE_TABLE, tableName);
+                try {
+                    while (cursor.moveToNext()) {
+                        AttributesRow row = cursor.getRow();
+                        count += ((Number) row.getValue(COLUMN_MAX_Y)).longValue()
+                                - ((Number) row.getValue(COLUMN_MIN_Y)).longValue() + 1;
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(EmptyTileCoverage.class.getSimpleName(), "Failed to count empty tiles for "
+                    + tableName, e);
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the coverage dao, creating the table and its column index if needed.
+     *
+     * @param create True if the coverage table should be created if it doesn't exist.
+     * @return The dao or null if the table doesn't exist and create is false.
+     */
+    private AttributesDao getDao(boolean create) {
+        AttributesDao dao = null;
+        if (geoPackage.getAttributesTables().contains(TABLE_NAME)) {
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        } else if (create) {
+            List<AttributesColumn> columns = new ArrayList<>();
+            columns.add(AttributesColumn.createColumn(COLUMN_TILE_TABLE, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ZOOM, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_X, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MIN_Y, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MAX_Y, GeoPackageDataType.INTEGER, true));
+            geoPackage.createAttributesTable(AttributesTableMetadata.create(TABLE_NAME, columns));
+
+            // Each column replaces its runs as it's downloaded, so avoid scanning the table
+            geoPackage.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_column_idx ON "
+                    + TABLE_NAME + " (" + COLUMN_TILE_TABLE + ", " + COLUMN_ZOOM + ", "
+                    + COLUMN_X + ")");
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        }
+
+        return dao;
+    }
+}
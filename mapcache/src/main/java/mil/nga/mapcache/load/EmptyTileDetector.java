@@ -0,0 +1,115 @@
+package mil.nga.mapcache.load;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recognizes downloaded tiles that are completely transparent, so they can be left out of the tile
+ * table without changing how the layer draws.  Servers return the same bytes for every empty tile,
+ * so tiles are identified by a hash of their contents and each distinct tile is only decoded once.
+ */
+public class EmptyTileDetector {
+
+    /**
+     * Tiles larger than this contain too much data to be empty, so they aren't decoded.
+     */
+    private static final int MAX_EMPTY_TILE_BYTES = 8 * 1024;
+
+    /**
+     * The number of distinct tile hashes to remember.
+     */
+    private static final int MAX_KNOWN_TILES = 64;
+
+    /**
+     * True for the hashes of tiles that are empty, false for those that aren't.
+     */
+    private final Map<String, Boolean> knownTiles = new LinkedHashMap<String, Boolean>(
+            MAX_KNOWN_TILES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_KNOWN_TILES;
+        }
+    };
+
+    /**
+     * Checks if the tile is completely transparent.
+     *
+     * @param bytes The tile image bytes.
+     * @return True if the tile doesn't draw anything.
+     */
+    public boolean isEmpty(byte[] bytes) {
+        boolean isEmpty = false;
+        if (bytes != null && bytes.length <= MAX_EMPTY_TILE_BYTES) {
+            String hash = hash(bytes);
+            Boolean known = hash != null ? knownTiles.get(hash) : null;
+            if (known != null) {
+                isEmpty = known;
+            } else {
+                isEmpty = isTransparent(bytes);
+                if (hash != null) {
+                    knownTiles.put(hash, isEmpty);
+                }
+            }
+        }
+
+        return isEmpty;
+    }
+
+    /**
+     * Decodes the tile and checks if every pixel is transparent.
+     *
+     * @param bytes The tile image bytes.
+     * @return True if every pixel is transparent.
+     */
+    private static boolean isTransparent(byte[] bytes) {
+        boolean transparent = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        if (bitmap != null) {
+            if (bitmap.hasAlpha()) {
+                int width = bitmap.getWidth();
+                int[] row = new int[width];
+                transparent = true;
+                for (int y = 0; y < bitmap.getHeight() && transparent; y++) {
+                    bitmap.getPixels(row, 0, width, 0, y, width, 1);
+                    for (int pixel : row) {
+                        if ((pixel >>> 24) != 0) {
+                            transparent = false;
+                            break;
+                        }
+                    }
+                }
+            }
+            bitmap.recycle();
+        }
+
+        return transparent;
+    }
+
+    /**
+     * Hashes the tile bytes.
+     *
+     * @param bytes The tile image bytes.
+     * @return The hex encoded hash, or null if the hash algorithm isn't available.
+     */
+    private static String hash(byte[] bytes) {
+        String hash = null;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            hash = hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(EmptyTileDetector.class.getSimpleName(), "Failed to hash tile", e);
+        }
+
+        return hash;
+    }
+}
@@ -0,0 +1,290 @@
+package mil.nga.mapcache.load;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.attributes.AttributesColumn;
+import mil.nga.geopackage.attributes.AttributesCursor;
+import mil.nga.geopackage.attributes.AttributesDao;
+import mil.nga.geopackage.attributes.AttributesRow;
+import mil.nga.geopackage.attributes.AttributesTableMetadata;
+import mil.nga.geopackage.db.GeoPackageDataType;
+
+/**
+ * Keeps track of the tiles that failed to download, whether they still failed after being retried
+ * or failed in a way that isn't retried, along with the last response code, so a later run can
+ * fetch just those tiles.  The ledger is an attributes table inside the GeoPackage.
+ */
+public class FailedTileLedger {
+
+    /**
+     * The name of the attributes table containing the ledger.
+     */
+    public static final String TABLE_NAME = "mapcache_failed_tiles";
+
+    /**
+     * Tile table name column.
+     */
+    private static final String COLUMN_TILE_TABLE = "tile_table";
+
+    /**
+     * Zoom level column.
+     */
+    private static final String COLUMN_ZOOM = "zoom";
+
+    /**
+     * Tile x column.
+     */
+    private static final String COLUMN_X = "x";
+
+    /**
+     * Tile y column.
+     */
+    private static final String COLUMN_Y = "y";
+
+    /**
+     * Last response code column, -1 if there wasn't a response.
+     */
+    private static final String COLUMN_RESPONSE_CODE = "response_code";
+
+    /**
+     * Last error message column.
+     */
+    private static final String COLUMN_ERROR = "error";
+
+    /**
+     * The GeoPackage containing the ledger.
+     */
+    private final GeoPackage geoPackage;
+
+    /**
+     * Constructor.
+     *
+     * @param geoPackage The GeoPackage containing the ledger.
+     */
+    public FailedTileLedger(GeoPackage geoPackage) {
+        this.geoPackage = geoPackage;
+    }
+
+    /**
+     * Creates the key used to identify a tile in the set returned by getFailedTiles.
+     *
+     * @param z The zoom level of the tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The tile key.
+     */
+    public static String key(int z, long x, long y) {
+        return z + "/" + x + "/" + y;
+    }
+
+    /**
+     * Records a tile that failed to download, replacing any previous failure for the tile.
+     *
+     * @param tableName    The tile table name.
+     * @param z            The zoom level of the tile.
+     * @param x            The x coordinate of the tile.
+     * @param y            The y coordinate of the tile.
+     * @param responseCode The http response code, or -1 if there wasn't a response.
+     * @param error        The error message.
+     */
+    public void record(String tableName, int z, long x, long y, int responseCode, String error) {
+        try {
+            AttributesDao dao = getDao(true);
+            AttributesRow row = queryRow(dao, tableName, z, x, y);
+            boolean isNew = row == null;
+            if (isNew) {
+                row = dao.newRow();
+                row.setValue(COLUMN_TILE_TABLE, tableName);
+                row.setValue(COLUMN_ZOOM, (long) z);
+                row.setValue(COLUMN_X, x);
+                row.setValue(COLUMN_Y, y);
+            }
+            row.setValue(COLUMN_RESPONSE_CODE, (long) responseCode);
+            row.setValue(COLUMN_ERROR, error);
+            if (isNew) {
+                dao.create(row);
+            } else {
+                dao.update(row);
+            }
+        } catch (Exception e) {
+            Log.e(FailedTileLedger.class.getSimpleName(), "Failed to record failed tile for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Removes a tile from the ledger once it has been downloaded.
+     *
+     * @param tableName The tile table name.
+     * @param z         The zoom level of the tile.
+     * @param x         The x coordinate of the tile.
+     * @param y         The y coordinate of the tile.
+     */
+    public void remove(String tableName, int z, long x, long y) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                AttributesRow row = queryRow(dao, tableName, z, x, y);
+                if (row != null) {
+                    dao.deleteById(row.getId());
+                }
+            }
+        } catch (Exception e) {
+            Log.e(FailedTileLedger.class.getSimpleName(), "Failed to remove failed tile for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Moves the tile table's failed tiles to the renamed tile table.
+     *
+     * @param tableName    The tile table name.
+     * @param newTableName The new tile table name.
+     */
+    public void rename(String tableName, String newTableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_TILE_TABLE, newTableName);
+                dao.update(values, COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(FailedTileLedger.class.getSimpleName(), "Failed to rename failed tiles for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Removes all of the tile table's tiles from the ledger.
+     *
+     * @param tableName The tile table name.
+     */
+    public void clear(String tableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                dao.delete(COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(FailedTileLedger.class.getSimpleName(), "Failed to clear failed tiles for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Gets the tiles in the ledger for the tile table.
+     *
+     * @param tableName The tile table name.
+     * @return The keys of the failed tiles, see key.
+     */
+    public Set<String> getFailedTiles(String tableName) {
+        Set<String> tiles = new HashSet<>();
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                AttributesCursor cursor = dao.queryForEq(COLUMN_TILE_TABLE, tableName);
+                try {
+                    while (cursor.moveToNext()) {
+                        AttributesRow row = cursor.getRow();
+                        tiles.add(key(((Number) row.getValue(COLUMN_ZOOM)).intValue(),
+                                ((Number) row.getValue(COLUMN_X)).longValue(),
+                                ((Number) row.getValue(COLUMN_Y)).longValue()));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(FailedTileLedger.class.getSimpleName(), "Failed to read failed tiles for "
+                    + tableName, e);
+        }
+
+        return tiles;
+    }
+
+    /**
+     * Gets the number of tiles in the ledger for the tile table.
+     *
+     * @param tableName The tile table name.
+     * @return The number of failed tiles.
+     */
+    public int getFailedCount(String tableName) {
+        int count = 0;
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                count = dao.count(COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(FailedTileLedger.class.getSimpleName(), "Failed to count failed tiles for "
+                    + tableName, e);
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the ledger dao, creating the table and its tile index if needed.
+     *
+     * @param create True if the ledger table should be created if it doesn't exist.
+     * @return The dao or null if the table doesn't exist and create is false.
+     */
+    private AttributesDao getDao(boolean create) {
+        AttributesDao dao = null;
+        if (geoPackage.getAttributesTables().contains(TABLE_NAME)) {
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        } else if (create) {
+            List<AttributesColumn> columns = new ArrayList<>();
+            columns.add(AttributesColumn.createColumn(COLUMN_TILE_TABLE, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ZOOM, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_X, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_Y, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_RESPONSE_CODE, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ERROR, GeoPackageDataType.TEXT));
+            geoPackage.createAttributesTable(AttributesTableMetadata.create(TABLE_NAME, columns));
+
+            // Each failure and each retried tile looks up its row, so avoid scanning the table
+            geoPackage.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_tile_idx ON "
+                    + TABLE_NAME + " (" + COLUMN_TILE_TABLE + ", " + COLUMN_ZOOM + ", "
+                    + COLUMN_X + ", " + COLUMN_Y + ")");
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        }
+
+        return dao;
+    }
+
+    /**
+     * Queries for the ledger row of the tile.
+     *
+     * @param dao       The ledger dao.
+     * @param tableName The tile table name.
+     * @param z         The zoom level of the tile.
+     * @param x         The x coordinate of the tile.
+     * @param y         The y coordinate of the tile.
+     * @return The row or null if the tile isn't in the ledger.
+     */
+    private AttributesRow queryRow(AttributesDao dao, String tableName, int z, long x, long y) {
+        AttributesRow row = null;
+        AttributesCursor cursor = dao.query(
+                COLUMN_TILE_TABLE + " = ? AND " + COLUMN_ZOOM + " = ? AND "
+                        + COLUMN_X + " = ? AND " + COLUMN_Y + " = ?",
+                new String[]{tableName, String.valueOf(z), String.valueOf(x), String.valueOf(y)});
+        try {
+            if (cursor.moveToNext()) {
+                row = cursor.getRow();
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return row;
+    }
+}
@@ -1,27 +1,28 @@
 package mil.nga.mapcache.load;
 
 import android.app.Activity;
-import android.app.ProgressDialog;
 import android.content.Context;
-import android.content.DialogInterface;
 import android.graphics.Bitmap.CompressFormat;
-import android.os.PowerManager;
 import android.util.Log;
 
+import java.io.File;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.extension.WebPExtension;
 import mil.nga.geopackage.extension.nga.scale.TileScaling;
 import mil.nga.geopackage.io.GeoPackageProgress;
 import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
 import mil.nga.geopackage.tiles.TileGenerator;
 import mil.nga.geopackage.tiles.features.FeatureTileGenerator;
 import mil.nga.mapcache.R;
+import mil.nga.mapcache.io.network.HttpConnectionPool;
 import mil.nga.mapcache.utils.HttpUtils;
-import mil.nga.mapcache.utils.ThreadUtils;
 import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
 import mil.nga.proj.Projection;
 import mil.nga.proj.ProjectionConstants;
@@ -33,13 +34,17 @@ import mil.nga.proj.ProjectionTransform;
  *
  * @author osbornb
  */
-public class LoadTilesTask implements GeoPackageProgress, Runnable {
+public class LoadTilesTask implements GeoPackageProgress, TileDownloadManager.Task {
+
+    /**
+     * The fewest milliseconds between publishing the progress of the download
+     */
+    private static final long PUBLISH_INTERVAL_MILLIS = 250;
 
     /**
      * Load tiles from a URL
      *
      * @param activity The main activity.
-     * @param callback Called when the load tiles task has completed or was cancelled.
      * @param viewModel Used to get the geoPackage.
      * @param database The geoPackage name to load tiles for.
      * @param tableName The tile layer to load tiles for.
@@ -55,34 +60,230 @@ public class LoadTilesTask implements GeoPackageProgress, Runnable {
      * @param code The projection code.
      * @param headers Any header values that need to be added to the tile download requests.
      */
-    public static void loadTiles(Activity activity, ILoadTilesTask callback,
-                                 GeoPackageViewModel viewModel, String database, String tableName,
+    public static void loadTiles(Activity activity, GeoPackageViewModel viewModel,
+                                 String database, String tableName,
                                  String tileUrl, int minZoom, int maxZoom,
                                  CompressFormat compressFormat, Integer compressQuality,
                                  boolean xyzTiles, BoundingBox boundingBox, TileScaling scaling, String authority, String code,
                                  Map<String, List<String>> headers) {
 
+        checkNotQueued(database, tableName);
         GeoPackage geoPackage = viewModel.getGeoPackage(database);
 
-        Projection projection = ProjectionFactory.getProjection(authority, code);
-        BoundingBox bBox = transform(boundingBox, projection);
+        TileDownloadJournal.Entry entry = new TileDownloadJournal.Entry();
+        entry.tableName = tableName;
+        entry.url = tileUrl;
+        entry.minZoom = minZoom;
+        entry.maxZoom = maxZoom;
+        entry.boundingBox = boundingBox;
+        entry.authority = authority;
+        entry.code = code;
+        entry.xyzTiles = xyzTiles;
+        entry.headers = headers;
+        entry.compressFormat = compressFormat;
+        entry.compressQuality = compressQuality;
+        entry.scaling = scaling;
+        entry.downloadMinZoom = new TileDownloadSettings(activity).getDownloadMinZoom(minZoom,
+                maxZoom);
+
+        TileDownloadJournal journal = new TileDownloadJournal(geoPackage);
+        journal.start(entry);
+        new TileDownloadHeaders(activity).put(database, tableName, headers);
+        new FailedTileLedger(geoPackage).clear(tableName);
+        new TileValidatorStore(geoPackage).clear(tableName);
+        new EmptyTileCoverage(geoPackage).clear(tableName);
+
+        loadTiles(activity, viewModel, geoPackage, journal, entry, false, null, false);
+    }
 
-        WebViewTileGenerator tileGenerator = new WebViewTileGenerator(activity, geoPackage,
-                tableName, tileUrl, minZoom, maxZoom, bBox, projection);
+    /**
+     * Resumes a tile download that was cancelled or interrupted, only downloading the tiles the
+     * previous download did not get to.
+     *
+     * @param activity The main activity.
+     * @param viewModel Used to get the geoPackage.
+     * @param database The geoPackage name containing the tile layer.
+     * @param tableName The partially downloaded tile layer.
+     */
+    public static void resumeTiles(Activity activity, GeoPackageViewModel viewModel,
+                                   String database, String tableName) {
+        checkNotQueued(database, tableName);
+        GeoPackage geoPackage = viewModel.getGeoPackage(database);
+        TileDownloadJournal journal = new TileDownloadJournal(geoPackage);
+        TileDownloadJournal.Entry entry = getEntry(activity, journal, database, tableName);
+        if (entry == null || entry.isFinished()) {
+            throw new GeoPackageException("There is no unfinished download for " + tableName);
+        }
+
+        loadTiles(activity, viewModel, geoPackage, journal, entry, true, null, false);
+    }
+
+    /**
+     * Downloads the tiles of a finished download that still failed after being retried.
+     *
+     * @param activity The main activity.
+     * @param viewModel Used to get the geoPackage.
+     * @param database The geoPackage name containing the tile layer.
+     * @param tableName The tile layer with failed tiles.
+     */
+    public static void retryFailedTiles(Activity activity, GeoPackageViewModel viewModel,
+                                        String database, String tableName) {
+        checkNotQueued(database, tableName);
+        GeoPackage geoPackage = viewModel.getGeoPackage(database);
+        TileDownloadJournal journal = new TileDownloadJournal(geoPackage);
+        TileDownloadJournal.Entry entry = getEntry(activity, journal, database, tableName);
+        Set<String> failedTiles = new FailedTileLedger(geoPackage).getFailedTiles(tableName);
+        if (entry == null || failedTiles.isEmpty()) {
+            throw new GeoPackageException("There are no failed tiles for " + tableName);
+        }
+
+        loadTiles(activity, viewModel, geoPackage, journal, entry, false, failedTiles, false);
+    }
+
+    /**
+     * Refreshes a downloaded tile layer, asking the server for each tile only if it changed since
+     * it was downloaded and rewriting just the tiles that changed.
+     *
+     * @param activity The main activity.
+     * @param viewModel Used to get the geoPackage.
+     * @param database The geoPackage name containing the tile layer.
+     * @param tableName The tile layer to refresh.
+     */
+    public static void refreshTiles(Activity activity, GeoPackageViewModel viewModel,
+                                    String database, String tableName) {
+        checkNotQueued(database, tableName);
+        GeoPackage geoPackage = viewModel.getGeoPackage(database);
+        TileDownloadJournal journal = new TileDownloadJournal(geoPackage);
+        TileDownloadJournal.Entry entry = getEntry(activity, journal, database, tableName);
+        if (entry == null || !entry.isFinished()) {
+            throw new GeoPackageException("There is no finished download to refresh for "
+                    + tableName);
+        }
+
+        // A refresh stores every tile, including the ones that were empty
+        new EmptyTileCoverage(geoPackage).clear(tableName);
+        loadTiles(activity, viewModel, geoPackage, journal, entry, false, null, true);
+    }
+
+    /**
+     * Gets the journal entry of the tile layer along with the request headers of its download.
+     *
+     * @param activity The main activity.
+     * @param journal The journal of the geoPackage.
+     * @param database The geoPackage name containing the tile layer.
+     * @param tableName The tile layer.
+     * @return The entry or null if the tile layer doesn't have a journaled download.
+     */
+    private static TileDownloadJournal.Entry getEntry(Activity activity,
+                                                      TileDownloadJournal journal,
+                                                      String database, String tableName) {
+        TileDownloadJournal.Entry entry = journal.getEntry(tableName);
+        if (entry != null) {
+            entry.headers = new TileDownloadHeaders(activity).get(database, tableName);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Makes sure the tile layer isn't already waiting in the download queue.
+     *
+     * @param database The geoPackage name containing the tile layer.
+     * @param tableName The tile layer.
+     */
+    private static void checkNotQueued(String database, String tableName) {
+        if (TileDownloadManager.getInstance().isQueued(database, tableName)) {
+            throw new GeoPackageException(tableName + " is already in the download queue");
+        }
+    }
+
+    /**
+     * Creates the tile generator for a journaled download and loads the tiles.
+     *
+     * @param activity The main activity.
+     * @param viewModel Used to get the geoPackage.
+     * @param geoPackage The geoPackage to load tiles into.
+     * @param journal The journal recording the download progress.
+     * @param entry The download definition.
+     * @param resume True if resuming from the progress in the entry.
+     * @param retryTiles The keys of the failed tiles to retry, or null to download all tiles.
+     * @param refresh True if only downloading the tiles that changed since the last download.
+     */
+    private static void loadTiles(Activity activity, GeoPackageViewModel viewModel,
+                                  GeoPackage geoPackage,
+                                  TileDownloadJournal journal, TileDownloadJournal.Entry entry,
+                                  boolean resume, Set<String> retryTiles, boolean refresh) {
+
+        WebViewTileGenerator tileGenerator = createTileGenerator(activity, geoPackage, entry);
+        TileDownloadSettings settings = new TileDownloadSettings(activity);
+        tileGenerator.setConcurrentRequests(settings.getConcurrentRequests());
+        HttpConnectionPool.getInstance().setMaxRequestsPerHost(settings.getConnectionsPerHost());
+        tileGenerator.setDownloadMinZoom(entry.getDownloadMinZoom());
+        if (retryTiles == null && !refresh) {
+            tileGenerator.setJournal(journal, resume ? entry : null);
+        }
+        tileGenerator.setRetryPolicy(new TileRetryPolicy(settings.getMaxRetries(),
+                activity.getResources().getInteger(R.integer.load_tiles_retry_base_delay_millis),
+                activity.getResources().getInteger(R.integer.load_tiles_retry_max_delay_millis)));
+        tileGenerator.setFailedTileLedger(new FailedTileLedger(geoPackage), retryTiles);
+        // A refreshed tile that became empty must still replace the stored tile
+        tileGenerator.setSkipEmptyTiles(settings.isSkipEmptyTiles() && !refresh);
+        if (retryTiles == null && !refresh) {
+            tileGenerator.setEmptyTileCoverage(new EmptyTileCoverage(geoPackage));
+        }
+        tileGenerator.setValidatorStore(new TileValidatorStore(geoPackage), refresh);
+        // Conditional requests are per tile, so a refresh requests each tile on its own
+        int metaTileSize = settings.getMetaTileSize();
+        if (metaTileSize > 1 && !refresh) {
+            tileGenerator.setMetaTiler(new MetaTiler(metaTileSize,
+                    activity.getResources().getInteger(R.integer.load_tiles_metatile_memory_kb) * 1024L,
+                    new File(activity.getCacheDir(), "metatiles" + File.separator
+                            + geoPackage.getName() + File.separator + entry.tableName)));
+        }
+        TileRecompressor recompressor = settings.getRecompressor();
+        if (recompressor.getFormat() != TileRecompressor.Format.ORIGINAL) {
+            tileGenerator.setRecompressor(recompressor);
+        }
+        tileGenerator.setWriteBatcher(new TileWriteBatcher(geoPackage,
+                activity.getResources().getInteger(R.integer.load_tiles_write_batch_size),
+                activity.getResources().getInteger(R.integer.load_tiles_write_batch_millis)));
+
+        setTileGenerator(activity, tileGenerator, entry.minZoom, entry.maxZoom,
+                entry.compressFormat, entry.compressQuality, entry.xyzTiles, entry.scaling);
+
+        loadTiles(activity, viewModel, geoPackage, entry.tableName, tileGenerator,
+                !resume && retryTiles == null && !refresh);
+    }
+
+    /**
+     * Creates the tile generator for the download definition with the request headers set.
+     *
+     * @param context The context.
+     * @param geoPackage The geoPackage the tiles will be loaded into.
+     * @param entry The download definition.
+     * @return The tile generator.
+     */
+    static WebViewTileGenerator createTileGenerator(Context context, GeoPackage geoPackage,
+                                                    TileDownloadJournal.Entry entry) {
+        Projection projection = ProjectionFactory.getProjection(entry.authority, entry.code);
+        BoundingBox bBox = transform(entry.boundingBox, projection);
+
+        // The generator outlives the screen that created it, so it only keeps the application
+        WebViewTileGenerator tileGenerator = new WebViewTileGenerator(
+                context.getApplicationContext(), geoPackage, entry.tableName, entry.url,
+                entry.minZoom, entry.maxZoom, bBox, projection);
         tileGenerator.addHTTPHeaderValue(
                 HttpUtils.getInstance().getUserAgentKey(),
-                HttpUtils.getInstance().getUserAgentValue(activity));
-        if(headers != null && !headers.isEmpty()) {
-            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                HttpUtils.getInstance().getUserAgentValue(context));
+        if(entry.headers != null && !entry.headers.isEmpty()) {
+            for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
                 for (String value : header.getValue()) {
                     tileGenerator.addHTTPHeaderValue(header.getKey(), value);
                 }
             }
         }
 
-        setTileGenerator(activity, tileGenerator, minZoom, maxZoom, compressFormat, compressQuality, xyzTiles, scaling);
-
-        loadTiles(activity, callback, viewModel, geoPackage, tableName, tileGenerator);
+        return tileGenerator;
     }
 
     /**
@@ -137,70 +338,62 @@ public class LoadTilesTask implements GeoPackageProgress, Runnable {
     }
 
     /**
-     * Load tiles
+     * Queue the tiles to load in the tile download service
      *
      * @param activity The main activity.
-     * @param callback Called when the load tiles task has completed or was cancelled.
      * @param viewModel Used to get the geoPackage.
      * @param geoPackage The geoPackage to load tiles into.
      * @param tableName The tile layer to load tiles into.
      * @param tileGenerator The tile generator.
+     * @param newLayer True if the tile layer is created by this task, false if adding to an
+     *                 existing layer.
      */
-    private static void loadTiles(Activity activity, ILoadTilesTask callback,
-                                  GeoPackageViewModel viewModel, GeoPackage geoPackage, String tableName, TileGenerator tileGenerator) {
+    private static void loadTiles(Activity activity, GeoPackageViewModel viewModel,
+                                  GeoPackage geoPackage, String tableName,
+                                  TileGenerator tileGenerator, boolean newLayer) {
 
-        ProgressDialog progressDialog = new ProgressDialog(activity);
-        final LoadTilesTask loadTilesTask = new LoadTilesTask(activity,
-                callback, progressDialog, viewModel, geoPackage, tableName);
+        final LoadTilesTask loadTilesTask = new LoadTilesTask(activity, viewModel, geoPackage,
+                tableName);
 
         tileGenerator.setProgress(loadTilesTask);
 
         loadTilesTask.setTileGenerator(tileGenerator);
+        loadTilesTask.newLayer = newLayer;
+        loadTilesTask.max = tileGenerator.getTileCount();
 
-        progressDialog.setMessage(activity
-                .getString(R.string.geopackage_create_tiles_label)
-                + ": "
-                + geoPackage.getName() + " - " + tableName);
-        progressDialog.setCancelable(false);
-        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
-        progressDialog.setIndeterminate(false);
-        progressDialog.setMax(tileGenerator.getTileCount());
-        progressDialog.setButton(ProgressDialog.BUTTON_NEGATIVE,
-                activity.getString(R.string.button_cancel_label),
-                (DialogInterface dialog, int which) -> loadTilesTask.isCancelled = true);
-
-        progressDialog.show();
-        ThreadUtils.getInstance().runBackground(loadTilesTask);
+        TileDownloadService.requestPermission(activity);
+        TileDownloadManager.getInstance().start(loadTilesTask);
     }
 
-    private final Activity activity;
+    private final Context context;
     private Integer max = null;
     private int progress = 0;
     private TileGenerator tileGenerator;
-    private final ILoadTilesTask callback;
-    private final ProgressDialog progressDialog;
     private final GeoPackageViewModel viewModel;
     private final GeoPackage geoPackage;
     private final String tableName;
-    private PowerManager.WakeLock wakeLock;
-    private boolean isCancelled = false;
+    private volatile boolean isCancelled = false;
+    private volatile boolean isPaused = false;
+    private long lastPublished = 0;
+    private boolean newLayer = true;
 
     /**
-     * Constructor
+     * Describes what the download is doing beyond downloading tiles, or null.
+     */
+    private String message = null;
+
+    /**
+     * Constructor, the task outlives the screens so it only keeps the application context and
+     * reports how the download went through the tile download manager
      *
-     * @param activity The main activity.
-     * @param callback Called when the load tiles task has completed or was cancelled.
-     * @param progressDialog The progress dialog.
+     * @param context The context.
      * @param viewModel Used to get the geoPackage.
      * @param geoPackage The geoPackage we are creating a tile layer for.
      * @param tableName The name of the tile layer.
      */
-    public LoadTilesTask(Activity activity, ILoadTilesTask callback,
-                         ProgressDialog progressDialog, GeoPackageViewModel viewModel,
-                         GeoPackage geoPackage, String tableName) {
-        this.activity = activity;
-        this.callback = callback;
-        this.progressDialog = progressDialog;
+    public LoadTilesTask(Context context, GeoPackageViewModel viewModel, GeoPackage geoPackage,
+                         String tableName) {
+        this.context = context.getApplicationContext();
         this.viewModel = viewModel;
         this.geoPackage = geoPackage;
         this.tableName = tableName;
@@ -215,6 +408,57 @@ public class LoadTilesTask implements GeoPackageProgress, Runnable {
         this.tileGenerator = tileGenerator;
     }
 
+    /**
+     * Get the name of the geoPackage the tiles are loaded into
+     *
+     * @return The geoPackage name.
+     */
+    @Override
+    public String getDatabase() {
+        return geoPackage.getName();
+    }
+
+    /**
+     * Get the name of the tile layer
+     *
+     * @return The tile table name.
+     */
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Cancels loading the tiles, keeping a partial layer that can be resumed later
+     */
+    @Override
+    public void cancel() {
+        isCancelled = true;
+        cancelRequests();
+    }
+
+    /**
+     * Stops loading the tiles so the download can be resumed later, keeping the partial layer
+     * even if no tiles were loaded yet
+     */
+    @Override
+    public void pause() {
+        isPaused = true;
+        isCancelled = true;
+        cancelRequests();
+    }
+
+    /**
+     * Gives up on the tile requests still in flight, so the download stops right away instead of
+     * waiting on them
+     */
+    private void cancelRequests() {
+        TileGenerator generator = tileGenerator;
+        if (generator instanceof WebViewTileGenerator) {
+            ((WebViewTileGenerator) generator).cancel();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -229,7 +473,12 @@ public class LoadTilesTask implements GeoPackageProgress, Runnable {
     @Override
     public void addProgress(int progress) {
         this.progress += progress;
-        publishProgress(this.progress);
+        // Tiles are done many times a second, the screens only need a few updates a second
+        long now = System.currentTimeMillis();
+        if (now - lastPublished >= PUBLISH_INTERVAL_MILLIS) {
+            lastPublished = now;
+            publishProgress(this.progress);
+        }
     }
 
     /**
@@ -249,25 +498,148 @@ public class LoadTilesTask implements GeoPackageProgress, Runnable {
     }
 
     /**
-     * {@inheritDoc}
+     * Publishes the progress to the tile download manager
+     *
+     * @param progress The number of tiles done.
+     */
+    private void publishProgress(int progress) {
+        publish(TileDownloadProgress.State.RUNNING, message, progress);
+    }
+
+    /**
+     * Publishes the state of the download to the tile download manager
+     *
+     * @param state The state of the download.
+     * @param message A message describing the download, or null.
+     * @param progress The number of tiles done.
+     */
+    private void publish(TileDownloadProgress.State state, String message, int progress) {
+        TileDownloadManager.getInstance().publish(this, createProgress(state, message, progress));
+    }
+
+    /**
+     * Creates the progress of the download
+     *
+     * @param state The state of the download.
+     * @param message A message describing the download, or null.
+     * @param progress The number of tiles done.
+     * @return The download progress.
+     */
+    private TileDownloadProgress createProgress(TileDownloadProgress.State state, String message,
+                                                int progress) {
+        int tileCount = max != null ? max : 0;
+        TileDownloadMetrics.Summary metrics = null;
+        if (tileGenerator instanceof WebViewTileGenerator) {
+            TileDownloadMetrics downloadMetrics =
+                    ((WebViewTileGenerator) tileGenerator).getMetrics();
+            metrics = state == TileDownloadProgress.State.RUNNING
+                    ? downloadMetrics.getSummary(progress, tileCount)
+                    : downloadMetrics.getTotals(progress);
+        }
+        return new TileDownloadProgress(getDatabase(), tableName, state, message, progress,
+                tileCount, metrics);
+    }
+
+    /**
+     * Keeps the metrics of the download run with the layer
+     *
+     * @param state How the download ended.
+     */
+    private void recordStats(TileDownloadProgress.State state) {
+        if (tileGenerator instanceof WebViewTileGenerator) {
+            WebViewTileGenerator webViewGenerator = (WebViewTileGenerator) tileGenerator;
+            TileDownloadMetrics.Summary totals = webViewGenerator.getMetrics().getTotals(progress);
+            Log.i(LoadTilesTask.class.getSimpleName(), "Download of " + tableName + " "
+                    + state.name().toLowerCase(Locale.US) + ": " + totals.describe());
+            new TileDownloadStats(geoPackage).record(tableName, webViewGenerator.getUrl(), state,
+                    totals);
+        }
+    }
+
+    /**
+     * Builds the zoom levels below the lowest downloaded zoom level from the downloaded tiles.
+     *
+     * @param webViewGenerator The generator that downloaded the tiles.
+     * @return The number of tiles built.
+     * @throws InterruptedException If interrupted while building.
      */
-    private void publishProgress(Integer... progress) {
-        activity.runOnUiThread(() -> progressDialog.setProgress(progress[0]));
+    private int buildLowerZooms(WebViewTileGenerator webViewGenerator) throws InterruptedException {
+        message = "Building zoom levels below " + webViewGenerator.getDownloadMinZoom();
+        publishProgress(progress);
+        TilePyramidBuilder builder = new TilePyramidBuilder(geoPackage, tableName,
+                new TileWriteBatcher(geoPackage,
+                        context.getResources().getInteger(R.integer.load_tiles_write_batch_size),
+                        context.getResources().getInteger(R.integer.load_tiles_write_batch_millis)),
+                Runtime.getRuntime().availableProcessors());
+        builder.setRecompressor(webViewGenerator.getRecompressor());
+        builder.build(webViewGenerator.getMinZoom(), webViewGenerator.getDownloadMinZoom(), this);
+        Log.i(LoadTilesTask.class.getSimpleName(), "Built " + builder.getBuiltCount()
+                + " tiles below zoom " + webViewGenerator.getDownloadMinZoom() + " for " + tableName);
+
+        return builder.getBuiltCount();
     }
 
     @Override
     public void run() {
+        // The tile download service keeps the cpu running while downloading
+        TileDownloadProgress.State state = TileDownloadProgress.State.CANCELLED;
+        String result = null;
         try {
-            PowerManager pm = (PowerManager) activity
-                    .getSystemService(Context.POWER_SERVICE);
-            wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getClass()
-                    .getName());
-            wakeLock.acquire(43200000);
+            int count;
+            if (tileGenerator instanceof WebViewTileGenerator) {
+                // Slices a killed download spilled to files are never taken
+                ((WebViewTileGenerator) tileGenerator).release();
+            }
+            try {
+                count = tileGenerator.generateTiles();
+            } finally {
+                if (tileGenerator instanceof WebViewTileGenerator) {
+                    ((WebViewTileGenerator) tileGenerator).finishWrites();
+                    ((WebViewTileGenerator) tileGenerator).release();
+                }
+            }
+            int skippedCount = 0;
+            if (tileGenerator instanceof WebViewTileGenerator) {
+                WebViewTileGenerator webViewGenerator = (WebViewTileGenerator) tileGenerator;
+                skippedCount = webViewGenerator.getSkippedCount()
+                        + webViewGenerator.getEmptyCount()
+                        + webViewGenerator.getNotModifiedCount();
+                Log.i(LoadTilesTask.class.getSimpleName(), "Downloaded " + count + " tiles for "
+                        + tableName + " at "
+                        + webViewGenerator.getMetrics().getTotals(progress).getTilesPerSecond()
+                        + " tiles/s with " + webViewGenerator.getConcurrentRequests()
+                        + " concurrent requests, skipped " + webViewGenerator.getEmptyCount()
+                        + " empty tiles, " + webViewGenerator.getNotModifiedCount()
+                        + " tiles not modified");
+
+                TileRecompressor recompressor = webViewGenerator.getRecompressor();
+                if (recompressor != null && count > 0) {
+                    if (recompressor.isWebP()) {
+                        new WebPExtension(geoPackage).getOrCreate(tableName);
+                    }
+                    Log.i(LoadTilesTask.class.getSimpleName(), "Recompressed "
+                            + recompressor.getTileCount() + " tiles from "
+                            + recompressor.getBytesBefore() + " to "
+                            + recompressor.getBytesAfter() + " bytes");
+                }
 
-            int count = tileGenerator.generateTiles();
+                // Only build the lower zoom levels when the downloaded tiles changed
+                if (!isCancelled && count > 0
+                        && webViewGenerator.getDownloadMinZoom() > webViewGenerator.getMinZoom()) {
+                    int builtCount = buildLowerZooms(webViewGenerator);
+                    long expected = 0;
+                    for (int zoom = webViewGenerator.getMinZoom();
+                         zoom < webViewGenerator.getDownloadMinZoom(); zoom++) {
+                        expected += webViewGenerator.getDownloadTileGrid(zoom).count();
+                    }
+                    count += builtCount;
+                    // Tiles without any stored children are empty
+                    skippedCount += Math.max(0, expected - builtCount);
+                }
+            }
             if(!isCancelled) {
-                String result = null;
-                if (count == 0) {
+                state = TileDownloadProgress.State.FINISHED;
+                if (count + skippedCount == 0) {
                     result = "No tiles were generated for your new layer.  " +
                             "This could be an issue with your tile URL or the tile server.  " +
                             "Please verify the server URL and try again.";
@@ -275,23 +647,42 @@ public class LoadTilesTask implements GeoPackageProgress, Runnable {
                 if (count > 0 && viewModel.getActive().getValue() != null) {
                     viewModel.getActive().getValue().setModified(true);
                 }
-                if (count < max && !(tileGenerator instanceof FeatureTileGenerator)) {
+                if (count + skippedCount < max && !(tileGenerator instanceof FeatureTileGenerator)) {
                     result = "Fewer tiles were generated than " +
-                            "expected. Expected: " + max + ", Actual: " + count +
+                            "expected. Expected: " + max + ", Actual: " + (count + skippedCount) +
                             ".  This is likely an issue with the tile server or a slow / " +
                             "intermittent network connection.";
                 }
 
-                callback.onLoadTilesPostExecute(result);
+                // Keep the download definition so the layer can be refreshed or retried later
+                new TileDownloadJournal(geoPackage).finish(tableName);
+                recordStats(state);
+                int failedCount = new FailedTileLedger(geoPackage).getFailedCount(tableName);
+                if (failedCount > 0) {
+                    result = failedCount + " tiles could not be downloaded.  " +
+                            "Use Retry on the layer to try downloading them again.";
+                }
             } else {
-                this.geoPackage.deleteTable(tableName);
-                callback.onLoadTilesCancelled();
+                // Keep a partial layer so it can be resumed later
+                if (newLayer && count + skippedCount == 0 && !isPaused) {
+                    this.geoPackage.deleteTable(tableName);
+                    new TileDownloadJournal(geoPackage).complete(tableName);
+                    new FailedTileLedger(geoPackage).clear(tableName);
+                    new EmptyTileCoverage(geoPackage).clear(tableName);
+                    new TileDownloadStats(geoPackage).clear(tableName);
+                    new TileDownloadHeaders(context).remove(getDatabase(), tableName);
+                } else {
+                    recordStats(isPaused ? TileDownloadProgress.State.PAUSED : state);
+                    if (viewModel.getActive().getValue() != null) {
+                        viewModel.getActive().getValue().setModified(true);
+                    }
+                }
             }
         } catch (final Exception e) {
             Log.e(LoadTilesTask.class.getSimpleName(), e.getMessage(), e);
+            result = e.getMessage();
         } finally {
-            wakeLock.release();
-            progressDialog.dismiss();
+            TileDownloadManager.getInstance().ended(this, createProgress(state, result, progress));
         }
     }
 }
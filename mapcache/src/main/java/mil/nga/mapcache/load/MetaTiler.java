@@ -0,0 +1,445 @@
+package mil.nga.mapcache.load;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import mil.nga.geopackage.io.GeoPackageIOUtils;
+import mil.nga.geopackage.tiles.TileGrid;
+
+/**
+ * Requests blocks of N x N tiles from a WMS server as one larger GetMap image and slices it into
+ * the individual tiles.  Tiles are generated a column at a time, so the slices of a metatile wait
+ * here until the generator reaches their column.  Slices beyond the memory budget are kept in
+ * files until they are taken, in a directory used by this meta tiler alone.
+ */
+public class MetaTiler {
+
+    /**
+     * The width and height of a single tile.
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Matches the width parameter of a 256 pixel WMS request.
+     */
+    private static final Pattern WIDTH_PATTERN = Pattern.compile(
+            "([?&]width=)" + TILE_SIZE + "(?=&|$)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Matches the height parameter of a 256 pixel WMS request.
+     */
+    private static final Pattern HEIGHT_PATTERN = Pattern.compile(
+            "([?&]height=)" + TILE_SIZE + "(?=&|$)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Matches a jpeg format parameter.
+     */
+    private static final Pattern JPEG_PATTERN = Pattern.compile(
+            "[?&]format=image/jpe?g(?=&|$)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The tiles covered by a single metatile request.
+     */
+    public static class MetaTile {
+
+        /**
+         * The zoom level.
+         */
+        public final int zoom;
+
+        /**
+         * The first tile column.
+         */
+        public final long minX;
+
+        /**
+         * The last tile column.
+         */
+        public final long maxX;
+
+        /**
+         * The first tile row.
+         */
+        public final long minY;
+
+        /**
+         * The last tile row.
+         */
+        public final long maxY;
+
+        /**
+         * The url requesting the metatile image.
+         */
+        String url;
+
+        /**
+         * Receives the metatile image.
+         */
+        WebViewResponseHandler handler;
+
+        /**
+         * True once the image has been sliced.
+         */
+        boolean sliced = false;
+
+        /**
+         * The failure of the metatile request, rethrown for each of its tiles.
+         */
+        IOException failure = null;
+
+        /**
+         * The keys of its tiles that were already downloaded and won't be taken.
+         */
+        final Set<String> skipped = new HashSet<>();
+
+        /**
+         * The number of its tiles that haven't been taken yet.
+         */
+        int remaining;
+
+        /**
+         * Constructor.
+         *
+         * @param zoom The zoom level.
+         * @param minX The first tile column.
+         * @param maxX The last tile column.
+         * @param minY The first tile row.
+         * @param maxY The last tile row.
+         */
+        MetaTile(int zoom, long minX, long maxX, long minY, long maxY) {
+            this.zoom = zoom;
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        /**
+         * Gets the number of tile columns.
+         *
+         * @return The number of columns.
+         */
+        public int getColumns() {
+            return (int) (maxX - minX + 1);
+        }
+
+        /**
+         * Gets the number of tile rows.
+         *
+         * @return The number of rows.
+         */
+        public int getRows() {
+            return (int) (maxY - minY + 1);
+        }
+    }
+
+    /**
+     * The number of tiles along each side of a metatile.
+     */
+    private final int metaSize;
+
+    /**
+     * The number of slice bytes to hold in memory before writing slices to files.
+     */
+    private final long memoryBudget;
+
+    /**
+     * The directory slices are written to once over the memory budget.
+     */
+    private final File spillDirectory;
+
+    /**
+     * The metatiles that have been requested and still have tiles to be taken, by metatile key.
+     */
+    private final Map<String, MetaTile> metaTiles = new HashMap<>();
+
+    /**
+     * The slices held in memory, by tile key.
+     */
+    private final Map<String, byte[]> slices = new HashMap<>();
+
+    /**
+     * The keys of the slices written to files.
+     */
+    private final Set<String> spilled = new HashSet<>();
+
+    /**
+     * The number of slice bytes held in memory.
+     */
+    private long memoryBytes = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param metaSize       The number of tiles along each side of a metatile.
+     * @param memoryBudget   The number of slice bytes to hold in memory.
+     * @param spillDirectory The directory slices are written to once over the memory budget, not
+     *                       shared with any other meta tiler.
+     */
+    public MetaTiler(int metaSize, long memoryBudget, File spillDirectory) {
+        this.metaSize = Math.max(1, metaSize);
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Checks if the url is a 256 pixel WMS request that can be made larger.
+     *
+     * @param url The tile url.
+     * @return True if metatiles can be requested for the url.
+     */
+    public static boolean supports(String url) {
+        return WIDTH_PATTERN.matcher(url).find() && HEIGHT_PATTERN.matcher(url).find();
+    }
+
+    /**
+     * Gets the number of tiles along each side of a metatile.
+     *
+     * @return The metatile size.
+     */
+    public int getMetaSize() {
+        return metaSize;
+    }
+
+    /**
+     * Gets the metatile containing the tile, if it has already been requested.
+     *
+     * @param z The zoom level.
+     * @param x The tile column.
+     * @param y The tile row.
+     * @return The metatile or null if it hasn't been requested.
+     */
+    public MetaTile get(int z, long x, long y) {
+        return metaTiles.get(metaKey(z, x, y));
+    }
+
+    /**
+     * Creates the metatile containing the tile, aligned to the metatile size and clipped to the
+     * tile grid being downloaded.
+     *
+     * @param z        The zoom level.
+     * @param x        The tile column.
+     * @param y        The tile row.
+     * @param tileGrid The tile grid being downloaded at the zoom level.
+     * @return The new metatile, which still needs its request sent.
+     */
+    public MetaTile create(int z, long x, long y, TileGrid tileGrid) {
+        long minX = Math.max(tileGrid.getMinX(), (x / metaSize) * metaSize);
+        long maxX = Math.min(tileGrid.getMaxX(), (x / metaSize) * metaSize + metaSize - 1);
+        long minY = Math.max(tileGrid.getMinY(), (y / metaSize) * metaSize);
+        long maxY = Math.min(tileGrid.getMaxY(), (y / metaSize) * metaSize + metaSize - 1);
+        MetaTile metaTile = new MetaTile(z, minX, maxX, minY, maxY);
+        metaTile.remaining = metaTile.getColumns() * metaTile.getRows();
+        metaTiles.put(metaKey(z, x, y), metaTile);
+
+        return metaTile;
+    }
+
+    /**
+     * Excludes a tile of the metatile that was already downloaded, so its slice isn't held
+     * waiting for a tile that is never taken.
+     *
+     * @param metaTile The metatile.
+     * @param z        The zoom level.
+     * @param x        The tile column.
+     * @param y        The tile row.
+     */
+    public void skip(MetaTile metaTile, int z, long x, long y) {
+        if (metaTile.skipped.add(FailedTileLedger.key(z, x, y))) {
+            metaTile.remaining--;
+        }
+    }
+
+    /**
+     * Changes the width and height of the 256 pixel tile url to request the whole metatile.
+     *
+     * @param url      The url with the metatile's bounding box.
+     * @param metaTile The metatile.
+     * @return The metatile url.
+     */
+    public static String getMetaTileUrl(String url, MetaTile metaTile) {
+        String metaUrl = WIDTH_PATTERN.matcher(url).replaceFirst(
+                "$1" + metaTile.getColumns() * TILE_SIZE);
+        return HEIGHT_PATTERN.matcher(metaUrl).replaceFirst("$1" + metaTile.getRows() * TILE_SIZE);
+    }
+
+    /**
+     * Slices the metatile image into its tiles, passing over the skipped tiles.
+     *
+     * @param metaTile     The metatile.
+     * @param image        The metatile image bytes.
+     * @param recompressor Encodes the slices, or null to encode them in the metatile's format.
+     * @throws IOException If the image couldn't be decoded or a slice couldn't be stored.
+     */
+    public void slice(MetaTile metaTile, byte[] image, TileRecompressor recompressor)
+            throws IOException {
+        Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode metatile image from " + metaTile.url);
+        }
+
+        try {
+            Bitmap.CompressFormat format = JPEG_PATTERN.matcher(metaTile.url).find()
+                    ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG;
+            int tileWidth = bitmap.getWidth() / metaTile.getColumns();
+            int tileHeight = bitmap.getHeight() / metaTile.getRows();
+            for (long x = metaTile.minX; x <= metaTile.maxX; x++) {
+                for (long y = metaTile.minY; y <= metaTile.maxY; y++) {
+                    String key = FailedTileLedger.key(metaTile.zoom, x, y);
+                    if (metaTile.skipped.contains(key)) {
+                        continue;
+                    }
+                    Bitmap tile = Bitmap.createBitmap(bitmap,
+                            (int) (x - metaTile.minX) * tileWidth,
+                            (int) (y - metaTile.minY) * tileHeight, tileWidth, tileHeight);
+                    byte[] bytes = recompressor != null ? recompressor.encode(tile) : null;
+                    if (bytes == null) {
+                        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                        tile.compress(format, 90, stream);
+                        bytes = stream.toByteArray();
+                    }
+                    tile.recycle();
+                    storeSlice(key, bytes);
+                }
+            }
+        } finally {
+            bitmap.recycle();
+        }
+        metaTile.sliced = true;
+    }
+
+    /**
+     * Takes the slice of a tile, the slice is no longer held once taken.
+     *
+     * @param metaTile The metatile containing the tile.
+     * @param z        The zoom level.
+     * @param x        The tile column.
+     * @param y        The tile row.
+     * @return The tile bytes, or null if the tile was not sliced.
+     * @throws IOException If the slice couldn't be read from its file.
+     */
+    public byte[] take(MetaTile metaTile, int z, long x, long y) throws IOException {
+        String key = FailedTileLedger.key(z, x, y);
+        byte[] bytes = slices.remove(key);
+        if (bytes != null) {
+            memoryBytes -= bytes.length;
+        } else if (spilled.remove(key)) {
+            File file = getSpillFile(key);
+            InputStream stream = new FileInputStream(file);
+            try {
+                bytes = GeoPackageIOUtils.streamBytes(stream);
+            } finally {
+                stream.close();
+            }
+            if (!file.delete()) {
+                Log.w(MetaTiler.class.getSimpleName(), "Failed to delete " + file);
+            }
+        }
+        metaTile.remaining--;
+        removeIfDone(metaTile);
+
+        return bytes;
+    }
+
+    /**
+     * Marks a tile of a failed metatile as taken.
+     *
+     * @param metaTile The failed metatile.
+     */
+    public void fail(MetaTile metaTile) {
+        metaTile.remaining--;
+        removeIfDone(metaTile);
+    }
+
+    /**
+     * Releases all held slices and deletes every file in the spill directory, including files
+     * left by a download that was killed.
+     */
+    public void clear() {
+        metaTiles.clear();
+        slices.clear();
+        memoryBytes = 0;
+        spilled.clear();
+        File[] files = spillDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(MetaTiler.class.getSimpleName(), "Failed to delete " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds the slice in memory, or in a file if over the memory budget.
+     *
+     * @param key   The tile key.
+     * @param bytes The tile bytes.
+     * @throws IOException If the slice couldn't be written to its file.
+     */
+    private void storeSlice(String key, byte[] bytes) throws IOException {
+        if (memoryBytes + bytes.length <= memoryBudget) {
+            slices.put(key, bytes);
+            memoryBytes += bytes.length;
+        } else {
+            if (!spillDirectory.exists() && !spillDirectory.mkdirs()) {
+                throw new IOException("Failed to create " + spillDirectory);
+            }
+            OutputStream stream = new FileOutputStream(getSpillFile(key));
+            try {
+                stream.write(bytes);
+            } finally {
+                stream.close();
+            }
+            spilled.add(key);
+        }
+    }
+
+    /**
+     * Stops tracking the metatile once all of its tiles have been taken.
+     *
+     * @param metaTile The metatile.
+     */
+    private void removeIfDone(MetaTile metaTile) {
+        if (metaTile.remaining <= 0) {
+            metaTiles.remove(metaKey(metaTile.zoom, metaTile.minX, metaTile.minY));
+        }
+    }
+
+    /**
+     * Gets the file a slice is written to.
+     *
+     * @param key The tile key.
+     * @return The slice file.
+     */
+    private File getSpillFile(String key) {
+        return new File(spillDirectory, key.replace('/', '_') + ".tile");
+    }
+
+    /**
+     * Gets the key of the metatile containing the tile.
+     *
+     * @param z The zoom level.
+     * @param x The tile column.
+     * @param y The tile row.
+     * @return The metatile key.
+     */
+    private String metaKey(int z, long x, long y) {
+        return String.format(Locale.US, "%d/%d/%d", z, x / metaSize, y / metaSize);
+    }
+}
@@ -0,0 +1,295 @@
+package mil.nga.mapcache.load;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.format.Formatter;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.extension.WebPExtension;
+import mil.nga.geopackage.tiles.user.TileCursor;
+import mil.nga.geopackage.tiles.user.TileDao;
+import mil.nga.geopackage.tiles.user.TileRow;
+import mil.nga.geopackage.tiles.user.TileTable;
+import mil.nga.mapcache.R;
+import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
+
+/**
+ * Recompresses the tiles already stored in a tile table into the tile format chosen in the
+ * settings, reporting the size of the tiles before and after.  Runs from the tile download queue
+ * inside the download service, so it waits for other work on the GeoPackage and keeps going in the
+ * background.  A paused recompression continues after the last tile it recompressed.
+ */
+public class RecompressTilesTask implements TileDownloadManager.Task {
+
+    /**
+     * The number of tiles read from the table at a time.
+     */
+    private static final int TILES_PER_QUERY = 256;
+
+    /**
+     * The least time between progress updates published to the download manager.
+     */
+    private static final long PUBLISH_INTERVAL_MILLIS = 250;
+
+    /**
+     * Queues recompressing the tiles of a tile table.
+     *
+     * @param activity  The main activity.
+     * @param viewModel Used to get the geoPackage.
+     * @param database  The geoPackage name containing the tile layer.
+     * @param tableName The tile layer to recompress.
+     */
+    public static void recompressTiles(Activity activity, GeoPackageViewModel viewModel,
+                                       String database, String tableName) {
+        if (TileDownloadManager.getInstance().contains(database, tableName)) {
+            throw new GeoPackageException(tableName + " is already in the download queue");
+        }
+        TileRecompressor recompressor = new TileDownloadSettings(activity).getRecompressor();
+        if (recompressor.getFormat() == TileRecompressor.Format.ORIGINAL) {
+            throw new GeoPackageException("Choose a tile format other than \"As downloaded\" in "
+                    + "the settings to compress " + tableName);
+        }
+
+        GeoPackage geoPackage = viewModel.getGeoPackage(database);
+        RecompressTilesTask task = new RecompressTilesTask(activity, viewModel, geoPackage,
+                tableName, recompressor);
+
+        TileDownloadService.requestPermission(activity);
+        TileDownloadManager.getInstance().start(task);
+    }
+
+    /**
+     * The application context.
+     */
+    private final Context context;
+
+    /**
+     * Used to mark the geoPackage as modified.
+     */
+    private final GeoPackageViewModel viewModel;
+
+    /**
+     * The geoPackage containing the tile table.
+     */
+    private final GeoPackage geoPackage;
+
+    /**
+     * The tile table name.
+     */
+    private final String tableName;
+
+    /**
+     * Recompresses the tiles.
+     */
+    private final TileRecompressor recompressor;
+
+    /**
+     * The id of the last tile recompressed, where a paused recompression continues from.
+     */
+    private long lastId = Long.MIN_VALUE;
+
+    /**
+     * The number of tiles recompressed so far.
+     */
+    private int progress = 0;
+
+    /**
+     * The number of tiles replaced with their recompressed tile so far.
+     */
+    private int replaced = 0;
+
+    /**
+     * The number of tiles in the table, or -1 until counted.
+     */
+    private int max = -1;
+
+    /**
+     * The last time progress was published.
+     */
+    private long lastPublished = 0;
+
+    /**
+     * Set when the user cancels the task.
+     */
+    private volatile boolean isCancelled = false;
+
+    /**
+     * Set when the user pauses the task.
+     */
+    private volatile boolean isPaused = false;
+
+    /**
+     * Constructor.
+     *
+     * @param context      The context, only its application context is kept.
+     * @param viewModel    Used to mark the geoPackage as modified.
+     * @param geoPackage   The geoPackage containing the tile table.
+     * @param tableName    The tile table name.
+     * @param recompressor Recompresses the tiles.
+     */
+    private RecompressTilesTask(Context context, GeoPackageViewModel viewModel,
+                                GeoPackage geoPackage, String tableName,
+                                TileRecompressor recompressor) {
+        this.context = context.getApplicationContext();
+        this.viewModel = viewModel;
+        this.geoPackage = geoPackage;
+        this.tableName = tableName;
+        this.recompressor = recompressor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDatabase() {
+        return geoPackage.getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void pause() {
+        isPaused = true;
+    }
+
+    @Override
+    public void run() {
+        isPaused = false;
+        TileDownloadProgress.State state = TileDownloadProgress.State.CANCELLED;
+        String result = null;
+        int replacedBefore = replaced;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        TileWriteBatcher writeBatcher = new TileWriteBatcher(geoPackage,
+                context.getResources().getInteger(R.integer.load_tiles_write_batch_size),
+                context.getResources().getInteger(R.integer.load_tiles_write_batch_millis));
+        try {
+            if (recompressor.isWebP()) {
+                new WebPExtension(geoPackage).getOrCreate(tableName);
+            }
+
+            TileDownloadManager.getInstance().publish(this,
+                    createProgress(TileDownloadProgress.State.RUNNING, null));
+            TileDao tileDao = geoPackage.getTileDao(tableName);
+            if (max < 0) {
+                max = tileDao.count();
+            }
+            List<TileRow> rows = queryTiles(tileDao, lastId);
+            while (!rows.isEmpty() && !isCancelled && !isPaused) {
+                // Decode and encode on every core, then write from this thread
+                List<Future<byte[]>> recompressed = new ArrayList<>();
+                for (TileRow row : rows) {
+                    byte[] bytes = row.getTileData();
+                    recompressed.add(executor.submit(() -> recompressor.recompress(bytes)));
+                }
+                for (int i = 0; i < rows.size(); i++) {
+                    TileRow row = rows.get(i);
+                    byte[] bytes = recompressed.get(i).get();
+                    if (bytes != row.getTileData()) {
+                        writeBatcher.beforeWrite();
+                        row.setTileData(bytes);
+                        tileDao.update(row);
+                        replaced++;
+                    }
+                    lastId = row.getId();
+                }
+
+                progress += rows.size();
+                long now = SystemClock.elapsedRealtime();
+                if (now - lastPublished >= PUBLISH_INTERVAL_MILLIS) {
+                    lastPublished = now;
+                    TileDownloadManager.getInstance().publish(this,
+                            createProgress(TileDownloadProgress.State.RUNNING, null));
+                }
+                rows = queryTiles(tileDao, lastId);
+            }
+
+            if (isPaused) {
+                state = TileDownloadProgress.State.PAUSED;
+            } else if (!isCancelled) {
+                state = TileDownloadProgress.State.FINISHED;
+                long before = recompressor.getBytesBefore();
+                long after = recompressor.getBytesAfter();
+                result = String.format(Locale.getDefault(),
+                        "Compressed %,d of %,d tiles from %s to %s (%d%% smaller)", replaced,
+                        recompressor.getTileCount(), Formatter.formatShortFileSize(context, before),
+                        Formatter.formatShortFileSize(context, after),
+                        before > 0 ? (before - after) * 100 / before : 0);
+            }
+        } catch (Exception e) {
+            Log.e(RecompressTilesTask.class.getSimpleName(), "Failed to compress tiles of "
+                    + tableName, e);
+            result = e.getMessage();
+        } finally {
+            writeBatcher.finish();
+            executor.shutdownNow();
+            if (replaced > replacedBefore && viewModel.getActive().getValue() != null) {
+                viewModel.getActive().getValue().setModified(true);
+            }
+            TileDownloadManager.getInstance().ended(this, createProgress(state, result));
+        }
+    }
+
+    /**
+     * Creates the progress of the recompression.
+     *
+     * @param state   The state of the recompression.
+     * @param message A message describing the recompression, or null.
+     * @return The recompression progress.
+     */
+    private TileDownloadProgress createProgress(TileDownloadProgress.State state,
+                                                String message) {
+        return new TileDownloadProgress(getDatabase(), tableName, state, message, progress,
+                Math.max(max, 0), null);
+    }
+
+    /**
+     * Queries the next tiles in id order.
+     *
+     * @param tileDao The tile dao.
+     * @param lastId  The id of the last tile already recompressed.
+     * @return The next tiles, empty once every tile has been read.
+     */
+    private List<TileRow> queryTiles(TileDao tileDao, long lastId) {
+        List<TileRow> rows = new ArrayList<>();
+        TileCursor cursor = tileDao.query(TileTable.COLUMN_ID + " > ?",
+                new String[]{String.valueOf(lastId)}, null, null, TileTable.COLUMN_ID,
+                String.valueOf(TILES_PER_QUERY));
+        try {
+            while (cursor.moveToNext()) {
+                rows.add(cursor.getRow());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return rows;
+    }
+}
@@ -16,17 +16,17 @@ import androidx.fragment.app.FragmentActivity
 import mil.nga.geopackage.GeoPackageConstants
 import mil.nga.geopackage.io.GeoPackageIOUtils
 import mil.nga.mapcache.R
+import mil.nga.mapcache.utils.ThreadUtils
 import java.io.File
 import java.io.IOException
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 /**
  * Save a file to the downloads directory using Executor threads and showing an alert dialog
  */
 class SaveToDiskExecutor(val activity : Activity) {
 
-    private val myExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+    private var task: Future<*>? = null
     private val alertDialog: AlertDialog
     private val actionLabel: TextView
 
@@ -51,7 +51,7 @@ class SaveToDiskExecutor(val activity : Activity) {
 
         // Cancel button - interrupt thread
         builder.setPositiveButton("Cancel") {alertDialog, which ->
-            myExecutor.shutdownNow()
+            task?.cancel(true)
         }
 
         builder.setView(alertView)
@@ -81,7 +81,7 @@ class SaveToDiskExecutor(val activity : Activity) {
         }
         var statusMessage: String = "File saved to downloads"
         alertDialog.show()
-        myExecutor.submit {
+        task = ThreadUtils.getInstance().database.submit {
             try {
                 GeoPackageIOUtils.copyFile(gpkgFile, cacheFile)
             } catch (e: IOException) {
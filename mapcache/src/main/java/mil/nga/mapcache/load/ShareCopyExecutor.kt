@@ -15,10 +15,10 @@ import mil.nga.geopackage.GeoPackageConstants
 import mil.nga.geopackage.io.GeoPackageIOUtils
 import mil.nga.mapcache.BuildConfig
 import mil.nga.mapcache.R
+import mil.nga.mapcache.utils.ThreadUtils
 import java.io.File
 import java.io.IOException
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 /**
  * Copy an internal database to a shareable location and share.  feedback provided by alertdialog
@@ -26,7 +26,7 @@ import java.util.concurrent.Executors
 class ShareCopyExecutor(val activity : Activity, val shareIntent : Intent) {
 
     private val alertDialog: AlertDialog
-    private val myExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+    private var task: Future<*>? = null
     private var geoPackageName : String = ""
     private val AUTHORITY = BuildConfig.APPLICATION_ID + ".fileprovider"
     private val actionLabel: TextView
@@ -52,7 +52,7 @@ class ShareCopyExecutor(val activity : Activity, val shareIntent : Intent) {
 
         // Cancel button
         builder.setPositiveButton("Cancel") {alertDialog, which ->
-            myExecutor.shutdownNow()
+            task?.cancel(true)
         }
 
         builder.setView(alertView)
@@ -70,7 +70,7 @@ class ShareCopyExecutor(val activity : Activity, val shareIntent : Intent) {
         val cacheFile = File(cacheDir, geoPackageName + "." + GeoPackageConstants.EXTENSION)
         var failedShare: Boolean = false
         alertDialog.show()
-        myExecutor.submit {
+        task = ThreadUtils.getInstance().database.submit {
             try {
                 GeoPackageIOUtils.copyFile(gpkgFile, cacheFile)
             } catch (e: IOException) {
@@ -0,0 +1,231 @@
+package mil.nga.mapcache.load;
+
+import android.app.Activity;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.tiles.TileGrid;
+
+/**
+ * Estimates the size of a tile download before it starts.  Tile counts are calculated exactly
+ * from the same tile grids the download uses, while the bytes and duration are projected from a
+ * few tiles sampled from the server at each zoom level.
+ */
+public class TileDownloadEstimator {
+
+    /**
+     * The estimate for a range of zoom levels.
+     */
+    public static class Estimate {
+
+        /**
+         * The minimum zoom level of the estimate.
+         */
+        public int minZoom;
+
+        /**
+         * The maximum zoom level of the estimate.
+         */
+        public int maxZoom;
+
+        /**
+         * The lowest zoom level downloaded, the zoom levels below it are built from the downloaded
+         * tiles.
+         */
+        public int downloadMinZoom;
+
+        /**
+         * The number of tiles at each zoom level, indexed by zoom minus the minimum zoom.
+         */
+        public long[] zoomCounts;
+
+        /**
+         * The total number of tiles.
+         */
+        public long tileCount;
+
+        /**
+         * The projected number of bytes, or -1 if no tiles have been sampled yet.
+         */
+        public long bytes = -1;
+
+        /**
+         * The projected download duration in milliseconds, or -1 if no tiles have been sampled yet.
+         * Only the downloaded zoom levels take time to download.
+         */
+        public long durationMillis = -1;
+
+        /**
+         * The number of downloaded zoom levels that have been sampled.
+         */
+        public int sampledZooms;
+
+        /**
+         * Checks if every downloaded zoom level has been sampled.
+         *
+         * @return True if sampling is complete.
+         */
+        public boolean isSampled() {
+            return sampledZooms > maxZoom - downloadMinZoom;
+        }
+    }
+
+    /**
+     * Generates the tile urls and sends the sample requests.
+     */
+    private final WebViewTileGenerator generator;
+
+    /**
+     * The number of tiles to sample at each zoom level.
+     */
+    private final int samplesPerZoom;
+
+    /**
+     * The number of requests the download will have in flight at once.
+     */
+    private final int concurrentRequests;
+
+    /**
+     * The sampled tiles, bytes, and milliseconds for each zoom level that has been sampled.
+     */
+    private final Map<Integer, long[]> samples = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param activity           The activity used to send the sample requests.
+     * @param geoPackage         The geoPackage the tiles would be loaded into.
+     * @param entry              The download definition, the zoom levels are ignored.
+     * @param samplesPerZoom     The number of tiles to sample at each zoom level.
+     * @param concurrentRequests The number of requests the download will have in flight at once.
+     */
+    public TileDownloadEstimator(Activity activity, GeoPackage geoPackage,
+                                 TileDownloadJournal.Entry entry, int samplesPerZoom,
+                                 int concurrentRequests) {
+        this.generator = LoadTilesTask.createTileGenerator(activity, geoPackage, entry);
+        this.samplesPerZoom = Math.max(1, samplesPerZoom);
+        this.concurrentRequests = Math.max(1, concurrentRequests);
+    }
+
+    /**
+     * Gets the exact number of tiles the download will request at the zoom level.
+     *
+     * @param zoom The zoom level.
+     * @return The number of tiles.
+     */
+    public long getTileCount(int zoom) {
+        TileGrid tileGrid = generator.getDownloadTileGrid(zoom);
+        return tileGrid.count();
+    }
+
+    /**
+     * Estimates the download using the samples taken so far, where the zoom levels below the
+     * lowest downloaded zoom level are built from the downloaded tiles instead of downloaded.
+     *
+     * @param minZoom         The minimum zoom level.
+     * @param downloadMinZoom The lowest downloaded zoom level.
+     * @param maxZoom         The maximum zoom level.
+     * @return The estimate.
+     */
+    public Estimate estimate(int minZoom, int downloadMinZoom, int maxZoom) {
+        Estimate estimate = new Estimate();
+        estimate.minZoom = minZoom;
+        estimate.maxZoom = maxZoom;
+        estimate.downloadMinZoom = downloadMinZoom;
+        estimate.zoomCounts = new long[maxZoom - minZoom + 1];
+
+        long sampledTiles = 0;
+        long sampledBytes = 0;
+        long sampledMillis = 0;
+        synchronized (samples) {
+            for (long[] sample : samples.values()) {
+                sampledTiles += sample[0];
+                sampledBytes += sample[1];
+                sampledMillis += sample[2];
+            }
+
+            long bytes = 0;
+            long downloadCount = 0;
+            for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                long count = getTileCount(zoom);
+                estimate.zoomCounts[zoom - minZoom] = count;
+                estimate.tileCount += count;
+
+                // Zoom levels that haven't been sampled yet use the average of all samples
+                long[] sample = samples.get(zoom);
+                if (zoom >= downloadMinZoom) {
+                    downloadCount += count;
+                    if (sample != null) {
+                        estimate.sampledZooms++;
+                    }
+                }
+                if (sample != null && sample[0] > 0) {
+                    bytes += count * sample[1] / sample[0];
+                } else if (sampledTiles > 0) {
+                    bytes += count * sampledBytes / sampledTiles;
+                }
+            }
+
+            if (sampledTiles > 0) {
+                estimate.bytes = bytes;
+                estimate.durationMillis = downloadCount * sampledMillis
+                        / sampledTiles / concurrentRequests;
+            }
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Downloads a few tiles from the center of the zoom level's tile grid, blocking until they are
+     * received.  Zoom levels that have already been sampled are not sampled again.
+     *
+     * @param zoom The zoom level to sample.
+     * @throws InterruptedException If interrupted while waiting for the samples.
+     */
+    public void sample(int zoom) throws InterruptedException {
+        synchronized (samples) {
+            if (samples.containsKey(zoom)) {
+                return;
+            }
+        }
+
+        TileGrid tileGrid = generator.getDownloadTileGrid(zoom);
+        int sampleCount = (int) Math.min(samplesPerZoom, tileGrid.count());
+        long centerX = (tileGrid.getMinX() + tileGrid.getMaxX()) / 2;
+        long centerY = (tileGrid.getMinY() + tileGrid.getMaxY()) / 2;
+
+        // Send the samples together, the way the download would have them in flight
+        String[] urls = new String[sampleCount];
+        WebViewResponseHandler[] handlers = new WebViewResponseHandler[sampleCount];
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < sampleCount; i++) {
+            long x = Math.min(centerX + i, tileGrid.getMaxX());
+            urls[i] = generator.getTileUrl(zoom, x, centerY);
+            handlers[i] = generator.sendRequest(urls[i], null);
+        }
+
+        long[] sample = new long[3];
+        for (int i = 0; i < sampleCount; i++) {
+            try {
+                byte[] bytes = generator.awaitTile(handlers[i], urls[i]);
+                if (bytes != null) {
+                    sample[0]++;
+                    sample[1] += bytes.length;
+                }
+            } catch (IOException e) {
+                Log.w(TileDownloadEstimator.class.getSimpleName(), "Failed to sample "
+                        + urls[i], e);
+            }
+        }
+        sample[2] = (System.currentTimeMillis() - start) * sample[0];
+
+        synchronized (samples) {
+            samples.put(zoom, sample);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package mil.nga.mapcache.load;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a tile server responds with an error code instead of a tile.
+ */
+public class TileDownloadException extends IOException {
+
+    /**
+     * UID
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * The http response code from the server.
+     */
+    private final int responseCode;
+
+    /**
+     * Constructor.
+     *
+     * @param message      The error message.
+     * @param responseCode The http response code from the server.
+     */
+    public TileDownloadException(String message, int responseCode) {
+        super(message);
+        this.responseCode = responseCode;
+    }
+
+    /**
+     * Gets the http response code from the server.
+     *
+     * @return The response code.
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+}
@@ -0,0 +1,148 @@
+package mil.nga.mapcache.load;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the request headers of journaled tile downloads so they can be resumed, retried or
+ * refreshed.  Headers often carry credentials such as authorization headers and api keys, so they
+ * are kept in the app's private storage instead of the GeoPackage, which is shared with others.
+ */
+public class TileDownloadHeaders {
+
+    /**
+     * The name of the shared preferences containing the headers.
+     */
+    private static final String PREFERENCES_NAME = "tile_download_headers";
+
+    /**
+     * Separates the GeoPackage and table names in the keys.
+     */
+    private static final String KEY_SEPARATOR = "\n";
+
+    /**
+     * The type used to serialize request headers.
+     */
+    private static final Type headersType = new TypeToken<Map<String, List<String>>>() {
+    }.getType();
+
+    /**
+     * The shared preferences containing the headers.
+     */
+    private final SharedPreferences preferences;
+
+    /**
+     * Constructor.
+     *
+     * @param context The context.
+     */
+    public TileDownloadHeaders(Context context) {
+        preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME,
+                Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Keeps the request headers of a download, replacing any previous headers for the table.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     * @param headers   The request headers, or null if there are none.
+     */
+    public void put(String database, String tableName, Map<String, List<String>> headers) {
+        if (headers != null && !headers.isEmpty()) {
+            preferences.edit().putString(key(database, tableName),
+                    new Gson().toJson(headers, headersType)).apply();
+        } else {
+            remove(database, tableName);
+        }
+    }
+
+    /**
+     * Gets the request headers of a download.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     * @return The request headers, or null if there are none.
+     */
+    public Map<String, List<String>> get(String database, String tableName) {
+        String headers = preferences.getString(key(database, tableName), null);
+        return headers != null ? new Gson().fromJson(headers, headersType) : null;
+    }
+
+    /**
+     * Moves the request headers of a download to the renamed table.
+     *
+     * @param database     The GeoPackage name.
+     * @param tableName    The tile table name.
+     * @param newTableName The new tile table name.
+     */
+    public void rename(String database, String tableName, String newTableName) {
+        String headers = preferences.getString(key(database, tableName), null);
+        if (headers != null) {
+            preferences.edit().remove(key(database, tableName))
+                    .putString(key(database, newTableName), headers).apply();
+        }
+    }
+
+    /**
+     * Forgets the request headers of a download.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     */
+    public void remove(String database, String tableName) {
+        preferences.edit().remove(key(database, tableName)).apply();
+    }
+
+    /**
+     * Moves the request headers of every download into the GeoPackage to the renamed GeoPackage.
+     *
+     * @param database    The GeoPackage name.
+     * @param newDatabase The new GeoPackage name.
+     */
+    public void renameAll(String database, String newDatabase) {
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(database + KEY_SEPARATOR) && entry.getValue() instanceof String) {
+                editor.remove(key);
+                editor.putString(newDatabase + key.substring(database.length()),
+                        (String) entry.getValue());
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Forgets the request headers of every download into the GeoPackage.
+     *
+     * @param database The GeoPackage name.
+     */
+    public void removeAll(String database) {
+        SharedPreferences.Editor editor = preferences.edit();
+        for (String key : preferences.getAll().keySet()) {
+            if (key.startsWith(database + KEY_SEPARATOR)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Gets the key of a download's headers.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     * @return The key.
+     */
+    private static String key(String database, String tableName) {
+        return database + KEY_SEPARATOR + tableName;
+    }
+}
@@ -0,0 +1,256 @@
+package mil.nga.mapcache.load;
+
+import android.app.Activity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import mil.nga.mapcache.GeoPackageUtils;
+import mil.nga.mapcache.R;
+import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
+
+/**
+ * Shows the tile download queue, with the progress and throughput of each download and buttons to
+ * pause, resume, reorder and cancel them.  The dialog follows the queue published by the
+ * TileDownloadManager rather than owning the downloads, so it can be hidden while they keep going.
+ * It opens on its own when a download is queued.
+ */
+public class TileDownloadJobsDialog {
+
+    /**
+     * The activity showing the dialog.
+     */
+    private final Activity activity;
+
+    /**
+     * Used to get the geoPackages of resumed downloads.
+     */
+    private final GeoPackageViewModel viewModel;
+
+    /**
+     * The dialog, or null if not showing.
+     */
+    private AlertDialog dialog = null;
+
+    /**
+     * Contains a row for each download.
+     */
+    private LinearLayout jobsList = null;
+
+    /**
+     * Shown when there are no downloads.
+     */
+    private TextView emptyText = null;
+
+    /**
+     * The progress of each download in queue order.
+     */
+    private List<TileDownloadProgress> jobs = Collections.emptyList();
+
+    /**
+     * The downloads that were in the queue the last time it changed, to tell when one is added.
+     */
+    private Set<String> queued = new HashSet<>();
+
+    /**
+     * Constructor.
+     *
+     * @param activity  The activity showing the dialog.
+     * @param viewModel Used to get the geoPackages of resumed downloads.
+     */
+    public TileDownloadJobsDialog(Activity activity, GeoPackageViewModel viewModel) {
+        this.activity = activity;
+        this.viewModel = viewModel;
+    }
+
+    /**
+     * Follows the download queue for as long as the owner is alive.
+     *
+     * @param owner The lifecycle owner of the screen showing the dialog.
+     */
+    public void observe(LifecycleOwner owner) {
+        TileDownloadManager.getInstance().getJobs().observe(owner, this::update);
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner lifecycleOwner) {
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows the dialog if it isn't showing.
+     */
+    public void show() {
+        if (dialog != null) {
+            return;
+        }
+        View view = LayoutInflater.from(activity).inflate(R.layout.tile_download_jobs, null);
+        jobsList = view.findViewById(R.id.tile_download_jobs_list);
+        emptyText = view.findViewById(R.id.tile_download_jobs_empty);
+        dialog = new AlertDialog.Builder(activity, R.style.AppCompatAlertDialogStyle)
+                .setTitle(R.string.tile_download_jobs_title)
+                .setView(view)
+                .setPositiveButton(R.string.button_hide_label, null)
+                .create();
+        dialog.setOnDismissListener(d -> {
+            dialog = null;
+            jobsList = null;
+            emptyText = null;
+        });
+        dialog.show();
+        bind();
+    }
+
+    /**
+     * Updates the dialog with the download queue, showing it when a download was added.
+     *
+     * @param jobs The progress of each download in queue order.
+     */
+    private void update(List<TileDownloadProgress> jobs) {
+        this.jobs = jobs;
+        Set<String> keys = new HashSet<>();
+        boolean added = false;
+        for (TileDownloadProgress job : jobs) {
+            String key = getName(job);
+            keys.add(key);
+            added |= !queued.contains(key);
+        }
+        queued = keys;
+
+        if (added) {
+            show();
+        }
+        bind();
+    }
+
+    /**
+     * Shows the download queue in the dialog if showing.
+     */
+    private void bind() {
+        if (dialog == null) {
+            return;
+        }
+        emptyText.setVisibility(jobs.isEmpty() ? View.VISIBLE : View.GONE);
+        while (jobsList.getChildCount() > jobs.size()) {
+            jobsList.removeViewAt(jobsList.getChildCount() - 1);
+        }
+        LayoutInflater inflater = LayoutInflater.from(activity);
+        while (jobsList.getChildCount() < jobs.size()) {
+            jobsList.addView(inflater.inflate(R.layout.tile_download_job_row, jobsList, false));
+        }
+        for (int i = 0; i < jobs.size(); i++) {
+            bindRow(jobsList.getChildAt(i), jobs.get(i), i);
+        }
+    }
+
+    /**
+     * Shows a download in its row.
+     *
+     * @param row      The row.
+     * @param progress The download progress.
+     * @param index    The place of the download in the queue.
+     */
+    private void bindRow(View row, TileDownloadProgress progress, int index) {
+        TileDownloadManager manager = TileDownloadManager.getInstance();
+        String database = progress.getDatabase();
+        String tableName = progress.getTableName();
+
+        ((TextView) row.findViewById(R.id.tile_download_job_name)).setText(getName(progress));
+        ((TextView) row.findViewById(R.id.tile_download_job_status)).setText(getStatus(progress));
+
+        ProgressBar progressBar = row.findViewById(R.id.tile_download_job_progress);
+        progressBar.setIndeterminate(progress.isRunning() && progress.getMax() == 0);
+        progressBar.setMax(progress.getMax());
+        progressBar.setProgress(progress.getProgress());
+
+        Button moveUp = row.findViewById(R.id.tile_download_job_move_up);
+        moveUp.setEnabled(index > 0);
+        moveUp.setOnClickListener(v -> manager.moveUp(database, tableName));
+
+        Button pause = row.findViewById(R.id.tile_download_job_pause);
+        boolean paused = progress.getState() == TileDownloadProgress.State.PAUSED;
+        pause.setText(paused ? R.string.tile_download_job_resume : R.string.tile_download_job_pause);
+        pause.setEnabled(!progress.isDone());
+        pause.setOnClickListener(v -> {
+            if (paused) {
+                try {
+                    manager.resume(activity, viewModel, database, tableName);
+                } catch (Exception e) {
+                    GeoPackageUtils.showMessage(activity,
+                            activity.getString(R.string.geopackage_create_tiles_label),
+                            "Error resuming tile layer: \n\n" + e.getMessage());
+                }
+            } else {
+                manager.pause(database, tableName);
+            }
+        });
+
+        Button cancel = row.findViewById(R.id.tile_download_job_cancel);
+        cancel.setEnabled(!progress.isDone());
+        cancel.setOnClickListener(v -> manager.cancel(database, tableName));
+    }
+
+    /**
+     * Gets the name shown for a download.
+     *
+     * @param progress The download progress.
+     * @return The GeoPackage and table name.
+     */
+    private static String getName(TileDownloadProgress progress) {
+        return progress.getDatabase() + " - " + progress.getTableName();
+    }
+
+    /**
+     * Describes the state of a download.
+     *
+     * @param progress The download progress.
+     * @return The status text.
+     */
+    private static String getStatus(TileDownloadProgress progress) {
+        String status;
+        switch (progress.getState()) {
+            case QUEUED:
+                status = "Queued";
+                break;
+            case RUNNING:
+                status = String.format(Locale.getDefault(), "%,d/%,d tiles",
+                        progress.getProgress(), progress.getMax());
+                if (progress.getMetrics() != null) {
+                    status += "\n" + progress.getMetrics().describe();
+                }
+                break;
+            case PAUSED:
+                status = String.format(Locale.getDefault(), "Paused at %,d/%,d tiles",
+                        progress.getProgress(), progress.getMax());
+                break;
+            case FINISHED:
+                status = "Finished";
+                break;
+            default:
+                status = "Cancelled";
+                break;
+        }
+        if (progress.getMessage() != null) {
+            status += "\n" + progress.getMessage();
+        }
+
+        return status;
+    }
+}
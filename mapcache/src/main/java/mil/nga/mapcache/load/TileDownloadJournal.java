@@ -0,0 +1,524 @@
+package mil.nga.mapcache.load;
+
+import android.content.ContentValues;
+import android.graphics.Bitmap.CompressFormat;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.attributes.AttributesColumn;
+import mil.nga.geopackage.attributes.AttributesCursor;
+import mil.nga.geopackage.attributes.AttributesDao;
+import mil.nga.geopackage.attributes.AttributesRow;
+import mil.nga.geopackage.attributes.AttributesTableMetadata;
+import mil.nga.geopackage.db.GeoPackageDataType;
+import mil.nga.geopackage.extension.nga.scale.TileScaling;
+import mil.nga.geopackage.extension.nga.scale.TileScalingType;
+
+/**
+ * Persists the definition and progress of tile downloads inside the GeoPackage so a partially
+ * downloaded tile layer can be resumed.  Tiles are generated zoom by zoom and x column by x column,
+ * so the progress of a download is stored compactly as the last zoom level and x column that were
+ * completely written.  Finished downloads keep their entry so the layer can be refreshed.  The
+ * request headers of a download are not journaled since the GeoPackage may be shared, see
+ * {@link TileDownloadHeaders}.
+ */
+public class TileDownloadJournal {
+
+    /**
+     * The name of the attributes table containing the journal.
+     */
+    public static final String TABLE_NAME = "mapcache_tile_download_journal";
+
+    /**
+     * Tile table name column.
+     */
+    private static final String COLUMN_TILE_TABLE = "tile_table";
+
+    /**
+     * Tile url column.
+     */
+    private static final String COLUMN_URL = "url";
+
+    /**
+     * Min zoom column.
+     */
+    private static final String COLUMN_MIN_ZOOM = "min_zoom";
+
+    /**
+     * Max zoom column.
+     */
+    private static final String COLUMN_MAX_ZOOM = "max_zoom";
+
+    /**
+     * Bounding box min longitude column.
+     */
+    private static final String COLUMN_MIN_LON = "min_lon";
+
+    /**
+     * Bounding box min latitude column.
+     */
+    private static final String COLUMN_MIN_LAT = "min_lat";
+
+    /**
+     * Bounding box max longitude column.
+     */
+    private static final String COLUMN_MAX_LON = "max_lon";
+
+    /**
+     * Bounding box max latitude column.
+     */
+    private static final String COLUMN_MAX_LAT = "max_lat";
+
+    /**
+     * Projection authority column.
+     */
+    private static final String COLUMN_AUTHORITY = "authority";
+
+    /**
+     * Projection code column.
+     */
+    private static final String COLUMN_CODE = "code";
+
+    /**
+     * XYZ tiles column, 1 if xyz tiles.
+     */
+    private static final String COLUMN_XYZ = "xyz";
+
+    /**
+     * Last completed zoom level column.
+     */
+    private static final String COLUMN_ZOOM = "completed_zoom";
+
+    /**
+     * Last completed x column within the completed zoom level column.
+     */
+    private static final String COLUMN_X = "completed_x";
+
+    /**
+     * Lowest downloaded zoom level column.
+     */
+    private static final String COLUMN_DOWNLOAD_MIN_ZOOM = "download_min_zoom";
+
+    /**
+     * Compress format column, the name of the format or null to store tiles as downloaded.
+     */
+    private static final String COLUMN_COMPRESS_FORMAT = "compress_format";
+
+    /**
+     * Compress quality column.
+     */
+    private static final String COLUMN_COMPRESS_QUALITY = "compress_quality";
+
+    /**
+     * Tile scaling type column, null if the layer isn't scaled.
+     */
+    private static final String COLUMN_SCALING_TYPE = "scaling_type";
+
+    /**
+     * Tile scaling zoom in levels column.
+     */
+    private static final String COLUMN_SCALING_ZOOM_IN = "scaling_zoom_in";
+
+    /**
+     * Tile scaling zoom out levels column.
+     */
+    private static final String COLUMN_SCALING_ZOOM_OUT = "scaling_zoom_out";
+
+    /**
+     * The download definition and progress for a single tile table.
+     */
+    public static class Entry {
+
+        /**
+         * The tile table name.
+         */
+        public String tableName;
+
+        /**
+         * The tile url.
+         */
+        public String url;
+
+        /**
+         * The min zoom.
+         */
+        public int minZoom;
+
+        /**
+         * The max zoom.
+         */
+        public int maxZoom;
+
+        /**
+         * The WGS84 bounding box being downloaded.
+         */
+        public BoundingBox boundingBox;
+
+        /**
+         * The projection authority.
+         */
+        public String authority;
+
+        /**
+         * The projection code.
+         */
+        public String code;
+
+        /**
+         * True if xyz tiles.
+         */
+        public boolean xyzTiles;
+
+        /**
+         * Any request headers used for the download, these are not journaled.
+         */
+        public Map<String, List<String>> headers;
+
+        /**
+         * The image format the tiles are stored in, or null to store them as downloaded.
+         */
+        public CompressFormat compressFormat;
+
+        /**
+         * The compression quality.
+         */
+        public Integer compressQuality;
+
+        /**
+         * The tile scaling of the layer, or null if not scaled.
+         */
+        public TileScaling scaling;
+
+        /**
+         * The last zoom level with completed columns, or -1 if nothing has completed.
+         */
+        public int completedZoom = -1;
+
+        /**
+         * The last completed x column within the completed zoom level, or -1 if none.
+         */
+        public long completedX = -1;
+
+        /**
+         * The lowest zoom level downloaded from the server, the zoom levels below it are built from
+         * the downloaded tiles.  Every zoom level is downloaded when this isn't above the min zoom.
+         */
+        public int downloadMinZoom = -1;
+
+        /**
+         * Gets the lowest zoom level downloaded from the server.
+         *
+         * @return The lowest downloaded zoom level.
+         */
+        public int getDownloadMinZoom() {
+            return Math.min(Math.max(minZoom, downloadMinZoom), maxZoom);
+        }
+
+        /**
+         * Checks if the tile has already been downloaded.
+         *
+         * @param z The zoom level of the tile.
+         * @param x The x coordinate of the tile.
+         * @return True if the tile's column was completed.
+         */
+        public boolean isCompleted(int z, long x) {
+            return z < completedZoom || (z == completedZoom && x <= completedX);
+        }
+
+        /**
+         * Checks if every tile in the download has been attempted.
+         *
+         * @return True if the download ran to the end.
+         */
+        public boolean isFinished() {
+            return completedZoom > maxZoom;
+        }
+    }
+
+    /**
+     * The GeoPackage containing the journal.
+     */
+    private final GeoPackage geoPackage;
+
+    /**
+     * Constructor.
+     *
+     * @param geoPackage The GeoPackage containing the journal.
+     */
+    public TileDownloadJournal(GeoPackage geoPackage) {
+        this.geoPackage = geoPackage;
+    }
+
+    /**
+     * Records the start of a tile download, replacing any previous entry for the table.
+     *
+     * @param entry The download definition.
+     */
+    public void start(Entry entry) {
+        try {
+            AttributesDao dao = getDao(true);
+            delete(dao, entry.tableName);
+            AttributesRow row = dao.newRow();
+            row.setValue(COLUMN_TILE_TABLE, entry.tableName);
+            row.setValue(COLUMN_URL, entry.url);
+            row.setValue(COLUMN_MIN_ZOOM, (long) entry.minZoom);
+            row.setValue(COLUMN_MAX_ZOOM, (long) entry.maxZoom);
+            row.setValue(COLUMN_MIN_LON, entry.boundingBox.getMinLongitude());
+            row.setValue(COLUMN_MIN_LAT, entry.boundingBox.getMinLatitude());
+            row.setValue(COLUMN_MAX_LON, entry.boundingBox.getMaxLongitude());
+            row.setValue(COLUMN_MAX_LAT, entry.boundingBox.getMaxLatitude());
+            row.setValue(COLUMN_AUTHORITY, entry.authority);
+            row.setValue(COLUMN_CODE, entry.code);
+            row.setValue(COLUMN_XYZ, entry.xyzTiles ? 1L : 0L);
+            if (entry.compressFormat != null) {
+                row.setValue(COLUMN_COMPRESS_FORMAT, entry.compressFormat.name());
+            }
+            if (entry.compressQuality != null) {
+                row.setValue(COLUMN_COMPRESS_QUALITY, (long) entry.compressQuality);
+            }
+            if (entry.scaling != null && entry.scaling.getScalingType() != null) {
+                row.setValue(COLUMN_SCALING_TYPE, entry.scaling.getScalingType().name());
+                row.setValue(COLUMN_SCALING_ZOOM_IN, entry.scaling.getZoomIn());
+                row.setValue(COLUMN_SCALING_ZOOM_OUT, entry.scaling.getZoomOut());
+            }
+            row.setValue(COLUMN_ZOOM, (long) entry.completedZoom);
+            row.setValue(COLUMN_X, entry.completedX);
+            row.setValue(COLUMN_DOWNLOAD_MIN_ZOOM, (long) entry.getDownloadMinZoom());
+            dao.create(row);
+        } catch (Exception e) {
+            Log.e(TileDownloadJournal.class.getSimpleName(), "Failed to journal download of "
+                    + entry.tableName, e);
+        }
+    }
+
+    /**
+     * Records that every tile in the x column for the zoom level has been written.
+     *
+     * @param tableName The tile table name.
+     * @param zoom      The zoom level.
+     * @param x         The completed x column.
+     */
+    public void columnCompleted(String tableName, int zoom, long x) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                AttributesRow row = queryRow(dao, tableName);
+                if (row != null) {
+                    row.setValue(COLUMN_ZOOM, (long) zoom);
+                    row.setValue(COLUMN_X, x);
+                    dao.update(row);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadJournal.class.getSimpleName(), "Failed to journal progress of "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Marks every tile in the download as attempted but keeps the entry, so the download
+     * definition is still available for retrying failed tiles or refreshing the layer.
+     *
+     * @param tableName The tile table name.
+     */
+    public void finish(String tableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                AttributesRow row = queryRow(dao, tableName);
+                if (row != null) {
+                    long maxZoom = ((Number) row.getValue(COLUMN_MAX_ZOOM)).longValue();
+                    row.setValue(COLUMN_ZOOM, maxZoom + 1);
+                    row.setValue(COLUMN_X, -1L);
+                    dao.update(row);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadJournal.class.getSimpleName(), "Failed to finish journal for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Moves the journal entry to the renamed tile table.
+     *
+     * @param tableName    The tile table name.
+     * @param newTableName The new tile table name.
+     */
+    public void rename(String tableName, String newTableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                delete(dao, newTableName);
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_TILE_TABLE, newTableName);
+                dao.update(values, COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadJournal.class.getSimpleName(), "Failed to rename journal for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Removes the journal entry of an abandoned download or deleted tile table.
+     *
+     * @param tableName The tile table name.
+     */
+    public void complete(String tableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                delete(dao, tableName);
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadJournal.class.getSimpleName(), "Failed to complete journal for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Gets the journal entry for a download of the tile table that is unfinished or finished with
+     * failed tiles.
+     *
+     * @param tableName The tile table name.
+     * @return The entry or null if the table doesn't have a journaled download.
+     */
+    public Entry getEntry(String tableName) {
+        Entry entry = null;
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null && geoPackage.getTileTables().contains(tableName)) {
+                AttributesRow row = queryRow(dao, tableName);
+                if (row != null) {
+                    entry = new Entry();
+                    entry.tableName = tableName;
+                    entry.url = (String) row.getValue(COLUMN_URL);
+                    entry.minZoom = ((Number) row.getValue(COLUMN_MIN_ZOOM)).intValue();
+                    entry.maxZoom = ((Number) row.getValue(COLUMN_MAX_ZOOM)).intValue();
+                    entry.boundingBox = new BoundingBox(
+                            ((Number) row.getValue(COLUMN_MIN_LON)).doubleValue(),
+                            ((Number) row.getValue(COLUMN_MIN_LAT)).doubleValue(),
+                            ((Number) row.getValue(COLUMN_MAX_LON)).doubleValue(),
+                            ((Number) row.getValue(COLUMN_MAX_LAT)).doubleValue());
+                    entry.authority = (String) row.getValue(COLUMN_AUTHORITY);
+                    entry.code = (String) row.getValue(COLUMN_CODE);
+                    entry.xyzTiles = ((Number) row.getValue(COLUMN_XYZ)).intValue() == 1;
+                    String compressFormat = (String) row.getValue(COLUMN_COMPRESS_FORMAT);
+                    if (compressFormat != null) {
+                        entry.compressFormat = CompressFormat.valueOf(compressFormat);
+                    }
+                    Object compressQuality = row.getValue(COLUMN_COMPRESS_QUALITY);
+                    if (compressQuality != null) {
+                        entry.compressQuality = ((Number) compressQuality).intValue();
+                    }
+                    String scalingType = (String) row.getValue(COLUMN_SCALING_TYPE);
+                    if (scalingType != null) {
+                        entry.scaling = new TileScaling(TileScalingType.valueOf(scalingType),
+                                getLong(row, COLUMN_SCALING_ZOOM_IN),
+                                getLong(row, COLUMN_SCALING_ZOOM_OUT));
+                    }
+                    entry.completedZoom = ((Number) row.getValue(COLUMN_ZOOM)).intValue();
+                    entry.completedX = ((Number) row.getValue(COLUMN_X)).longValue();
+                    entry.downloadMinZoom =
+                            ((Number) row.getValue(COLUMN_DOWNLOAD_MIN_ZOOM)).intValue();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadJournal.class.getSimpleName(), "Failed to read journal for "
+                    + tableName, e);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Gets the value of an integer column that may be null.
+     *
+     * @param row    The journal row.
+     * @param column The column name.
+     * @return The value or null.
+     */
+    private static Long getLong(AttributesRow row, String column) {
+        Object value = row.getValue(column);
+        return value != null ? ((Number) value).longValue() : null;
+    }
+
+    /**
+     * Gets the journal dao.
+     *
+     * @param create True if the journal table should be created if it doesn't exist.
+     * @return The dao or null if the table doesn't exist and create is false.
+     */
+    private AttributesDao getDao(boolean create) {
+        AttributesDao dao = null;
+        if (geoPackage.getAttributesTables().contains(TABLE_NAME)) {
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        } else if (create) {
+            List<AttributesColumn> columns = new ArrayList<>();
+            columns.add(AttributesColumn.createColumn(COLUMN_TILE_TABLE, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_URL, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MIN_ZOOM, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MAX_ZOOM, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MIN_LON, GeoPackageDataType.DOUBLE, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MIN_LAT, GeoPackageDataType.DOUBLE, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MAX_LON, GeoPackageDataType.DOUBLE, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_MAX_LAT, GeoPackageDataType.DOUBLE, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_AUTHORITY, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_CODE, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_XYZ, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ZOOM, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_X, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_DOWNLOAD_MIN_ZOOM, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_COMPRESS_FORMAT, GeoPackageDataType.TEXT));
+            columns.add(AttributesColumn.createColumn(COLUMN_COMPRESS_QUALITY, GeoPackageDataType.INTEGER));
+            columns.add(AttributesColumn.createColumn(COLUMN_SCALING_TYPE, GeoPackageDataType.TEXT));
+            columns.add(AttributesColumn.createColumn(COLUMN_SCALING_ZOOM_IN, GeoPackageDataType.INTEGER));
+            columns.add(AttributesColumn.createColumn(COLUMN_SCALING_ZOOM_OUT, GeoPackageDataType.INTEGER));
+            geoPackage.createAttributesTable(AttributesTableMetadata.create(TABLE_NAME, columns));
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        }
+
+        return dao;
+    }
+
+    /**
+     * Queries for the journal row of the tile table.
+     *
+     * @param dao       The journal dao.
+     * @param tableName The tile table name.
+     * @return The row or null if there isn't one.
+     */
+    private AttributesRow queryRow(AttributesDao dao, String tableName) {
+        AttributesRow row = null;
+        AttributesCursor cursor = dao.queryForEq(COLUMN_TILE_TABLE, tableName);
+        try {
+            if (cursor.moveToNext()) {
+                row = cursor.getRow();
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return row;
+    }
+
+    /**
+     * Deletes the journal row of the tile table.
+     *
+     * @param dao       The journal dao.
+     * @param tableName The tile table name.
+     */
+    private void delete(AttributesDao dao, String tableName) {
+        AttributesRow row = queryRow(dao, tableName);
+        while (row != null) {
+            dao.deleteById(row.getId());
+            row = queryRow(dao, tableName);
+        }
+    }
+}
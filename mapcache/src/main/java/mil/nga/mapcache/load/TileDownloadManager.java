@@ -0,0 +1,602 @@
+package mil.nga.mapcache.load;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
+
+/**
+ * Queues and runs tile downloads apart from any screen.  Downloads across any number of GeoPackages
+ * wait in a queue and a few of them run at once on their own threads inside a foreground service,
+ * so they keep going when the app is in the background.  Every download's requests go through the
+ * shared request scheduler and per host limits, so running more downloads at once shares the same
+ * request budget rather than adding to it.  Downloads into the same GeoPackage run one at a time,
+ * since they would share its one connection and wait on each other's write transactions anyway, so
+ * another GeoPackage's download gets the slot.  The queue is published as live data so whichever
+ * screen is showing can follow along and pause, resume, reorder or cancel the downloads.  The queued
+ * downloads are remembered so downloads cut short by the app being killed can be resumed from their
+ * journals the next time the app starts.  Other long running work on a tile table, such as
+ * recompressing its tiles, waits in the same queue.
+ */
+public class TileDownloadManager {
+
+    /**
+     * The shared preferences file remembering the queued downloads.
+     */
+    private static final String JOBS_PREFERENCES = "tile_download_jobs";
+
+    /**
+     * Separates the GeoPackage and table names in the remembered download keys.
+     */
+    private static final String KEY_SEPARATOR = "\n";
+
+    /**
+     * The instance of this class.
+     */
+    private static final TileDownloadManager instance = new TileDownloadManager();
+
+    /**
+     * Work on a tile table that runs from the queue.
+     */
+    public interface Task extends Runnable {
+
+        /**
+         * Gets the name of the GeoPackage the task works on.
+         *
+         * @return The GeoPackage name.
+         */
+        String getDatabase();
+
+        /**
+         * Gets the name of the tile table the task works on.
+         *
+         * @return The tile table name.
+         */
+        String getTableName();
+
+        /**
+         * Stops the task, called from any thread.
+         */
+        void cancel();
+
+        /**
+         * Stops the task so it can be resumed later, called from any thread.
+         */
+        void pause();
+    }
+
+    /**
+     * A download in the queue.
+     */
+    private static class Job {
+
+        /**
+         * The GeoPackage name.
+         */
+        final String database;
+
+        /**
+         * The tile table name.
+         */
+        final String tableName;
+
+        /**
+         * The download, or null when a download was paused after it had started.
+         */
+        Task task;
+
+        /**
+         * The latest progress of the download.
+         */
+        TileDownloadProgress progress;
+
+        /**
+         * True while the download is running.
+         */
+        boolean running = false;
+
+        /**
+         * True if the download was paused.
+         */
+        boolean paused = false;
+
+        /**
+         * Constructor.
+         *
+         * @param task The download.
+         */
+        Job(Task task) {
+            this.database = task.getDatabase();
+            this.tableName = task.getTableName();
+            this.task = task;
+            this.progress = new TileDownloadProgress(database, tableName,
+                    TileDownloadProgress.State.QUEUED, null, 0, 0, null);
+        }
+
+        /**
+         * Checks if this is the download into the tile table.
+         *
+         * @param database  The GeoPackage name.
+         * @param tableName The tile table name.
+         * @return True if it's the same tile table.
+         */
+        boolean is(String database, String tableName) {
+            return this.database.equals(database) && this.tableName.equals(tableName);
+        }
+    }
+
+    /**
+     * The progress of every download in queue order.
+     */
+    private final MutableLiveData<List<TileDownloadProgress>> jobsProgress =
+            new MutableLiveData<>(Collections.emptyList());
+
+    /**
+     * The final progress of the downloads that ended but haven't been shown on a screen yet.
+     */
+    private final MutableLiveData<List<TileDownloadProgress>> endedProgress =
+            new MutableLiveData<>(Collections.emptyList());
+
+    /**
+     * The downloads that ended but haven't been shown on a screen yet, in the order they ended.
+     */
+    private final List<TileDownloadProgress> ended = new ArrayList<>();
+
+    /**
+     * Runs the downloads.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * The downloads that are queued, running or paused, in queue order.
+     */
+    private final List<Job> jobs = new ArrayList<>();
+
+    /**
+     * The number of downloads to run at once.
+     */
+    private int maxRunningJobs = 1;
+
+    /**
+     * The application context the queue is remembered and the download service started with.
+     */
+    private Context context = null;
+
+    /**
+     * True once interrupted downloads were resumed, so they are only resumed once per process.
+     */
+    private boolean resumedInterrupted = false;
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return This class instance.
+     */
+    public static TileDownloadManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Private constructor, keep it a singleton.
+     */
+    private TileDownloadManager() {
+    }
+
+    /**
+     * Sets the context the queue is remembered and the download service started with, before
+     * any download is queued.
+     *
+     * @param context The context, only its application context is kept.
+     */
+    public synchronized void setContext(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Gets the progress of the queued, running and paused downloads.
+     *
+     * @return The progress of each download in queue order.
+     */
+    public LiveData<List<TileDownloadProgress>> getJobs() {
+        return jobsProgress;
+    }
+
+    /**
+     * Gets the downloads that finished, were cancelled, paused or failed since the last call to
+     * clearEnded, so the screen showing can report how they went and refresh the layers.
+     *
+     * @return The final progress of each ended download, in the order they ended.
+     */
+    public LiveData<List<TileDownloadProgress>> getEnded() {
+        return endedProgress;
+    }
+
+    /**
+     * Forgets the ended downloads once a screen has shown them.
+     */
+    public synchronized void clearEnded() {
+        if (!ended.isEmpty()) {
+            ended.clear();
+            endedProgress.postValue(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Checks if any downloads are running or waiting to run.
+     *
+     * @return True if downloading.
+     */
+    public synchronized boolean isDownloading() {
+        for (Job job : jobs) {
+            if (job.running || !job.paused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the tile table is already in the download queue.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     * @return True if queued, running, or paused and able to continue by itself.
+     */
+    public synchronized boolean isQueued(String database, String tableName) {
+        Job job = getJob(database, tableName);
+        return job != null && job.task != null;
+    }
+
+    /**
+     * Checks if the tile table has anything in the queue, including a paused download that will
+     * be resumed by a new download.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     * @return True if the tile table is in the queue.
+     */
+    public synchronized boolean contains(String database, String tableName) {
+        return getJob(database, tableName) != null;
+    }
+
+    /**
+     * Sets the number of downloads to run at once.
+     *
+     * @param maxRunningJobs The number of downloads to run at once.
+     */
+    public synchronized void setMaxRunningJobs(int maxRunningJobs) {
+        this.maxRunningJobs = Math.max(1, maxRunningJobs);
+        schedule();
+    }
+
+    /**
+     * Cancels the download into the tile table and takes it out of the queue.  A download that
+     * had started keeps its partial layer, which can be resumed later.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     */
+    public synchronized void cancel(String database, String tableName) {
+        Job job = getJob(database, tableName);
+        if (job == null) {
+            return;
+        }
+        job.paused = false;
+        if (job.running) {
+            job.task.cancel();
+        } else if (job.task != null) {
+            // The cancelled download still runs to clean up after itself, so it goes first in the
+            // queue and waits like any other download for its GeoPackage to be free
+            job.task.cancel();
+            jobs.remove(job);
+            jobs.add(0, job);
+            changed();
+            schedule();
+        } else {
+            jobs.remove(job);
+            changed();
+        }
+    }
+
+    /**
+     * Pauses the download into the tile table.  The paused download keeps its place in the queue
+     * until it's resumed.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     */
+    public synchronized void pause(String database, String tableName) {
+        Job job = getJob(database, tableName);
+        if (job == null || job.paused) {
+            return;
+        }
+        job.paused = true;
+        job.progress = job.progress.withState(TileDownloadProgress.State.PAUSED);
+        if (job.running) {
+            job.task.pause();
+        }
+        changed();
+    }
+
+    /**
+     * Resumes the paused download into the tile table.
+     *
+     * @param activity  The main activity.
+     * @param viewModel Used to get the geoPackage.
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     */
+    public void resume(Activity activity, GeoPackageViewModel viewModel, String database,
+                       String tableName) {
+        synchronized (this) {
+            Job job = getJob(database, tableName);
+            if (job == null || !job.paused) {
+                return;
+            }
+            if (job.running) {
+                throw new GeoPackageException("The download of " + tableName
+                        + " is still pausing");
+            }
+            if (job.task != null) {
+                // Paused before it started, or a task that continues where it stopped
+                job.paused = false;
+                job.progress = job.progress.withState(TileDownloadProgress.State.QUEUED);
+                changed();
+                schedule();
+                return;
+            }
+        }
+
+        // The new download takes the paused download's place in the queue
+        LoadTilesTask.resumeTiles(activity, viewModel, database, tableName);
+    }
+
+    /**
+     * Moves the download into the tile table one place up the queue, so it starts sooner.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     */
+    public synchronized void moveUp(String database, String tableName) {
+        Job job = getJob(database, tableName);
+        int index = jobs.indexOf(job);
+        if (index > 0) {
+            Collections.swap(jobs, index, index - 1);
+            changed();
+        }
+    }
+
+    /**
+     * Resumes the downloads that were queued or running when the app was last killed, in their
+     * queue order.  Only resumes them the first time it's called after the app starts.
+     *
+     * @param activity  The main activity.
+     * @param viewModel Used to get the geoPackages.
+     */
+    public void resumeInterrupted(Activity activity, GeoPackageViewModel viewModel) {
+        synchronized (this) {
+            if (resumedInterrupted) {
+                return;
+            }
+            resumedInterrupted = true;
+        }
+
+        SharedPreferences remembered;
+        synchronized (this) {
+            remembered = getRemembered(context);
+        }
+        Map<Integer, String> keys = new TreeMap<>();
+        for (Map.Entry<String, ?> entry : remembered.getAll().entrySet()) {
+            if (entry.getValue() instanceof Integer) {
+                keys.put((Integer) entry.getValue(), entry.getKey());
+            }
+        }
+        remembered.edit().clear().apply();
+
+        for (String key : keys.values()) {
+            String[] names = key.split(KEY_SEPARATOR, 2);
+            try {
+                if (names.length == 2) {
+                    Log.i(TileDownloadManager.class.getSimpleName(), "Resuming interrupted download "
+                            + names[0] + " - " + names[1]);
+                    LoadTilesTask.resumeTiles(activity, viewModel, names[0], names[1]);
+                }
+            } catch (Exception e) {
+                Log.w(TileDownloadManager.class.getSimpleName(), "Could not resume download "
+                        + key.replace(KEY_SEPARATOR, " - "), e);
+            }
+        }
+    }
+
+    /**
+     * Queues the download, starting the download service if it isn't running.  A download
+     * resuming a paused download takes its place in the queue.
+     *
+     * @param task The download.
+     */
+    synchronized void start(Task task) {
+        maxRunningJobs = new TileDownloadSettings(context).getConcurrentJobs();
+
+        Job job = getJob(task.getDatabase(), task.getTableName());
+        if (job != null && job.task == null && task instanceof LoadTilesTask) {
+            job.task = task;
+            job.paused = false;
+            job.progress = job.progress.withState(TileDownloadProgress.State.QUEUED);
+        } else if (job != null) {
+            throw new GeoPackageException("The download of " + task.getTableName()
+                    + " is already queued");
+        } else {
+            jobs.add(new Job(task));
+        }
+        changed();
+
+        TileDownloadService.start(context);
+        schedule();
+    }
+
+    /**
+     * Publishes the progress of a download.
+     *
+     * @param task             The download.
+     * @param downloadProgress The download progress.
+     */
+    synchronized void publish(Task task, TileDownloadProgress downloadProgress) {
+        for (Job job : jobs) {
+            if (job.task == task) {
+                job.progress = job.paused
+                        ? downloadProgress.withState(TileDownloadProgress.State.PAUSED)
+                        : downloadProgress;
+                publishJobs();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Publishes the final progress of a download that ended, to be shown by the screen showing.
+     *
+     * @param task             The download.
+     * @param downloadProgress The final download progress.
+     */
+    synchronized void ended(Task task, TileDownloadProgress downloadProgress) {
+        publish(task, downloadProgress);
+        for (Job job : jobs) {
+            if (job.task == task) {
+                downloadProgress = job.progress;
+                break;
+            }
+        }
+        ended.add(downloadProgress);
+        endedProgress.postValue(Collections.unmodifiableList(new ArrayList<>(ended)));
+    }
+
+    /**
+     * Starts the next downloads in the queue while fewer than the maximum are running, skipping
+     * downloads into a GeoPackage that already has one running.
+     */
+    private synchronized void schedule() {
+        int running = 0;
+        Set<String> busyDatabases = new HashSet<>();
+        for (Job job : jobs) {
+            if (job.running) {
+                running++;
+                busyDatabases.add(job.database);
+            }
+        }
+        for (Job job : jobs) {
+            if (running >= maxRunningJobs) {
+                break;
+            }
+            if (!job.running && !job.paused && job.task != null
+                    && busyDatabases.add(job.database)) {
+                job.running = true;
+                job.progress = job.progress.withState(TileDownloadProgress.State.RUNNING);
+                running++;
+                Task task = job.task;
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        finished(job);
+                    }
+                });
+            }
+        }
+        publishJobs();
+    }
+
+    /**
+     * Takes the download out of the queue once it has finished or was cancelled, or keeps it
+     * in place if it was paused.  Stops the download service when nothing is left to download.
+     *
+     * @param job The download.
+     */
+    private synchronized void finished(Job job) {
+        job.running = false;
+        if (job.paused) {
+            if (job.task instanceof LoadTilesTask) {
+                // A paused download is resumed from its journal by a new task
+                job.task = null;
+            }
+            job.progress = job.progress.withState(TileDownloadProgress.State.PAUSED);
+        } else {
+            jobs.remove(job);
+        }
+        changed();
+        schedule();
+        if (!isDownloading()) {
+            TileDownloadService.stop(context);
+        }
+    }
+
+    /**
+     * Remembers and publishes the queue after it changed.
+     */
+    private void changed() {
+        // A paused download is resumed by hand, only downloads cut short by the app being killed
+        // are resumed on start
+        SharedPreferences.Editor editor = getRemembered(context).edit().clear();
+        int order = 0;
+        for (Job job : jobs) {
+            if (!job.paused && job.task instanceof LoadTilesTask) {
+                editor.putInt(job.database + KEY_SEPARATOR + job.tableName, order++);
+            }
+        }
+        editor.apply();
+        publishJobs();
+    }
+
+    /**
+     * Publishes the progress of every download.
+     */
+    private void publishJobs() {
+        List<TileDownloadProgress> progress = new ArrayList<>();
+        for (Job job : jobs) {
+            progress.add(job.progress);
+        }
+        jobsProgress.postValue(Collections.unmodifiableList(progress));
+    }
+
+    /**
+     * Gets the download into the tile table.
+     *
+     * @param database  The GeoPackage name.
+     * @param tableName The tile table name.
+     * @return The download, or null if not in the queue.
+     */
+    private Job getJob(String database, String tableName) {
+        for (Job job : jobs) {
+            if (job.is(database, tableName)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the shared preferences remembering the queued downloads.
+     *
+     * @param context The context.
+     * @return The queue order of the downloads keyed by GeoPackage and table name.
+     */
+    private static SharedPreferences getRemembered(Context context) {
+        return context.getApplicationContext().getSharedPreferences(JOBS_PREFERENCES,
+                Context.MODE_PRIVATE);
+    }
+}
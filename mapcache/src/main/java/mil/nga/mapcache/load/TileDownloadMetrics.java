@@ -0,0 +1,435 @@
+package mil.nga.mapcache.load;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+import mil.nga.geopackage.io.GeoPackageIOUtils;
+
+/**
+ * Measures a tile download: the responses' latencies and sizes, the failures, and the rate tiles
+ * are done at.  Rates shown while downloading are taken over the last few seconds so they follow
+ * the server as it speeds up or slows down, the totals kept with the layer are over the whole
+ * download.  Latencies are counted in a histogram of buckets growing by a quarter of a doubling,
+ * so percentiles are within about 19% and recording a response takes constant time and memory.
+ */
+public class TileDownloadMetrics {
+
+    /**
+     * The latency buckets per doubling of the latency.
+     */
+    private static final int BUCKETS_PER_DOUBLING = 4;
+
+    /**
+     * The number of latency buckets, the last bucket counts every latency above about 15 minutes.
+     */
+    private static final int BUCKET_COUNT = 20 * BUCKETS_PER_DOUBLING;
+
+    /**
+     * The milliseconds of progress the live rates are taken over.
+     */
+    private static final long RATE_WINDOW_MILLIS = 10000;
+
+    /**
+     * The time the download started.
+     */
+    private final long startTime;
+
+    /**
+     * The number of bytes received.
+     */
+    private long bytes = 0;
+
+    /**
+     * The sum of the response latencies in milliseconds.
+     */
+    private long latencySum = 0;
+
+    /**
+     * The number of responses in each latency bucket.
+     */
+    private final int[] latencies = new int[BUCKET_COUNT];
+
+    /**
+     * The number of tiles that failed to download.
+     */
+    private int failedCount = 0;
+
+    /**
+     * The number of requests that were retried.
+     */
+    private int retryCount = 0;
+
+    /**
+     * The time, tiles done and bytes received at recent snapshots, oldest first.
+     */
+    private final ArrayDeque<long[]> samples = new ArrayDeque<>();
+
+    /**
+     * Constructor, the download starts now.
+     */
+    public TileDownloadMetrics() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param startTime The time the download started.
+     */
+    public TileDownloadMetrics(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Records a response from the tile server.
+     *
+     * @param latencyMillis The milliseconds until the response started, or negative if not known.
+     * @param byteCount     The number of bytes received.
+     */
+    public synchronized void recordResponse(long latencyMillis, long byteCount) {
+        bytes += Math.max(0, byteCount);
+        if (latencyMillis >= 0) {
+            latencySum += latencyMillis;
+            latencies[getBucket(latencyMillis)]++;
+        }
+    }
+
+    /**
+     * Records a tile that failed to download after retrying.
+     */
+    public synchronized void recordFailure() {
+        failedCount++;
+    }
+
+    /**
+     * Records a request that is retried.
+     */
+    public synchronized void recordRetry() {
+        retryCount++;
+    }
+
+    /**
+     * Gets the metrics now, with the rates over the last few seconds.
+     *
+     * @param tilesDone The number of tiles done.
+     * @param tileCount The number of tiles to do.
+     * @return The metrics.
+     */
+    public Summary getSummary(int tilesDone, int tileCount) {
+        return getSummary(tilesDone, tileCount, System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the metrics at a time, with the rates over the few seconds before it.
+     *
+     * @param tilesDone The number of tiles done.
+     * @param tileCount The number of tiles to do.
+     * @param now       The current time.
+     * @return The metrics.
+     */
+    public synchronized Summary getSummary(int tilesDone, int tileCount, long now) {
+        samples.addLast(new long[]{now, tilesDone, bytes});
+        while (samples.size() > 2 && now - samples.peekFirst()[0] > RATE_WINDOW_MILLIS) {
+            samples.removeFirst();
+        }
+        long[] first = samples.peekFirst();
+        long elapsed = now - first[0];
+        long tiles = tilesDone - first[1];
+        long windowBytes = bytes - first[2];
+        // Until a window has passed, measure from the start
+        if (elapsed < RATE_WINDOW_MILLIS / 2) {
+            elapsed = now - startTime;
+            tiles = tilesDone;
+            windowBytes = bytes;
+        }
+
+        double tilesPerSecond = elapsed > 0 ? tiles * 1000.0 / elapsed : 0;
+        double bytesPerSecond = elapsed > 0 ? windowBytes * 1000.0 / elapsed : 0;
+        long etaMillis = -1;
+        if (tilesPerSecond > 0 && tileCount >= tilesDone) {
+            etaMillis = Math.round((tileCount - tilesDone) * 1000.0 / tilesPerSecond);
+        }
+
+        return createSummary(now, tilesDone, tilesPerSecond, bytesPerSecond, etaMillis);
+    }
+
+    /**
+     * Gets the totals of the whole download.
+     *
+     * @param tilesDone The number of tiles done.
+     * @return The metrics, with the rates over the whole download.
+     */
+    public synchronized Summary getTotals(int tilesDone) {
+        long now = System.currentTimeMillis();
+        long elapsed = now - startTime;
+        double tilesPerSecond = elapsed > 0 ? tilesDone * 1000.0 / elapsed : 0;
+        double bytesPerSecond = elapsed > 0 ? bytes * 1000.0 / elapsed : 0;
+
+        return createSummary(now, tilesDone, tilesPerSecond, bytesPerSecond, -1);
+    }
+
+    /**
+     * Creates the summary of the metrics.
+     *
+     * @param now            The current time.
+     * @param tilesDone      The number of tiles done.
+     * @param tilesPerSecond The tiles done per second.
+     * @param bytesPerSecond The bytes received per second.
+     * @param etaMillis      The milliseconds left, or -1 if not known.
+     * @return The summary.
+     */
+    private Summary createSummary(long now, int tilesDone, double tilesPerSecond,
+                                  double bytesPerSecond, long etaMillis) {
+        int timed = 0;
+        for (int count : latencies) {
+            timed += count;
+        }
+        double averageLatency = timed > 0 ? (double) latencySum / timed : 0;
+
+        return new Summary(now - startTime, tilesDone, bytes, tilesPerSecond, bytesPerSecond,
+                averageLatency, getPercentile(0.95, timed), failedCount, retryCount, etaMillis);
+    }
+
+    /**
+     * Gets a latency percentile from the histogram.
+     *
+     * @param percentile The percentile, between 0 and 1.
+     * @param timed      The number of latencies in the histogram.
+     * @return The upper bound of the bucket containing the percentile, or 0 if none were timed.
+     */
+    private long getPercentile(double percentile, int timed) {
+        long latency = 0;
+        if (timed > 0) {
+            long rank = (long) Math.ceil(percentile * timed);
+            long counted = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                counted += latencies[bucket];
+                if (counted >= rank) {
+                    latency = getBucketLimit(bucket);
+                    break;
+                }
+            }
+        }
+
+        return latency;
+    }
+
+    /**
+     * Gets the histogram bucket of a latency.
+     *
+     * @param latencyMillis The latency in milliseconds.
+     * @return The bucket index.
+     */
+    private static int getBucket(long latencyMillis) {
+        int bucket = (int) Math.ceil(BUCKETS_PER_DOUBLING * Math.log(latencyMillis + 1)
+                / Math.log(2));
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Gets the highest latency counted in a histogram bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The latency in milliseconds.
+     */
+    private static long getBucketLimit(int bucket) {
+        return (long) Math.floor(Math.pow(2, (double) bucket / BUCKETS_PER_DOUBLING)) - 1;
+    }
+
+    /**
+     * The metrics of a download at a point in time.
+     */
+    public static class Summary {
+
+        /**
+         * The milliseconds since the download started.
+         */
+        private final long elapsedMillis;
+
+        /**
+         * The number of tiles done.
+         */
+        private final int tiles;
+
+        /**
+         * The number of bytes received.
+         */
+        private final long bytes;
+
+        /**
+         * The tiles done per second.
+         */
+        private final double tilesPerSecond;
+
+        /**
+         * The bytes received per second.
+         */
+        private final double bytesPerSecond;
+
+        /**
+         * The average response latency in milliseconds.
+         */
+        private final double averageLatencyMillis;
+
+        /**
+         * The 95th percentile response latency in milliseconds.
+         */
+        private final long p95LatencyMillis;
+
+        /**
+         * The number of tiles that failed to download.
+         */
+        private final int failedCount;
+
+        /**
+         * The number of requests that were retried.
+         */
+        private final int retryCount;
+
+        /**
+         * The milliseconds left, or -1 if not known.
+         */
+        private final long etaMillis;
+
+        /**
+         * Constructor.
+         *
+         * @param elapsedMillis        The milliseconds since the download started.
+         * @param tiles                The number of tiles done.
+         * @param bytes                The number of bytes received.
+         * @param tilesPerSecond       The tiles done per second.
+         * @param bytesPerSecond       The bytes received per second.
+         * @param averageLatencyMillis The average response latency in milliseconds.
+         * @param p95LatencyMillis     The 95th percentile response latency in milliseconds.
+         * @param failedCount          The number of tiles that failed to download.
+         * @param retryCount           The number of requests that were retried.
+         * @param etaMillis            The milliseconds left, or -1 if not known.
+         */
+        public Summary(long elapsedMillis, int tiles, long bytes, double tilesPerSecond,
+                       double bytesPerSecond, double averageLatencyMillis, long p95LatencyMillis,
+                       int failedCount, int retryCount, long etaMillis) {
+            this.elapsedMillis = elapsedMillis;
+            this.tiles = tiles;
+            this.bytes = bytes;
+            this.tilesPerSecond = tilesPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.averageLatencyMillis = averageLatencyMillis;
+            this.p95LatencyMillis = p95LatencyMillis;
+            this.failedCount = failedCount;
+            this.retryCount = retryCount;
+            this.etaMillis = etaMillis;
+        }
+
+        /**
+         * Gets the milliseconds since the download started.
+         *
+         * @return The elapsed milliseconds.
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Gets the number of tiles done.
+         *
+         * @return The tiles done.
+         */
+        public int getTiles() {
+            return tiles;
+        }
+
+        /**
+         * Gets the number of bytes received.
+         *
+         * @return The bytes received.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets the tiles done per second.
+         *
+         * @return The tiles per second.
+         */
+        public double getTilesPerSecond() {
+            return tilesPerSecond;
+        }
+
+        /**
+         * Gets the bytes received per second.
+         *
+         * @return The bytes per second.
+         */
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * Gets the average response latency.
+         *
+         * @return The average latency in milliseconds.
+         */
+        public double getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        /**
+         * Gets the 95th percentile response latency.
+         *
+         * @return The latency in milliseconds that 95% of the responses were within.
+         */
+        public long getP95LatencyMillis() {
+            return p95LatencyMillis;
+        }
+
+        /**
+         * Gets the number of tiles that failed to download.
+         *
+         * @return The failed tile count.
+         */
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * Gets the number of requests that were retried.
+         *
+         * @return The retry count.
+         */
+        public int getRetryCount() {
+            return retryCount;
+        }
+
+        /**
+         * Gets the estimated time left.
+         *
+         * @return The milliseconds left, or -1 if not known.
+         */
+        public long getEtaMillis() {
+            return etaMillis;
+        }
+
+        /**
+         * Describes the throughput and latency.
+         *
+         * @return The description.
+         */
+        public String describe() {
+            String description = String.format(Locale.getDefault(),
+                    "%.1f tiles/s, %s/s, latency avg %d ms, p95 %d ms",
+                    tilesPerSecond, GeoPackageIOUtils.formatBytes(Math.round(bytesPerSecond)),
+                    Math.round(averageLatencyMillis), p95LatencyMillis);
+            if (failedCount > 0) {
+                description += String.format(Locale.getDefault(), ", %d failed", failedCount);
+            }
+            if (etaMillis >= 0) {
+                long seconds = etaMillis / 1000;
+                description += String.format(Locale.getDefault(), ", %d:%02d:%02d left",
+                        seconds / 3600, (seconds / 60) % 60, seconds % 60);
+            }
+
+            return description;
+        }
+    }
+}
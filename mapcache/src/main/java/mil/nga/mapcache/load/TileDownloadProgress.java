@@ -0,0 +1,197 @@
+package mil.nga.mapcache.load;
+
+/**
+ * A snapshot of a tile download's progress, published by the TileDownloadManager for the screens
+ * and the download notification.
+ */
+public class TileDownloadProgress {
+
+    /**
+     * The states of a tile download.
+     */
+    public enum State {
+
+        /**
+         * The download is waiting in the queue.
+         */
+        QUEUED,
+
+        /**
+         * The tiles are being downloaded.
+         */
+        RUNNING,
+
+        /**
+         * The download was paused, it keeps its place in the queue until resumed.
+         */
+        PAUSED,
+
+        /**
+         * Every tile was downloaded.
+         */
+        FINISHED,
+
+        /**
+         * The download was cancelled, a partial layer can be resumed.
+         */
+        CANCELLED
+    }
+
+    /**
+     * The GeoPackage the tiles are downloaded into.
+     */
+    private final String database;
+
+    /**
+     * The tile table name.
+     */
+    private final String tableName;
+
+    /**
+     * The state of the download.
+     */
+    private final State state;
+
+    /**
+     * A message describing what the download is doing or how it ended, or null.
+     */
+    private final String message;
+
+    /**
+     * The number of tiles done.
+     */
+    private final int progress;
+
+    /**
+     * The number of tiles to download.
+     */
+    private final int max;
+
+    /**
+     * The download's throughput, latency and failures, or null if not measured yet.
+     */
+    private final TileDownloadMetrics.Summary metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param database       The GeoPackage the tiles are downloaded into.
+     * @param tableName      The tile table name.
+     * @param state          The state of the download.
+     * @param message        A message describing the download, or null.
+     * @param progress       The number of tiles done.
+     * @param max            The number of tiles to download.
+     * @param metrics        The download's metrics, or null if not measured yet.
+     */
+    public TileDownloadProgress(String database, String tableName, State state, String message,
+                                int progress, int max, TileDownloadMetrics.Summary metrics) {
+        this.database = database;
+        this.tableName = tableName;
+        this.state = state;
+        this.message = message;
+        this.progress = progress;
+        this.max = max;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the GeoPackage the tiles are downloaded into.
+     *
+     * @return The GeoPackage name.
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * Gets the tile table name.
+     *
+     * @return The tile table name.
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Gets the state of the download.
+     *
+     * @return The state.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Gets a message describing what the download is doing or how it ended.
+     *
+     * @return The message, or null.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the number of tiles done.
+     *
+     * @return The tiles done.
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    /**
+     * Gets the number of tiles to download.
+     *
+     * @return The tile count.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the download's throughput, latency and failures.
+     *
+     * @return The metrics, or null if not measured yet.
+     */
+    public TileDownloadMetrics.Summary getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the tiles downloaded per second.
+     *
+     * @return The tiles per second.
+     */
+    public double getTilesPerSecond() {
+        return metrics != null ? metrics.getTilesPerSecond() : 0;
+    }
+
+    /**
+     * Checks if the download is still running.
+     *
+     * @return True if running.
+     */
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    /**
+     * Checks if the download has finished or was cancelled.
+     *
+     * @return True if done.
+     */
+    public boolean isDone() {
+        return state == State.FINISHED || state == State.CANCELLED;
+    }
+
+    /**
+     * Copies the progress with a different state.
+     *
+     * @param newState The state of the copy.
+     * @return The copy.
+     */
+    public TileDownloadProgress withState(State newState) {
+        return new TileDownloadProgress(database, tableName, newState, message, progress, max,
+                metrics);
+    }
+}
@@ -0,0 +1,221 @@
+package mil.nga.mapcache.load;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Observer;
+
+import java.util.List;
+import java.util.Locale;
+
+import mil.nga.mapcache.MainActivity;
+import mil.nga.mapcache.R;
+
+/**
+ * Foreground service that keeps the app running while tiles are downloaded, so downloads continue
+ * when the app is in the background.  Holds a wake lock while running and shows the progress of
+ * the running downloads in a notification.
+ */
+public class TileDownloadService extends Service {
+
+    /**
+     * The notification channel for tile downloads.
+     */
+    private static final String CHANNEL_ID = "tile_downloads";
+
+    /**
+     * The id of the download notification.
+     */
+    private static final int NOTIFICATION_ID = 4201;
+
+    /**
+     * The fewest milliseconds between notification updates.
+     */
+    private static final long NOTIFICATION_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Keeps the cpu running while downloading.
+     */
+    private PowerManager.WakeLock wakeLock = null;
+
+    /**
+     * The time the notification was last updated.
+     */
+    private long lastNotified = 0;
+
+    /**
+     * Updates the notification with the download progress.
+     */
+    private final Observer<List<TileDownloadProgress>> progressObserver = this::updateNotification;
+
+    /**
+     * Asks for permission to show the download notification if it hasn't been granted, so the
+     * user can follow and stop downloads from outside the app.  Downloads run either way.
+     *
+     * @param activity The activity starting a download.
+     */
+    static void requestPermission(Activity activity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(activity,
+                Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(activity,
+                    new String[]{Manifest.permission.POST_NOTIFICATIONS},
+                    MainActivity.DOWNLOAD_PERMISSIONS_REQUEST_POST_NOTIFICATIONS);
+        }
+    }
+
+    /**
+     * Starts the service if it isn't running.
+     *
+     * @param context The context.
+     */
+    static void start(Context context) {
+        ContextCompat.startForegroundService(context,
+                new Intent(context.getApplicationContext(), TileDownloadService.class));
+    }
+
+    /**
+     * Stops the service from the main thread, after it has had the chance to start in the
+     * foreground.
+     *
+     * @param context The context.
+     */
+    static void stop(Context context) {
+        Context appContext = context.getApplicationContext();
+        new Handler(Looper.getMainLooper()).post(() -> {
+            if (!TileDownloadManager.getInstance().isDownloading()) {
+                appContext.stopService(new Intent(appContext, TileDownloadService.class));
+            }
+        });
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.tile_download_channel_name), NotificationManager.IMPORTANCE_LOW);
+        getSystemService(NotificationManager.class).createNotificationChannel(channel);
+
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getClass().getName());
+        wakeLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Notification notification = buildNotification(
+                TileDownloadManager.getInstance().getJobs().getValue());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification,
+                    ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+        if (!TileDownloadManager.getInstance().isDownloading()) {
+            stopSelf();
+        } else if (!wakeLock.isHeld()) {
+            wakeLock.acquire();
+            TileDownloadManager.getInstance().getJobs().observeForever(progressObserver);
+        }
+
+        // Downloads need the app's screens for servers requiring a web view or a login, so
+        // interrupted downloads are resumed when the app starts rather than by restarting here
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        TileDownloadManager.getInstance().getJobs().removeObserver(progressObserver);
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+        super.onDestroy();
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /**
+     * Shows the download progress in the notification.
+     *
+     * @param jobs The progress of each download in queue order.
+     */
+    private void updateNotification(List<TileDownloadProgress> jobs) {
+        long now = System.currentTimeMillis();
+        if (now - lastNotified >= NOTIFICATION_INTERVAL_MILLIS) {
+            lastNotified = now;
+            getSystemService(NotificationManager.class).notify(NOTIFICATION_ID,
+                    buildNotification(jobs));
+        }
+    }
+
+    /**
+     * Builds the download notification, showing the first running download and how many others
+     * are running or queued.
+     *
+     * @param jobs The progress of each download in queue order, or null.
+     * @return The notification.
+     */
+    private Notification buildNotification(List<TileDownloadProgress> jobs) {
+        TileDownloadProgress progress = null;
+        int waiting = 0;
+        if (jobs != null) {
+            for (TileDownloadProgress job : jobs) {
+                if (progress == null && job.isRunning()) {
+                    progress = job;
+                } else if (job.isRunning() || job.getState() == TileDownloadProgress.State.QUEUED) {
+                    waiting++;
+                }
+            }
+        }
+
+        PendingIntent openApp = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class).setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP),
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(getString(R.string.geopackage_create_tiles_label))
+                .setContentIntent(openApp)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setCategory(NotificationCompat.CATEGORY_PROGRESS);
+        if (progress != null) {
+            String text = progress.getDatabase() + " - " + progress.getTableName();
+            if (progress.getMax() > 0) {
+                text += String.format(Locale.getDefault(), "  %,d/%,d  (%.1f tiles/s)",
+                        progress.getProgress(), progress.getMax(), progress.getTilesPerSecond());
+            }
+            builder.setContentText(text)
+                    .setProgress(progress.getMax(), progress.getProgress(), progress.getMax() == 0);
+            if (waiting > 0) {
+                builder.setSubText(String.format(Locale.getDefault(), "%d more downloads",
+                        waiting));
+            }
+        } else {
+            builder.setProgress(0, 0, true);
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,161 @@
+package mil.nga.mapcache.load;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+
+import mil.nga.mapcache.R;
+
+/**
+ * Reads the user's tile download preferences.
+ */
+public class TileDownloadSettings {
+
+    /**
+     * The app's shared preferences.
+     */
+    private final SharedPreferences preferences;
+
+    /**
+     * Used to get the preference keys and default values.
+     */
+    private final Context context;
+
+    /**
+     * Constructor.
+     *
+     * @param context Used to get the preferences.
+     */
+    public TileDownloadSettings(Context context) {
+        this.context = context;
+        this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+    }
+
+    /**
+     * Gets the number of tile requests to have in flight at once for a single tile server.
+     *
+     * @return The number of concurrent requests.
+     */
+    public int getConcurrentRequests() {
+        int concurrent = getInt(R.string.load_tiles_concurrent_requests_key,
+                R.string.load_tiles_concurrent_requests_default);
+        int max = context.getResources().getInteger(R.integer.load_tiles_max_concurrent_requests);
+        return Math.min(Math.max(1, concurrent), max);
+    }
+
+    /**
+     * Gets the number of requests sent to a single host at once, shared by every download.
+     *
+     * @return The maximum number of requests per host.
+     */
+    public int getConnectionsPerHost() {
+        int connections = getInt(R.string.load_tiles_connections_per_host_key,
+                R.string.load_tiles_connections_per_host_default);
+        int max = context.getResources().getInteger(R.integer.load_tiles_max_connections_per_host);
+        return Math.min(Math.max(1, connections), max);
+    }
+
+    /**
+     * Gets the number of tile layers downloaded at once, the other queued downloads wait.
+     *
+     * @return The number of concurrent downloads.
+     */
+    public int getConcurrentJobs() {
+        int jobs = getInt(R.string.load_tiles_concurrent_jobs_key,
+                R.string.load_tiles_concurrent_jobs_default);
+        int max = context.getResources().getInteger(R.integer.load_tiles_max_concurrent_jobs);
+        return Math.min(Math.max(1, jobs), max);
+    }
+
+    /**
+     * Gets the number of times a failed tile request is retried before the tile is recorded as
+     * failed.
+     *
+     * @return The maximum number of retries.
+     */
+    public int getMaxRetries() {
+        return Math.max(0, getInt(R.string.load_tiles_retries_key,
+                R.string.load_tiles_retries_default));
+    }
+
+    /**
+     * Gets the number of tiles along each side of the blocks WMS tiles are requested in.
+     *
+     * @return The metatile size, 1 requests each tile on its own.
+     */
+    public int getMetaTileSize() {
+        int size = getInt(R.string.load_tiles_metatile_size_key,
+                R.string.load_tiles_metatile_size_default);
+        int max = context.getResources().getInteger(R.integer.load_tiles_max_metatile_size);
+        return Math.min(Math.max(1, size), max);
+    }
+
+    /**
+     * Gets the number of the highest zoom levels to download, the zoom levels below them are built
+     * from the downloaded tiles.
+     *
+     * @return The number of downloaded zoom levels, 0 downloads every zoom level.
+     */
+    public int getDownloadedZoomLevels() {
+        return Math.max(0, getInt(R.string.load_tiles_downloaded_zoom_levels_key,
+                R.string.load_tiles_downloaded_zoom_levels_default));
+    }
+
+    /**
+     * Gets the lowest zoom level to download for the zoom range.
+     *
+     * @param minZoom The minimum zoom level.
+     * @param maxZoom The maximum zoom level.
+     * @return The lowest downloaded zoom level.
+     */
+    public int getDownloadMinZoom(int minZoom, int maxZoom) {
+        int levels = getDownloadedZoomLevels();
+        return levels > 0 ? Math.max(minZoom, maxZoom - levels + 1) : minZoom;
+    }
+
+    /**
+     * Gets the recompressor for the format and quality tiles are stored in.
+     *
+     * @return The recompressor, with the ORIGINAL format if tiles are stored as downloaded.
+     */
+    public TileRecompressor getRecompressor() {
+        TileRecompressor.Format format = TileRecompressor.Format.fromPreference(
+                preferences.getString(context.getString(R.string.load_tiles_recompress_format_key),
+                        context.getString(R.string.load_tiles_recompress_format_default)));
+        return new TileRecompressor(format, getInt(R.string.load_tiles_recompress_quality_key,
+                R.string.load_tiles_recompress_quality_default));
+    }
+
+    /**
+     * Checks if completely transparent tiles should be left out of the tile table.
+     *
+     * @return True if empty tiles are skipped.
+     */
+    public boolean isSkipEmptyTiles() {
+        return preferences.getBoolean(context.getString(R.string.load_tiles_skip_empty_key),
+                context.getResources().getBoolean(R.bool.load_tiles_skip_empty_default));
+    }
+
+    /**
+     * Gets an integer preference which is stored as a string by an EditTextPreference.
+     *
+     * @param keyId          The preference key resource id.
+     * @param defaultValueId The default value resource id.
+     * @return The integer value of the preference.
+     */
+    private int getInt(int keyId, int defaultValueId) {
+        String defaultValue = context.getString(defaultValueId);
+        String value = preferences.getString(context.getString(keyId), defaultValue);
+        int intValue;
+        try {
+            intValue = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            Log.w(TileDownloadSettings.class.getSimpleName(), "Invalid preference value " + value, e);
+            intValue = Integer.parseInt(defaultValue);
+        }
+
+        return intValue;
+    }
+}
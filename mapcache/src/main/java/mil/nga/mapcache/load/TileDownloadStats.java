@@ -0,0 +1,287 @@
+package mil.nga.mapcache.load;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.attributes.AttributesColumn;
+import mil.nga.geopackage.attributes.AttributesCursor;
+import mil.nga.geopackage.attributes.AttributesDao;
+import mil.nga.geopackage.attributes.AttributesRow;
+import mil.nga.geopackage.attributes.AttributesTableMetadata;
+import mil.nga.geopackage.db.GeoPackageDataType;
+
+/**
+ * Keeps the metrics of each tile download run with the layer, so the throughput of tile servers
+ * and download settings can be compared later.  The stats are an attributes table inside the
+ * GeoPackage with a row for every run.
+ */
+public class TileDownloadStats {
+
+    /**
+     * The name of the attributes table containing the stats.
+     */
+    public static final String TABLE_NAME = "mapcache_tile_download_stats";
+
+    /**
+     * Tile table name column.
+     */
+    private static final String COLUMN_TILE_TABLE = "tile_table";
+
+    /**
+     * Tile server host column.
+     */
+    private static final String COLUMN_HOST = "host";
+
+    /**
+     * How the run ended column, a TileDownloadProgress state.
+     */
+    private static final String COLUMN_STATE = "state";
+
+    /**
+     * Time the run ended column, in milliseconds since the epoch.
+     */
+    private static final String COLUMN_ENDED = "ended";
+
+    /**
+     * Run length column, in milliseconds.
+     */
+    private static final String COLUMN_ELAPSED = "elapsed_ms";
+
+    /**
+     * Tiles done column.
+     */
+    private static final String COLUMN_TILES = "tiles";
+
+    /**
+     * Bytes received column.
+     */
+    private static final String COLUMN_BYTES = "bytes";
+
+    /**
+     * Tiles per second column.
+     */
+    private static final String COLUMN_TILES_PER_SECOND = "tiles_per_second";
+
+    /**
+     * Bytes per second column.
+     */
+    private static final String COLUMN_BYTES_PER_SECOND = "bytes_per_second";
+
+    /**
+     * Average response latency column, in milliseconds.
+     */
+    private static final String COLUMN_AVERAGE_LATENCY = "average_latency_ms";
+
+    /**
+     * 95th percentile response latency column, in milliseconds.
+     */
+    private static final String COLUMN_P95_LATENCY = "p95_latency_ms";
+
+    /**
+     * Failed tiles column.
+     */
+    private static final String COLUMN_FAILED = "failed";
+
+    /**
+     * Retried requests column.
+     */
+    private static final String COLUMN_RETRIES = "retries";
+
+    /**
+     * The GeoPackage containing the stats.
+     */
+    private final GeoPackage geoPackage;
+
+    /**
+     * Constructor.
+     *
+     * @param geoPackage The GeoPackage containing the stats.
+     */
+    public TileDownloadStats(GeoPackage geoPackage) {
+        this.geoPackage = geoPackage;
+    }
+
+    /**
+     * Records the metrics of a download run.
+     *
+     * @param tableName The tile table name.
+     * @param url       The tile url, its host is recorded with the metrics.
+     * @param state     How the run ended.
+     * @param summary   The metrics over the whole run.
+     */
+    public void record(String tableName, String url, TileDownloadProgress.State state,
+                       TileDownloadMetrics.Summary summary) {
+        try {
+            AttributesDao dao = getDao(true);
+            AttributesRow row = dao.newRow();
+            row.setValue(COLUMN_TILE_TABLE, tableName);
+            row.setValue(COLUMN_HOST, getHost(url));
+            row.setValue(COLUMN_STATE, state.name());
+            row.setValue(COLUMN_ENDED, System.currentTimeMillis());
+            row.setValue(COLUMN_ELAPSED, summary.getElapsedMillis());
+            row.setValue(COLUMN_TILES, (long) summary.getTiles());
+            row.setValue(COLUMN_BYTES, summary.getBytes());
+            row.setValue(COLUMN_TILES_PER_SECOND, summary.getTilesPerSecond());
+            row.setValue(COLUMN_BYTES_PER_SECOND, summary.getBytesPerSecond());
+            row.setValue(COLUMN_AVERAGE_LATENCY, summary.getAverageLatencyMillis());
+            row.setValue(COLUMN_P95_LATENCY, summary.getP95LatencyMillis());
+            row.setValue(COLUMN_FAILED, (long) summary.getFailedCount());
+            row.setValue(COLUMN_RETRIES, (long) summary.getRetryCount());
+            dao.create(row);
+        } catch (Exception e) {
+            Log.e(TileDownloadStats.class.getSimpleName(), "Failed to record download stats for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Gets the metrics of the tile table's latest download run.
+     *
+     * @param tableName The tile table name.
+     * @return The metrics, or null if no runs were recorded.
+     */
+    public TileDownloadMetrics.Summary getLatest(String tableName) {
+        TileDownloadMetrics.Summary summary = null;
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                AttributesCursor cursor = dao.query(COLUMN_TILE_TABLE + " = ?",
+                        new String[]{tableName}, null, null, COLUMN_ENDED + " DESC", "1");
+                try {
+                    if (cursor.moveToNext()) {
+                        AttributesRow row = cursor.getRow();
+                        summary = new TileDownloadMetrics.Summary(
+                                getLong(row, COLUMN_ELAPSED), (int) getLong(row, COLUMN_TILES),
+                                getLong(row, COLUMN_BYTES), getDouble(row, COLUMN_TILES_PER_SECOND),
+                                getDouble(row, COLUMN_BYTES_PER_SECOND),
+                                getDouble(row, COLUMN_AVERAGE_LATENCY),
+                                getLong(row, COLUMN_P95_LATENCY), (int) getLong(row, COLUMN_FAILED),
+                                (int) getLong(row, COLUMN_RETRIES), -1);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadStats.class.getSimpleName(), "Failed to read download stats for "
+                    + tableName, e);
+        }
+
+        return summary;
+    }
+
+    /**
+     * Moves the tile table's download stats to the renamed tile table.
+     *
+     * @param tableName    The tile table name.
+     * @param newTableName The new tile table name.
+     */
+    public void rename(String tableName, String newTableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_TILE_TABLE, newTableName);
+                dao.update(values, COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadStats.class.getSimpleName(), "Failed to rename download stats for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Removes all of the tile table's download runs.
+     *
+     * @param tableName The tile table name.
+     */
+    public void clear(String tableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                dao.delete(COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(TileDownloadStats.class.getSimpleName(), "Failed to clear download stats for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Gets the host of the tile url.
+     *
+     * @param url The tile url.
+     * @return The host, or the url if it isn't valid.
+     */
+    private static String getHost(String url) {
+        String host = url;
+        try {
+            host = new URL(url).getHost();
+        } catch (Exception e) {
+            Log.w(TileDownloadStats.class.getSimpleName(), "Invalid tile url " + url, e);
+        }
+
+        return host;
+    }
+
+    /**
+     * Gets a number column value as a long.
+     *
+     * @param row    The row.
+     * @param column The column name.
+     * @return The value, or 0 if null.
+     */
+    private static long getLong(AttributesRow row, String column) {
+        Object value = row.getValue(column);
+        return value != null ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * Gets a number column value as a double.
+     *
+     * @param row    The row.
+     * @param column The column name.
+     * @return The value, or 0 if null.
+     */
+    private static double getDouble(AttributesRow row, String column) {
+        Object value = row.getValue(column);
+        return value != null ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * Gets the stats dao.
+     *
+     * @param create True if the stats table should be created if it doesn't exist.
+     * @return The dao or null if the table doesn't exist and create is false.
+     */
+    private AttributesDao getDao(boolean create) {
+        AttributesDao dao = null;
+        if (geoPackage.getAttributesTables().contains(TABLE_NAME)) {
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        } else if (create) {
+            List<AttributesColumn> columns = new ArrayList<>();
+            columns.add(AttributesColumn.createColumn(COLUMN_TILE_TABLE, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_HOST, GeoPackageDataType.TEXT));
+            columns.add(AttributesColumn.createColumn(COLUMN_STATE, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ENDED, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ELAPSED, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_TILES, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_BYTES, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_TILES_PER_SECOND, GeoPackageDataType.DOUBLE, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_BYTES_PER_SECOND, GeoPackageDataType.DOUBLE, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_AVERAGE_LATENCY, GeoPackageDataType.DOUBLE, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_P95_LATENCY, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_FAILED, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_RETRIES, GeoPackageDataType.INTEGER, true));
+            geoPackage.createAttributesTable(AttributesTableMetadata.create(TABLE_NAME, columns));
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        }
+
+        return dao;
+    }
+}
@@ -0,0 +1,225 @@
+package mil.nga.mapcache.load;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import mil.nga.geopackage.tiles.TileGrid;
+
+/**
+ * Keeps a window of tile requests in flight ahead of the tile generator.  The tile generator asks
+ * for tiles one at a time in zoom, x, y order, this class predicts that order and issues requests
+ * for the upcoming tiles so they download concurrently, but hands the bytes back in the order the
+ * generator asks for them so the GeoPackage writes stay sequential.
+ */
+public class TilePrefetcher {
+
+    /**
+     * A tile request that has been started and can be waited on.
+     */
+    public interface TileRequest {
+
+        /**
+         * Blocks until the tile has been retrieved.
+         *
+         * @return The tile bytes or null if there isn't a tile.
+         * @throws IOException          If the tile failed to be retrieved.
+         * @throws InterruptedException If the thread was interrupted while waiting.
+         */
+        byte[] await() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Starts a request for a single tile without waiting for it to complete.
+     */
+    public interface TileRequester {
+
+        /**
+         * Starts the request for the tile.
+         *
+         * @param z The zoom level of the tile.
+         * @param x The x coordinate of the tile.
+         * @param y The y coordinate of the tile.
+         * @return The started request, or null if the tile doesn't need to be requested.
+         */
+        TileRequest request(int z, long x, long y);
+    }
+
+    /**
+     * Debug logging flag.
+     */
+    private static final boolean isDebug = false;
+
+    /**
+     * Starts the tile requests.
+     */
+    private final TileRequester requester;
+
+    /**
+     * The maximum number of requests that can be in flight at once.
+     */
+    private final int maxInFlight;
+
+    /**
+     * Iterates over the tiles in the order the tile generator will ask for them.
+     */
+    private final Iterator<long[]> tileOrder;
+
+    /**
+     * The requests that have been started but not yet handed to the generator.
+     */
+    private final Map<String, TileRequest> inFlight = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param requester   Starts the tile requests.
+     * @param tileGrids   The tile grids for each zoom level, from min zoom to max zoom.
+     * @param minZoom     The zoom level of the first tile grid.
+     * @param maxInFlight The maximum number of requests that can be in flight at once.
+     */
+    public TilePrefetcher(TileRequester requester, List<TileGrid> tileGrids, int minZoom,
+                          int maxInFlight) {
+        this.requester = requester;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.tileOrder = new TileOrderIterator(tileGrids, minZoom);
+    }
+
+    /**
+     * Gets the tile, waiting on its request if it was already started or starting a new one if
+     * it wasn't.  Tops up the window of in flight requests before waiting.
+     *
+     * @param z The zoom level of the tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The tile bytes or null if there isn't a tile.
+     * @throws IOException          If the tile failed to be retrieved.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public byte[] getTile(int z, long x, long y) throws IOException, InterruptedException {
+        fillWindow(maxInFlight);
+        TileRequest request = inFlight.remove(key(z, x, y));
+        fillWindow(maxInFlight - 1);
+        if (request == null) {
+            if (isDebug) {
+                Log.d(TilePrefetcher.class.getSimpleName(), "Tile not prefetched " + key(z, x, y));
+            }
+            request = requester.request(z, x, y);
+        }
+        if (request == null) {
+            return null;
+        }
+
+        return request.await();
+    }
+
+    /**
+     * Starts requests for upcoming tiles until the window is full.
+     *
+     * @param windowSize The number of requests to have waiting in the window.
+     */
+    private void fillWindow(int windowSize) {
+        while (inFlight.size() < windowSize && tileOrder.hasNext()) {
+            long[] zxy = tileOrder.next();
+            int z = (int) zxy[0];
+            TileRequest request = requester.request(z, zxy[1], zxy[2]);
+            if (request != null) {
+                inFlight.put(key(z, zxy[1], zxy[2]), request);
+            }
+        }
+    }
+
+    /**
+     * Creates the key for a tile.
+     *
+     * @param z The zoom level of the tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The key.
+     */
+    private static String key(int z, long x, long y) {
+        return z + "/" + x + "/" + y;
+    }
+
+    /**
+     * Walks the tile grids zoom by zoom, x column by x column, and then down each y row, the same
+     * order the tile generator creates tiles in.
+     */
+    private static class TileOrderIterator implements Iterator<long[]> {
+
+        /**
+         * The tile grids for each zoom level.
+         */
+        private final List<TileGrid> tileGrids;
+
+        /**
+         * The zoom level of the first tile grid.
+         */
+        private final int minZoom;
+
+        /**
+         * The index of the current tile grid.
+         */
+        private int gridIndex = 0;
+
+        /**
+         * The next x value.
+         */
+        private long x;
+
+        /**
+         * The next y value.
+         */
+        private long y;
+
+        /**
+         * Constructor.
+         *
+         * @param tileGrids The tile grids for each zoom level.
+         * @param minZoom   The zoom level of the first tile grid.
+         */
+        TileOrderIterator(List<TileGrid> tileGrids, int minZoom) {
+            this.tileGrids = tileGrids;
+            this.minZoom = minZoom;
+            if (!tileGrids.isEmpty()) {
+                x = tileGrids.get(0).getMinX();
+                y = tileGrids.get(0).getMinY();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return gridIndex < tileGrids.size();
+        }
+
+        @Override
+        public long[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            TileGrid grid = tileGrids.get(gridIndex);
+            long[] zxy = {minZoom + gridIndex, x, y};
+
+            y++;
+            if (y > grid.getMaxY()) {
+                y = grid.getMinY();
+                x++;
+                if (x > grid.getMaxX()) {
+                    gridIndex++;
+                    if (gridIndex < tileGrids.size()) {
+                        x = tileGrids.get(gridIndex).getMinX();
+                        y = tileGrids.get(gridIndex).getMinY();
+                    }
+                }
+            }
+
+            return zxy;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package mil.nga.mapcache.load;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.io.GeoPackageProgress;
+import mil.nga.geopackage.tiles.TileGrid;
+import mil.nga.geopackage.tiles.matrix.TileMatrix;
+import mil.nga.geopackage.tiles.matrix.TileMatrixDao;
+import mil.nga.geopackage.tiles.user.TileCursor;
+import mil.nga.geopackage.tiles.user.TileDao;
+import mil.nga.geopackage.tiles.user.TileRow;
+import mil.nga.geopackage.tiles.user.TileTable;
+
+/**
+ * Builds the lower zoom levels of a tile table from the tiles already stored above them, so only
+ * the highest zoom levels have to be downloaded.  Each parent tile is its four children drawn
+ * together and scaled down by half, and each built zoom level gets a tile matrix half the size of
+ * the one above it.  The tiles are decoded, drawn, and encoded in parallel while
+ * the parent tiles are written from the calling thread.
+ */
+public class TilePyramidBuilder {
+
+    /**
+     * The number of parent tiles built from each query of child tiles.
+     */
+    private static final int COLUMNS_PER_QUERY = 64;
+
+    /**
+     * The quality of parent tiles built from jpeg children.
+     */
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Reads the child tiles and writes the parent tiles.
+     */
+    private final TileDao tileDao;
+
+    /**
+     * Creates the tile matrices of the built zoom levels.
+     */
+    private final TileMatrixDao tileMatrixDao;
+
+    /**
+     * Groups the parent tile writes into transactions.
+     */
+    private final TileWriteBatcher writeBatcher;
+
+    /**
+     * The number of threads drawing parent tiles.
+     */
+    private final int threads;
+
+    /**
+     * The number of parent tiles that were built.
+     */
+    private int builtCount = 0;
+
+    /**
+     * Encodes the parent tiles, or null to encode them like their children.
+     */
+    private TileRecompressor recompressor = null;
+
+    /**
+     * Constructor.
+     *
+     * @param geoPackage   The GeoPackage containing the tiles.
+     * @param tableName    The tile table name.
+     * @param writeBatcher Groups the parent tile writes into transactions.
+     * @param threads      The number of threads drawing parent tiles.
+     */
+    public TilePyramidBuilder(GeoPackage geoPackage, String tableName,
+                              TileWriteBatcher writeBatcher, int threads) {
+        this.tileDao = geoPackage.getTileDao(tableName);
+        this.tileMatrixDao = geoPackage.getTileMatrixDao();
+        this.writeBatcher = writeBatcher;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the recompressor that encodes the parent tiles.
+     *
+     * @param recompressor The recompressor, or null to encode parents like their children.
+     */
+    public void setRecompressor(TileRecompressor recompressor) {
+        this.recompressor = recompressor;
+    }
+
+    /**
+     * Builds each zoom level below the lowest downloaded zoom level, one zoom level at a time
+     * from the top down, replacing any tiles already stored at those zoom levels.
+     *
+     * @param minZoom          The lowest zoom level to build.
+     * @param downloadMinZoom  The lowest zoom level that was downloaded.
+     * @param progress         Checked between queries to stop building once cancelled, or null.
+     * @return True if every zoom level was built, false if cancelled.
+     * @throws InterruptedException If interrupted while waiting for tiles to be drawn.
+     */
+    public boolean build(int minZoom, int downloadMinZoom, GeoPackageProgress progress)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            TileMatrix childMatrix = tileDao.getTileMatrix(downloadMinZoom);
+            for (int zoom = downloadMinZoom - 1; zoom >= minZoom && childMatrix != null; zoom--) {
+                TileGrid childGrid = tileDao.queryForTileGrid(zoom + 1);
+                if (childGrid == null) {
+                    Log.w(TilePyramidBuilder.class.getSimpleName(), "Nothing to build zoom " + zoom
+                            + " of " + tileDao.getTableName() + " from");
+                    break;
+                }
+                TileMatrix tileMatrix = getTileMatrix(zoom, childMatrix);
+                if (tileMatrix == null) {
+                    break;
+                }
+                if (!buildZoom(zoom, tileMatrix, childGrid, executor, progress)) {
+                    return false;
+                }
+                childMatrix = tileMatrix;
+            }
+        } finally {
+            executor.shutdownNow();
+            writeBatcher.finish();
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of parent tiles that were built.
+     *
+     * @return The number of built tiles.
+     */
+    public int getBuiltCount() {
+        return builtCount;
+    }
+
+    /**
+     * Gets the tile matrix of the zoom level, creating it from the tile matrix above it if the
+     * zoom level was never downloaded.  The created matrix has half the columns and rows of the
+     * one above it, and pixels twice the size.
+     *
+     * @param zoom        The zoom level.
+     * @param childMatrix The tile matrix of the zoom level above.
+     * @return The tile matrix, or null if it couldn't be created.
+     */
+    private TileMatrix getTileMatrix(int zoom, TileMatrix childMatrix) {
+        TileMatrix tileMatrix = tileDao.getTileMatrix(zoom);
+        if (tileMatrix == null) {
+            tileMatrix = new TileMatrix();
+            tileMatrix.setContents(childMatrix.getContents());
+            tileMatrix.setZoomLevel(zoom);
+            tileMatrix.setMatrixWidth(Math.max(1, (childMatrix.getMatrixWidth() + 1) / 2));
+            tileMatrix.setMatrixHeight(Math.max(1, (childMatrix.getMatrixHeight() + 1) / 2));
+            tileMatrix.setTileWidth(childMatrix.getTileWidth());
+            tileMatrix.setTileHeight(childMatrix.getTileHeight());
+            tileMatrix.setPixelXSize(childMatrix.getPixelXSize() * 2);
+            tileMatrix.setPixelYSize(childMatrix.getPixelYSize() * 2);
+            try {
+                tileMatrixDao.create(tileMatrix);
+            } catch (SQLException e) {
+                Log.e(TilePyramidBuilder.class.getSimpleName(), "Failed to create the tile matrix"
+                        + " of zoom " + zoom + " for " + tileDao.getTableName(), e);
+                tileMatrix = null;
+            }
+        }
+
+        return tileMatrix;
+    }
+
+    /**
+     * Builds the zoom level from the zoom level above it.
+     *
+     * @param zoom       The zoom level to build.
+     * @param tileMatrix The tile matrix of the zoom level.
+     * @param childGrid  The tiles stored in the zoom level above.
+     * @param executor   Draws the parent tiles.
+     * @param progress   Checked between queries to stop building once cancelled, or null.
+     * @return True if the zoom level was built, false if cancelled.
+     * @throws InterruptedException If interrupted while waiting for tiles to be drawn.
+     */
+    private boolean buildZoom(int zoom, TileMatrix tileMatrix, TileGrid childGrid,
+                              ExecutorService executor, GeoPackageProgress progress)
+            throws InterruptedException {
+        int tileWidth = (int) tileMatrix.getTileWidth();
+        int tileHeight = (int) tileMatrix.getTileHeight();
+        for (long row = childGrid.getMinY() / 2; row <= childGrid.getMaxY() / 2; row++) {
+            for (long minColumn = childGrid.getMinX() / 2; minColumn <= childGrid.getMaxX() / 2;
+                 minColumn += COLUMNS_PER_QUERY) {
+                if (progress != null && !progress.isActive()) {
+                    return false;
+                }
+                long maxColumn = Math.min(minColumn + COLUMNS_PER_QUERY - 1,
+                        childGrid.getMaxX() / 2);
+                Map<Long, byte[][]> children = queryChildren(zoom, row, minColumn, maxColumn);
+
+                Map<Long, Future<byte[]>> parents = new TreeMap<>();
+                for (Map.Entry<Long, byte[][]> quad : children.entrySet()) {
+                    byte[][] quadTiles = quad.getValue();
+                    parents.put(quad.getKey(), executor.submit(
+                            () -> drawParent(quadTiles, tileWidth, tileHeight, recompressor)));
+                }
+
+                for (Map.Entry<Long, Future<byte[]>> parent : parents.entrySet()) {
+                    try {
+                        byte[] bytes = parent.getValue().get();
+                        if (bytes != null) {
+                            writeTile(zoom, parent.getKey(), row, bytes);
+                        }
+                    } catch (ExecutionException e) {
+                        Log.e(TilePyramidBuilder.class.getSimpleName(), "Failed to build tile z="
+                                + zoom + ", x=" + parent.getKey() + ", y=" + row, e);
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Queries the children of a row of parent tiles.
+     *
+     * @param zoom      The parent zoom level.
+     * @param row       The parent tile row.
+     * @param minColumn The first parent tile column.
+     * @param maxColumn The last parent tile column.
+     * @return The four children of each parent column with stored children, in the order top
+     * left, top right, bottom left, bottom right.  Children that aren't stored are null.
+     */
+    private Map<Long, byte[][]> queryChildren(int zoom, long row, long minColumn, long maxColumn) {
+        Map<Long, byte[][]> children = new TreeMap<>();
+        TileCursor cursor = tileDao.query(
+                TileTable.COLUMN_ZOOM_LEVEL + " = ? AND "
+                        + TileTable.COLUMN_TILE_ROW + " BETWEEN ? AND ? AND "
+                        + TileTable.COLUMN_TILE_COLUMN + " BETWEEN ? AND ?",
+                new String[]{String.valueOf(zoom + 1), String.valueOf(row * 2),
+                        String.valueOf(row * 2 + 1), String.valueOf(minColumn * 2),
+                        String.valueOf(maxColumn * 2 + 1)});
+        try {
+            while (cursor.moveToNext()) {
+                TileRow tileRow = cursor.getRow();
+                long column = tileRow.getTileColumn() / 2;
+                byte[][] quad = children.get(column);
+                if (quad == null) {
+                    quad = new byte[4][];
+                    children.put(column, quad);
+                }
+                int index = (int) ((tileRow.getTileRow() - row * 2) * 2
+                        + (tileRow.getTileColumn() - column * 2));
+                quad[index] = tileRow.getTileData();
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return children;
+    }
+
+    /**
+     * Draws the four children scaled down into the parent tile.
+     *
+     * @param children     The children, top left, top right, bottom left, bottom right, or null
+     *                     where a child isn't stored.
+     * @param tileWidth    The parent tile width.
+     * @param tileHeight   The parent tile height.
+     * @param recompressor Encodes the parent, or null to encode it like its children.
+     * @return The parent tile bytes, or null if none of the children could be decoded.
+     */
+    private static byte[] drawParent(byte[][] children, int tileWidth, int tileHeight,
+                                     TileRecompressor recompressor) {
+        Bitmap parent = Bitmap.createBitmap(tileWidth, tileHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(parent);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        boolean drawn = false;
+        boolean allJpeg = true;
+        int halfWidth = tileWidth / 2;
+        int halfHeight = tileHeight / 2;
+        for (int i = 0; i < children.length; i++) {
+            byte[] child = children[i];
+            Bitmap bitmap = child != null
+                    ? BitmapFactory.decodeByteArray(child, 0, child.length) : null;
+            if (bitmap == null) {
+                allJpeg = false;
+                continue;
+            }
+            allJpeg &= isJpeg(child);
+            int left = (i % 2) * halfWidth;
+            int top = (i / 2) * halfHeight;
+            canvas.drawBitmap(bitmap, null, new Rect(left, top, left + halfWidth,
+                    top + halfHeight), paint);
+            bitmap.recycle();
+            drawn = true;
+        }
+
+        byte[] bytes = null;
+        if (drawn && recompressor != null) {
+            bytes = recompressor.encode(parent);
+        }
+        if (drawn && bytes == null) {
+            // Jpeg can't be transparent, so only keep it when every quarter was drawn
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            if (allJpeg) {
+                parent.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, stream);
+            } else {
+                parent.compress(Bitmap.CompressFormat.PNG, 100, stream);
+            }
+            bytes = stream.toByteArray();
+        }
+        parent.recycle();
+
+        return bytes;
+    }
+
+    /**
+     * Checks if the image bytes are a jpeg.
+     *
+     * @param bytes The image bytes.
+     * @return True if the bytes start with the jpeg marker.
+     */
+    private static boolean isJpeg(byte[] bytes) {
+        return bytes.length > 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8;
+    }
+
+    /**
+     * Writes the parent tile, replacing the tile if one is already stored.
+     *
+     * @param zoom   The zoom level.
+     * @param column The tile column.
+     * @param row    The tile row.
+     * @param bytes  The tile bytes.
+     */
+    private void writeTile(int zoom, long column, long row, byte[] bytes) {
+        writeBatcher.beforeWrite();
+        TileRow tileRow = tileDao.queryForTile(column, row, zoom);
+        if (tileRow != null) {
+            tileRow.setTileData(bytes);
+            tileDao.update(tileRow);
+        } else {
+            tileRow = tileDao.newRow();
+            tileRow.setZoomLevel(zoom);
+            tileRow.setTileColumn(column);
+            tileRow.setTileRow(row);
+            tileRow.setTileData(bytes);
+            tileDao.create(tileRow);
+        }
+        builtCount++;
+    }
+}
@@ -0,0 +1,235 @@
+package mil.nga.mapcache.load;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-encodes tile images into a smaller format.  Tiles are only replaced when the new encoding is
+ * smaller, and tiles with transparency are never converted to jpeg.  Safe to use from several
+ * threads at once.
+ */
+public class TileRecompressor {
+
+    /**
+     * The formats tiles can be recompressed to.
+     */
+    public enum Format {
+
+        /**
+         * Keep the tiles as the server sent them.
+         */
+        ORIGINAL,
+
+        /**
+         * Convert fully opaque tiles to jpeg, tiles with transparency keep their format.
+         */
+        JPEG,
+
+        /**
+         * Lossy WebP, which keeps transparency.
+         */
+        WEBP_LOSSY,
+
+        /**
+         * Lossless WebP.
+         */
+        WEBP_LOSSLESS;
+
+        /**
+         * Gets the format for a preference value.
+         *
+         * @param value The preference value.
+         * @return The format, ORIGINAL if the value isn't recognized.
+         */
+        public static Format fromPreference(String value) {
+            Format format = ORIGINAL;
+            if (value != null) {
+                try {
+                    format = valueOf(value);
+                } catch (IllegalArgumentException e) {
+                    format = ORIGINAL;
+                }
+            }
+
+            return format;
+        }
+    }
+
+    /**
+     * The format to recompress to.
+     */
+    private final Format format;
+
+    /**
+     * The quality used by the lossy formats, 0 to 100.
+     */
+    private final int quality;
+
+    /**
+     * The number of tiles recompressed.
+     */
+    private final AtomicLong tileCount = new AtomicLong();
+
+    /**
+     * The bytes of the recompressed tiles before recompressing.
+     */
+    private final AtomicLong bytesBefore = new AtomicLong();
+
+    /**
+     * The bytes of the recompressed tiles after recompressing.
+     */
+    private final AtomicLong bytesAfter = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param format  The format to recompress to.
+     * @param quality The quality used by the lossy formats, 0 to 100.
+     */
+    public TileRecompressor(Format format, int quality) {
+        this.format = format;
+        this.quality = Math.min(Math.max(0, quality), 100);
+    }
+
+    /**
+     * Gets the format tiles are recompressed to.
+     *
+     * @return The format.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Checks if the recompressed tiles may be WebP, which requires the GeoPackage WebP extension.
+     *
+     * @return True if tiles are recompressed to WebP.
+     */
+    public boolean isWebP() {
+        return format == Format.WEBP_LOSSY || format == Format.WEBP_LOSSLESS;
+    }
+
+    /**
+     * Recompresses the tile.
+     *
+     * @param bytes The tile image bytes.
+     * @return The recompressed bytes, or the original bytes if they couldn't be made smaller.
+     */
+    public byte[] recompress(byte[] bytes) {
+        byte[] recompressed = bytes;
+        if (format != Format.ORIGINAL && bytes != null && bytes.length > 0) {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            if (bitmap != null) {
+                byte[] encoded = encode(bitmap);
+                bitmap.recycle();
+                if (encoded != null && encoded.length < bytes.length) {
+                    recompressed = encoded;
+                }
+            }
+            tileCount.incrementAndGet();
+            bytesBefore.addAndGet(bytes.length);
+            bytesAfter.addAndGet(recompressed.length);
+        }
+
+        return recompressed;
+    }
+
+    /**
+     * Encodes a tile image in the format.
+     *
+     * @param bitmap The tile image.
+     * @return The encoded bytes, or null if the format is ORIGINAL.
+     */
+    public byte[] encode(Bitmap bitmap) {
+        Bitmap.CompressFormat compressFormat;
+        int compressQuality = quality;
+        switch (format) {
+            case JPEG:
+                if (isOpaque(bitmap)) {
+                    compressFormat = Bitmap.CompressFormat.JPEG;
+                } else {
+                    compressFormat = Bitmap.CompressFormat.PNG;
+                    compressQuality = 100;
+                }
+                break;
+            case WEBP_LOSSY:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    compressFormat = Bitmap.CompressFormat.WEBP_LOSSY;
+                } else {
+                    compressFormat = Bitmap.CompressFormat.WEBP;
+                }
+                break;
+            case WEBP_LOSSLESS:
+                // Before Android 11 WebP at quality 100 is lossless
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    compressFormat = Bitmap.CompressFormat.WEBP_LOSSLESS;
+                } else {
+                    compressFormat = Bitmap.CompressFormat.WEBP;
+                    compressQuality = 100;
+                }
+                break;
+            default:
+                return null;
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(compressFormat, compressQuality, stream);
+        return stream.toByteArray();
+    }
+
+    /**
+     * Gets the number of tiles recompressed.
+     *
+     * @return The tile count.
+     */
+    public long getTileCount() {
+        return tileCount.get();
+    }
+
+    /**
+     * Gets the bytes of the recompressed tiles before recompressing.
+     *
+     * @return The original bytes.
+     */
+    public long getBytesBefore() {
+        return bytesBefore.get();
+    }
+
+    /**
+     * Gets the bytes of the recompressed tiles after recompressing.
+     *
+     * @return The recompressed bytes.
+     */
+    public long getBytesAfter() {
+        return bytesAfter.get();
+    }
+
+    /**
+     * Checks if every pixel of the image is fully opaque.
+     *
+     * @param bitmap The image.
+     * @return True if the image has no transparency.
+     */
+    private static boolean isOpaque(Bitmap bitmap) {
+        boolean opaque = true;
+        if (bitmap.hasAlpha()) {
+            int width = bitmap.getWidth();
+            int[] row = new int[width];
+            for (int y = 0; y < bitmap.getHeight() && opaque; y++) {
+                bitmap.getPixels(row, 0, width, 0, y, width, 1);
+                for (int pixel : row) {
+                    if ((pixel >>> 24) != 0xFF) {
+                        opaque = false;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return opaque;
+    }
+}
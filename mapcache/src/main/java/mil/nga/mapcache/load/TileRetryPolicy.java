@@ -0,0 +1,159 @@
+package mil.nga.mapcache.load;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Decides which failed tile requests should be retried and how long to wait before retrying them.
+ * Waits grow exponentially with full jitter, and a server's Retry-After header is honored when it
+ * asks for a longer wait.
+ */
+public class TileRetryPolicy {
+
+    /**
+     * Too many requests response code, not defined by HttpURLConnection.
+     */
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * The maximum number of retries for a single tile.
+     */
+    private final int maxRetries;
+
+    /**
+     * The wait before the first retry, in milliseconds.
+     */
+    private final long baseDelayMillis;
+
+    /**
+     * The longest we will wait before a retry, in milliseconds.
+     */
+    private final long maxDelayMillis;
+
+    /**
+     * Used to jitter the delays.
+     */
+    private final Random random;
+
+    /**
+     * Constructor.
+     *
+     * @param maxRetries      The maximum number of retries for a single tile.
+     * @param baseDelayMillis The wait before the first retry, in milliseconds.
+     * @param maxDelayMillis  The longest we will wait before a retry, in milliseconds.
+     */
+    public TileRetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this(maxRetries, baseDelayMillis, maxDelayMillis, new Random());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxRetries      The maximum number of retries for a single tile.
+     * @param baseDelayMillis The wait before the first retry, in milliseconds.
+     * @param maxDelayMillis  The longest we will wait before a retry, in milliseconds.
+     * @param random          Used to jitter the delays.
+     */
+    public TileRetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis, Random random) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    /**
+     * Gets the maximum number of retries for a single tile.
+     *
+     * @return The maximum number of retries.
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Checks if the request should be retried.
+     *
+     * @param attempt      The number of retries already made for the tile.
+     * @param responseCode The http response code, or -1 if there wasn't a response.
+     * @param exception    The exception from the request, or null if there wasn't one.
+     * @return True if the request should be retried.
+     */
+    public boolean shouldRetry(int attempt, int responseCode, IOException exception) {
+        return attempt < maxRetries && isTransient(responseCode, exception);
+    }
+
+    /**
+     * Checks if the failure is likely to go away if the request is tried again.
+     *
+     * @param responseCode The http response code, or -1 if there wasn't a response.
+     * @param exception    The exception from the request, or null if there wasn't one.
+     * @return True if the failure is transient.
+     */
+    public boolean isTransient(int responseCode, IOException exception) {
+        boolean isTransient;
+        if (exception != null) {
+            isTransient = exception instanceof SocketTimeoutException
+                    || !(exception instanceof TileDownloadException)
+                    || isTransient(((TileDownloadException) exception).getResponseCode(), null);
+        } else {
+            isTransient = responseCode == HTTP_TOO_MANY_REQUESTS
+                    || responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                    || responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+        }
+
+        return isTransient;
+    }
+
+    /**
+     * Gets how long to wait before the next retry.
+     *
+     * @param attempt          The number of retries already made for the tile.
+     * @param retryAfterMillis The wait the server asked for, or null if it didn't ask.
+     * @return The number of milliseconds to wait.
+     */
+    public long getDelayMillis(int attempt, Long retryAfterMillis) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 30));
+        long delay = (long) (random.nextDouble() * ceiling);
+        if (retryAfterMillis != null && retryAfterMillis > delay) {
+            delay = Math.min(retryAfterMillis, maxDelayMillis);
+        }
+
+        return delay;
+    }
+
+    /**
+     * Parses a Retry-After header value, which is either a number of seconds or an http date.
+     *
+     * @param value The header value.
+     * @param now   The current time in milliseconds.
+     * @return The number of milliseconds to wait, or null if the value couldn't be parsed.
+     */
+    public static Long parseRetryAfter(String value, long now) {
+        Long millis = null;
+        if (value != null) {
+            String trimmed = value.trim();
+            try {
+                millis = Math.max(0, Long.parseLong(trimmed)) * 1000;
+            } catch (NumberFormatException e) {
+                SimpleDateFormat format = new SimpleDateFormat(
+                        "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                try {
+                    Date date = format.parse(trimmed);
+                    if (date != null) {
+                        millis = Math.max(0, date.getTime() - now);
+                    }
+                } catch (ParseException pe) {
+                    millis = null;
+                }
+            }
+        }
+
+        return millis;
+    }
+}
@@ -0,0 +1,251 @@
+package mil.nga.mapcache.load;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.attributes.AttributesColumn;
+import mil.nga.geopackage.attributes.AttributesCursor;
+import mil.nga.geopackage.attributes.AttributesDao;
+import mil.nga.geopackage.attributes.AttributesRow;
+import mil.nga.geopackage.attributes.AttributesTableMetadata;
+import mil.nga.geopackage.db.GeoPackageDataType;
+
+/**
+ * Stores the ETag and Last-Modified headers the server sent with each tile, so a refresh can ask
+ * the server for only the tiles that changed.  The validators are an attributes table inside the
+ * GeoPackage.
+ */
+public class TileValidatorStore {
+
+    /**
+     * The validators of a single tile.
+     */
+    public static class Validators {
+
+        /**
+         * The ETag header, or null if the server didn't send one.
+         */
+        public String eTag;
+
+        /**
+         * The Last-Modified header, or null if the server didn't send one.
+         */
+        public String lastModified;
+    }
+
+    /**
+     * The name of the attributes table containing the validators.
+     */
+    public static final String TABLE_NAME = "mapcache_tile_validators";
+
+    /**
+     * Tile table name column.
+     */
+    private static final String COLUMN_TILE_TABLE = "tile_table";
+
+    /**
+     * Zoom level column.
+     */
+    private static final String COLUMN_ZOOM = "zoom";
+
+    /**
+     * Tile x column.
+     */
+    private static final String COLUMN_X = "x";
+
+    /**
+     * Tile y column.
+     */
+    private static final String COLUMN_Y = "y";
+
+    /**
+     * ETag column.
+     */
+    private static final String COLUMN_ETAG = "etag";
+
+    /**
+     * Last modified column.
+     */
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+    /**
+     * The GeoPackage containing the validators.
+     */
+    private final GeoPackage geoPackage;
+
+    /**
+     * Constructor.
+     *
+     * @param geoPackage The GeoPackage containing the validators.
+     */
+    public TileValidatorStore(GeoPackage geoPackage) {
+        this.geoPackage = geoPackage;
+    }
+
+    /**
+     * Saves the validators of a tile, replacing any previous validators.  Nothing is saved if the
+     * server didn't send either header.
+     *
+     * @param tableName    The tile table name.
+     * @param z            The zoom level of the tile.
+     * @param x            The x coordinate of the tile.
+     * @param y            The y coordinate of the tile.
+     * @param eTag         The ETag header or null.
+     * @param lastModified The Last-Modified header or null.
+     */
+    public void put(String tableName, int z, long x, long y, String eTag, String lastModified) {
+        if (eTag == null && lastModified == null) {
+            return;
+        }
+
+        try {
+            AttributesDao dao = getDao(true);
+            AttributesRow row = queryRow(dao, tableName, z, x, y);
+            boolean isNew = row == null;
+            if (isNew) {
+                row = dao.newRow();
+                row.setValue(COLUMN_TILE_TABLE, tableName);
+                row.setValue(COLUMN_ZOOM, (long) z);
+                row.setValue(COLUMN_X, x);
+                row.setValue(COLUMN_Y, y);
+            }
+            row.setValue(COLUMN_ETAG, eTag);
+            row.setValue(COLUMN_LAST_MODIFIED, lastModified);
+            if (isNew) {
+                dao.create(row);
+            } else {
+                dao.update(row);
+            }
+        } catch (Exception e) {
+            Log.e(TileValidatorStore.class.getSimpleName(), "Failed to save tile validators for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Gets the validators of a tile.
+     *
+     * @param tableName The tile table name.
+     * @param z         The zoom level of the tile.
+     * @param x         The x coordinate of the tile.
+     * @param y         The y coordinate of the tile.
+     * @return The validators or null if none were saved for the tile.
+     */
+    public Validators get(String tableName, int z, long x, long y) {
+        Validators validators = null;
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                AttributesRow row = queryRow(dao, tableName, z, x, y);
+                if (row != null) {
+                    validators = new Validators();
+                    validators.eTag = (String) row.getValue(COLUMN_ETAG);
+                    validators.lastModified = (String) row.getValue(COLUMN_LAST_MODIFIED);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TileValidatorStore.class.getSimpleName(), "Failed to read tile validators for "
+                    + tableName, e);
+        }
+
+        return validators;
+    }
+
+    /**
+     * Moves the tile table's tile validators to the renamed tile table.
+     *
+     * @param tableName    The tile table name.
+     * @param newTableName The new tile table name.
+     */
+    public void rename(String tableName, String newTableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_TILE_TABLE, newTableName);
+                dao.update(values, COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(TileValidatorStore.class.getSimpleName(), "Failed to rename tile validators for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Removes all of the tile table's validators.
+     *
+     * @param tableName The tile table name.
+     */
+    public void clear(String tableName) {
+        try {
+            AttributesDao dao = getDao(false);
+            if (dao != null) {
+                dao.delete(COLUMN_TILE_TABLE + " = ?", new String[]{tableName});
+            }
+        } catch (Exception e) {
+            Log.e(TileValidatorStore.class.getSimpleName(), "Failed to clear tile validators for "
+                    + tableName, e);
+        }
+    }
+
+    /**
+     * Gets the validators dao, creating the table and its tile index if needed.
+     *
+     * @param create True if the validators table should be created if it doesn't exist.
+     * @return The dao or null if the table doesn't exist and create is false.
+     */
+    private AttributesDao getDao(boolean create) {
+        AttributesDao dao = null;
+        if (geoPackage.getAttributesTables().contains(TABLE_NAME)) {
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        } else if (create) {
+            List<AttributesColumn> columns = new ArrayList<>();
+            columns.add(AttributesColumn.createColumn(COLUMN_TILE_TABLE, GeoPackageDataType.TEXT, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ZOOM, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_X, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_Y, GeoPackageDataType.INTEGER, true));
+            columns.add(AttributesColumn.createColumn(COLUMN_ETAG, GeoPackageDataType.TEXT));
+            columns.add(AttributesColumn.createColumn(COLUMN_LAST_MODIFIED, GeoPackageDataType.TEXT));
+            geoPackage.createAttributesTable(AttributesTableMetadata.create(TABLE_NAME, columns));
+
+            // Every tile is looked up during a refresh, so avoid scanning the table each time
+            geoPackage.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_tile_idx ON "
+                    + TABLE_NAME + " (" + COLUMN_TILE_TABLE + ", " + COLUMN_ZOOM + ", "
+                    + COLUMN_X + ", " + COLUMN_Y + ")");
+            dao = geoPackage.getAttributesDao(TABLE_NAME);
+        }
+
+        return dao;
+    }
+
+    /**
+     * Queries for the validators row of the tile.
+     *
+     * @param dao       The validators dao.
+     * @param tableName The tile table name.
+     * @param z         The zoom level of the tile.
+     * @param x         The x coordinate of the tile.
+     * @param y         The y coordinate of the tile.
+     * @return The row or null if there are no validators for the tile.
+     */
+    private AttributesRow queryRow(AttributesDao dao, String tableName, int z, long x, long y) {
+        AttributesRow row = null;
+        AttributesCursor cursor = dao.query(
+                COLUMN_TILE_TABLE + " = ? AND " + COLUMN_ZOOM + " = ? AND "
+                        + COLUMN_X + " = ? AND " + COLUMN_Y + " = ?",
+                new String[]{tableName, String.valueOf(z), String.valueOf(x), String.valueOf(y)});
+        try {
+            if (cursor.moveToNext()) {
+                row = cursor.getRow();
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return row;
+    }
+}
@@ -0,0 +1,125 @@
+package mil.nga.mapcache.load;
+
+import android.util.Log;
+
+import mil.nga.geopackage.GeoPackage;
+
+/**
+ * Groups tile inserts into transactions so SQLite commits its journal once per batch instead of
+ * once per tile.  SQLite transactions belong to the thread that began them, so every call must come
+ * from the single thread writing the tiles.  A batch is only begun once a tile is ready to write,
+ * and a writer about to wait on something else, such as the network, should commit the batch once
+ * it is due instead of holding the transaction open while it waits.
+ */
+public class TileWriteBatcher {
+
+    /**
+     * The GeoPackage being written to.
+     */
+    private final GeoPackage geoPackage;
+
+    /**
+     * The number of tiles to write before committing.
+     */
+    private final int batchSize;
+
+    /**
+     * The number of milliseconds to wait before committing, even if the batch isn't full.
+     */
+    private final long batchMillis;
+
+    /**
+     * True if a transaction is currently open.
+     */
+    private boolean inTransaction = false;
+
+    /**
+     * The number of tiles written in the current transaction.
+     */
+    private int pending = 0;
+
+    /**
+     * The time the current transaction began.
+     */
+    private long batchStart = 0;
+
+    /**
+     * The number of transactions committed.
+     */
+    private int commitCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param geoPackage  The GeoPackage being written to.
+     * @param batchSize   The number of tiles to write before committing.
+     * @param batchMillis The number of milliseconds to wait before committing.
+     */
+    public TileWriteBatcher(GeoPackage geoPackage, int batchSize, long batchMillis) {
+        this.geoPackage = geoPackage;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchMillis = batchMillis;
+    }
+
+    /**
+     * Called before each tile is written, once its bytes are in hand.  Opens a transaction if one
+     * isn't open, or commits the current one and begins the next if the batch is full or has been
+     * open too long.
+     */
+    public void beforeWrite() {
+        if (!inTransaction) {
+            geoPackage.beginTransaction();
+            inTransaction = true;
+            pending = 0;
+            batchStart = System.currentTimeMillis();
+        } else if (pending >= batchSize
+                || System.currentTimeMillis() - batchStart >= batchMillis) {
+            geoPackage.endAndBeginTransaction();
+            commitCount++;
+            pending = 0;
+            batchStart = System.currentTimeMillis();
+        }
+        pending++;
+    }
+
+    /**
+     * Gets how long until the open batch should be committed, so a writer waiting on something
+     * else can commit it on time.
+     *
+     * @return The milliseconds until the batch is due, 0 if it is overdue, or -1 if no batch is
+     * open.
+     */
+    public long getMillisUntilDue() {
+        long millis = -1;
+        if (inTransaction) {
+            millis = Math.max(0, batchStart + batchMillis - System.currentTimeMillis());
+        }
+
+        return millis;
+    }
+
+    /**
+     * Commits any tiles written since the last commit.  The next write begins a new batch.
+     */
+    public void finish() {
+        if (inTransaction) {
+            try {
+                geoPackage.endTransaction();
+                commitCount++;
+            } catch (Exception e) {
+                Log.e(TileWriteBatcher.class.getSimpleName(), "Failed to commit tiles", e);
+            }
+            inTransaction = false;
+            pending = 0;
+        }
+    }
+
+    /**
+     * Gets the number of transactions committed.
+     *
+     * @return The commit count.
+     */
+    public int getCommitCount() {
+        return commitCount;
+    }
+}
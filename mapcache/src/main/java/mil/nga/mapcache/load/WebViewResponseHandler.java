@@ -4,14 +4,20 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
 
-import mil.nga.geopackage.io.GeoPackageIOUtils;
 import mil.nga.mapcache.io.network.IResponseHandler;
+import mil.nga.mapcache.io.network.ResponseBuffers;
+import mil.nga.mapcache.io.network.ResponseHeaderConsumer;
+import mil.nga.mapcache.io.network.ResponseTimeConsumer;
 
 /**
  * Handles the response from the specified url.
  */
-public class WebViewResponseHandler implements IResponseHandler {
+public class WebViewResponseHandler implements IResponseHandler, ResponseHeaderConsumer,
+        ResponseTimeConsumer {
 
     /**
      * Debug logging flag.
@@ -33,6 +39,61 @@ public class WebViewResponseHandler implements IResponseHandler {
      */
     private final String currentUrl;
 
+    /**
+     * The http response code, or -1 if there wasn't a response.
+     */
+    private int responseCode = -1;
+
+    /**
+     * The wait the server asked for in its Retry-After header, or null if it didn't ask.
+     */
+    private Long retryAfterMillis = null;
+
+    /**
+     * The ETag response header, or null if the server didn't send one.
+     */
+    private String eTag = null;
+
+    /**
+     * The Last-Modified response header, or null if the server didn't send one.
+     */
+    private String lastModified = null;
+
+    /**
+     * The Content-Length response header, or -1 if the server didn't send one.
+     */
+    private long contentLength = -1;
+
+    /**
+     * The milliseconds until the response started, or -1 if not known.
+     */
+    private long responseTime = -1;
+
+    /**
+     * The number of bytes received, before any recompression.
+     */
+    private long bytesReceived = 0;
+
+    /**
+     * True once a response or exception has been received.
+     */
+    private boolean isDone = false;
+
+    /**
+     * Recompresses the tile on the thread that received it, or null to keep the server's bytes.
+     */
+    private TileRecompressor recompressor = null;
+
+    /**
+     * True if the request was given up on.
+     */
+    private boolean isCancelled = false;
+
+    /**
+     * Told once the request is done, or null.
+     */
+    private Runnable doneListener = null;
+
     /**
      * Constructor.
      *
@@ -65,8 +126,176 @@ public class WebViewResponseHandler implements IResponseHandler {
         return exception;
     }
 
+    /**
+     * Gets the http response code.
+     *
+     * @return The response code, or -1 if there wasn't a response.
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Gets the wait the server asked for before retrying.
+     *
+     * @return The milliseconds to wait, or null if the server didn't ask.
+     */
+    public Long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Gets the ETag response header.
+     *
+     * @return The ETag, or null if the server didn't send one.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Gets the Last-Modified response header.
+     *
+     * @return The last modified date, or null if the server didn't send one.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Gets the time from sending the request until the response started.
+     *
+     * @return The milliseconds, or -1 if not known.
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Gets the number of bytes received, before any recompression.
+     *
+     * @return The bytes received.
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Sets the recompressor applied to the tile as soon as it is received, so tiles are
+     * recompressed in parallel on the threads receiving them.
+     *
+     * @param recompressor The recompressor, or null to keep the server's bytes.
+     */
+    public void setRecompressor(TileRecompressor recompressor) {
+        this.recompressor = recompressor;
+    }
+
+    /**
+     * Sets the listener told once a response or exception has been received, or the request was
+     * cancelled.  It is called on the thread that completed the request.
+     *
+     * @param doneListener The listener, or null.
+     */
+    public synchronized void setDoneListener(Runnable doneListener) {
+        this.doneListener = doneListener;
+    }
+
+    /**
+     * Gives up on the request.  A request still waiting its turn isn't sent and a response still
+     * arriving isn't read, anyone waiting on the response is woken with an exception.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (!isDone) {
+                isCancelled = true;
+                exception = new IOException("Request cancelled for " + currentUrl);
+            }
+        }
+        done();
+    }
+
+    /**
+     * Blocks the calling thread until a response or exception has been received.
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public synchronized void waitForResponse() throws InterruptedException {
+        while (!isDone) {
+            wait();
+        }
+    }
+
+    /**
+     * Blocks the calling thread until a response or exception has been received, or the timeout
+     * passes.
+     *
+     * @param timeoutMillis The most milliseconds to wait.
+     * @return True if the request has completed.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public synchronized boolean waitForResponse(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (!isDone && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+
+        return isDone;
+    }
+
+    /**
+     * Indicates if a response or exception has been received.
+     *
+     * @return True if the request has completed.
+     */
+    public synchronized boolean isDone() {
+        return isDone;
+    }
+
+    @Override
+    public void setResponseHeaders(Map<String, List<String>> headers) {
+        String retryAfter = getHeader(headers, "Retry-After");
+        if (retryAfter != null) {
+            retryAfterMillis = TileRetryPolicy.parseRetryAfter(
+                    retryAfter, System.currentTimeMillis());
+        }
+        eTag = getHeader(headers, "ETag");
+        lastModified = getHeader(headers, "Last-Modified");
+        contentLength = ResponseBuffers.getContentLength(headers);
+    }
+
+    /**
+     * Gets the first value of a header, ignoring the case of the header name.
+     *
+     * @param headers The response headers.
+     * @param name    The header name.
+     * @return The header value, or null if the header isn't present.
+     */
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        String value = null;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null
+                    && !header.getValue().isEmpty()) {
+                value = header.getValue().get(0);
+                break;
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public void setResponseTime(long millis) {
+        responseTime = millis;
+    }
+
     @Override
     public void handleResponse(InputStream stream, int responseCode) {
+        if (!notCancelled()) {
+            return;
+        }
+        this.responseCode = responseCode;
         if(isDebug) {
             Log.d(
                     WebViewResponseHandler.class.getSimpleName(),
@@ -74,8 +303,12 @@ public class WebViewResponseHandler implements IResponseHandler {
         }
         try {
             if (stream != null) {
-                theBytes = GeoPackageIOUtils.streamBytes(stream);
-            } else {
+                theBytes = ResponseBuffers.getInstance().readFully(stream, contentLength);
+                bytesReceived = theBytes.length;
+                if (recompressor != null) {
+                    theBytes = recompressor.recompress(theBytes);
+                }
+            } else if (responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
                 Log.w(
                         WebViewResponseHandler.class.getSimpleName(),
                         "Stream is null for url " + currentUrl);
@@ -83,10 +316,9 @@ public class WebViewResponseHandler implements IResponseHandler {
         } catch (IOException e) {
             exception = e;
         }
+        contentLength = -1;
 
-        synchronized (this) {
-            notifyAll();
-        }
+        done();
 
         if(isDebug) {
             Log.d(
@@ -97,14 +329,34 @@ public class WebViewResponseHandler implements IResponseHandler {
 
     @Override
     public void handleException(IOException exception) {
-        this.exception = exception;
-        synchronized (this) {
-            notifyAll();
+        if (!notCancelled()) {
+            return;
         }
+        this.exception = exception;
+        done();
     }
 
     @Override
-    public boolean notCancelled() {
-        return true;
+    public synchronized boolean notCancelled() {
+        return !isCancelled;
+    }
+
+    /**
+     * Marks the request as done, waking anyone waiting on it and telling the done listener the
+     * first time it is called.
+     */
+    private void done() {
+        Runnable listener;
+        synchronized (this) {
+            if (isDone) {
+                return;
+            }
+            isDone = true;
+            notifyAll();
+            listener = doneListener;
+        }
+        if (listener != null) {
+            listener.run();
+        }
     }
 }
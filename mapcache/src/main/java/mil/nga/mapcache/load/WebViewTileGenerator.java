@@ -6,16 +6,31 @@ import android.util.Log;
 
 import org.locationtech.proj4j.units.Units;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.GeoPackageException;
 import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
+import mil.nga.geopackage.tiles.TileGrid;
 import mil.nga.geopackage.tiles.UrlTileGenerator;
 import mil.nga.mapcache.io.network.HttpClient;
+import mil.nga.mapcache.io.network.RequestPriority;
+import mil.nga.mapcache.io.network.RequestTimer;
+import mil.nga.mapcache.utils.ActivityTracker;
 import mil.nga.proj.Projection;
+import mil.nga.proj.ProjectionConstants;
 
 /**
  * Uses the mapcache applications HttpClient which in turn will popup a WebView if the url needs
@@ -48,6 +63,158 @@ public class WebViewTileGenerator extends UrlTileGenerator {
      */
     private boolean tms = false;
 
+    /**
+     * The name of the tile table being downloaded to.
+     */
+    private final String tileTableName;
+
+    /**
+     * The minimum zoom level being downloaded.
+     */
+    private final int minZoom;
+
+    /**
+     * The maximum zoom level being downloaded.
+     */
+    private final int maxZoom;
+
+    /**
+     * The number of tile requests kept in flight ahead of the generator, 1 downloads tiles one at
+     * a time.  The host's concurrency limit decides how many of them are sent at once.
+     */
+    private int concurrentRequests = 1;
+
+    /**
+     * The handlers of the requests that have been sent but haven't completed.
+     */
+    private final Set<WebViewResponseHandler> outstanding =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * True once the download is cancelled.
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Keeps tile requests in flight ahead of the generator when downloading concurrently.
+     */
+    private TilePrefetcher prefetcher = null;
+
+    /**
+     * Records the download progress so it can be resumed, or null if not journaling.
+     */
+    private TileDownloadJournal journal = null;
+
+    /**
+     * The journal entry of a download being resumed, or null if this is a new download.
+     */
+    private TileDownloadJournal.Entry resumeEntry = null;
+
+    /**
+     * Groups the tile inserts into transactions, or null to commit each tile on its own.
+     */
+    private TileWriteBatcher writeBatcher = null;
+
+    /**
+     * The zoom level of the most recently created tile.
+     */
+    private int lastZoom = -1;
+
+    /**
+     * The x column of the most recently created tile.
+     */
+    private long lastX = -1;
+
+    /**
+     * The number of tiles skipped because a previous download already retrieved them.
+     */
+    private int skippedCount = 0;
+
+    /**
+     * Decides which failed requests are retried and how long to wait between them.
+     */
+    private TileRetryPolicy retryPolicy = new TileRetryPolicy(0, 0, 0);
+
+    /**
+     * Records the tiles that still failed after retrying, or null if not recording them.
+     */
+    private FailedTileLedger ledger = null;
+
+    /**
+     * The keys of the only tiles to download when retrying failed tiles, or null to download all.
+     */
+    private Set<String> retryTiles = null;
+
+    /**
+     * The number of tiles that failed to download.
+     */
+    private int failedCount = 0;
+
+    /**
+     * Measures the responses, failures and rates of the download.
+     */
+    private final TileDownloadMetrics metrics = new TileDownloadMetrics();
+
+    /**
+     * True if completely transparent tiles aren't stored.
+     */
+    private boolean skipEmptyTiles = false;
+
+    /**
+     * Recognizes completely transparent tiles.
+     */
+    private final EmptyTileDetector emptyTileDetector = new EmptyTileDetector();
+
+    /**
+     * The number of empty tiles that weren't stored.
+     */
+    private int emptyCount = 0;
+
+    /**
+     * Records where empty tiles weren't stored, or null if not recording them.
+     */
+    private EmptyTileCoverage emptyCoverage = null;
+
+    /**
+     * The first and last y of each run of empty tiles in the column being downloaded.
+     */
+    private final List<long[]> emptyRuns = new ArrayList<>();
+
+    /**
+     * True if any tile of the column being generated was downloaded rather than skipped.
+     */
+    private boolean columnDownloaded = false;
+
+    /**
+     * Saves the ETag and Last-Modified of each tile, or null to not save them.
+     */
+    private TileValidatorStore validatorStore = null;
+
+    /**
+     * True if refreshing an existing layer, only downloading tiles that changed.
+     */
+    private boolean refresh = false;
+
+    /**
+     * The number of tiles the server said haven't changed since the last download.
+     */
+    private int notModifiedCount = 0;
+
+    /**
+     * Requests WMS tiles in larger blocks and slices them, or null to request each tile.
+     */
+    private MetaTiler metaTiler = null;
+
+    /**
+     * The lowest zoom level downloaded, the zoom levels below it are built after the download.
+     */
+    private int downloadMinZoom;
+
+    /**
+     * Recompresses the downloaded tiles, or null to store the server's bytes.
+     */
+    private TileRecompressor recompressor = null;
+
     /**
      * Constructor.
      *
@@ -62,9 +229,243 @@ public class WebViewTileGenerator extends UrlTileGenerator {
      */
     public WebViewTileGenerator(Context context, GeoPackage geoPackage, String tableName, String tileUrl, int minZoom, int maxZoom, BoundingBox boundingBox, Projection projection) {
         super(context, geoPackage, tableName, tileUrl, minZoom, maxZoom, boundingBox, projection);
+        this.tileTableName = tableName;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.downloadMinZoom = minZoom;
         initialize(tileUrl);
     }
 
+    /**
+     * Sets the number of tile requests kept in flight ahead of the generator.  The host's
+     * concurrency limit, shared by every request to the host, decides how many are sent at once.
+     *
+     * @param concurrentRequests The number of concurrent requests, 1 or less disables concurrency.
+     */
+    public void setConcurrentRequests(int concurrentRequests) {
+        this.concurrentRequests = Math.max(1, concurrentRequests);
+    }
+
+    /**
+     * Gets the number of tile requests allowed in flight at once.
+     *
+     * @return The number of concurrent requests.
+     */
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    /**
+     * Sets the journal used to record download progress.
+     *
+     * @param journal     The journal to record completed columns to.
+     * @param resumeEntry The journal entry of a download being resumed, or null if this is a new
+     *                    download.
+     */
+    public void setJournal(TileDownloadJournal journal, TileDownloadJournal.Entry resumeEntry) {
+        this.journal = journal;
+        this.resumeEntry = resumeEntry;
+    }
+
+    /**
+     * Sets the batcher that groups tile inserts into transactions.  The tiles are inserted by the
+     * thread calling generateTiles, so finishWrites must be called from that thread once it returns.
+     * A batch is begun once a tile's bytes have arrived, and committed when it comes due even if
+     * that thread is still waiting on the next tile.
+     *
+     * @param writeBatcher The write batcher.
+     */
+    public void setWriteBatcher(TileWriteBatcher writeBatcher) {
+        this.writeBatcher = writeBatcher;
+    }
+
+    /**
+     * Commits any tiles still waiting in the current write batch.
+     */
+    public void finishWrites() {
+        recordEmptyColumn();
+        if (writeBatcher != null) {
+            writeBatcher.finish();
+        }
+    }
+
+    /**
+     * Sets the policy used to retry failed tile requests.
+     *
+     * @param retryPolicy The retry policy.
+     */
+    public void setRetryPolicy(TileRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the ledger that records every tile that failed to download, after any retries.
+     *
+     * @param ledger     The failed tile ledger.
+     * @param retryTiles The keys of the only tiles to download when retrying failed tiles, or null
+     *                   to download all tiles.
+     */
+    public void setFailedTileLedger(FailedTileLedger ledger, Set<String> retryTiles) {
+        this.ledger = ledger;
+        this.retryTiles = retryTiles;
+    }
+
+    /**
+     * Sets whether completely transparent tiles are stored.
+     *
+     * @param skipEmptyTiles True if empty tiles aren't stored, false to store every tile.
+     */
+    public void setSkipEmptyTiles(boolean skipEmptyTiles) {
+        this.skipEmptyTiles = skipEmptyTiles;
+    }
+
+    /**
+     * Sets the coverage that records where empty tiles weren't stored.  Each downloaded column
+     * replaces what was recorded for it, so it should only be set when whole columns are
+     * downloaded, not when retrying failed tiles.
+     *
+     * @param emptyCoverage The empty tile coverage, or null to not record it.
+     */
+    public void setEmptyTileCoverage(EmptyTileCoverage emptyCoverage) {
+        this.emptyCoverage = emptyCoverage;
+    }
+
+    /**
+     * Sets the store that saves the ETag and Last-Modified of each downloaded tile.
+     *
+     * @param validatorStore The validator store, or null to not save them.
+     * @param refresh        True to only download tiles that changed since their validators were
+     *                       saved.
+     */
+    public void setValidatorStore(TileValidatorStore validatorStore, boolean refresh) {
+        this.validatorStore = validatorStore;
+        this.refresh = refresh;
+    }
+
+    /**
+     * Sets the meta tiler used to request blocks of WMS tiles as a single larger image.  It is only
+     * used when the url is a 256 pixel bounding box request without x, y, and z values.
+     *
+     * @param metaTiler The meta tiler, or null to request each tile.
+     */
+    public void setMetaTiler(MetaTiler metaTiler) {
+        if (metaTiler == null || (urlHasBoundingBox && !urlHasXYZ && MetaTiler.supports(tileUrl))) {
+            this.metaTiler = metaTiler;
+        }
+    }
+
+    /**
+     * Sets the recompressor applied to each tile as it is received.
+     *
+     * @param recompressor The recompressor, or null to store the server's bytes.
+     */
+    public void setRecompressor(TileRecompressor recompressor) {
+        this.recompressor = recompressor;
+    }
+
+    /**
+     * Gets the recompressor applied to each tile as it is received.
+     *
+     * @return The recompressor, or null if storing the server's bytes.
+     */
+    public TileRecompressor getRecompressor() {
+        return recompressor;
+    }
+
+    /**
+     * Sets the lowest zoom level to download.  Tiles below it are left for a TilePyramidBuilder to
+     * build from the downloaded tiles once generateTiles returns.
+     *
+     * @param downloadMinZoom The lowest zoom level to download.
+     */
+    public void setDownloadMinZoom(int downloadMinZoom) {
+        this.downloadMinZoom = Math.min(Math.max(minZoom, downloadMinZoom), maxZoom);
+    }
+
+    /**
+     * Gets the lowest zoom level being downloaded.
+     *
+     * @return The lowest downloaded zoom level.
+     */
+    public int getDownloadMinZoom() {
+        return downloadMinZoom;
+    }
+
+    /**
+     * Cancels the download, giving up on the requests that are still in flight so the ones
+     * waiting their turn aren't sent and responses still arriving aren't read.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (WebViewResponseHandler handler : outstanding) {
+            handler.cancel();
+        }
+    }
+
+    /**
+     * Releases any metatile slices that are still held and deletes their files, called before
+     * generateTiles to clear what a killed download left and once it returns.
+     */
+    public void release() {
+        if (metaTiler != null) {
+            metaTiler.clear();
+        }
+    }
+
+    /**
+     * Gets the number of tiles the server said haven't changed since the last download.
+     *
+     * @return The number of unchanged tiles.
+     */
+    public int getNotModifiedCount() {
+        return notModifiedCount;
+    }
+
+    /**
+     * Gets the number of empty tiles that weren't stored.
+     *
+     * @return The number of empty tiles.
+     */
+    public int getEmptyCount() {
+        return emptyCount;
+    }
+
+    /**
+     * Gets the number of tiles that were skipped because a previous download already retrieved them.
+     *
+     * @return The number of skipped tiles.
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Gets the number of tiles that failed to download.
+     *
+     * @return The number of failed tiles.
+     */
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Gets the url the tiles are downloaded from.
+     *
+     * @return The tile url, with the tile placeholders.
+     */
+    public String getUrl() {
+        return tileUrl;
+    }
+
+    /**
+     * Gets the measurements of the download.
+     *
+     * @return The download metrics.
+     */
+    public TileDownloadMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public boolean isTms() {
         return this.tms;
@@ -155,6 +556,22 @@ public class WebViewTileGenerator extends UrlTileGenerator {
      */
     private String replaceBoundingBox(String url, int z, long x, long y) {
 
+        BoundingBox boundingBox = getTileBoundingBox(z, x, y);
+
+        url = replaceBoundingBox(url, boundingBox);
+
+        return url;
+    }
+
+    /**
+     * Gets the bounding box of the tile in the projection.
+     *
+     * @param z The z value.
+     * @param x The x value.
+     * @param y The y value.
+     * @return The tile's bounding box.
+     */
+    private BoundingBox getTileBoundingBox(int z, long x, long y) {
         BoundingBox boundingBox;
 
         if (projection.isUnit(Units.DEGREES)) {
@@ -165,9 +582,7 @@ public class WebViewTileGenerator extends UrlTileGenerator {
                     .getProjectedBoundingBox(projection, x, y, z);
         }
 
-        url = replaceBoundingBox(url, boundingBox);
-
-        return url;
+        return boundingBox;
     }
 
     /**
@@ -187,9 +602,35 @@ public class WebViewTileGenerator extends UrlTileGenerator {
         return url;
     }
 
-    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    @Override
-    protected byte[] createTile(int z, long x, long y) {
+    /**
+     * Gets the tile grid that will be downloaded for the zoom level, calculated the same way the
+     * tile generator calculates it.
+     *
+     * @param zoom The zoom level.
+     * @return The tile grid.
+     */
+    TileGrid getDownloadTileGrid(int zoom) {
+        TileGrid tileGrid;
+        if (projection.isUnit(Units.DEGREES)) {
+            tileGrid = TileBoundingBoxUtils.getTileGridWGS84(boundingBox, zoom);
+        } else {
+            BoundingBox webMercatorBox = boundingBox.transform(
+                    projection.getTransformation(ProjectionConstants.EPSG_WEB_MERCATOR));
+            tileGrid = TileBoundingBoxUtils.getTileGrid(webMercatorBox, zoom);
+        }
+
+        return tileGrid;
+    }
+
+    /**
+     * Gets the url for the specified tile.
+     *
+     * @param z The z value.
+     * @param x The x value.
+     * @param y The y value.
+     * @return The tile's url.
+     */
+    String getTileUrl(int z, long x, long y) {
         String zoomUrl = tileUrl;
 
         // Replace x, y, and z
@@ -210,31 +651,387 @@ public class WebViewTileGenerator extends UrlTileGenerator {
             zoomUrl = replaceBoundingBox(zoomUrl, z, x, y);
         }
 
+        return zoomUrl;
+    }
+
+    /**
+     * Sends the request for the tile without waiting on the response.
+     *
+     * @param z The z value.
+     * @param x The x value.
+     * @param y The y value.
+     * @return The request to wait on, or null if the tile was already downloaded.
+     */
+    private TilePrefetcher.TileRequest requestTile(int z, long x, long y) {
+        if (isAlreadyDownloaded(z, x, y)) {
+            return null;
+        }
+        if (metaTiler != null) {
+            return requestMetaTile(z, x, y);
+        }
+
+        String zoomUrl = getTileUrl(z, x, y);
+        Map<String, String> requestHeaders = getConditionalHeaders(z, x, y);
+        WebViewResponseHandler handler = sendRequest(zoomUrl, requestHeaders);
+
+        return () -> {
+            // Called from createTile, so this is on the thread inserting the tiles
+            WebViewResponseHandler response = awaitResponse(handler, zoomUrl, requestHeaders);
+            if (response.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                notModifiedCount++;
+            } else if (validatorStore != null) {
+                validatorStore.put(tileTableName, z, x, y, response.getETag(),
+                        response.getLastModified());
+            }
+            return response.getBytes();
+        };
+    }
+
+    /**
+     * Sends the request for the metatile containing the tile, unless one of its other tiles
+     * already sent it.
+     *
+     * @param z The z value.
+     * @param x The x value.
+     * @param y The y value.
+     * @return The request to wait on, which slices the metatile when first waited on.
+     */
+    private TilePrefetcher.TileRequest requestMetaTile(int z, long x, long y) {
+        MetaTiler.MetaTile metaTile = metaTiler.get(z, x, y);
+        if (metaTile == null) {
+            metaTile = metaTiler.create(z, x, y, getDownloadTileGrid(z));
+            for (long tileX = metaTile.minX; tileX <= metaTile.maxX; tileX++) {
+                for (long tileY = metaTile.minY; tileY <= metaTile.maxY; tileY++) {
+                    if (isAlreadyDownloaded(z, tileX, tileY)) {
+                        metaTiler.skip(metaTile, z, tileX, tileY);
+                    }
+                }
+            }
+
+            // The corner tiles give the extent of the whole block
+            BoundingBox minTile = getTileBoundingBox(z, metaTile.minX, metaTile.maxY);
+            BoundingBox maxTile = getTileBoundingBox(z, metaTile.maxX, metaTile.minY);
+            BoundingBox metaBoundingBox = new BoundingBox(minTile.getMinLongitude(),
+                    minTile.getMinLatitude(), maxTile.getMaxLongitude(),
+                    maxTile.getMaxLatitude());
+            metaTile.url = MetaTiler.getMetaTileUrl(
+                    replaceBoundingBox(tileUrl, metaBoundingBox), metaTile);
+            metaTile.handler = sendRequest(metaTile.url, null);
+        }
+
+        MetaTiler.MetaTile request = metaTile;
+        return () -> {
+            // Called from createTile, so this is on the thread inserting the tiles
+            if (!request.sliced && request.failure == null) {
+                try {
+                    WebViewResponseHandler response = awaitResponse(request.handler,
+                            request.url, null);
+                    metaTiler.slice(request, response.getBytes(), recompressor);
+                } catch (IOException e) {
+                    request.failure = e;
+                }
+            }
+            if (request.failure != null) {
+                metaTiler.fail(request);
+                throw request.failure;
+            }
+            return metaTiler.take(request, z, x, y);
+        };
+    }
+
+    /**
+     * Gets the headers asking the server to only send the tile if it changed since it was last
+     * downloaded.
+     *
+     * @param z The z value.
+     * @param x The x value.
+     * @param y The y value.
+     * @return The conditional headers, or null if not refreshing or the tile has no validators.
+     */
+    private Map<String, String> getConditionalHeaders(int z, long x, long y) {
+        Map<String, String> headers = null;
+        if (refresh && validatorStore != null) {
+            TileValidatorStore.Validators validators = validatorStore.get(tileTableName, z, x, y);
+            if (validators != null) {
+                headers = new HashMap<>();
+                if (validators.eTag != null) {
+                    headers.put("If-None-Match", validators.eTag);
+                }
+                if (validators.lastModified != null) {
+                    headers.put("If-Modified-Since", validators.lastModified);
+                }
+            }
+        }
+
+        return headers;
+    }
+
+    /**
+     * Sends the get request for the tile url.
+     *
+     * @param zoomUrl        The tile url.
+     * @param requestHeaders Additional headers to add to the request, or null.
+     * @return The handler that will receive the response.
+     */
+    WebViewResponseHandler sendRequest(String zoomUrl, Map<String, String> requestHeaders) {
+        WebViewResponseHandler handler = createHandler(zoomUrl);
+        send(handler, zoomUrl, requestHeaders);
+
+        return handler;
+    }
+
+    /**
+     * Creates the handler for a tile request, kept as outstanding until it completes so it can be
+     * cancelled with the download.
+     *
+     * @param zoomUrl The tile url.
+     * @return The handler that will receive the response.
+     */
+    private WebViewResponseHandler createHandler(String zoomUrl) {
         WebViewResponseHandler handler = new WebViewResponseHandler(zoomUrl);
+        // Metatiles are recompressed once they are sliced
+        if (metaTiler == null) {
+            handler.setRecompressor(recompressor);
+        }
+        outstanding.add(handler);
+        handler.setDoneListener(() -> outstanding.remove(handler));
+        if (cancelled) {
+            handler.cancel();
+        }
+
+        return handler;
+    }
+
+    /**
+     * Sends the get request for the tile url.
+     *
+     * @param handler        The handler that will receive the response.
+     * @param zoomUrl        The tile url.
+     * @param requestHeaders Additional headers to add to the request, or null.
+     */
+    private void send(WebViewResponseHandler handler, String zoomUrl,
+                      Map<String, String> requestHeaders) {
+        if (!handler.notCancelled()) {
+            return;
+        }
         if (isDebug) {
             Log.d(WebViewTileGenerator.class.getSimpleName(), "Sending Get to " + zoomUrl);
         }
-        HttpClient.getInstance().sendGet(zoomUrl, handler, (Activity) context);
-        synchronized (handler) {
+        // The download outlives the screen that started it, so use the screen that is up now
+        Activity activity = ActivityTracker.getInstance().getActivity();
+        if (activity == null) {
+            handler.handleException(new IOException("The app was closed"));
+            return;
+        }
+        HttpClient.getInstance().sendGet(zoomUrl, handler, requestHeaders,
+                RequestPriority.BULK, activity);
+    }
+
+    /**
+     * Waits for the tile response, resending the request with backoff while it fails transiently.
+     *
+     * @param handler The handler of the first request.
+     * @param zoomUrl The tile url.
+     * @return The tile bytes.
+     * @throws IOException          If the tile still failed after retrying.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    byte[] awaitTile(WebViewResponseHandler handler, String zoomUrl)
+            throws IOException, InterruptedException {
+        return awaitResponse(handler, zoomUrl, null).getBytes();
+    }
+
+    /**
+     * Waits for the tile response, resending the request with backoff while it fails transiently.
+     * A not modified response is a success without any bytes.
+     *
+     * @param handler        The handler of the first request.
+     * @param zoomUrl        The tile url.
+     * @param requestHeaders Additional headers to add to resent requests, or null.
+     * @return The handler of the successful response.
+     * @throws IOException          If the tile still failed after retrying.
+     * @throws InterruptedException If the thread was interrupted while waiting, or the download
+     *                              was cancelled.
+     */
+    private WebViewResponseHandler awaitResponse(WebViewResponseHandler handler, String zoomUrl,
+                                                 Map<String, String> requestHeaders)
+            throws IOException, InterruptedException {
+        WebViewResponseHandler current = handler;
+        ScheduledFuture<?> pendingRetry = null;
+        for (int attempt = 0; ; attempt++) {
+            if (isDebug) {
+                Log.d(WebViewTileGenerator.class.getSimpleName(), "Waiting for response from " + zoomUrl);
+            }
             try {
-                if (isDebug) {
-                    Log.d(WebViewTileGenerator.class.getSimpleName(), "Waiting for response from " + zoomUrl);
-                }
-                handler.wait();
+                waitForResponse(current);
             } catch (InterruptedException e) {
-                Log.d(WebViewTileGenerator.class.getSimpleName(), e.getMessage(), e);
+                if (pendingRetry != null) {
+                    pendingRetry.cancel(false);
+                }
+                throw e;
+            }
+            if (isDebug) {
+                Log.d(WebViewTileGenerator.class.getSimpleName(), "Done waiting from " + zoomUrl);
+            }
+            if (cancelled) {
+                throw new InterruptedException("Download cancelled");
+            }
+            if (current.getResponseCode() >= 0) {
+                metrics.recordResponse(current.getResponseTime(), current.getBytesReceived());
+            }
+
+            IOException failure = current.getException();
+            int responseCode = current.getResponseCode();
+            if (failure == null && current.getBytes() == null && responseCode >= 0
+                    && responseCode != HttpURLConnection.HTTP_OK
+                    && responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                failure = new TileDownloadException("Tile server responded with "
+                        + responseCode + " for " + zoomUrl, responseCode);
+            }
+
+            if (failure == null) {
+                return current;
+            } else if (!retryPolicy.shouldRetry(attempt, responseCode, failure)) {
+                throw failure;
             }
+
+            metrics.recordRetry();
+            long delay = retryPolicy.getDelayMillis(attempt, current.getRetryAfterMillis());
+            Log.i(WebViewTileGenerator.class.getSimpleName(), "Retrying " + zoomUrl + " in "
+                    + delay + " ms after: " + failure.getMessage());
+            // The timer sends the retry, this thread just waits for its response
+            WebViewResponseHandler retry = createHandler(zoomUrl);
+            pendingRetry = RequestTimer.getInstance().schedule(
+                    () -> send(retry, zoomUrl, requestHeaders), delay);
+            current = retry;
         }
+    }
 
-        if (isDebug) {
-            Log.d(WebViewTileGenerator.class.getSimpleName(), "Done waiting from " + zoomUrl);
+    /**
+     * Waits for the response, committing the open write batch when it comes due so tiles already
+     * written aren't left uncommitted while the network or a retry delay is slow.
+     *
+     * @param handler The handler receiving the response.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    private void waitForResponse(WebViewResponseHandler handler) throws InterruptedException {
+        if (writeBatcher != null) {
+            long dueMillis = writeBatcher.getMillisUntilDue();
+            if (dueMillis >= 0 && !handler.waitForResponse(dueMillis)) {
+                writeBatcher.finish();
+            }
+        }
+        handler.waitForResponse();
+    }
+
+    /**
+     * Checks if a previous download already retrieved the tile.
+     *
+     * @param z The z value.
+     * @param x The x value.
+     * @param y The y value.
+     * @return True if the tile should be skipped.
+     */
+    private boolean isAlreadyDownloaded(int z, long x, long y) {
+        boolean downloaded = false;
+        if (retryTiles != null) {
+            downloaded = !retryTiles.contains(FailedTileLedger.key(z, x, y));
+        } else if (resumeEntry != null) {
+            downloaded = resumeEntry.isCompleted(z, x);
+        }
+
+        return downloaded;
+    }
+
+    /**
+     * Records the runs of empty tiles of the column that was just generated, replacing any runs
+     * recorded for it by an earlier download that didn't finish the column.
+     */
+    private void recordEmptyColumn() {
+        if (emptyCoverage != null && columnDownloaded) {
+            emptyCoverage.setColumn(tileTableName, lastZoom, lastX, emptyRuns);
+        }
+        emptyRuns.clear();
+        columnDownloaded = false;
+    }
+
+    @Override
+    protected byte[] createTile(int z, long x, long y) {
+        // Tiles are created a column at a time, once we move on the previous column is written
+        if (lastZoom >= 0 && (z != lastZoom || x != lastX)) {
+            recordEmptyColumn();
+            if (journal != null) {
+                journal.columnCompleted(tileTableName, lastZoom, lastX);
+            }
+        }
+        lastZoom = z;
+        lastX = x;
+
+        if (z < downloadMinZoom) {
+            return null;
+        }
+
+        if (isAlreadyDownloaded(z, x, y)) {
+            skippedCount++;
+            return null;
+        }
+        columnDownloaded = true;
+
+        if (prefetcher == null) {
+            List<TileGrid> tileGrids = new ArrayList<>();
+            for (int zoom = downloadMinZoom; zoom <= maxZoom; zoom++) {
+                tileGrids.add(getDownloadTileGrid(zoom));
+            }
+            // Each metatile request covers a column of tiles in the window
+            int maxInFlight = concurrentRequests;
+            if (metaTiler != null) {
+                maxInFlight *= metaTiler.getMetaSize();
+            }
+            prefetcher = new TilePrefetcher(this::requestTile, tileGrids, downloadMinZoom,
+                    maxInFlight);
+        }
+
+        byte[] bytes = null;
+        try {
+            bytes = prefetcher.getTile(z, x, y);
+        } catch (InterruptedException e) {
+            Log.d(WebViewTileGenerator.class.getSimpleName(), e.getMessage(), e);
+        } catch (IOException e) {
+            failedCount++;
+            metrics.recordFailure();
+            int responseCode = -1;
+            if (e instanceof TileDownloadException) {
+                responseCode = ((TileDownloadException) e).getResponseCode();
+            }
+            // Kept whether or not it was worth retrying, so the layer shows every missing tile
+            if (ledger != null) {
+                ledger.record(tileTableName, z, x, y, responseCode, e.getMessage());
+            }
+            throw new GeoPackageException("Failed to download tile. z=" + z + ", x=" + x
+                    + ", y=" + y, e);
+        }
+
+        if (bytes != null && retryTiles != null && ledger != null) {
+            ledger.remove(tileTableName, z, x, y);
+        }
+
+        // Missing tiles draw as transparent, so empty tiles don't need to be stored
+        if (skipEmptyTiles && emptyTileDetector.isEmpty(bytes)) {
+            emptyCount++;
+            long[] run = emptyRuns.isEmpty() ? null : emptyRuns.get(emptyRuns.size() - 1);
+            if (run != null && run[1] == y - 1) {
+                run[1] = y;
+            } else {
+                emptyRuns.add(new long[]{y, y});
+            }
+            bytes = null;
         }
 
-        if (handler.getException() != null) {
-            throw new GeoPackageException("Failed to download tile. URL: "
-                    + zoomUrl + ", z=" + z + ", x=" + x + ", y=" + y, handler.getException());
+        // Called on the thread that inserts the tiles, which inserts these bytes once we return
+        if (bytes != null && writeBatcher != null) {
+            writeBatcher.beforeWrite();
         }
 
-        return handler.getBytes();
+        return bytes;
     }
 }
@@ -32,11 +32,10 @@ import com.google.android.material.button.MaterialButton;
 
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import mil.nga.mapcache.R;
 import mil.nga.mapcache.utils.HttpUtils;
+import mil.nga.mapcache.utils.ThreadUtils;
 import mil.nga.mapcache.utils.UrlValidator;
 import mil.nga.mapcache.utils.ViewAnimation;
 
@@ -381,10 +380,8 @@ public class TileUrlFragment extends PreferenceFragmentCompat implements Prefere
      * Tests connection to a url
      */
     private boolean testConnection(String url, ImageView icon){
-        //         ThreadUtils.getInstance().runBackground(loadTilesTask);
-        ExecutorService threadEx = Executors.newSingleThreadExecutor();
         Handler handler = new Handler(Looper.getMainLooper());
-        threadEx.execute(new Runnable() {
+        ThreadUtils.getInstance().runNetwork(new Runnable() {
             @Override
             public void run() {
                 // Test connection
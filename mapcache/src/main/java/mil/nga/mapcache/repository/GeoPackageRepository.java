@@ -68,6 +68,13 @@ import mil.nga.mapcache.data.GeoPackageFeatureTable;
 import mil.nga.mapcache.data.GeoPackageTable;
 import mil.nga.mapcache.data.GeoPackageTileTable;
 import mil.nga.mapcache.data.MarkerFeature;
+import mil.nga.mapcache.load.EmptyTileCoverage;
+import mil.nga.mapcache.load.FailedTileLedger;
+import mil.nga.mapcache.load.TileDownloadHeaders;
+import mil.nga.mapcache.load.TileDownloadJournal;
+import mil.nga.mapcache.load.TileDownloadMetrics;
+import mil.nga.mapcache.load.TileDownloadStats;
+import mil.nga.mapcache.load.TileValidatorStore;
 import mil.nga.mapcache.view.map.feature.FcColumnDataObject;
 import mil.nga.mapcache.view.map.feature.FeatureViewObjects;
 import mil.nga.proj.ProjectionConstants;
@@ -374,7 +381,11 @@ public class GeoPackageRepository implements Closeable {
         if(currentActive != null) {
             currentActive.renameDatabase(oldName, newName);
         }
-        return manager.rename(oldName, newName);
+        boolean renamed = manager.rename(oldName, newName);
+        if (renamed) {
+            new TileDownloadHeaders(context).renameAll(oldName, newName);
+        }
+        return renamed;
     }
 
     public List<GeoPackage> getGeoPackages() {
@@ -468,12 +479,25 @@ public class GeoPackageRepository implements Closeable {
                     }
                     if (tileTables != null) {
                         try {
+                            TileDownloadJournal journal = new TileDownloadJournal(geoPackage);
+                            FailedTileLedger ledger = new FailedTileLedger(geoPackage);
+                            TileDownloadStats stats = new TileDownloadStats(geoPackage);
+                            EmptyTileCoverage emptyCoverage = new EmptyTileCoverage(geoPackage);
                             for (String tableName : tileTables) {
                                 TileDao tileDao = geoPackage.getTileDao(tableName);
                                 int count = tileDao.count();
                                 GeoPackageTileTable table = new GeoPackageTileTable(database,
                                         tableName, count);
-                                table.setDescription("An image layer with " + count + " tiles");
+                                String description = "An image layer with " + count + " tiles";
+                                long emptyCount = emptyCoverage.getEmptyCount(tableName);
+                                if (emptyCount > 0) {
+                                    description += ", " + emptyCount + " empty tiles not stored";
+                                }
+                                TileDownloadMetrics.Summary latest = stats.getLatest(tableName);
+                                if (latest != null) {
+                                    description += "\nLast download: " + latest.describe();
+                                }
+                                table.setDescription(description);
                                 boolean isActive = false;
                                 if(active.getValue() != null) {
                                     isActive = active.getValue().exists(table);
@@ -481,6 +505,11 @@ public class GeoPackageRepository implements Closeable {
                                 table.setActive(isActive);
                                 table.setMaxZoom(tileDao.getMaxZoom());
                                 table.setMinZoom(tileDao.getMinZoom());
+                                TileDownloadJournal.Entry entry = journal.getEntry(tableName);
+                                table.setResumable(entry != null && !entry.isFinished());
+                                table.setRefreshable(entry != null && entry.isFinished());
+                                table.setFailedTileCount(entry != null
+                                        ? ledger.getFailedCount(tableName) : 0);
                                 tables.add(table);
                             }
                         } catch (Exception e) {
@@ -550,6 +579,7 @@ public class GeoPackageRepository implements Closeable {
         removeActiveForGeoPackage(geoPackageName);
         cache.removeAndClose(geoPackageName);
         removeGeo(geoPackageName);
+        new TileDownloadHeaders(context).removeAll(geoPackageName);
         return manager.delete(geoPackageName);
     }
 
@@ -563,6 +593,13 @@ public class GeoPackageRepository implements Closeable {
             GeoPackage geo = cache.getOrOpen(geoPackageName);
             if (geo != null) {
                 geo.deleteTable(layerName);
+                // A new layer could reuse the name, it must not inherit the old download
+                new TileDownloadJournal(geo).complete(layerName);
+                new FailedTileLedger(geo).clear(layerName);
+                new EmptyTileCoverage(geo).clear(layerName);
+                new TileValidatorStore(geo).clear(layerName);
+                new TileDownloadStats(geo).clear(layerName);
+                new TileDownloadHeaders(context).remove(geoPackageName, layerName);
                 return true;
             }
             return false;
@@ -580,6 +617,13 @@ public class GeoPackageRepository implements Closeable {
             GeoPackage geo = cache.getOrOpen(geoPackageName);
             if (geo != null) {
                 geo.renameTable(layerName, newLayerName);
+                // Keep the download with the layer so it can still be resumed or refreshed
+                new TileDownloadJournal(geo).rename(layerName, newLayerName);
+                new FailedTileLedger(geo).rename(layerName, newLayerName);
+                new EmptyTileCoverage(geo).rename(layerName, newLayerName);
+                new TileValidatorStore(geo).rename(layerName, newLayerName);
+                new TileDownloadStats(geo).rename(layerName, newLayerName);
+                new TileDownloadHeaders(context).rename(geoPackageName, layerName, newLayerName);
                 return true;
             }
             return false;
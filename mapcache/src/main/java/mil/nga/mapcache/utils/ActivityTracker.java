@@ -0,0 +1,107 @@
+package mil.nga.mapcache.utils;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Keeps track of the app's current activity, so work that outlives a screen, such as tile
+ * downloads, can show web views and logins on whichever screen is up without holding on to the
+ * screen that started it.  The activity is only weakly referenced, and forgotten once destroyed.
+ */
+public class ActivityTracker implements Application.ActivityLifecycleCallbacks {
+
+    /**
+     * The instance of this class.
+     */
+    private static final ActivityTracker instance = new ActivityTracker();
+
+    /**
+     * The current activity, or an empty reference if there isn't one.
+     */
+    private WeakReference<Activity> current = new WeakReference<>(null);
+
+    /**
+     * True once registered with the application.
+     */
+    private boolean registered = false;
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return This class instance.
+     */
+    public static ActivityTracker getInstance() {
+        return instance;
+    }
+
+    /**
+     * Private constructor, keep it a singleton.
+     */
+    private ActivityTracker() {
+    }
+
+    /**
+     * Starts tracking the activities of the application, beginning with the activity.
+     *
+     * @param activity The activity being created.
+     */
+    public synchronized void register(Activity activity) {
+        if (!registered) {
+            registered = true;
+            activity.getApplication().registerActivityLifecycleCallbacks(this);
+        }
+        current = new WeakReference<>(activity);
+    }
+
+    /**
+     * Gets the current activity.
+     *
+     * @return The activity, or null if every activity was destroyed.
+     */
+    public synchronized Activity getActivity() {
+        Activity activity = current.get();
+        return activity != null && !activity.isDestroyed() ? activity : null;
+    }
+
+    @Override
+    public synchronized void onActivityCreated(@NonNull Activity activity,
+                                               @Nullable Bundle savedInstanceState) {
+        current = new WeakReference<>(activity);
+    }
+
+    @Override
+    public synchronized void onActivityStarted(@NonNull Activity activity) {
+        current = new WeakReference<>(activity);
+    }
+
+    @Override
+    public synchronized void onActivityResumed(@NonNull Activity activity) {
+        current = new WeakReference<>(activity);
+    }
+
+    @Override
+    public void onActivityPaused(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(@NonNull Activity activity,
+                                            @NonNull Bundle outState) {
+    }
+
+    @Override
+    public synchronized void onActivityDestroyed(@NonNull Activity activity) {
+        if (current.get() == activity) {
+            current = new WeakReference<>(null);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package mil.nga.mapcache.utils;
 
-import android.app.Activity;
+import android.content.Context;
 import android.os.Build;
 
 import java.net.HttpURLConnection;
@@ -95,17 +95,17 @@ public class HttpUtils {
     /**
      * Gets this apps user agent value.
      *
-     * @param activity Used to get the apps name and version.
+     * @param context Used to get the apps name and version.
      * @return This apps user agent value.
      */
-    public String getUserAgentValue(Activity activity) {
+    public String getUserAgentValue(Context context) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            return activity.getString(R.string.app_name)
-                    + " " + activity.getString(R.string.app_version)
+            return context.getString(R.string.app_name)
+                    + " " + context.getString(R.string.app_version)
                     + " Android " + Build.VERSION.RELEASE_OR_CODENAME;
         } else {
-            return activity.getString(R.string.app_name)
-                    + " " + activity.getString(R.string.app_version)
+            return context.getString(R.string.app_name)
+                    + " " + context.getString(R.string.app_version)
                     + " Android " + Build.VERSION.RELEASE;
         }
     }
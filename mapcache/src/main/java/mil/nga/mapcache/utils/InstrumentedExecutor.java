@@ -0,0 +1,340 @@
+package mil.nga.mapcache.utils;
+
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A named thread pool that measures how long tasks wait and run.  Its queue is bounded by pushing
+ * back on the threads submitting tasks: once the queue is full a submitting thread that may block
+ * runs the task itself, which slows it down to the pool's pace.  The UI thread mustn't block, so
+ * its tasks are always queued.
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor {
+
+    /**
+     * The seconds an idle thread is kept.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The name of the pool.
+     */
+    private final String name;
+
+    /**
+     * The number of queued tasks at which submitting threads run their own tasks.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Checks if the submitting thread may run its own task, false for the UI thread.
+     */
+    private final BooleanSupplier callerMayRun;
+
+    /**
+     * The number of tasks run.
+     */
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * The number of tasks run by the submitting thread because the queue was full.
+     */
+    private final AtomicLong callerRunCount = new AtomicLong();
+
+    /**
+     * The total milliseconds tasks waited in the queue.
+     */
+    private final AtomicLong queueWaitMillis = new AtomicLong();
+
+    /**
+     * The longest milliseconds a task waited in the queue.
+     */
+    private final AtomicLong maxQueueWaitMillis = new AtomicLong();
+
+    /**
+     * The total milliseconds tasks ran.
+     */
+    private final AtomicLong runMillis = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param name          The name of the pool, also used for its threads.
+     * @param threads       The number of threads.
+     * @param queueCapacity The number of queued tasks at which submitting threads run their own
+     *                      tasks.
+     * @param callerMayRun  Checks if the submitting thread may run its own task.
+     */
+    public InstrumentedExecutor(String name, int threads, int queueCapacity,
+                                BooleanSupplier callerMayRun) {
+        super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                createThreadFactory(name));
+        allowCoreThreadTimeOut(true);
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.callerMayRun = callerMayRun;
+    }
+
+    /**
+     * Gets the name of the pool.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Task task = new Task(command);
+        if (getQueue().size() >= queueCapacity && !isShutdown() && callerMayRun.getAsBoolean()) {
+            callerRunCount.incrementAndGet();
+            task.run();
+        } else {
+            super.execute(task);
+        }
+    }
+
+    /**
+     * Gets the current state and measurements of the pool.
+     *
+     * @return The stats.
+     */
+    public Stats getStats() {
+        long completed = completedCount.get();
+        return new Stats(name, getPoolSize(), getActiveCount(), getQueue().size(), completed,
+                callerRunCount.get(), completed > 0 ? queueWaitMillis.get() / completed : 0,
+                maxQueueWaitMillis.get(), completed > 0 ? runMillis.get() / completed : 0);
+    }
+
+    /**
+     * Creates the factory of the pool's threads.
+     *
+     * @param name The name of the pool.
+     * @return The thread factory.
+     */
+    private static ThreadFactory createThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A task timed from when it was submitted.
+     */
+    private class Task implements Runnable {
+
+        /**
+         * The task to run.
+         */
+        private final Runnable command;
+
+        /**
+         * The time the task was submitted.
+         */
+        private final long submitTime = System.currentTimeMillis();
+
+        /**
+         * Constructor.
+         *
+         * @param command The task to run.
+         */
+        private Task(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            long wait = start - submitTime;
+            try {
+                command.run();
+            } finally {
+                completedCount.incrementAndGet();
+                queueWaitMillis.addAndGet(wait);
+                maxQueueWaitMillis.accumulateAndGet(wait, Math::max);
+                runMillis.addAndGet(System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * The state and measurements of a pool at a point in time.
+     */
+    public static class Stats {
+
+        /**
+         * The name of the pool.
+         */
+        private final String name;
+
+        /**
+         * The number of threads.
+         */
+        private final int threadCount;
+
+        /**
+         * The number of threads running tasks.
+         */
+        private final int activeCount;
+
+        /**
+         * The number of queued tasks.
+         */
+        private final int queueDepth;
+
+        /**
+         * The number of tasks run.
+         */
+        private final long completedCount;
+
+        /**
+         * The number of tasks run by the submitting thread because the queue was full.
+         */
+        private final long callerRunCount;
+
+        /**
+         * The average milliseconds tasks waited in the queue.
+         */
+        private final long averageQueueWaitMillis;
+
+        /**
+         * The longest milliseconds a task waited in the queue.
+         */
+        private final long maxQueueWaitMillis;
+
+        /**
+         * The average milliseconds tasks ran.
+         */
+        private final long averageRunMillis;
+
+        /**
+         * Constructor.
+         *
+         * @param name                   The name of the pool.
+         * @param threadCount            The number of threads.
+         * @param activeCount            The number of threads running tasks.
+         * @param queueDepth             The number of queued tasks.
+         * @param completedCount         The number of tasks run.
+         * @param callerRunCount         The number of tasks run by the submitting thread.
+         * @param averageQueueWaitMillis The average milliseconds tasks waited in the queue.
+         * @param maxQueueWaitMillis     The longest milliseconds a task waited in the queue.
+         * @param averageRunMillis       The average milliseconds tasks ran.
+         */
+        public Stats(String name, int threadCount, int activeCount, int queueDepth,
+                     long completedCount, long callerRunCount, long averageQueueWaitMillis,
+                     long maxQueueWaitMillis, long averageRunMillis) {
+            this.name = name;
+            this.threadCount = threadCount;
+            this.activeCount = activeCount;
+            this.queueDepth = queueDepth;
+            this.completedCount = completedCount;
+            this.callerRunCount = callerRunCount;
+            this.averageQueueWaitMillis = averageQueueWaitMillis;
+            this.maxQueueWaitMillis = maxQueueWaitMillis;
+            this.averageRunMillis = averageRunMillis;
+        }
+
+        /**
+         * Gets the name of the pool.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of threads.
+         *
+         * @return The thread count.
+         */
+        public int getThreadCount() {
+            return threadCount;
+        }
+
+        /**
+         * Gets the number of threads running tasks.
+         *
+         * @return The active count.
+         */
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        /**
+         * Gets the number of queued tasks.
+         *
+         * @return The queue depth.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * Gets the number of tasks run.
+         *
+         * @return The completed count.
+         */
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * Gets the number of tasks run by the submitting thread because the queue was full.
+         *
+         * @return The caller run count.
+         */
+        public long getCallerRunCount() {
+            return callerRunCount;
+        }
+
+        /**
+         * Gets the average time tasks waited in the queue.
+         *
+         * @return The average milliseconds.
+         */
+        public long getAverageQueueWaitMillis() {
+            return averageQueueWaitMillis;
+        }
+
+        /**
+         * Gets the longest time a task waited in the queue.
+         *
+         * @return The milliseconds.
+         */
+        public long getMaxQueueWaitMillis() {
+            return maxQueueWaitMillis;
+        }
+
+        /**
+         * Gets the average time tasks ran.
+         *
+         * @return The average milliseconds.
+         */
+        public long getAverageRunMillis() {
+            return averageRunMillis;
+        }
+
+        /**
+         * Describes the pool's state and measurements.
+         *
+         * @return The description.
+         */
+        public String describe() {
+            return String.format(Locale.US, "%s: %d/%d threads active, %d queued, %d run"
+                            + " (%d by caller), wait avg %d ms max %d ms, run avg %d ms",
+                    name, activeCount, threadCount, queueDepth, completedCount, callerRunCount,
+                    averageQueueWaitMillis, maxQueueWaitMillis, averageRunMillis);
+        }
+    }
+}
@@ -1,45 +1,187 @@
 package mil.nga.mapcache.utils;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import mil.nga.mapcache.io.network.RequestTimer;
 
 /**
- * Utility class that runs tasks on a background thread.
+ * Owns the app's background thread pools, each sized for its kind of work so one kind can't starve
+ * the others: network pools block on servers and users, database pools on storage, geometry pools
+ * keep the cores busy, and the scheduled pool only runs quick timed tasks.
  */
 public class ThreadUtils {
 
     /**
-     * Instance of this class.
+     * The number of cores.
+     */
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Instance of this class, or null once shut down until used again.
+     */
+    private static ThreadUtils instance = null;
+
+    /**
+     * Runs tasks that wait on the network or the user.
      */
-    private static ThreadUtils instance = new ThreadUtils();
+    private final InstrumentedExecutor network;
 
     /**
-     * The thread pool.
+     * Runs tasks that read and write GeoPackages and files.
      */
-    private ExecutorService executor = Executors.newFixedThreadPool(16);
+    private final InstrumentedExecutor database;
 
     /**
-     * Gets the instance of this class.
+     * Runs CPU bound tasks such as converting feature geometries.
+     */
+    private final InstrumentedExecutor geometry;
+
+    /**
+     * Runs quick tasks after a delay.
+     */
+    private final ScheduledThreadPoolExecutor scheduled;
+
+    /**
+     * Gets the instance of this class, creating the thread pools again if they were shut down.
      *
      * @return This class' instance.
      */
-    public static ThreadUtils getInstance() {
+    public static synchronized ThreadUtils getInstance() {
+        if (instance == null) {
+            instance = new ThreadUtils();
+        }
         return instance;
     }
 
     /**
-     * Runs the specified task on a background thread.
+     * Shuts the thread pools down, letting the tasks already submitted finish.  Logs how the pools
+     * and each host's request timeouts fared.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            for (InstrumentedExecutor.Stats stats : instance.getStats()) {
+                Log.i(ThreadUtils.class.getSimpleName(), stats.describe());
+            }
+            for (Map.Entry<String, RequestTimer.HostTimeouts> timeouts
+                    : RequestTimer.getInstance().getAllTimeouts().entrySet()) {
+                Log.i(ThreadUtils.class.getSimpleName(),
+                        timeouts.getValue().describe(timeouts.getKey()));
+            }
+            instance.network.shutdown();
+            instance.database.shutdown();
+            instance.geometry.shutdown();
+            instance.scheduled.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * Runs the specified task on a network thread, for tasks waiting on servers or the user.
+     *
+     * @param task The task to run in the background.
+     */
+    public void runNetwork(Runnable task) {
+        network.execute(task);
+    }
+
+    /**
+     * Runs the specified task on a database thread, for tasks reading and writing storage.
      *
      * @param task The task to run in the background.
      */
-    public void runBackground(Runnable task) {
-        executor.execute(task);
+    public void runDatabase(Runnable task) {
+        database.execute(task);
+    }
+
+    /**
+     * Runs the specified task on a geometry thread, for CPU bound tasks.
+     *
+     * @param task The task to run in the background.
+     */
+    public void runGeometry(Runnable task) {
+        geometry.execute(task);
+    }
+
+    /**
+     * Gets the network thread pool.
+     *
+     * @return The network thread pool.
+     */
+    public InstrumentedExecutor getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the database thread pool.
+     *
+     * @return The database thread pool.
+     */
+    public InstrumentedExecutor getDatabase() {
+        return database;
+    }
+
+    /**
+     * Gets the geometry thread pool.
+     *
+     * @return The geometry thread pool.
+     */
+    public InstrumentedExecutor getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Gets the scheduled thread pool, its tasks must be quick.
+     *
+     * @return The scheduled thread pool.
+     */
+    public ScheduledExecutorService getScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * Gets the current state and measurements of the thread pools.
+     *
+     * @return The stats of each pool.
+     */
+    public List<InstrumentedExecutor.Stats> getStats() {
+        List<InstrumentedExecutor.Stats> stats = new ArrayList<>();
+        stats.add(network.getStats());
+        stats.add(database.getStats());
+        stats.add(geometry.getStats());
+        return stats;
+    }
+
+    /**
+     * Checks if the current thread may run its own task when a pool's queue is full.
+     *
+     * @return False on the UI thread.
+     */
+    private static boolean callerMayRun() {
+        return Looper.myLooper() != Looper.getMainLooper();
     }
 
     /**
      * Private constructor makes this class singleton.
      */
     private ThreadUtils() {
-
+        network = new InstrumentedExecutor("network", Math.max(4, CORES * 2), 64,
+                ThreadUtils::callerMayRun);
+        database = new InstrumentedExecutor("database", Math.max(4, CORES), 256,
+                ThreadUtils::callerMayRun);
+        geometry = new InstrumentedExecutor("geometry", Math.max(2, CORES), 512,
+                ThreadUtils::callerMayRun);
+        scheduled = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+            Thread thread = new Thread(runnable, "scheduled");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduled.setRemoveOnCancelPolicy(true);
     }
 }
@@ -17,6 +17,19 @@ public class NewLayerUtil {
      * @param maxSpinner Maximum zoom level spinner
      */
     public static void setZoomLevelSyncListener(Spinner minSpinner, Spinner maxSpinner){
+        setZoomLevelSyncListener(minSpinner, maxSpinner, null);
+    }
+
+    /**
+     * Sets listeners on the min and max zoom spinners to keep them in sync, and calls the change
+     * listener whenever either selection changes.
+     *
+     * @param minSpinner The minimum zoom spinner.
+     * @param maxSpinner The maximum zoom spinner.
+     * @param onChange   Called after a selection changes, or null.
+     */
+    public static void setZoomLevelSyncListener(Spinner minSpinner, Spinner maxSpinner,
+                                                Runnable onChange){
 
         // Make sure max is always higher than or equal to min
         minSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
@@ -26,6 +39,9 @@ public class NewLayerUtil {
                 if(minValue > maxValue){
                     maxSpinner.setSelection(minValue);
                 }
+                if(onChange != null){
+                    onChange.run();
+                }
             }
             @Override
             public void onNothingSelected(AdapterView<?> adapterView) {
@@ -41,6 +57,9 @@ public class NewLayerUtil {
                 if(minValue > maxValue){
                     minSpinner.setSelection(maxValue);
                 }
+                if(onChange != null){
+                    onChange.run();
+                }
             }
             @Override
             public void onNothingSelected(AdapterView<?> adapterView) {
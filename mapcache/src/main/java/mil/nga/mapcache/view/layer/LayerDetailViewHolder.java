@@ -92,6 +92,26 @@ public class LayerDetailViewHolder extends RecyclerView.ViewHolder{
      */
     private final Button mLayerEdit;
 
+    /**
+     * Text button for resuming an unfinished tile download
+     */
+    private final Button mLayerResume;
+
+    /**
+     * Text button for retrying the tiles that failed to download
+     */
+    private final Button mLayerRetryFailed;
+
+    /**
+     * Text button for refreshing a downloaded tile layer from its server
+     */
+    private final Button mLayerRefresh;
+
+    /**
+     * Text button for recompressing the stored tiles of a tile layer
+     */
+    private final Button mLayerCompress;
+
     /**
      * DetailPageLayerObject containing details for the selected layer
      */
@@ -150,6 +170,10 @@ public class LayerDetailViewHolder extends RecyclerView.ViewHolder{
         mLayerRename = view.findViewById(R.id.layerRenameButton);
         mLayerCopy = view.findViewById(R.id.layerCopyButton);
         mLayerEdit = view.findViewById(R.id.editFeaturesButton);
+        mLayerResume = view.findViewById(R.id.layerResumeButton);
+        mLayerRetryFailed = view.findViewById(R.id.layerRetryFailedButton);
+        mLayerRefresh = view.findViewById(R.id.layerRefreshButton);
+        mLayerCompress = view.findViewById(R.id.layerCompressButton);
         zoomLabel = view.findViewById(R.id.layerZoomLabel);
         zoomText = view.findViewById(R.id.textMinZoom);
         addFieldButton = view.findViewById(R.id.add_field_button);
@@ -160,6 +184,10 @@ public class LayerDetailViewHolder extends RecyclerView.ViewHolder{
         setRenameListener();
         setCopyListener();
         setEditFeaturesListener();
+        setResumeListener();
+        setRetryFailedListener();
+        setRefreshListener();
+        setCompressListener();
         setLayerSwitchListener();
         ViewAnimation.fadeInFromRight(itemView, 200);
 
@@ -188,6 +216,10 @@ public class LayerDetailViewHolder extends RecyclerView.ViewHolder{
             layerTypeIcon.setImageResource(R.drawable.colored_layers);
             layerCountDetailText.setText(tile.getCount() + " tiles");
             showFields(false);
+            mLayerResume.setVisibility(tile.isResumable() ? View.VISIBLE : View.GONE);
+            mLayerRetryFailed.setVisibility(tile.getFailedTileCount() > 0 ? View.VISIBLE : View.GONE);
+            mLayerRefresh.setVisibility(tile.isRefreshable() ? View.VISIBLE : View.GONE);
+            mLayerCompress.setVisibility(tile.getCount() > 0 ? View.VISIBLE : View.GONE);
             if(tile.getMinZoom() >= 0 && tile.getMaxZoom() >= 0) {
                 zoomLabel.setVisibility(View.VISIBLE);
                 zoomText.setVisibility(View.VISIBLE);
@@ -258,6 +290,54 @@ public class LayerDetailViewHolder extends RecyclerView.ViewHolder{
         });
     }
 
+    /**
+     * Click listener for the resume download button
+     */
+    private void setResumeListener(){
+        mLayerResume.setOnClickListener(new View.OnClickListener(){
+            @Override
+            public void onClick(View view) {
+                mDetailActionListener.onClick(view, DetailActionListener.RESUME_DOWNLOAD, mLayerObject.getGeoPackageName(), mLayerObject.getName());
+            }
+        });
+    }
+
+    /**
+     * Click listener for the retry failed tiles button
+     */
+    private void setRetryFailedListener(){
+        mLayerRetryFailed.setOnClickListener(new View.OnClickListener(){
+            @Override
+            public void onClick(View view) {
+                mDetailActionListener.onClick(view, DetailActionListener.RETRY_FAILED_TILES, mLayerObject.getGeoPackageName(), mLayerObject.getName());
+            }
+        });
+    }
+
+    /**
+     * Click listener for the refresh layer button
+     */
+    private void setRefreshListener(){
+        mLayerRefresh.setOnClickListener(new View.OnClickListener(){
+            @Override
+            public void onClick(View view) {
+                mDetailActionListener.onClick(view, DetailActionListener.REFRESH_TILES, mLayerObject.getGeoPackageName(), mLayerObject.getName());
+            }
+        });
+    }
+
+    /**
+     * Click listener for the compress tiles button
+     */
+    private void setCompressListener(){
+        mLayerCompress.setOnClickListener(new View.OnClickListener(){
+            @Override
+            public void onClick(View view) {
+                mDetailActionListener.onClick(view, DetailActionListener.RECOMPRESS_TILES, mLayerObject.getGeoPackageName(), mLayerObject.getName());
+            }
+        });
+    }
+
     /**
      * If it's a tile layer, don't show the data fields
      */
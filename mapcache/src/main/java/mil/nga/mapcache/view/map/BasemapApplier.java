@@ -7,6 +7,7 @@ import android.view.View;
 import android.widget.TextView;
 
 import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.TileOverlay;
 import com.google.android.gms.maps.model.TileOverlayOptions;
 import com.google.android.gms.maps.model.TileProvider;
@@ -24,6 +25,7 @@ import mil.nga.mapcache.preferences.BasemapSettings;
 import mil.nga.mapcache.preferences.BasemapSettingsIO;
 import mil.nga.mapcache.preferences.GridType;
 import mil.nga.mapcache.view.map.grid.GridController;
+import mil.nga.mapcache.view.map.overlays.TileViewport;
 import mil.nga.mapcache.view.map.overlays.WMSTileProvider;
 import mil.nga.mapcache.view.map.overlays.XYZTileProvider;
 
@@ -270,6 +272,37 @@ public class BasemapApplier {
         }
     }
 
+    /**
+     * Tells the basemap overlays which tiles are on screen as the camera moves, so tiles that
+     * scrolled off screen are given up on.
+     *
+     * @param map The map whose camera moved.
+     */
+    public void cameraMoved(GoogleMap map) {
+        if (!currentProviders.isEmpty()) {
+            LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+            TileViewport.getInstance().moved(map.getCameraPosition().zoom,
+                    bounds.southwest.longitude, bounds.southwest.latitude,
+                    bounds.northeast.longitude, bounds.northeast.latitude);
+        }
+    }
+
+    /**
+     * Tells the basemap overlays which tiles are on screen once the camera stops moving, and
+     * starts timing how long they take to fill the screen.
+     *
+     * @param map The map whose camera stopped.
+     */
+    public void cameraIdle(GoogleMap map) {
+        if (!currentProviders.isEmpty()) {
+            LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+            TileViewport.getInstance().settled(map.getCameraPosition().zoom,
+                    bounds.southwest.longitude, bounds.southwest.latitude,
+                    bounds.northeast.longitude, bounds.northeast.latitude,
+                    System.currentTimeMillis());
+        }
+    }
+
     /**
      * Clears out any
      */
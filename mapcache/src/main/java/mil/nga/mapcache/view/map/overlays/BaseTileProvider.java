@@ -1,7 +1,6 @@
 package mil.nga.mapcache.view.map.overlays;
 
 import android.app.Activity;
-import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.util.Log;
 
@@ -10,11 +9,22 @@ import androidx.annotation.Nullable;
 import com.google.android.gms.maps.model.Tile;
 import com.google.android.gms.maps.model.TileProvider;
 
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 import mil.nga.mapcache.io.network.HttpClient;
+import mil.nga.mapcache.io.network.RequestPriority;
 
 /**
  * Abstract TileProvider that handles downloading the image and creating tiles but depends on
- * subclass providing correct urls based on tile's xyz coordinate.
+ * subclass providing correct urls based on tile's xyz coordinate.  The map asks for tiles from
+ * several threads at once and they are fetched concurrently, up to a limit per overlay so one
+ * overlay can't take every connection.  Tiles that scrolled off screen before their image arrived
+ * are given up on.  Tiles are cached in memory and on disk following the server's caching headers,
+ * fresh tiles are shown without asking the server and stale tiles are shown if the server can't be
+ * reached.
  */
 public abstract class BaseTileProvider implements TileProvider {
 
@@ -23,18 +33,58 @@ public abstract class BaseTileProvider implements TileProvider {
      */
     private static final boolean isDebug = false;
 
+    /**
+     * The most tiles of an overlay fetched at once.
+     */
+    private static final int MAX_IN_FLIGHT = 6;
+
+    /**
+     * How often a waiting tile checks if it is still on screen.
+     */
+    private static final long VISIBLE_CHECK_MILLIS = 250;
+
     /**
      * The activity used to ask username and password if necessary.
      */
     private final Activity activity;
 
+    /**
+     * The permits to fetch a tile.
+     */
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT, true);
+
+    /**
+     * The part of the map the user is looking at.
+     */
+    private final TileViewport viewport = TileViewport.getInstance();
+
+    /**
+     * Times how long the overlay takes to fill the viewport.
+     */
+    private final ViewportFillTimer fillTimer = new ViewportFillTimer();
+
+    /**
+     * Caches the tiles.
+     */
+    private final TileCache cache;
+
+    /**
+     * The source of the tiles in the cache.
+     */
+    private final String cacheSource;
+
     /**
      * Constructor.
      *
      * @param activity Used to ask username and password if necessary.
+     * @param server   The server url, used to key the cached tiles.
+     * @param layer    The layer name or empty string, used to key the cached tiles.
+     * @param format   The image format or empty string, used to key the cached tiles.
      */
-    public BaseTileProvider(Activity activity) {
+    public BaseTileProvider(Activity activity, String server, String layer, String format) {
         this.activity = activity;
+        this.cache = TileCache.getInstance(activity);
+        this.cacheSource = TileCache.getSource(server, layer, format);
     }
 
     @Nullable
@@ -46,20 +96,51 @@ public abstract class BaseTileProvider implements TileProvider {
         if (isDebug)
             Log.d(BaseTileProvider.class.getSimpleName(), "Downloading image from " + url);
         if (url != null) {
-            byte[] image = downloadImage(url);
+            CachedTile cached = cache.get(cacheSource, z, x, y, System.currentTimeMillis());
+            byte[] image;
+            if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+                image = cached.getData();
+            } else {
+                fillTimer.started(viewport.getSettleTime());
+                try {
+                    image = fetchImage(url, x, y, z, cached);
+                } finally {
+                    long fillMillis = fillTimer.finished(viewport.getSettleTime(),
+                            System.currentTimeMillis());
+                    if (isDebug && fillMillis >= 0) {
+                        Log.d(BaseTileProvider.class.getSimpleName(), "Filled viewport in "
+                                + fillMillis + " ms, average "
+                                + fillTimer.getAverageFillMillis() + " ms");
+                    }
+                }
+            }
             if (image != null) {
                 if (isDebug)
                     Log.d(BaseTileProvider.class.getSimpleName(), url + " image bytes length " + image.length);
-                Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length);
+                // Only the size is needed, the map decodes the image itself
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(image, 0, image.length, options);
                 if (isDebug)
-                    Log.d(BaseTileProvider.class.getSimpleName(), url + " bitmap height and width " + bitmap.getHeight() + " " + bitmap.getWidth());
-                tile = new Tile(bitmap.getWidth(), bitmap.getHeight(), image);
+                    Log.d(BaseTileProvider.class.getSimpleName(), url + " bitmap height and width " + options.outHeight + " " + options.outWidth);
+                if (options.outWidth > 0 && options.outHeight > 0) {
+                    tile = new Tile(options.outWidth, options.outHeight, image);
+                }
             }
         }
 
         return tile;
     }
 
+    /**
+     * Gets how long the last viewport took to fill with this overlay's tiles.
+     *
+     * @return The milliseconds, or -1 if none have filled.
+     */
+    public long getLastFillMillis() {
+        return fillTimer.getLastFillMillis();
+    }
+
     /**
      * Gets the tile's image url.
      *
@@ -72,22 +153,96 @@ public abstract class BaseTileProvider implements TileProvider {
     protected abstract String getTileUrl(int x, int y, int z);
 
     /**
-     * Downloads the image at the specified url.
+     * Gets the image from the server, asking only for a changed image if a stale one is cached.
+     *
+     * @param url    The location of the image.
+     * @param x      The x coordinate of the tile.
+     * @param y      The y coordinate of the tile.
+     * @param z      The z coordinate of the tile.
+     * @param cached The stale cached tile, or null if the tile isn't cached.
+     * @return The image data, or null if there is none or it is no longer wanted.
+     */
+    private byte[] fetchImage(String url, int x, int y, int z, CachedTile cached) {
+        byte[] image = null;
+        TileResponseHandler handler = downloadImage(url, x, y, z,
+                cached != null ? cached.getConditionalHeaders() : null);
+        int responseCode = handler != null ? handler.getResponseCode() : -1;
+        long now = System.currentTimeMillis();
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            image = cached.getData();
+            cache.put(cacheSource, z, x, y, cached.revalidated(handler.getHeaders(), now));
+        } else if (handler != null && handler.getBytes() != null) {
+            image = handler.getBytes();
+            CachedTile tile = CachedTile.fromResponse(image, handler.getHeaders(), now);
+            if (tile != null && isImage(image)) {
+                cache.put(cacheSource, z, x, y, tile);
+            }
+        } else if (cached != null && (responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                || responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR)) {
+            // The server can't be reached or is failing, the stale tile is better than none
+            if (isDebug)
+                Log.d(BaseTileProvider.class.getSimpleName(), "Showing stale tile " + url);
+            image = cached.getData();
+        }
+
+        return image;
+    }
+
+    /**
+     * Checks if the bytes are an image, so error pages sent as images aren't cached.
      *
-     * @param url The location of the image.
-     * @return The image data.
+     * @param image The image data.
+     * @return True if the data decodes to an image.
      */
-    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    private synchronized byte[] downloadImage(String url) {
-        TileResponseHandler handler = new TileResponseHandler();
-        synchronized (handler) {
-            HttpClient.getInstance().sendGet(url, handler, this.activity);
-            try {
-                handler.wait();
-            } catch (InterruptedException e) {
-                Log.d(XYZTileProvider.class.getSimpleName(), e.getMessage(), e);
+    private static boolean isImage(byte[] image) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    /**
+     * Downloads the image at the specified url, unless the tile scrolls off screen first.
+     *
+     * @param url     The location of the image.
+     * @param x       The x coordinate of the tile.
+     * @param y       The y coordinate of the tile.
+     * @param z       The z coordinate of the tile.
+     * @param headers The conditional request headers, or null.
+     * @return The handler of the response, or null if the tile is no longer wanted.
+     */
+    private TileResponseHandler downloadImage(String url, int x, int y, int z,
+                                              Map<String, String> headers) {
+        TileResponseHandler responded = null;
+        boolean acquired = false;
+        try {
+            while (!acquired && viewport.isVisible(x, y, z)) {
+                acquired = inFlight.tryAcquire(VISIBLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            if (acquired) {
+                TileResponseHandler handler = new TileResponseHandler();
+                HttpClient.getInstance().sendGet(url, handler, headers,
+                        RequestPriority.INTERACTIVE, this.activity);
+                boolean isDone = false;
+                while (!isDone && viewport.isVisible(x, y, z)) {
+                    isDone = handler.awaitResponse(VISIBLE_CHECK_MILLIS);
+                }
+                if (isDone) {
+                    responded = handler;
+                } else {
+                    handler.cancel();
+                }
+            }
+            if (isDebug && !viewport.isVisible(x, y, z)) {
+                Log.d(BaseTileProvider.class.getSimpleName(), "Gave up on off screen tile " + url);
+            }
+        } catch (InterruptedException e) {
+            Log.d(BaseTileProvider.class.getSimpleName(), e.getMessage(), e);
+        } finally {
+            if (acquired) {
+                inFlight.release();
             }
         }
-        return handler.getBytes();
+        return responded;
     }
 }
@@ -0,0 +1,303 @@
+package mil.nga.mapcache.view.map.overlays;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A basemap tile image kept in the tile cache, along with how long the server said it stays fresh
+ * and the validators used to ask the server if it changed.
+ */
+public class CachedTile {
+
+    /**
+     * How long a tile is fresh when the server doesn't say, 1 day.
+     */
+    public static final long DEFAULT_FRESH_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * The tile's image bytes.
+     */
+    private final byte[] data;
+
+    /**
+     * The time the tile was stored or last revalidated.
+     */
+    private final long storedTime;
+
+    /**
+     * The time the tile stops being fresh.
+     */
+    private final long freshUntil;
+
+    /**
+     * The ETag header, or null if the server didn't send one.
+     */
+    private final String eTag;
+
+    /**
+     * The Last-Modified header, or null if the server didn't send one.
+     */
+    private final String lastModified;
+
+    /**
+     * Constructor.
+     *
+     * @param data         The tile's image bytes.
+     * @param storedTime   The time the tile was stored or last revalidated.
+     * @param freshUntil   The time the tile stops being fresh.
+     * @param eTag         The ETag header, or null.
+     * @param lastModified The Last-Modified header, or null.
+     */
+    public CachedTile(byte[] data, long storedTime, long freshUntil, String eTag,
+                      String lastModified) {
+        this.data = data;
+        this.storedTime = storedTime;
+        this.freshUntil = freshUntil;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Creates the cached tile for a downloaded image, following the response's caching headers.
+     *
+     * @param data    The tile's image bytes.
+     * @param headers The response headers.
+     * @param now     The current time in milliseconds.
+     * @return The cached tile, or null if the server said not to store it.
+     */
+    public static CachedTile fromResponse(byte[] data, Map<String, List<String>> headers,
+                                          long now) {
+        CachedTile tile = null;
+        String cacheControl = getHeader(headers, "Cache-Control");
+        if (cacheControl == null || !hasDirective(cacheControl, "no-store")) {
+            String lastModified = getHeader(headers, "Last-Modified");
+            tile = new CachedTile(data, now, getFreshUntil(headers, cacheControl, now),
+                    getHeader(headers, "ETag"), lastModified);
+        }
+
+        return tile;
+    }
+
+    /**
+     * Creates the cached tile after the server said the tile hasn't changed, taking the
+     * freshness and validators of the not modified response.
+     *
+     * @param headers The not modified response headers.
+     * @param now     The current time in milliseconds.
+     * @return The revalidated tile with the same image.
+     */
+    public CachedTile revalidated(Map<String, List<String>> headers, long now) {
+        String cacheControl = getHeader(headers, "Cache-Control");
+        String newETag = getHeader(headers, "ETag");
+        String newLastModified = getHeader(headers, "Last-Modified");
+        return new CachedTile(data, now, getFreshUntil(headers, cacheControl, now),
+                newETag != null ? newETag : eTag,
+                newLastModified != null ? newLastModified : lastModified);
+    }
+
+    /**
+     * Gets the tile's image bytes.
+     *
+     * @return The image bytes.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Gets the time the tile was stored or last revalidated.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getStoredTime() {
+        return storedTime;
+    }
+
+    /**
+     * Gets the time the tile stops being fresh.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getFreshUntil() {
+        return freshUntil;
+    }
+
+    /**
+     * Gets the ETag header.
+     *
+     * @return The ETag, or null if the server didn't send one.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Gets the Last-Modified header.
+     *
+     * @return The Last-Modified, or null if the server didn't send one.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Checks if the tile can be used without asking the server.
+     *
+     * @param now The current time in milliseconds.
+     * @return True if the tile is still fresh.
+     */
+    public boolean isFresh(long now) {
+        return now < freshUntil;
+    }
+
+    /**
+     * Gets the headers asking the server to only send the tile if it changed.
+     *
+     * @return The conditional headers, or null if the server sent no validators.
+     */
+    public Map<String, String> getConditionalHeaders() {
+        Map<String, String> headers = null;
+        if (eTag != null || lastModified != null) {
+            headers = new HashMap<>();
+            if (eTag != null) {
+                headers.put("If-None-Match", eTag);
+            }
+            if (lastModified != null) {
+                headers.put("If-Modified-Since", lastModified);
+            }
+        }
+
+        return headers;
+    }
+
+    /**
+     * Gets the number of bytes the tile takes in memory.
+     *
+     * @return The approximate size in bytes.
+     */
+    public int getSize() {
+        return data.length + 64;
+    }
+
+    /**
+     * Works out how long a response stays fresh, from its max-age, its Expires header, or a tenth
+     * of how long ago it was last modified, the way browsers do.
+     *
+     * @param headers      The response headers.
+     * @param cacheControl The Cache-Control header or null.
+     * @param now          The current time in milliseconds.
+     * @return The time the response stops being fresh.
+     */
+    private static long getFreshUntil(Map<String, List<String>> headers, String cacheControl,
+                                      long now) {
+        long freshUntil = now + DEFAULT_FRESH_MILLIS;
+        Long maxAge = cacheControl != null ? getMaxAge(cacheControl) : null;
+        Date expires = parseDate(getHeader(headers, "Expires"));
+        Date lastModified = parseDate(getHeader(headers, "Last-Modified"));
+        if (cacheControl != null && hasDirective(cacheControl, "no-cache")) {
+            freshUntil = now;
+        } else if (maxAge != null) {
+            freshUntil = now + maxAge * 1000;
+        } else if (getHeader(headers, "Expires") != null) {
+            // An Expires that can't be parsed means already expired
+            freshUntil = expires != null ? expires.getTime() : now;
+        } else if (lastModified != null && lastModified.getTime() < now) {
+            freshUntil = now + Math.min((now - lastModified.getTime()) / 10,
+                    DEFAULT_FRESH_MILLIS);
+        }
+
+        return freshUntil;
+    }
+
+    /**
+     * Gets the max-age directive of a Cache-Control header.
+     *
+     * @param cacheControl The Cache-Control header.
+     * @return The max-age in seconds, or null if there isn't one.
+     */
+    private static Long getMaxAge(String cacheControl) {
+        Long maxAge = null;
+        for (String directive : cacheControl.split(",")) {
+            String trimmed = directive.trim().toLowerCase(Locale.US);
+            if (trimmed.startsWith("max-age=")) {
+                try {
+                    maxAge = Math.max(0, Long.parseLong(
+                            trimmed.substring(8).replace("\"", "").trim()));
+                } catch (NumberFormatException e) {
+                    maxAge = 0L;
+                }
+            }
+        }
+
+        return maxAge;
+    }
+
+    /**
+     * Checks if a Cache-Control header has a directive.
+     *
+     * @param cacheControl The Cache-Control header.
+     * @param name         The directive name.
+     * @return True if the header has the directive.
+     */
+    private static boolean hasDirective(String cacheControl, String name) {
+        boolean has = false;
+        for (String directive : cacheControl.split(",")) {
+            String trimmed = directive.trim();
+            if (trimmed.equalsIgnoreCase(name)
+                    || trimmed.toLowerCase(Locale.US).startsWith(name + "=")) {
+                has = true;
+                break;
+            }
+        }
+
+        return has;
+    }
+
+    /**
+     * Parses an http date.
+     *
+     * @param value The header value, or null.
+     * @return The date, or null if there is no value or it couldn't be parsed.
+     */
+    private static Date parseDate(String value) {
+        Date date = null;
+        if (value != null) {
+            SimpleDateFormat format = new SimpleDateFormat(
+                    "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            try {
+                date = format.parse(value.trim());
+            } catch (ParseException e) {
+                date = null;
+            }
+        }
+
+        return date;
+    }
+
+    /**
+     * Gets the values of a header joined with commas, ignoring the case of the header name.
+     *
+     * @param headers The response headers.
+     * @param name    The header name.
+     * @return The header value, or null if the header isn't present.
+     */
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        String value = null;
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null
+                        && !header.getValue().isEmpty()) {
+                    value = String.join(",", header.getValue());
+                    break;
+                }
+            }
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,332 @@
+package mil.nga.mapcache.view.map.overlays;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps basemap tiles in files so they can be shown again without the network, even after the app
+ * restarts or the link drops.  Each tile source has its own directory, named by a hash of the
+ * server, layer and format, holding a file per tile under z/x/y.  When the files grow past the size
+ * limit the least recently used are deleted, and tiles not stored or revalidated within the
+ * expiry are deleted whether or not they are used.  Each file keeps the time its tile was stored,
+ * which decides when it expires, apart from the file's modified time, which reading the tile
+ * touches to mark it as recently used.
+ */
+public class DiskTileCache {
+
+    /**
+     * Identifies the version of the tile file format.
+     */
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * The extension of tile files.
+     */
+    private static final String EXTENSION = ".tile";
+
+    /**
+     * The fraction of the size limit the cache is trimmed down to.
+     */
+    private static final double TRIM_FRACTION = 0.9;
+
+    /**
+     * The directory containing the tiles.
+     */
+    private final File directory;
+
+    /**
+     * The most bytes of tile files kept.
+     */
+    private final long maxBytes;
+
+    /**
+     * The milliseconds after being stored or revalidated that a tile is deleted.
+     */
+    private final long maxAgeMillis;
+
+    /**
+     * The bytes of the tile files, or -1 until the directory is measured.
+     */
+    private final AtomicLong bytes = new AtomicLong(-1);
+
+    /**
+     * Constructor.
+     *
+     * @param directory    The directory containing the tiles.
+     * @param maxBytes     The most bytes of tile files kept.
+     * @param maxAgeMillis The milliseconds after being stored or revalidated that a tile is
+     *                     deleted.
+     */
+    public DiskTileCache(File directory, long maxBytes, long maxAgeMillis) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Reads a tile, marking it as recently used.
+     *
+     * @param source The tile source, from its server, layer and format.
+     * @param z      The z coordinate of the tile.
+     * @param x      The x coordinate of the tile.
+     * @param y      The y coordinate of the tile.
+     * @param now    The current time in milliseconds.
+     * @return The tile, or null if it isn't stored or expired.
+     */
+    public CachedTile get(String source, int z, int x, int y, long now) {
+        CachedTile tile = null;
+        File file = getFile(source, z, x, y);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)))) {
+                if (in.readInt() == FILE_VERSION && source.equals(in.readUTF())) {
+                    long storedTime = in.readLong();
+                    long freshUntil = in.readLong();
+                    String eTag = in.readBoolean() ? in.readUTF() : null;
+                    String lastModified = in.readBoolean() ? in.readUTF() : null;
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    if (now - storedTime < maxAgeMillis) {
+                        tile = new CachedTile(data, storedTime, freshUntil, eTag, lastModified);
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(DiskTileCache.class.getSimpleName(), "Failed to read " + file, e);
+            }
+
+            if (tile != null) {
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(now);
+            } else {
+                long length = file.length();
+                delete(file);
+                if (bytes.get() >= 0) {
+                    bytes.addAndGet(-length);
+                }
+            }
+        }
+
+        return tile;
+    }
+
+    /**
+     * Stores a tile, deleting the least recently used tiles if over the size limit.
+     *
+     * @param source The tile source, from its server, layer and format.
+     * @param z      The z coordinate of the tile.
+     * @param x      The x coordinate of the tile.
+     * @param y      The y coordinate of the tile.
+     * @param tile   The tile.
+     */
+    public void put(String source, int z, int x, int y, CachedTile tile) {
+        measure();
+        File file = getFile(source, z, x, y);
+        File parent = file.getParentFile();
+        File temp = new File(parent, file.getName() + ".tmp");
+        long previousSize = file.length();
+        try {
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Failed to create " + parent);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                out.writeUTF(source);
+                out.writeLong(tile.getStoredTime());
+                out.writeLong(tile.getFreshUntil());
+                writeOptional(out, tile.getETag());
+                writeOptional(out, tile.getLastModified());
+                out.writeInt(tile.getData().length);
+                out.write(tile.getData());
+            }
+            // Renaming replaces the old tile at once, so a reader never sees a partial file
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename " + temp);
+            }
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(tile.getStoredTime());
+            bytes.addAndGet(file.length() - previousSize);
+        } catch (IOException e) {
+            Log.w(DiskTileCache.class.getSimpleName(), "Failed to store " + file, e);
+            delete(temp);
+        }
+
+        if (bytes.get() > maxBytes) {
+            trim(tile.getStoredTime());
+        }
+    }
+
+    /**
+     * Deletes expired tiles, then the least recently used tiles until under the size limit.
+     *
+     * @param now The current time in milliseconds.
+     */
+    public synchronized void trim(long now) {
+        List<File> files = new ArrayList<>();
+        listTiles(directory, files);
+        long size = 0;
+        List<File> kept = new ArrayList<>();
+        for (File file : files) {
+            // Reading a tile touches its file, so expire by the stored time in the file instead
+            if (now - readStoredTime(file) >= maxAgeMillis) {
+                delete(file);
+            } else {
+                size += file.length();
+                kept.add(file);
+            }
+        }
+
+        long target = (long) (maxBytes * TRIM_FRACTION);
+        if (size > maxBytes) {
+            kept.sort(Comparator.comparingLong(File::lastModified));
+            for (File file : kept) {
+                if (size <= target) {
+                    break;
+                }
+                size -= file.length();
+                delete(file);
+            }
+        }
+        bytes.set(size);
+    }
+
+    /**
+     * Reads the time a tile was stored from its file.
+     *
+     * @param file The tile file.
+     * @return The stored time in milliseconds, or 0 if the file can't be read so it expires.
+     */
+    private static long readStoredTime(File file) {
+        long storedTime = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            if (in.readInt() == FILE_VERSION) {
+                in.readUTF();
+                storedTime = in.readLong();
+            }
+        } catch (IOException e) {
+            Log.w(DiskTileCache.class.getSimpleName(), "Failed to read " + file, e);
+        }
+
+        return storedTime;
+    }
+
+    /**
+     * Gets the bytes of the tile files.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytes() {
+        measure();
+        return bytes.get();
+    }
+
+    /**
+     * Measures the tile files the first time the size is needed.
+     */
+    private void measure() {
+        if (bytes.get() < 0) {
+            List<File> files = new ArrayList<>();
+            listTiles(directory, files);
+            long size = 0;
+            for (File file : files) {
+                size += file.length();
+            }
+            bytes.compareAndSet(-1, size);
+        }
+    }
+
+    /**
+     * Gets the file of a tile.
+     *
+     * @param source The tile source.
+     * @param z      The z coordinate of the tile.
+     * @param x      The x coordinate of the tile.
+     * @param y      The y coordinate of the tile.
+     * @return The tile's file.
+     */
+    private File getFile(String source, int z, int x, int y) {
+        File sourceDirectory = new File(directory, hash(source));
+        return new File(sourceDirectory, z + File.separator + x + File.separator + y + EXTENSION);
+    }
+
+    /**
+     * Adds the tile files under a directory to the list.
+     *
+     * @param parent The directory.
+     * @param files  The list of tile files.
+     */
+    private static void listTiles(File parent, List<File> files) {
+        File[] children = parent.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    listTiles(child, files);
+                } else if (child.getName().endsWith(EXTENSION)) {
+                    files.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a string that may be null.
+     *
+     * @param out   The stream to write to.
+     * @param value The string or null.
+     * @throws IOException If the write failed.
+     */
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Deletes a file.
+     *
+     * @param file The file to delete.
+     */
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(DiskTileCache.class.getSimpleName(), "Failed to delete " + file);
+        }
+    }
+
+    /**
+     * Hashes a tile source into a directory name.
+     *
+     * @param source The tile source.
+     * @return The hex SHA-1 of the source.
+     */
+    private static String hash(String source) {
+        StringBuilder hex = new StringBuilder();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (byte b : digest.digest(source.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            hex.append(Integer.toHexString(source.hashCode()));
+        }
+
+        return hex.toString();
+    }
+}
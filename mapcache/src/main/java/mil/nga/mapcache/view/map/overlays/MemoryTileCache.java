@@ -0,0 +1,96 @@
+package mil.nga.mapcache.view.map.overlays;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used basemap tiles in memory, up to a number of bytes.  The least
+ * recently used tiles are dropped first.
+ */
+public class MemoryTileCache {
+
+    /**
+     * The most bytes of tiles kept.
+     */
+    private final long maxBytes;
+
+    /**
+     * The tiles by cache key, least recently used first.
+     */
+    private final LinkedHashMap<String, CachedTile> tiles = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * The bytes of the tiles kept.
+     */
+    private long bytes = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes The most bytes of tiles kept.
+     */
+    public MemoryTileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a tile, making it the most recently used.
+     *
+     * @param key The tile's cache key.
+     * @return The tile, or null if it isn't kept.
+     */
+    public synchronized CachedTile get(String key) {
+        return tiles.get(key);
+    }
+
+    /**
+     * Keeps a tile, dropping the least recently used tiles if over the limit.  Tiles bigger than
+     * the limit aren't kept.
+     *
+     * @param key  The tile's cache key.
+     * @param tile The tile.
+     */
+    public synchronized void put(String key, CachedTile tile) {
+        CachedTile previous = tiles.remove(key);
+        if (previous != null) {
+            bytes -= previous.getSize();
+        }
+        if (tile.getSize() <= maxBytes) {
+            tiles.put(key, tile);
+            bytes += tile.getSize();
+            trim(maxBytes);
+        }
+    }
+
+    /**
+     * Drops the least recently used tiles until the kept tiles fit.
+     *
+     * @param size The most bytes of tiles to keep.
+     */
+    public synchronized void trim(long size) {
+        Iterator<Map.Entry<String, CachedTile>> iterator = tiles.entrySet().iterator();
+        while (bytes > size && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().getSize();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Gets the bytes of the tiles kept.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of tiles kept.
+     *
+     * @return The number of tiles.
+     */
+    public synchronized int getCount() {
+        return tiles.size();
+    }
+}
@@ -0,0 +1,183 @@
+package mil.nga.mapcache.view.map.overlays;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Caches the basemap tiles of the XYZ and WMS tile servers, first in memory then on disk, so
+ * revisiting an area doesn't download its tiles again.  Tiles are keyed by their source, made from
+ * the server, layer and format, and their z/x/y.  Tiles read from disk are kept in memory, and
+ * tiles are written to disk one at a time on the cache's own thread, so writing them doesn't take
+ * threads from the GeoPackage work.  The tiles in memory are dropped when memory runs low.
+ */
+public class TileCache implements ComponentCallbacks2 {
+
+    /**
+     * The most bytes of tile files kept on disk.
+     */
+    private static final long MAX_DISK_BYTES = 200L * 1024 * 1024;
+
+    /**
+     * The most bytes of tiles kept in memory.
+     */
+    private static final long MAX_MEMORY_BYTES = Math.min(32L * 1024 * 1024,
+            Runtime.getRuntime().maxMemory() / 16);
+
+    /**
+     * The milliseconds after being stored or revalidated that a tile is deleted from disk, until
+     * then a stale tile is still shown when the server can't be reached.
+     */
+    private static final long MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The name of the cache directory.
+     */
+    private static final String DIRECTORY_NAME = "basemap_tiles";
+
+    /**
+     * The instance of this class.
+     */
+    private static TileCache instance = null;
+
+    /**
+     * The tiles kept in memory.
+     */
+    private final MemoryTileCache memory;
+
+    /**
+     * The tiles kept on disk.
+     */
+    private final DiskTileCache disk;
+
+    /**
+     * Writes tiles to disk.
+     */
+    private final Executor diskWriter;
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @param context Used to get the cache directory.
+     * @return The instance of this class.
+     */
+    public static synchronized TileCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new TileCache(new MemoryTileCache(MAX_MEMORY_BYTES),
+                    new DiskTileCache(new File(context.getCacheDir(), DIRECTORY_NAME),
+                            MAX_DISK_BYTES, MAX_AGE_MILLIS),
+                    Executors.newSingleThreadExecutor((runnable) -> {
+                        Thread thread = new Thread(runnable, "basemap tile cache");
+                        thread.setDaemon(true);
+                        return thread;
+                    }));
+            context.getApplicationContext().registerComponentCallbacks(instance);
+            instance.diskWriter.execute(() -> instance.disk.trim(System.currentTimeMillis()));
+        }
+        return instance;
+    }
+
+    /**
+     * Constructor, public so tests can use their own caches.
+     *
+     * @param memory     The tiles kept in memory.
+     * @param disk       The tiles kept on disk.
+     * @param diskWriter Writes tiles to disk.
+     */
+    public TileCache(MemoryTileCache memory, DiskTileCache disk, Executor diskWriter) {
+        this.memory = memory;
+        this.disk = disk;
+        this.diskWriter = diskWriter;
+    }
+
+    /**
+     * Gets the source of tiles, used in their cache keys.
+     *
+     * @param server The server url.
+     * @param layer  The layer name, or empty if the server has one layer.
+     * @param format The image format, or empty if the url decides.
+     * @return The tile source.
+     */
+    public static String getSource(String server, String layer, String format) {
+        return server + "|" + layer + "|" + format;
+    }
+
+    /**
+     * Gets a cached tile, whether fresh or not.
+     *
+     * @param source The tile source.
+     * @param z      The z coordinate of the tile.
+     * @param x      The x coordinate of the tile.
+     * @param y      The y coordinate of the tile.
+     * @param now    The current time in milliseconds.
+     * @return The tile, or null if it isn't cached.
+     */
+    public CachedTile get(String source, int z, int x, int y, long now) {
+        String key = getKey(source, z, x, y);
+        CachedTile tile = memory.get(key);
+        if (tile == null) {
+            tile = disk.get(source, z, x, y, now);
+            if (tile != null) {
+                memory.put(key, tile);
+            }
+        }
+
+        return tile;
+    }
+
+    /**
+     * Caches a tile.
+     *
+     * @param source The tile source.
+     * @param z      The z coordinate of the tile.
+     * @param x      The x coordinate of the tile.
+     * @param y      The y coordinate of the tile.
+     * @param tile   The tile.
+     */
+    public void put(String source, int z, int x, int y, CachedTile tile) {
+        memory.put(getKey(source, z, x, y), tile);
+        diskWriter.execute(() -> disk.put(source, z, x, y, tile));
+    }
+
+    /**
+     * Drops the tiles kept in memory, the tiles on disk are kept.
+     */
+    public void trimMemory() {
+        memory.trim(0);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trimMemory();
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimMemory();
+    }
+
+    /**
+     * Gets the memory key of a tile.
+     *
+     * @param source The tile source.
+     * @param z      The z coordinate of the tile.
+     * @param x      The x coordinate of the tile.
+     * @param y      The y coordinate of the tile.
+     * @return The key.
+     */
+    private static String getKey(String source, int z, int x, int y) {
+        return source + "|" + z + "/" + x + "/" + y;
+    }
+}
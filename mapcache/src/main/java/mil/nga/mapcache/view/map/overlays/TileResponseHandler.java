@@ -4,14 +4,21 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
-import mil.nga.geopackage.io.GeoPackageIOUtils;
 import mil.nga.mapcache.io.network.IResponseHandler;
+import mil.nga.mapcache.io.network.ResponseBuffers;
+import mil.nga.mapcache.io.network.ResponseHeaderConsumer;
 
 /**
  * Response handler used for xyz tile downloads.
  */
-public class TileResponseHandler implements IResponseHandler {
+public class TileResponseHandler implements IResponseHandler, ResponseHeaderConsumer {
 
     /**
      * Debug logging flag.
@@ -21,7 +28,32 @@ public class TileResponseHandler implements IResponseHandler {
     /**
      * The tile's image bytes.
      */
-    private byte[] bytes = null;
+    private volatile byte[] bytes = null;
+
+    /**
+     * The Content-Length response header, or -1 if the server didn't send one.
+     */
+    private long contentLength = -1;
+
+    /**
+     * The response headers, empty until the response arrives or if the server sent none.
+     */
+    private volatile Map<String, List<String>> headers = Collections.emptyMap();
+
+    /**
+     * The response code, or -1 if no response was received.
+     */
+    private volatile int responseCode = -1;
+
+    /**
+     * Counted down once the response or an exception is handled.
+     */
+    private final CountDownLatch responded = new CountDownLatch(1);
+
+    /**
+     * True if the tile is no longer wanted.
+     */
+    private volatile boolean cancelled = false;
 
     /**
      * Gets the tile's image bytes.
@@ -35,27 +67,74 @@ public class TileResponseHandler implements IResponseHandler {
         return bytes;
     }
 
+    /**
+     * Gets the response headers.
+     *
+     * @return The headers, empty if the server sent none.
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets the response code.
+     *
+     * @return The response code, or -1 if no response was received.
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Waits for the response.
+     *
+     * @param timeoutMillis The most milliseconds to wait.
+     * @return True if the response or an exception was handled, false if still waiting.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitResponse(long timeoutMillis) throws InterruptedException {
+        return responded.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops waiting for the tile, a late response isn't read.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void setResponseHeaders(Map<String, List<String>> headers) {
+        this.headers = headers;
+        contentLength = ResponseBuffers.getContentLength(headers);
+    }
+
     @Override
-    public synchronized void handleResponse(InputStream stream, int responseCode) {
+    public void handleResponse(InputStream stream, int responseCode) {
         if (isDebug) {
             Log.d(TileResponseHandler.class.getSimpleName(), "Handle response");
         }
+        this.responseCode = responseCode;
         try {
-            if (stream != null) {
+            if (cancelled) {
+                if (isDebug) {
+                    Log.d(TileResponseHandler.class.getSimpleName(), "Tile no longer wanted");
+                }
+            } else if (stream != null) {
                 if (isDebug) {
                     Log.d(TileResponseHandler.class.getSimpleName(), "Streaming bytes");
                 }
-                bytes = GeoPackageIOUtils.streamBytes(stream);
+                bytes = ResponseBuffers.getInstance().readFully(stream, contentLength);
                 if (isDebug) {
                     Log.d(TileResponseHandler.class.getSimpleName(), "Streamed bytes");
                 }
-            } else {
+            } else if (responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
                 Log.e(TileResponseHandler.class.getSimpleName(), "Stream is null, response code " + responseCode);
             }
         } catch (IOException e) {
             Log.e(TileResponseHandler.class.getSimpleName(), e.getMessage(), e);
         } finally {
-            notify();
+            responded.countDown();
             if (isDebug) {
                 Log.d(TileResponseHandler.class.getSimpleName(), "Notified");
             }
@@ -63,14 +142,16 @@ public class TileResponseHandler implements IResponseHandler {
     }
 
     @Override
-    public synchronized void handleException(IOException exception) {
-        Log.e(TileResponseHandler.class.getSimpleName(), exception.getMessage(), exception);
-        notify();
+    public void handleException(IOException exception) {
+        if (!cancelled) {
+            Log.e(TileResponseHandler.class.getSimpleName(), exception.getMessage(), exception);
+        }
+        responded.countDown();
     }
 
     @Override
     public boolean notCancelled() {
-        return true;
+        return !cancelled;
     }
 
 }
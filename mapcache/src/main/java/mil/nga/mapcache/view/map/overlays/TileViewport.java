@@ -0,0 +1,204 @@
+package mil.nga.mapcache.view.map.overlays;
+
+/**
+ * The part of the map the user is looking at, used by the basemap tile providers to skip tiles that
+ * scrolled off screen before they were fetched.  Updated from the UI thread as the camera moves,
+ * read from the map's tile threads.
+ */
+public class TileViewport {
+
+    /**
+     * The number of tiles around the visible tiles that are still fetched, so tiles just off the
+     * edge are ready when panning.
+     */
+    private static final int MARGIN_TILES = 1;
+
+    /**
+     * Below this zoom level the whole world is only a few tiles, so tiles are never skipped.
+     */
+    private static final int MIN_SKIP_ZOOM = 3;
+
+    /**
+     * The largest latitude of web mercator tiles.
+     */
+    private static final double MAX_LATITUDE = 85.0511287798066;
+
+    /**
+     * The instance of this class.
+     */
+    private static final TileViewport instance = new TileViewport();
+
+    /**
+     * The visible region, or null until the camera is first known.
+     */
+    private volatile Region region = null;
+
+    /**
+     * The time the camera last stopped moving, or 0 if it hasn't yet.
+     */
+    private volatile long settleTime = 0;
+
+    /**
+     * Gets the instance of this class.
+     *
+     * @return The instance of this class.
+     */
+    public static TileViewport getInstance() {
+        return instance;
+    }
+
+    /**
+     * Constructor, public so tests can use their own viewport.
+     */
+    public TileViewport() {
+    }
+
+    /**
+     * Updates the visible region as the camera moves.
+     *
+     * @param zoom  The camera's zoom.
+     * @param west  The west edge of the visible region in degrees.
+     * @param south The south edge of the visible region in degrees.
+     * @param east  The east edge of the visible region in degrees.
+     * @param north The north edge of the visible region in degrees.
+     */
+    public void moved(double zoom, double west, double south, double east, double north) {
+        region = new Region(zoom, toX(west), toY(north), toX(east), toY(south));
+    }
+
+    /**
+     * Updates the visible region once the camera stops moving, and starts timing how long the
+     * tiles take to fill it.
+     *
+     * @param zoom  The camera's zoom.
+     * @param west  The west edge of the visible region in degrees.
+     * @param south The south edge of the visible region in degrees.
+     * @param east  The east edge of the visible region in degrees.
+     * @param north The north edge of the visible region in degrees.
+     * @param now   The current time in milliseconds.
+     */
+    public void settled(double zoom, double west, double south, double east, double north,
+                        long now) {
+        moved(zoom, west, south, east, north);
+        settleTime = now;
+    }
+
+    /**
+     * Gets the time the camera last stopped moving.
+     *
+     * @return The time in milliseconds, or 0 if it hasn't yet.
+     */
+    public long getSettleTime() {
+        return settleTime;
+    }
+
+    /**
+     * Checks if a tile is on screen, or close enough to be worth fetching.
+     *
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The z coordinate of the tile.
+     * @return True if the tile is wanted, also true until the visible region is known.
+     */
+    public boolean isVisible(int x, int y, int z) {
+        Region current = region;
+        if (current == null || z < MIN_SKIP_ZOOM) {
+            return true;
+        }
+
+        int zoomLevel = (int) Math.floor(current.zoom);
+        if (z < zoomLevel - 1 || z > zoomLevel + 1) {
+            return false;
+        }
+
+        int tiles = 1 << z;
+        int minTileY = (int) Math.floor(current.minY * tiles) - MARGIN_TILES;
+        int maxTileY = (int) Math.floor(current.maxY * tiles) + MARGIN_TILES;
+        if (y < minTileY || y > maxTileY) {
+            return false;
+        }
+
+        int minTileX = (int) Math.floor(current.minX * tiles) - MARGIN_TILES;
+        int maxTileX = (int) Math.floor(current.maxX * tiles) + MARGIN_TILES;
+        boolean visible;
+        if (current.minX <= current.maxX) {
+            // The margin wraps around the antimeridian
+            visible = x >= minTileX && x <= maxTileX
+                    || x >= minTileX + tiles || x <= maxTileX - tiles;
+        } else {
+            // The region crosses the antimeridian
+            visible = x >= minTileX || x <= maxTileX;
+        }
+
+        return visible;
+    }
+
+    /**
+     * Converts a longitude to a fraction of the width of the world.
+     *
+     * @param longitude The longitude in degrees.
+     * @return The fraction from the west edge of the world, 0 to 1.
+     */
+    private static double toX(double longitude) {
+        return Math.min(Math.max((longitude + 180.0) / 360.0, 0.0), 1.0);
+    }
+
+    /**
+     * Converts a latitude to a fraction of the height of the web mercator world.
+     *
+     * @param latitude The latitude in degrees.
+     * @return The fraction from the north edge of the world, 0 to 1.
+     */
+    private static double toY(double latitude) {
+        double radians = Math.toRadians(Math.min(Math.max(latitude, -MAX_LATITUDE), MAX_LATITUDE));
+        return (1.0 - Math.log(Math.tan(radians) + 1.0 / Math.cos(radians)) / Math.PI) / 2.0;
+    }
+
+    /**
+     * A visible region, as fractions of the web mercator world.
+     */
+    private static class Region {
+
+        /**
+         * The camera's zoom.
+         */
+        private final double zoom;
+
+        /**
+         * The west edge.
+         */
+        private final double minX;
+
+        /**
+         * The north edge.
+         */
+        private final double minY;
+
+        /**
+         * The east edge.
+         */
+        private final double maxX;
+
+        /**
+         * The south edge.
+         */
+        private final double maxY;
+
+        /**
+         * Constructor.
+         *
+         * @param zoom The camera's zoom.
+         * @param minX The west edge.
+         * @param minY The north edge.
+         * @param maxX The east edge.
+         * @param maxY The south edge.
+         */
+        private Region(double zoom, double minX, double minY, double maxX, double maxY) {
+            this.zoom = zoom;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package mil.nga.mapcache.view.map.overlays;
+
+/**
+ * Measures how long an overlay takes to fill the viewport with tiles after the camera stops
+ * moving, from when it stopped until no tiles are being fetched.  Viewports the map already had all
+ * the tiles for aren't measured.
+ */
+public class ViewportFillTimer {
+
+    /**
+     * The number of tiles being fetched.
+     */
+    private int inFlight = 0;
+
+    /**
+     * The time the camera stopped moving for the viewport being timed, or 0 if none.
+     */
+    private long settleTime = 0;
+
+    /**
+     * The number of tiles fetched for the viewport being timed.
+     */
+    private int fetched = 0;
+
+    /**
+     * True once the viewport being timed was filled.
+     */
+    private boolean filled = false;
+
+    /**
+     * The milliseconds the last viewport took to fill, or -1 if none have.
+     */
+    private long lastFillMillis = -1;
+
+    /**
+     * The total milliseconds the viewports took to fill.
+     */
+    private long totalFillMillis = 0;
+
+    /**
+     * The number of viewports filled.
+     */
+    private int fillCount = 0;
+
+    /**
+     * Called when a tile starts being fetched.
+     *
+     * @param settleTime The time the camera last stopped moving, or 0 if it hasn't yet.
+     */
+    public synchronized void started(long settleTime) {
+        viewport(settleTime);
+        inFlight++;
+        fetched++;
+    }
+
+    /**
+     * Called when a tile finished being fetched, was skipped or failed.
+     *
+     * @param settleTime The time the camera last stopped moving, or 0 if it hasn't yet.
+     * @param now        The current time in milliseconds.
+     * @return The milliseconds the viewport took to fill if this tile filled it, otherwise -1.
+     */
+    public synchronized long finished(long settleTime, long now) {
+        viewport(settleTime);
+        inFlight = Math.max(0, inFlight - 1);
+        long fillMillis = -1;
+        if (inFlight == 0 && fetched > 0 && !filled && this.settleTime > 0) {
+            filled = true;
+            fillMillis = now - this.settleTime;
+            lastFillMillis = fillMillis;
+            totalFillMillis += fillMillis;
+            fillCount++;
+        }
+
+        return fillMillis;
+    }
+
+    /**
+     * Gets how long the last viewport took to fill.
+     *
+     * @return The milliseconds, or -1 if none have filled.
+     */
+    public synchronized long getLastFillMillis() {
+        return lastFillMillis;
+    }
+
+    /**
+     * Gets how long the viewports took to fill on average.
+     *
+     * @return The average milliseconds, or -1 if none have filled.
+     */
+    public synchronized long getAverageFillMillis() {
+        return fillCount > 0 ? totalFillMillis / fillCount : -1;
+    }
+
+    /**
+     * Starts timing a new viewport if the camera stopped moving again.  The tiles still being
+     * fetched count toward the new viewport.
+     *
+     * @param settleTime The time the camera last stopped moving.
+     */
+    private void viewport(long settleTime) {
+        if (settleTime != this.settleTime) {
+            this.settleTime = settleTime;
+            fetched = inFlight;
+            filled = false;
+        }
+    }
+}
@@ -47,7 +47,7 @@ public class WMSTileProvider extends BaseTileProvider {
      * @param layerName The name of the layer.
      */
     public WMSTileProvider(String baseUrl, String layerName, String format, Activity activity) {
-        super(activity);
+        super(activity, baseUrl, layerName, format);
         this.urlNeedsBoundingBox = WMSUrlProvider.getInstance().getUrlNoBoundingBox(
                 baseUrl, layerName, format);
         this.urlNeedsBoundingBox = WMSUrlProvider.getInstance().getUrlBoundBoxCRS(urlNeedsBoundingBox, "3857");
@@ -56,7 +56,7 @@ public class XYZTileProvider extends BaseTileProvider {
      * @param xyzUrl The url containing the {x}, {y}, {z} string value to be replaced.
      */
     public XYZTileProvider(String xyzUrl, Activity activity) {
-        super(activity);
+        super(activity, xyzUrl, "", "");
         this.xyzUrl = xyzUrl;
     }
 
@@ -1,18 +1,29 @@
 package mil.nga.mapcache.wizards.createtile;
 
+import android.text.format.Formatter;
+import android.util.Log;
+
 import androidx.fragment.app.FragmentActivity;
 
 import com.google.android.gms.maps.model.LatLng;
 
+import java.io.File;
+import java.util.Locale;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import mil.nga.geopackage.BoundingBox;
+import mil.nga.mapcache.R;
 import mil.nga.mapcache.layersprovider.LayerModel;
 import mil.nga.mapcache.layersprovider.LayersModel;
-import mil.nga.mapcache.load.ILoadTilesTask;
 import mil.nga.mapcache.load.LoadTilesTask;
+import mil.nga.mapcache.load.TileDownloadEstimator;
+import mil.nga.mapcache.load.TileDownloadJournal;
+import mil.nga.mapcache.load.TileDownloadSettings;
 import mil.nga.mapcache.ogc.wms.WMSUrlProvider;
+import mil.nga.mapcache.utils.ThreadUtils;
 import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
 import mil.nga.proj.ProjectionConstants;
 
@@ -31,11 +42,6 @@ public class LayerOptionsController implements Observer {
      */
     private final  LayerOptionsModel model;
 
-    /**
-     * Callback for load tiles task.
-     */
-    private final ILoadTilesTask callback;
-
     /**
      * Used to get the geoPackage.
      */
@@ -51,21 +57,34 @@ public class LayerOptionsController implements Observer {
      */
     private final LayersModel layers;
 
+    /**
+     * Estimates the download for the selected EPSG, or null if not created yet.
+     */
+    private TileDownloadEstimator estimator = null;
+
+    /**
+     * The EPSG the estimator was created for.
+     */
+    private long estimatorEpsg = -1;
+
+    /**
+     * Incremented for each new estimate so older estimates stop sampling.
+     */
+    private final AtomicInteger estimateGeneration = new AtomicInteger();
+
     /**
      * Constructor.
      *
      * @param boxManager Contains the bounding box the user wants to put into the geoPackage.
-     * @param callback   Callback for load tiles task.
      * @param viewModel  Used to get the geoPackage.
      * @param activity   The activity to pass to the load tile task.
      * @param model      The model shared between the UI and controller.
      * @param layers     The model containing the selected layer.
      */
-    public LayerOptionsController(IBoundingBoxManager boxManager, ILoadTilesTask callback,
+    public LayerOptionsController(IBoundingBoxManager boxManager,
                                   GeoPackageViewModel viewModel, FragmentActivity activity,
                                   LayerOptionsModel model, LayersModel layers) {
         this.boxManager = boxManager;
-        this.callback = callback;
         this.viewModel = viewModel;
         this.activity = activity;
         this.model = model;
@@ -96,17 +115,150 @@ public class LayerOptionsController implements Observer {
                 model.setValidationMessage("Min zoom can't be more than max zoom");
             } else {
                 model.setValidationMessage("");
+                updateEstimate();
             }
+        } else if (LayerOptionsModel.EPSG_PROP.equals(o)) {
+            updateEstimate();
         }
     }
 
     /**
-     * Loads the tiles as specified by the user into the active geoPackages.
+     * Estimates the download for the selected zoom levels in the background, first with the exact
+     * tile counts and then refined as each zoom level is sampled from the server.
      */
-    public void loadTiles() {
-        boolean xyzTiles = model.getTileFormat().equalsIgnoreCase("google");
+    public void updateEstimate() {
+        int generation = estimateGeneration.incrementAndGet();
+        int minZoom = model.getMinZoom();
+        int maxZoom = model.getMaxZoom();
+        long epsg = model.getEpsg();
+        if (minZoom > maxZoom || boxManager.getBoundingBox() == null) {
+            return;
+        }
 
-        Integer compressQuality = 100;
+        // The bounding box polygon can only be read on the UI thread
+        TileDownloadJournal.Entry entry = createEntry(minZoom, maxZoom);
+        int downloadMinZoom = new TileDownloadSettings(activity).getDownloadMinZoom(minZoom,
+                maxZoom);
+        ThreadUtils.getInstance().runNetwork(() -> {
+            try {
+                TileDownloadEstimator downloadEstimator = getEstimator(entry, epsg);
+                model.setEstimate(formatEstimate(
+                        downloadEstimator.estimate(minZoom, downloadMinZoom, maxZoom)));
+                for (int zoom = downloadMinZoom; zoom <= maxZoom
+                        && generation == estimateGeneration.get(); zoom++) {
+                    downloadEstimator.sample(zoom);
+                    if (generation == estimateGeneration.get()) {
+                        model.setEstimate(formatEstimate(
+                                downloadEstimator.estimate(minZoom, downloadMinZoom, maxZoom)));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.d(LayerOptionsController.class.getSimpleName(), e.getMessage(), e);
+            } catch (Exception e) {
+                Log.e(LayerOptionsController.class.getSimpleName(), "Failed to estimate download", e);
+                if (generation == estimateGeneration.get()) {
+                    model.setEstimate("Unable to estimate download size");
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops any estimate that is still sampling tiles.
+     */
+    public void cancelEstimate() {
+        estimateGeneration.incrementAndGet();
+    }
+
+    /**
+     * Gets the estimator for the EPSG, creating a new one if the EPSG changed.
+     *
+     * @param entry The download definition.
+     * @param epsg  The selected EPSG.
+     * @return The estimator.
+     */
+    private synchronized TileDownloadEstimator getEstimator(TileDownloadJournal.Entry entry,
+                                                           long epsg) {
+        if (estimator == null || estimatorEpsg != epsg) {
+            estimator = new TileDownloadEstimator(activity,
+                    viewModel.getGeoPackage(model.getGeopackageName()), entry,
+                    activity.getResources().getInteger(R.integer.load_tiles_estimate_samples_per_zoom),
+                    new TileDownloadSettings(activity).getConcurrentRequests());
+            estimatorEpsg = epsg;
+        }
+
+        return estimator;
+    }
+
+    /**
+     * Formats the estimate for display.
+     *
+     * @param estimate The estimate.
+     * @return The text to show the user.
+     */
+    private String formatEstimate(TileDownloadEstimator.Estimate estimate) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.getDefault(), "%,d tiles", estimate.tileCount));
+        if (estimate.bytes >= 0) {
+            text.append(", ~").append(Formatter.formatShortFileSize(activity, estimate.bytes));
+            text.append(", ~").append(formatDuration(estimate.durationMillis));
+        }
+        if (!estimate.isSampled()) {
+            text.append(" (sampling zoom ").append(estimate.downloadMinZoom + estimate.sampledZooms)
+                    .append(")");
+        }
+
+        for (int i = 0; i < estimate.zoomCounts.length; i++) {
+            text.append(i == 0 ? "\n" : ", ");
+            text.append(String.format(Locale.getDefault(), "z%d: %,d",
+                    estimate.minZoom + i, estimate.zoomCounts[i]));
+        }
+
+        if (estimate.downloadMinZoom > estimate.minZoom) {
+            text.append("\nZoom levels below ").append(estimate.downloadMinZoom)
+                    .append(" are built from the downloaded tiles");
+        }
+
+        File databaseDirectory = activity.getDatabasePath(model.getGeopackageName()).getParentFile();
+        long freeBytes = databaseDirectory != null ? databaseDirectory.getUsableSpace() : 0;
+        if (estimate.bytes > 0 && freeBytes > 0 && estimate.bytes > freeBytes) {
+            text.append("\nWarning: only ").append(Formatter.formatShortFileSize(activity, freeBytes))
+                    .append(" of storage is free");
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Formats a duration in hours and minutes.
+     *
+     * @param millis The duration in milliseconds.
+     * @return The formatted duration.
+     */
+    private String formatDuration(long millis) {
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(millis);
+        String duration;
+        if (minutes < 1) {
+            duration = TimeUnit.MILLISECONDS.toSeconds(millis) + " s";
+        } else if (minutes < 60) {
+            duration = minutes + " min";
+        } else if (minutes < 60 * 24) {
+            duration = (minutes / 60) + " h " + (minutes % 60) + " min";
+        } else {
+            duration = (minutes / (60 * 24)) + " d " + ((minutes / 60) % 24) + " h";
+        }
+
+        return duration;
+    }
+
+    /**
+     * Creates the download definition from the user's selections.
+     *
+     * @param minZoom The minimum zoom.
+     * @param maxZoom The maximum zoom.
+     * @return The download definition.
+     */
+    private TileDownloadJournal.Entry createEntry(int minZoom, int maxZoom) {
         double minLat = 90.0;
         double minLon = 180.0;
         double maxLat = -90.0;
@@ -117,24 +269,53 @@ public class LayerOptionsController implements Observer {
             maxLat = Math.max(maxLat, point.latitude);
             maxLon = Math.max(maxLon, point.longitude);
         }
-        BoundingBox boundingBox = new BoundingBox(minLon,
-                minLat, maxLon, maxLat);
 
+        TileDownloadJournal.Entry entry = new TileDownloadJournal.Entry();
+        entry.tableName = model.getLayerName();
+        entry.url = getUrl();
+        entry.minZoom = minZoom;
+        entry.maxZoom = maxZoom;
+        entry.boundingBox = new BoundingBox(minLon, minLat, maxLon, maxLat);
+        entry.authority = ProjectionConstants.AUTHORITY_EPSG;
+        entry.code = String.valueOf(model.getEpsg());
+        entry.xyzTiles = model.getTileFormat() != null
+                && model.getTileFormat().equalsIgnoreCase("google");
+        entry.headers = layers.getRequestHeaders();
+
+        return entry;
+    }
+
+    /**
+     * Gets the tile url with the selected EPSG applied.
+     *
+     * @return The tile url.
+     */
+    private String getUrl() {
         String url = model.getUrl();
         if (layers.getSelectedLayers() != null && layers.getSelectedLayers()[0].getEpsgs() != null
                 && layers.getSelectedLayers()[0].getEpsgs().length > 0) {
             url = WMSUrlProvider.getInstance().getUrlBoundBoxCRS(url, String.valueOf(model.getEpsg()));
         }
 
+        return url;
+    }
+
+    /**
+     * Loads the tiles as specified by the user into the active geoPackages.
+     */
+    public void loadTiles() {
+        cancelEstimate();
+        TileDownloadJournal.Entry entry = createEntry(model.getMinZoom(), model.getMaxZoom());
+
+        Integer compressQuality = 100;
 
         // Load tiles
-        LoadTilesTask.loadTiles(activity,
-                callback, viewModel,
-                model.getGeopackageName(), model.getLayerName(), url, model.getMinZoom(),
-                model.getMaxZoom(), null,
-                compressQuality, xyzTiles,
-                boundingBox, null,
-                ProjectionConstants.AUTHORITY_EPSG, String.valueOf(model.getEpsg()),
-                layers.getRequestHeaders());
+        LoadTilesTask.loadTiles(activity, viewModel,
+                model.getGeopackageName(), entry.tableName, entry.url, entry.minZoom,
+                entry.maxZoom, null,
+                compressQuality, entry.xyzTiles,
+                entry.boundingBox, null,
+                entry.authority, entry.code,
+                entry.headers);
     }
 }
@@ -28,6 +28,11 @@ public class LayerOptionsModel extends NewTileLayerModel {
      */
     public static String MAX_ZOOM_PROP = "maxZoom";
 
+    /**
+     * The download estimate property.
+     */
+    public static String ESTIMATE_PROP = "estimate";
+
     /**
      * Either 4326 or 3857.
      */
@@ -48,6 +53,11 @@ public class LayerOptionsModel extends NewTileLayerModel {
      */
     private int maxZoom = 10;
 
+    /**
+     * Describes how many tiles, bytes, and how long the download will take.
+     */
+    private String estimate = "";
+
     /**
      * Gets the EPSG.
      *
@@ -127,4 +137,24 @@ public class LayerOptionsModel extends NewTileLayerModel {
         setChanged();
         notifyObservers(MAX_ZOOM_PROP);
     }
+
+    /**
+     * Gets the download estimate.
+     *
+     * @return Describes how many tiles, bytes, and how long the download will take.
+     */
+    public String getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Sets the download estimate.
+     *
+     * @param estimate Describes how many tiles, bytes, and how long the download will take.
+     */
+    public void setEstimate(String estimate) {
+        this.estimate = estimate;
+        setChanged();
+        notifyObservers(ESTIMATE_PROP);
+    }
 }
@@ -19,10 +19,12 @@ import androidx.fragment.app.Fragment;
 
 import com.google.android.material.button.MaterialButton;
 
+import java.util.Observable;
+import java.util.Observer;
+
 import mil.nga.mapcache.GeoPackageUtils;
 import mil.nga.mapcache.R;
 import mil.nga.mapcache.layersprovider.LayersModel;
-import mil.nga.mapcache.load.ILoadTilesTask;
 import mil.nga.mapcache.utils.ViewAnimation;
 import mil.nga.mapcache.view.detail.NewLayerUtil;
 import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
@@ -69,7 +71,6 @@ public class LayerOptionsUI {
      * @param activity       Use The app context.
      * @param fragment       The fragment this UI is apart of, used to get resource strings.
      * @param viewModel      Used to get the geoPackage.
-     * @param callback       The callback to pass to LoadTilesTask.
      * @param boxManager     Contains a bounding box that is displayed to the user.
      * @param geoPackageName The name of the geoPackage.
      * @param layerName      The name of the layer.
@@ -77,7 +78,7 @@ public class LayerOptionsUI {
      * @param layers         The model containing the selected layer.
      */
     public LayerOptionsUI(FragmentActivity activity, Context context, Fragment fragment,
-                          GeoPackageViewModel viewModel, ILoadTilesTask callback,
+                          GeoPackageViewModel viewModel,
                           IBoundingBoxManager boxManager, String geoPackageName,
                           String layerName, String url, LayersModel layers) {
         this.activity = activity;
@@ -88,7 +89,7 @@ public class LayerOptionsUI {
         this.model.setLayerName(layerName);
         this.model.setUrl(url);
         controller = new LayerOptionsController(
-                boxManager, callback, viewModel, activity, model, layers);
+                boxManager, viewModel, activity, model, layers);
     }
 
     /**
@@ -113,8 +114,19 @@ public class LayerOptionsUI {
         maxSpinner.setAdapter(maxAdapter);
         maxSpinner.setSelection(maxAdapter.getPosition(String.valueOf(model.getMaxZoom())));
 
-        // Set a listener to adjust min and max when selections are made
-        NewLayerUtil.setZoomLevelSyncListener(minSpinner, maxSpinner);
+        // Set a listener to adjust min and max when selections are made, which also updates the
+        // download estimate
+        NewLayerUtil.setZoomLevelSyncListener(minSpinner, maxSpinner, () -> {
+            model.setMinZoom(Integer.parseInt(minSpinner.getSelectedItem().toString()));
+            model.setMaxZoom(Integer.parseInt(maxSpinner.getSelectedItem().toString()));
+        });
+        TextView estimateText = tileView.findViewById(R.id.tile_estimate_text);
+        Observer estimateObserver = (Observable observable, Object o) -> {
+            if (LayerOptionsModel.ESTIMATE_PROP.equals(o)) {
+                getActivity().runOnUiThread(() -> estimateText.setText(model.getEstimate()));
+            }
+        };
+        model.addObserver(estimateObserver);
 
         // Name and url
         TextView finalName = tileView.findViewById(R.id.final_tile_name);
@@ -136,6 +148,8 @@ public class LayerOptionsUI {
             RadioButton radioButton = tileView.findViewById(R.id.srs4326);
             radioButton.setChecked(true);
         }
+        srsGroup.setOnCheckedChangeListener((RadioGroup group, int checkedId) ->
+                model.setEpsg(getSelectedEpsg(tileView, srsGroup)));
         RadioGroup tileFormatGroup = tileView.findViewById(R.id.tileFormatGroup);
 
         // Open the dialog
@@ -144,6 +158,10 @@ public class LayerOptionsUI {
                 .setView(tileView);
         final AlertDialog alertDialog = dialog.create();
         alertDialog.setCanceledOnTouchOutside(false);
+        alertDialog.setOnDismissListener((DialogInterface dialogInterface) -> {
+            controller.cancelEstimate();
+            model.deleteObserver(estimateObserver);
+        });
 
 
         TextView srsLabel = tileView.findViewById(R.id.srsLabel);
@@ -169,10 +187,7 @@ public class LayerOptionsUI {
                 model.setMinZoom(Integer.parseInt(minSpinner.getSelectedItem().toString()));
                 model.setMaxZoom(Integer.parseInt(maxSpinner.getSelectedItem().toString()));
                 // Get values ready for creating the layer
-                RadioButton selectedSrs = tileView.findViewById(
-                        srsGroup.getCheckedRadioButtonId());
-                model.setEpsg(
-                        Integer.parseInt(selectedSrs.getText().subSequence(5, 9).toString()));
+                model.setEpsg(getSelectedEpsg(tileView, srsGroup));
                 RadioButton selectedFormat = tileView.findViewById(
                         tileFormatGroup.getCheckedRadioButtonId());
                 model.setTileFormat(selectedFormat.getText().toString());
@@ -197,6 +212,18 @@ public class LayerOptionsUI {
         alertDialog.show();
     }
 
+    /**
+     * Gets the EPSG of the selected SRS radio button.
+     *
+     * @param tileView The view containing the radio buttons.
+     * @param srsGroup The SRS radio group.
+     * @return The selected EPSG.
+     */
+    private int getSelectedEpsg(View tileView, RadioGroup srsGroup) {
+        RadioButton selectedSrs = tileView.findViewById(srsGroup.getCheckedRadioButtonId());
+        return Integer.parseInt(selectedSrs.getText().subSequence(5, 9).toString());
+    }
+
     /**
      * Gets the activity.
      *
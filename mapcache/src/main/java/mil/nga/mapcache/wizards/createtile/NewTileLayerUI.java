@@ -32,7 +32,6 @@ import mil.nga.mapcache.layersprovider.LayersModel;
 import mil.nga.mapcache.layersprovider.LayersProvider;
 import mil.nga.mapcache.layersprovider.LayersView;
 import mil.nga.mapcache.layersprovider.LayersViewDialog;
-import mil.nga.mapcache.load.ILoadTilesTask;
 import mil.nga.mapcache.utils.SampleDownloader;
 import mil.nga.mapcache.utils.ViewAnimation;
 import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
@@ -74,11 +73,6 @@ public class NewTileLayerUI implements Observer {
      */
     private final GeoPackageViewModel viewModel;
 
-    /**
-     * The callback to pass to LoadTilesTask.
-     */
-    private final ILoadTilesTask callback;
-
     /**
      * Contains a bounding box that is displayed to the user.
      */
@@ -129,14 +123,12 @@ public class NewTileLayerUI implements Observer {
      * @param context            The app context.
      * @param fragment           The fragment this UI is apart of, used to get resource strings.
      * @param viewModel          Used to get the geoPackage.
-     * @param callback           The callback to pass to LoadTilesTask.
      * @param geoPackageName     The name of the geoPackage.
      */
     public NewTileLayerUI(RecyclerView geoPackageRecycler, IMapView mapView,
                           IBoundingBoxManager boxManager,
                           FragmentActivity activity, Context context, Fragment fragment,
-                          GeoPackageViewModel viewModel,
-                          ILoadTilesTask callback, String geoPackageName) {
+                          GeoPackageViewModel viewModel, String geoPackageName) {
         this.geoPackageRecycler = geoPackageRecycler;
         this.mapView = mapView;
         this.boxManager = boxManager;
@@ -144,7 +136,6 @@ public class NewTileLayerUI implements Observer {
         this.context = context;
         this.fragment = fragment;
         this.viewModel = viewModel;
-        this.callback = callback;
         model.setGeopackageName(geoPackageName);
         model.addObserver(this);
         this.controller = new NewTileLayerController(model, viewModel, fragment,
@@ -326,7 +317,7 @@ public class NewTileLayerUI implements Observer {
     private void drawTileBoundingBox(LayersModel layers) {
         TileBoundingBoxUI tileBoundsUI = new TileBoundingBoxUI(geoPackageRecycler, mapView,
                 boxManager, layers);
-        tileBoundsUI.show(activity, context, fragment, viewModel, callback, model);
+        tileBoundsUI.show(activity, context, fragment, viewModel, model);
     }
 
     /**
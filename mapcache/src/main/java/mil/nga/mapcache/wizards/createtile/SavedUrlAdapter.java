@@ -16,11 +16,10 @@ import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import mil.nga.mapcache.R;
 import mil.nga.mapcache.utils.HttpUtils;
+import mil.nga.mapcache.utils.ThreadUtils;
 
 /**
  * Adapter for the alertview that pops up during the new tile layer wizard showing
@@ -96,9 +95,8 @@ class SavedUrlAdapter extends ArrayAdapter<SavedUrl> {
     * Tests connection to a url and call for an icon update
     */
    private void testConnection(SavedUrl newUrl, SavedUrlAdapter adapter){
-      ExecutorService threadEx = Executors.newSingleThreadExecutor();
       Handler handler = new Handler(Looper.getMainLooper());
-      threadEx.execute(() -> {
+      ThreadUtils.getInstance().runNetwork(() -> {
          // Test connection
          boolean connected = httpUtils.isServerAvailable(newUrl.getmUrl());
          // Update icon to show connection status
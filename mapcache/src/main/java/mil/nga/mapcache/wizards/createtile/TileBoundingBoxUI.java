@@ -15,7 +15,6 @@ import mil.nga.mapcache.R;
 import mil.nga.mapcache.layersprovider.LayersModel;
 import mil.nga.mapcache.layersprovider.LayersView;
 import mil.nga.mapcache.layersprovider.LayersViewDialog;
-import mil.nga.mapcache.load.ILoadTilesTask;
 import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
 
 /**
@@ -66,11 +65,10 @@ public class TileBoundingBoxUI {
      * @param activity       Use The app context.
      * @param fragment       The fragment this UI is apart of, used to get resource strings.
      * @param viewModel      Used to get the geoPackage
-     * @param callback       The callback to pass to LoadTilesTask.
      * @param model          Contains various information about the layer.
      */
     public void show(FragmentActivity activity, Context context, Fragment fragment,
-                     GeoPackageViewModel viewModel, ILoadTilesTask callback, NewTileLayerModel model) {
+                     GeoPackageViewModel viewModel, NewTileLayerModel model) {
         // prepare the screen by shrinking bottom sheet, hide fab and map buttons, show zoom level
         BottomSheetBehavior<RecyclerView> behavior = BottomSheetBehavior.from(geoPackageRecycler);
         behavior.setState(BottomSheetBehavior.STATE_COLLAPSED);
@@ -136,7 +134,7 @@ public class TileBoundingBoxUI {
             mapView.getBaseApplier().removeLayer(
                     model.getBaseUrl(), layerName);
             // continue to create layer
-            createTileFinal(activity, context, fragment, viewModel, callback,
+            createTileFinal(activity, context, fragment, viewModel,
                     model.getGeopackageName(), model.getLayerName(), model.getUrl());
         });
     }
@@ -147,16 +145,15 @@ public class TileBoundingBoxUI {
      * @param activity       Use The app context.
      * @param fragment       The fragment this UI is apart of, used to get resource strings.
      * @param viewModel      Used to get the geoPackage.
-     * @param callback       The callback to pass to LoadTilesTask.
      * @param geoPackageName The name of the geoPackage.
      * @param layerName      The name of the layer.
      * @param url            The base url to the tile layer.
      */
     private void createTileFinal(FragmentActivity activity, Context context, Fragment fragment,
-                                 GeoPackageViewModel viewModel, ILoadTilesTask callback,
+                                 GeoPackageViewModel viewModel,
                                  String geoPackageName, String layerName, String url) {
         LayerOptionsUI layerOptions = new LayerOptionsUI(activity, context,
-                fragment, viewModel, callback, boxManager,
+                fragment, viewModel, boxManager,
                 geoPackageName, layerName, url, layers);
         layerOptions.show();
     }
@@ -0,0 +1,135 @@
+import mil.nga.mapcache.io.network.CookieJar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CookieJarTest {
+
+    private static final int CALLERS = 8;
+
+    private static final int CALLS_PER_CALLER = 1000;
+
+    private static final int HOSTS = 4;
+
+    @Test
+    public void testSetCookie() {
+        CookieJar jar = new CookieJar();
+        jar.storeSetCookie("tiles.example.com", "session=abc123; Path=/; HttpOnly; Secure");
+        jar.storeSetCookie("tiles.example.com", "region = east ; Max-Age=3600");
+        jar.storeSetCookie("tiles.example.com", "invalid; Path=/");
+
+        List<String> cookies = jar.getCookies("tiles.example.com");
+        assertEquals(2, cookies.size());
+        assertTrue("Attributes should not be sent back", cookies.contains("session=abc123"));
+        assertTrue(cookies.contains("region=east"));
+
+        jar.storeSetCookie("tiles.example.com", "session=abc456");
+        assertTrue("Newer cookie should replace the older one",
+                jar.getCookies("tiles.example.com").contains("session=abc456"));
+        assertEquals(2, jar.getCookies("tiles.example.com").size());
+
+        jar.storeSetCookie("tiles.example.com", "session=; Max-Age=0");
+        assertEquals(1, jar.getCookies("tiles.example.com").size());
+        assertTrue(jar.getCookies("other.example.com").isEmpty());
+    }
+
+    @Test
+    public void testCookieHeader() {
+        CookieJar jar = new CookieJar();
+        jar.storeCookieHeader("tiles.example.com", "a=1; b=2;c=3");
+        List<String> cookies = jar.getCookies("tiles.example.com");
+        assertEquals(3, cookies.size());
+        assertTrue(cookies.contains("c=3"));
+
+        jar.clear();
+        assertTrue(jar.getCookies("tiles.example.com").isEmpty());
+    }
+
+    @Test
+    public void testExpires() {
+        CookieJar jar = new CookieJar();
+        // Wed, 21 Oct 2015 07:28:00 GMT
+        long now = 1445412480000L;
+        jar.storeSetCookie("tiles.example.com",
+                "session=abc123; Expires=Thu, 22 Oct 2015 07:28:00 GMT", now);
+        jar.storeSetCookie("tiles.example.com",
+                "region=east; expires=Thu, 22-Oct-2015 07:28:00 GMT", now);
+        assertEquals(2, jar.getCookies("tiles.example.com").size());
+
+        jar.storeSetCookie("tiles.example.com", "session=; Expires=Thu, 01 Jan 1970 00:00:00 GMT",
+                now);
+        assertEquals("An Expires in the past deletes the cookie", 1,
+                jar.getCookies("tiles.example.com").size());
+        assertTrue(jar.getCookies("tiles.example.com").contains("region=east"));
+
+        jar.storeSetCookie("tiles.example.com",
+                "region=west; Expires=Thu, 01 Jan 1970 00:00:00 GMT; Max-Age=60", now);
+        assertTrue("Max-Age takes precedence over Expires",
+                jar.getCookies("tiles.example.com").contains("region=west"));
+
+        jar.storeSetCookie("tiles.example.com", "region=; Expires=not a date", now);
+        assertTrue("An unreadable Expires is ignored",
+                jar.getCookies("tiles.example.com").contains("region="));
+    }
+
+    @Test
+    public void testConcurrentCallers() throws Exception {
+        CookieJar jar = new CookieJar();
+        runCallers((caller, call) -> {
+            String host = "host" + (call % HOSTS) + ".example.com";
+            if (call / HOSTS % 4 == 0) {
+                jar.storeSetCookie(host, "caller" + caller + "=" + call + "; Path=/");
+            } else {
+                jar.getCookies(host);
+            }
+        });
+
+        for (int host = 0; host < HOSTS; host++) {
+            List<String> cookies = jar.getCookies("host" + host + ".example.com");
+            assertEquals("Every caller's cookie should be stored", CALLERS, cookies.size());
+            for (int caller = 0; caller < CALLERS; caller++) {
+                // the last call that stored a cookie for the host
+                int lastCall = CALLS_PER_CALLER - CALLS_PER_CALLER % (HOSTS * 4) + host;
+                assertTrue("The last cookie of each caller should be kept",
+                        cookies.contains("caller" + caller + "=" + lastCall));
+            }
+        }
+    }
+
+    private interface Call {
+        void run(int caller, int call);
+    }
+
+    private void runCallers(Call call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            int caller = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < CALLS_PER_CALLER; j++) {
+                    call.run(caller, j);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
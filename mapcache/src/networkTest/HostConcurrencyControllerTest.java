@@ -0,0 +1,108 @@
+import mil.nga.mapcache.io.network.HostConcurrencyController;
+import mil.nga.mapcache.io.network.RequestPriority;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HostConcurrencyControllerTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Test
+    public void testIncrease() {
+        HostConcurrencyController controller = new HostConcurrencyController(8, now::get);
+        HostConcurrencyController.HostLimit hostLimit = controller.getHostLimit("tiles.example.com");
+        assertEquals("Hosts should start out with a small limit", 2, hostLimit.getLimit());
+
+        answerWindows(hostLimit, 20, 200, 20);
+        assertEquals("A host keeping up should grow to the maximum", 8, hostLimit.getLimit());
+
+        controller.setMaxRequestsPerHost(4);
+        assertEquals(4, hostLimit.getLimit());
+    }
+
+    @Test
+    public void testOverloaded() {
+        HostConcurrencyController controller = new HostConcurrencyController(8, now::get);
+        HostConcurrencyController.HostLimit hostLimit = controller.getHostLimit("tiles.example.com");
+        answerWindows(hostLimit, 20, 200, 20);
+
+        hostLimit.onResponse(20, 429, null);
+        assertEquals("Too many requests should halve the limit", 4, hostLimit.getLimit());
+        hostLimit.onResponse(20, 503, null);
+        assertEquals("The same window should only decrease once", 4, hostLimit.getLimit());
+
+        now.addAndGet(50);
+        hostLimit.onTimeout();
+        assertEquals(2, hostLimit.getLimit());
+        now.addAndGet(50);
+        hostLimit.onTimeout();
+        hostLimit.onTimeout();
+        assertEquals("The limit should never go below 1", 1, hostLimit.getLimit());
+    }
+
+    @Test
+    public void testLatencyGrowth() {
+        HostConcurrencyController controller = new HostConcurrencyController(8, now::get);
+        HostConcurrencyController.HostLimit hostLimit = controller.getHostLimit("tiles.example.com");
+        answerWindows(hostLimit, 20, 200, 20);
+
+        for (int i = 0; i < 10; i++) {
+            hostLimit.onResponse(400, 200, null);
+        }
+        assertTrue("Slower responses should lower the limit", hostLimit.getLimit() < 8);
+    }
+
+    @Test
+    public void testRetryAfter() {
+        HostConcurrencyController controller = new HostConcurrencyController(8, now::get);
+        HostConcurrencyController.HostLimit hostLimit = controller.getHostLimit("tiles.example.com");
+
+        hostLimit.onResponse(20, 429, 300L);
+        assertFalse("Requests should wait for the retry after",
+                controller.tryAcquire("tiles.example.com", RequestPriority.INTERACTIVE));
+        assertEquals(300, controller.getPausedMillis("tiles.example.com"));
+
+        now.addAndGet(300);
+        assertEquals(0, controller.getPausedMillis("tiles.example.com"));
+        assertTrue(controller.tryAcquire("tiles.example.com", RequestPriority.BULK));
+    }
+
+    @Test
+    public void testLimitHeldUntilReleased() {
+        HostConcurrencyController controller = new HostConcurrencyController(8, now::get);
+        int[] changes = {0};
+        controller.setCapacityListener(() -> changes[0]++);
+        HostConcurrencyController.HostLimit hostLimit = controller.getHostLimit("tiles.example.com");
+
+        assertTrue(hostLimit.tryAcquire());
+        assertTrue(hostLimit.tryAcquire());
+        assertFalse("The host is full at its limit", hostLimit.tryAcquire());
+        assertTrue("Other hosts have their own limit",
+                controller.tryAcquire("other.example.com", RequestPriority.BULK));
+
+        controller.release("tiles.example.com");
+        assertEquals("Releasing should wake the scheduler", 1, changes[0]);
+        assertEquals(1, hostLimit.getInFlight());
+        assertTrue(hostLimit.tryAcquire());
+    }
+
+    private void answerWindows(HostConcurrencyController.HostLimit hostLimit, long responseMillis,
+                               int responseCode, int windows) {
+        for (int window = 0; window < windows; window++) {
+            int limit = hostLimit.getLimit();
+            for (int i = 0; i < limit; i++) {
+                assertTrue(hostLimit.tryAcquire());
+            }
+            for (int i = 0; i < limit; i++) {
+                hostLimit.onResponse(responseMillis, responseCode, null);
+                hostLimit.release();
+            }
+        }
+    }
+}
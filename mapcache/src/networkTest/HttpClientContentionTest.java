@@ -0,0 +1,146 @@
+import android.app.Activity;
+
+import mil.nga.mapcache.io.network.HttpClient;
+import mil.nga.mapcache.io.network.IResponseHandler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HttpClientContentionTest {
+
+    private static final int CALLERS = 16;
+
+    private static final int CALLS_PER_CALLER = 50;
+
+    private static final int REQUESTS = CALLERS * CALLS_PER_CALLER;
+
+    private MockWebServer server;
+
+    private final AtomicInteger withCookie = new AtomicInteger();
+
+    private Activity activity;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String cookie = request.getHeader("Cookie");
+                if (cookie != null && cookie.contains("session=")) {
+                    withCookie.incrementAndGet();
+                }
+                return new MockResponse().setBody("tile " + request.getPath())
+                        .addHeader("Set-Cookie", "session=" + request.getSequenceNumber()
+                                + "; Path=/");
+            }
+        });
+        server.start();
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testConcurrentCallers() throws Exception {
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicLong sendNanos = new AtomicLong();
+        IResponseHandler handler = new IResponseHandler() {
+            @Override
+            public void handleResponse(InputStream stream, int responseCode) {
+                try {
+                    if (responseCode == 200 && stream != null) {
+                        byte[] buffer = new byte[256];
+                        while (stream.read(buffer) != -1) {
+                            // Read the whole body so the connection is reused
+                        }
+                        succeeded.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    // Counted as a failure below
+                } finally {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void handleException(IOException exception) {
+                done.countDown();
+            }
+
+            @Override
+            public boolean notCancelled() {
+                return true;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            int caller = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < CALLS_PER_CALLER; j++) {
+                    String url = server.url("/tiles/" + caller + "/" + j + ".png").toString();
+                    long sendStart = System.nanoTime();
+                    HttpClient.getInstance().sendGet(url, handler, activity);
+                    sendNanos.addAndGet(System.nanoTime() - sendStart);
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        assertTrue("Every request should be answered", done.await(60, TimeUnit.SECONDS));
+        long elapsedNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format(Locale.US,
+                "%d callers sent %d requests in %.2f s, %.0f requests/s, %.1f us per sendGet,"
+                        + " %d requests carried the session cookie", CALLERS, REQUESTS, seconds,
+                REQUESTS / seconds, sendNanos.get() / 1000.0 / REQUESTS, withCookie.get()));
+
+        assertEquals(REQUESTS, succeeded.get());
+        assertEquals(REQUESTS, server.getRequestCount());
+        assertTrue("Requests after the first responses should send the stored cookie",
+                withCookie.get() > 0);
+    }
+}
@@ -0,0 +1,77 @@
+import mil.nga.mapcache.io.network.HostConcurrencyController;
+import mil.nga.mapcache.io.network.HttpConnectionPool;
+import mil.nga.mapcache.io.network.RequestPriority;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpConnectionPoolTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(new OkHttpClient.Builder());
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody("tile " + i));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Request request = new Request.Builder().url(server.url("/tiles/" + i)).build();
+            try (Response response = pool.getClient().newCall(request).execute()) {
+                assertEquals("tile " + i, response.body().string());
+            }
+        }
+
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals("Second request should reuse the connection",
+                1, server.takeRequest().getSequenceNumber());
+        assertEquals("Third request should reuse the connection",
+                2, server.takeRequest().getSequenceNumber());
+        assertEquals(1, pool.getConnectionCount());
+    }
+
+    @Test
+    public void testMaxRequestsPerHost() {
+        HttpConnectionPool pool = new HttpConnectionPool(new OkHttpClient.Builder());
+        pool.setMaxRequestsPerHost(2);
+        assertEquals(2, pool.getMaxRequestsPerHost());
+
+        HostConcurrencyController controller = pool.getConcurrencyController();
+        assertTrue(controller.tryAcquire("tiles.example.com", RequestPriority.INTERACTIVE));
+        assertTrue(controller.tryAcquire("tiles.example.com", RequestPriority.INTERACTIVE));
+        assertFalse("Third request to the host should wait",
+                controller.tryAcquire("tiles.example.com", RequestPriority.BULK));
+        assertTrue("Other hosts have their own limit",
+                controller.tryAcquire("other.example.com", RequestPriority.INTERACTIVE));
+
+        controller.release("tiles.example.com");
+        assertTrue("Released request should let the third through",
+                controller.tryAcquire("tiles.example.com", RequestPriority.BULK));
+
+        pool.setMaxRequestsPerHost(0);
+        assertEquals("At least one request should be allowed", 1, pool.getMaxRequestsPerHost());
+    }
+}
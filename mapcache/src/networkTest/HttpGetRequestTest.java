@@ -0,0 +1,180 @@
+import android.app.Activity;
+
+import mil.nga.mapcache.io.network.CookieJar;
+import mil.nga.mapcache.io.network.HttpConnectionPool;
+import mil.nga.mapcache.io.network.HttpGetRequest;
+import mil.nga.mapcache.io.network.IResponseHandler;
+import mil.nga.mapcache.io.network.RequestPriority;
+import mil.nga.mapcache.io.network.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HttpGetRequestTest {
+
+    private MockWebServer server;
+
+    private HttpConnectionPool pool;
+
+    private Activity activity;
+
+    private TestSessionManager sessionManager;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        pool = new HttpConnectionPool(new OkHttpClient.Builder());
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+        sessionManager = new TestSessionManager();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        server.enqueue(new MockResponse()
+                .setBody("tile bytes")
+                .addHeader("Set-Cookie", "session=abc; Path=/"));
+        String url = server.url("/tiles/1/0/0.png").toString();
+        RecordingHandler handler = new RecordingHandler();
+
+        new HttpGetRequest(url, handler, sessionManager, activity, pool).run();
+
+        assertNull(handler.exception);
+        assertEquals(200, handler.responseCode);
+        assertArrayEquals("tile bytes".getBytes(), handler.body);
+        assertEquals(Collections.singletonList(url), sessionManager.succeeded);
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/tiles/1/0/0.png", request.getPath());
+        assertNotNull(request.getHeader("User-Agent"));
+        assertEquals(Collections.singletonList("session=abc"),
+                sessionManager.getCookieJar().getCookies(server.getHostName()));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(304));
+        String url = server.url("/tiles/1/0/0.png").toString();
+        RecordingHandler handler = new RecordingHandler();
+
+        HttpGetRequest request = new HttpGetRequest(url, handler, sessionManager, activity, pool);
+        request.setRequestHeaders(Collections.singletonMap("If-None-Match", "\"abc\""));
+        request.run();
+
+        assertNull(handler.exception);
+        assertEquals(304, handler.responseCode);
+        assertNull(handler.body);
+        assertEquals("\"abc\"", server.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void testConnectFailureKeepsCause() throws Exception {
+        MockWebServer stopped = new MockWebServer();
+        stopped.start();
+        String url = stopped.url("/tiles/1/0/0.png").toString();
+        stopped.shutdown();
+        RecordingHandler handler = new RecordingHandler();
+
+        new HttpGetRequest(url, handler, sessionManager, activity, pool).run();
+
+        assertEquals(-1, handler.responseCode);
+        assertNotNull(handler.exception);
+        assertTrue(handler.exception.getMessage().startsWith("Failed to connect to " + url));
+        assertNotNull("The connection failure should be the cause", handler.exception.getCause());
+        assertTrue(sessionManager.succeeded.isEmpty());
+    }
+
+    private static class RecordingHandler implements IResponseHandler {
+
+        private byte[] body = null;
+
+        private int responseCode = -1;
+
+        private IOException exception = null;
+
+        @Override
+        public void handleResponse(InputStream stream, int responseCode) {
+            this.responseCode = responseCode;
+            if (stream != null) {
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[1024];
+                    int read;
+                    while ((read = stream.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                    body = out.toByteArray();
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+        }
+
+        @Override
+        public void handleException(IOException exception) {
+            this.exception = exception;
+        }
+
+        @Override
+        public boolean notCancelled() {
+            return true;
+        }
+    }
+
+    private static class TestSessionManager implements SessionManager {
+
+        private final CookieJar cookieJar = new CookieJar();
+
+        private final List<String> succeeded = new ArrayList<>();
+
+        @Override
+        public CookieJar getCookieJar() {
+            return cookieJar;
+        }
+
+        @Override
+        public void requestRequiresWebView(String url, IResponseHandler handler, long requestTime,
+                                           RequestPriority priority, Activity activity) {
+            throw new AssertionError("Unexpected web view request for " + url);
+        }
+
+        @Override
+        public void requestSucceeded(String url) {
+            succeeded.add(url);
+        }
+
+        @Override
+        public void webViewRequestSucceeded(String url) {
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import mil.nga.mapcache.utils.InstrumentedExecutor;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentedExecutorTest {
+
+    @Test
+    public void testCallerRunsWhenQueueFull() throws InterruptedException {
+        InstrumentedExecutor executor = new InstrumentedExecutor("test", 1, 1, () -> true);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<Thread> queuedThread = new AtomicReference<>();
+        executor.execute(() -> queuedThread.set(Thread.currentThread()));
+
+        AtomicReference<Thread> callerThread = new AtomicReference<>();
+        executor.execute(() -> callerThread.set(Thread.currentThread()));
+        assertSame(Thread.currentThread(), callerThread.get());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), queuedThread.get());
+
+        InstrumentedExecutor.Stats stats = executor.getStats();
+        assertEquals("test", stats.getName());
+        assertEquals(3, stats.getCompletedCount());
+        assertEquals(1, stats.getCallerRunCount());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    public void testQueuesWhenCallerMayNotRun() throws InterruptedException {
+        InstrumentedExecutor executor = new InstrumentedExecutor("ui", 1, 1, () -> false);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CountDownLatch ran = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(ran::countDown);
+        }
+
+        release.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        InstrumentedExecutor.Stats stats = executor.getStats();
+        assertEquals(4, stats.getCompletedCount());
+        assertEquals(0, stats.getCallerRunCount());
+    }
+}
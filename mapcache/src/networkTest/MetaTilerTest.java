@@ -0,0 +1,76 @@
+import mil.nga.geopackage.tiles.TileGrid;
+import mil.nga.mapcache.load.MetaTiler;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetaTilerTest {
+
+    private static final String URL = "https://example.com/wms?service=WMS&request=GetMap"
+            + "&layers=base&format=image/png&width=256&height=256&crs=EPSG:3857"
+            + "&bbox={minLon},{minLat},{maxLon},{maxLat}";
+
+    @Test
+    public void testSupports(){
+        assertTrue(MetaTiler.supports(URL));
+        assertTrue("Parameter names are case insensitive",
+                MetaTiler.supports("https://example.com/wms?WIDTH=256&HEIGHT=256"));
+        assertFalse("Only 256 pixel tiles are sliced",
+                MetaTiler.supports("https://example.com/wms?width=512&height=512"));
+        assertFalse(MetaTiler.supports("https://example.com/wms?width=2560&height=256"));
+    }
+
+    @Test
+    public void testCreate(){
+        MetaTiler metaTiler = new MetaTiler(4, 1024, new File("metatiles"));
+        TileGrid tileGrid = new TileGrid(2, 3, 9, 5);
+        assertNull(metaTiler.get(5, 6, 4));
+
+        MetaTiler.MetaTile metaTile = metaTiler.create(5, 6, 4, tileGrid);
+        assertEquals("Clipped to the tile grid", 4, metaTile.minX);
+        assertEquals(7, metaTile.maxX);
+        assertEquals(4, metaTile.minY);
+        assertEquals("Clipped to the tile grid", 5, metaTile.maxY);
+        assertSame("Tiles in the same block share the metatile", metaTile,
+                metaTiler.get(5, 7, 5));
+        assertNull(metaTiler.get(5, 8, 4));
+
+        MetaTiler.MetaTile edge = metaTiler.create(5, 2, 3, tileGrid);
+        assertEquals(2, edge.minX);
+        assertEquals(3, edge.maxX);
+        assertEquals(3, edge.minY);
+        assertEquals(3, edge.maxY);
+    }
+
+    @Test
+    public void testMetaTileUrl(){
+        MetaTiler metaTiler = new MetaTiler(4, 1024, new File("metatiles"));
+        MetaTiler.MetaTile metaTile = metaTiler.create(5, 6, 4, new TileGrid(2, 3, 9, 5));
+        String url = MetaTiler.getMetaTileUrl(URL, metaTile);
+        assertTrue(url, url.contains("&width=1024&"));
+        assertTrue(url, url.contains("&height=512&"));
+    }
+
+    @Test
+    public void testClearDeletesStaleSpillFiles() throws Exception {
+        File spillDirectory = Files.createTempDirectory("metatiles").toFile();
+        File stale = new File(spillDirectory, "5_6_4.tile");
+        FileOutputStream stream = new FileOutputStream(stale);
+        stream.write(new byte[]{1, 2, 3});
+        stream.close();
+
+        MetaTiler metaTiler = new MetaTiler(4, 1024, spillDirectory);
+        metaTiler.clear();
+        assertFalse("Files left by a killed download should be deleted", stale.exists());
+        spillDirectory.delete();
+    }
+}
@@ -0,0 +1,173 @@
+import mil.nga.mapcache.io.network.RequestPriority;
+import mil.nga.mapcache.io.network.RequestScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    @Test
+    public void testPriorityAndHostTurns() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1, 0);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        scheduler.execute(() -> await(blocked), "a.example.com", RequestPriority.BULK);
+        Thread.sleep(100);
+        scheduler.execute(record(order, "bulk a1", done), "a.example.com", RequestPriority.BULK);
+        scheduler.execute(record(order, "bulk a2", done), "a.example.com", RequestPriority.BULK);
+        scheduler.execute(record(order, "bulk b1", done), "b.example.com", RequestPriority.BULK);
+        scheduler.execute(record(order, "metadata", done), "c.example.com",
+                RequestPriority.METADATA);
+        scheduler.execute(record(order, "interactive", done), "a.example.com",
+                RequestPriority.INTERACTIVE);
+        assertEquals(3, scheduler.getQueuedCount(RequestPriority.BULK));
+
+        blocked.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("interactive", "metadata", "bulk a1", "bulk b1", "bulk a2"),
+                order);
+    }
+
+    @Test
+    public void testReservedWorkers() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(2, 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch bulkStarted = new CountDownLatch(2);
+        CountDownLatch interactive = new CountDownLatch(1);
+
+        for (int i = 0; i < 2; i++) {
+            scheduler.execute(() -> {
+                bulkStarted.countDown();
+                await(blocked);
+            }, "a.example.com", RequestPriority.BULK);
+        }
+        Thread.sleep(100);
+        scheduler.execute(interactive::countDown, "a.example.com", RequestPriority.INTERACTIVE);
+
+        assertTrue("Map tiles should run while bulk requests hold the other workers",
+                interactive.await(5, TimeUnit.SECONDS));
+        assertEquals("Only one bulk request should be running", 1, bulkStarted.getCount());
+
+        blocked.countDown();
+        assertTrue(bulkStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFullHostIsSkipped() throws Exception {
+        OneEachCapacity capacity = new OneEachCapacity();
+        RequestScheduler scheduler = new RequestScheduler(2, 0, capacity);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch aStarted = new CountDownLatch(1);
+        CountDownLatch bDone = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        scheduler.execute(() -> {
+            aStarted.countDown();
+            await(blocked);
+        }, "a.example.com", RequestPriority.BULK);
+        assertTrue(aStarted.await(5, TimeUnit.SECONDS));
+        scheduler.execute(record(order, "a2", done), "a.example.com", RequestPriority.BULK);
+        scheduler.execute(() -> {
+            record(order, "b1", done).run();
+            bDone.countDown();
+        }, "b.example.com", RequestPriority.BULK);
+
+        assertTrue("The other host should run while the first host is full",
+                bDone.await(5, TimeUnit.SECONDS));
+        assertEquals("The full host's request should stay queued", 1,
+                scheduler.getQueuedCount(RequestPriority.BULK));
+
+        blocked.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("b1", "a2"), order);
+    }
+
+    @Test
+    public void testAsyncRequestHoldsTurnUntilDone() throws Exception {
+        OneEachCapacity capacity = new OneEachCapacity();
+        RequestScheduler scheduler = new RequestScheduler(2, 0, capacity);
+        AtomicReference<Runnable> webViewDone = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        scheduler.executeAsync((requestDone) -> {
+            webViewDone.set(requestDone);
+            started.countDown();
+        }, "a.example.com", RequestPriority.BULK);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.execute(record(order, "a2", done), "a.example.com", RequestPriority.BULK);
+        assertTrue("The started request should keep the host's turn",
+                capacity.isBusy("a.example.com"));
+        assertEquals(1, scheduler.getQueuedCount(RequestPriority.BULK));
+
+        webViewDone.get().run();
+        webViewDone.get().run();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("a2"), order);
+    }
+
+    private Runnable record(List<String> order, String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class OneEachCapacity implements RequestScheduler.HostCapacity {
+
+        private final Set<String> busy = new HashSet<>();
+
+        private volatile Runnable listener;
+
+        synchronized boolean isBusy(String host) {
+            return busy.contains(host);
+        }
+
+        @Override
+        public synchronized boolean tryAcquire(String host, RequestPriority priority) {
+            return busy.add(host);
+        }
+
+        @Override
+        public void release(String host) {
+            synchronized (this) {
+                busy.remove(host);
+            }
+            listener.run();
+        }
+
+        @Override
+        public long getPausedMillis(String host) {
+            return 0;
+        }
+
+        @Override
+        public void setCapacityListener(Runnable listener) {
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import mil.nga.mapcache.io.network.RequestTimer;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTimerTest {
+
+    @Test
+    public void testTimeoutExpires() throws InterruptedException {
+        RequestTimer timer = RequestTimer.getInstance();
+        CountDownLatch expired = new CountDownLatch(1);
+        RequestTimer.Timeout timeout = timer.startTimeout("expires.example.com", 20,
+                expired::countDown);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertFalse("A timed out request didn't complete in time", timeout.complete());
+
+        RequestTimer.HostTimeouts timeouts = timer.getTimeouts("expires.example.com");
+        assertEquals(1, timeouts.getStarted());
+        assertEquals(1, timeouts.getExpired());
+        assertEquals(0, timeouts.getCompleted());
+        assertEquals("expires.example.com: 1 requests timed, 0 completed avg 0 ms, 1 timed out",
+                timeouts.describe("expires.example.com"));
+        assertTrue(timer.getAllTimeouts().containsKey("expires.example.com"));
+    }
+
+    @Test
+    public void testTimeoutCompletes() throws InterruptedException {
+        RequestTimer timer = RequestTimer.getInstance();
+        AtomicBoolean expired = new AtomicBoolean(false);
+        RequestTimer.Timeout timeout = timer.startTimeout("completes.example.com", 50,
+                () -> expired.set(true));
+
+        assertTrue(timeout.complete());
+        assertFalse(timeout.complete());
+        Thread.sleep(200);
+        assertFalse(expired.get());
+
+        RequestTimer.HostTimeouts timeouts = timer.getTimeouts("completes.example.com");
+        assertEquals(1, timeouts.getCompleted());
+        assertEquals(0, timeouts.getExpired());
+        assertNull(timer.getTimeouts("unknown.example.com"));
+    }
+
+    @Test
+    public void testSchedule() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(2);
+        long start = System.currentTimeMillis();
+        RequestTimer.getInstance().schedule(ran::countDown, 30);
+        RequestTimer.getInstance().schedule(ran::countDown, 10);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 30);
+    }
+}
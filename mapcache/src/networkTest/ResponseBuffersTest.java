@@ -0,0 +1,93 @@
+import mil.nga.mapcache.io.network.ResponseBuffers;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ResponseBuffersTest {
+
+    @Test
+    public void testKnownLength() throws IOException {
+        byte[] expected = createBytes(5000);
+        byte[] actual = ResponseBuffers.getInstance().readFully(
+                new TrickleInputStream(expected), expected.length);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testUnknownLength() throws IOException {
+        byte[] expected = createBytes(300000);
+        for (int i = 0; i < 3; i++) {
+            byte[] actual = ResponseBuffers.getInstance().readFully(
+                    new TrickleInputStream(expected), -1);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testLongerThanLength() throws IOException {
+        byte[] expected = createBytes(1000);
+        byte[] actual = ResponseBuffers.getInstance().readFully(
+                new TrickleInputStream(expected), 600);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testShorterThanLength() throws IOException {
+        ResponseBuffers.getInstance().readFully(new TrickleInputStream(createBytes(100)), 200);
+    }
+
+    @Test
+    public void testContentLength() {
+        Map<String, List<String>> headers = new HashMap<>();
+        assertEquals(-1, ResponseBuffers.getContentLength(headers));
+        headers.put("content-length", Collections.singletonList("1234"));
+        assertEquals(1234, ResponseBuffers.getContentLength(headers));
+        headers.put("content-length", Collections.singletonList("abc"));
+        assertEquals(-1, ResponseBuffers.getContentLength(headers));
+    }
+
+    /**
+     * Creates test bytes.
+     *
+     * @param length The number of bytes.
+     * @return The bytes.
+     */
+    private static byte[] createBytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns at most 1000 bytes per read like a network stream, and hides that it is in memory.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+
+        TrickleInputStream(byte[] bytes) {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1000));
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import mil.nga.mapcache.view.map.overlays.CachedTile;
+import mil.nga.mapcache.view.map.overlays.DiskTileCache;
+import mil.nga.mapcache.view.map.overlays.MemoryTileCache;
+import mil.nga.mapcache.view.map.overlays.TileCache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileCacheTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static final String SOURCE = TileCache.getSource("https://example.com/wms", "roads",
+            "image/png");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMaxAge() {
+        CachedTile tile = CachedTile.fromResponse(new byte[10],
+                headers("Cache-Control", "public, max-age=600", "ETag", "\"abc\""), 1000);
+        assertNotNull(tile);
+        assertTrue(tile.isFresh(1000 + 599000));
+        assertFalse(tile.isFresh(1000 + 600000));
+        assertEquals("\"abc\"", tile.getConditionalHeaders().get("If-None-Match"));
+    }
+
+    @Test
+    public void testNoStoreAndNoCache() {
+        assertNull(CachedTile.fromResponse(new byte[10], headers("Cache-Control", "no-store"), 0));
+
+        CachedTile tile = CachedTile.fromResponse(new byte[10],
+                headers("cache-control", "no-cache", "Last-Modified",
+                        "Wed, 21 Oct 2015 07:28:00 GMT"), 1000);
+        assertNotNull(tile);
+        assertFalse(tile.isFresh(1000));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT",
+                tile.getConditionalHeaders().get("If-Modified-Since"));
+    }
+
+    @Test
+    public void testExpiresAndDefault() {
+        // Wed, 21 Oct 2015 07:28:00 GMT
+        long expires = 1445412480000L;
+        CachedTile tile = CachedTile.fromResponse(new byte[10],
+                headers("Expires", "Wed, 21 Oct 2015 07:28:00 GMT"), expires - 5000);
+        assertTrue(tile.isFresh(expires - 1));
+        assertFalse(tile.isFresh(expires));
+
+        CachedTile invalid = CachedTile.fromResponse(new byte[10], headers("Expires", "0"), 1000);
+        assertFalse(invalid.isFresh(1000));
+
+        CachedTile noHeaders = CachedTile.fromResponse(new byte[10], null, 1000);
+        assertTrue(noHeaders.isFresh(1000 + DAY - 1));
+        assertNull(noHeaders.getConditionalHeaders());
+    }
+
+    @Test
+    public void testRevalidated() {
+        CachedTile tile = CachedTile.fromResponse(new byte[]{1, 2, 3},
+                headers("Cache-Control", "max-age=10", "ETag", "\"v1\""), 0);
+        CachedTile revalidated = tile.revalidated(headers("Cache-Control", "max-age=100"),
+                50000);
+        assertArrayEquals(new byte[]{1, 2, 3}, revalidated.getData());
+        assertEquals("\"v1\"", revalidated.getETag());
+        assertTrue(revalidated.isFresh(149999));
+        assertEquals(50000, revalidated.getStoredTime());
+    }
+
+    @Test
+    public void testMemoryLeastRecentlyUsed() {
+        CachedTile tile = new CachedTile(new byte[100], 0, 0, null, null);
+        MemoryTileCache memory = new MemoryTileCache(tile.getSize() * 2);
+        memory.put("a", tile);
+        memory.put("b", tile);
+        assertNotNull(memory.get("a"));
+        memory.put("c", tile);
+
+        assertNotNull(memory.get("a"));
+        assertNull("The least recently used tile is dropped", memory.get("b"));
+        assertNotNull(memory.get("c"));
+        assertEquals(tile.getSize() * 2, memory.getBytes());
+
+        memory.put("big", new CachedTile(new byte[1000], 0, 0, null, null));
+        assertNull(memory.get("big"));
+        assertEquals(2, memory.getCount());
+    }
+
+    @Test
+    public void testDiskRoundTrip() throws IOException {
+        DiskTileCache disk = new DiskTileCache(folder.newFolder(), 1024 * 1024, 30 * DAY);
+        disk.put(SOURCE, 5, 10, 12, new CachedTile(new byte[]{4, 5, 6}, 1000, 2000, "\"e\"",
+                null));
+
+        CachedTile read = disk.get(SOURCE, 5, 10, 12, 3000);
+        assertNotNull(read);
+        assertArrayEquals(new byte[]{4, 5, 6}, read.getData());
+        assertEquals(2000, read.getFreshUntil());
+        assertEquals("\"e\"", read.getETag());
+        assertNull(read.getLastModified());
+
+        assertNull(disk.get(SOURCE, 5, 10, 13, 3000));
+        assertNull("Sources are cached separately",
+                disk.get(TileCache.getSource("https://example.com/wms", "rivers", "image/png"),
+                        5, 10, 12, 3000));
+        assertNull("Expired tiles are deleted", disk.get(SOURCE, 5, 10, 12, 1000 + 30 * DAY));
+        assertEquals(0, disk.getBytes());
+    }
+
+    @Test
+    public void testDiskTrimsLeastRecentlyUsed() throws IOException {
+        DiskTileCache disk = new DiskTileCache(folder.newFolder(), 3000, 30 * DAY);
+        long now = System.currentTimeMillis();
+        disk.put(SOURCE, 1, 0, 0, new CachedTile(new byte[1000], now - 30000, now, null, null));
+        disk.put(SOURCE, 1, 0, 1, new CachedTile(new byte[1000], now - 20000, now, null, null));
+        assertNotNull(disk.get(SOURCE, 1, 0, 0, now - 10000));
+        disk.put(SOURCE, 1, 1, 0, new CachedTile(new byte[1000], now, now, null, null));
+
+        assertNull(disk.get(SOURCE, 1, 0, 1, now));
+        assertNotNull(disk.get(SOURCE, 1, 0, 0, now));
+        assertNotNull(disk.get(SOURCE, 1, 1, 0, now));
+        assertTrue(disk.getBytes() <= 3000);
+    }
+
+    @Test
+    public void testDiskExpiresByStoredTime() throws IOException {
+        DiskTileCache disk = new DiskTileCache(folder.newFolder(), 1024 * 1024, 30 * DAY);
+        long now = System.currentTimeMillis();
+        disk.put(SOURCE, 2, 0, 0, new CachedTile(new byte[100], now - 31 * DAY, now, null, null));
+        disk.put(SOURCE, 2, 0, 1, new CachedTile(new byte[100], now - 29 * DAY, now, null, null));
+        long bothBytes = disk.getBytes();
+        assertNotNull(disk.get(SOURCE, 2, 0, 0, now - 2 * DAY));
+        assertNotNull(disk.get(SOURCE, 2, 0, 1, now - DAY));
+
+        disk.trim(now);
+        assertEquals("Old tiles expire even if recently used", bothBytes / 2, disk.getBytes());
+
+        disk.trim(now + 2 * DAY);
+        assertEquals(0, disk.getBytes());
+        assertNull(disk.get(SOURCE, 2, 0, 1, now - DAY));
+    }
+
+    @Test
+    public void testTwoLevels() throws IOException {
+        DiskTileCache disk = new DiskTileCache(folder.newFolder(), 1024 * 1024, 30 * DAY);
+        List<Runnable> writes = new ArrayList<>();
+        TileCache cache = new TileCache(new MemoryTileCache(1024 * 1024), disk, writes::add);
+        CachedTile tile = new CachedTile(new byte[]{7}, 1000, 2000, null, null);
+        cache.put(SOURCE, 3, 2, 1, tile);
+        assertEquals(tile, cache.get(SOURCE, 3, 2, 1, 1500));
+        assertNull(disk.get(SOURCE, 3, 2, 1, 1500));
+
+        writes.forEach(Runnable::run);
+        cache.trimMemory();
+        CachedTile fromDisk = cache.get(SOURCE, 3, 2, 1, 1500);
+        assertNotNull(fromDisk);
+        assertArrayEquals(new byte[]{7}, fromDisk.getData());
+        assertEquals(fromDisk, cache.get(SOURCE, 3, 2, 1, 1500));
+    }
+
+    private static Map<String, List<String>> headers(String... namesAndValues) {
+        Map<String, List<String>> headers = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], Collections.singletonList(namesAndValues[i + 1]));
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,249 @@
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Looper;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackageFactory;
+import mil.nga.geopackage.GeoPackageManager;
+import mil.nga.mapcache.R;
+import mil.nga.mapcache.load.LoadTilesTask;
+import mil.nga.mapcache.load.TileDownloadManager;
+import mil.nga.mapcache.load.TileDownloadProgress;
+import mil.nga.mapcache.utils.ActivityTracker;
+import mil.nga.mapcache.viewmodel.GeoPackageViewModel;
+import mil.nga.proj.ProjectionConstants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TileDownloadManagerTest {
+
+    private static final String DATABASE = "tile_download_manager_test";
+
+    private static final int MAX_ZOOM = 2;
+
+    private static final int TILE_COUNT = 1 + 4 + 16;
+
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    private MockWebServer server;
+
+    private CountDownLatch released;
+
+    private Application context;
+
+    private Activity activity;
+
+    private GeoPackageViewModel viewModel;
+
+    private GeoPackageManager geoPackageManager;
+
+    private TileDownloadManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        released = new CountDownLatch(1);
+        byte[] tile = createTile();
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // Held until the test lets the downloads go
+                released.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                return new MockResponse().setBody(new Buffer().write(tile))
+                        .addHeader("Content-Type", "image/png");
+            }
+        });
+        server.start();
+
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.load_tiles_concurrent_jobs_key), "1")
+                .putString(context.getString(R.string.load_tiles_metatile_size_key), "1")
+                .putBoolean(context.getString(R.string.load_tiles_skip_empty_key), false)
+                .commit();
+
+        geoPackageManager = GeoPackageFactory.getManager(context);
+        if (geoPackageManager.exists(DATABASE)) {
+            geoPackageManager.delete(DATABASE);
+        }
+        geoPackageManager.create(DATABASE);
+
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+        ActivityTracker.getInstance().register(activity);
+        viewModel = new GeoPackageViewModel(context);
+        viewModel.init();
+
+        manager = TileDownloadManager.getInstance();
+        manager.setContext(context);
+        manager.clearEnded();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        released.countDown();
+        awaitIdle();
+        manager.clearEnded();
+        server.shutdown();
+        viewModel.getGeoPackage(DATABASE).close();
+        geoPackageManager.delete(DATABASE);
+    }
+
+    @Test
+    public void testQueueRunsOneJobAtATime() throws Exception {
+        loadTiles("first");
+        loadTiles("second");
+        awaitRequests(1);
+
+        List<TileDownloadProgress> jobs = getJobs();
+        assertEquals(2, jobs.size());
+        assertEquals(TileDownloadProgress.State.RUNNING, jobs.get(0).getState());
+        assertEquals(TileDownloadProgress.State.QUEUED, jobs.get(1).getState());
+        assertTrue(manager.isQueued(DATABASE, "second"));
+
+        released.countDown();
+        awaitIdle();
+
+        assertEquals(TILE_COUNT, countTiles("first"));
+        assertEquals(TILE_COUNT, countTiles("second"));
+        assertEquals(TileDownloadProgress.State.FINISHED, getEndedState("first"));
+        assertEquals(TileDownloadProgress.State.FINISHED, getEndedState("second"));
+        assertTrue(getJobs().isEmpty());
+    }
+
+    @Test
+    public void testPauseAndResume() throws Exception {
+        loadTiles("paused");
+        awaitRequests(1);
+
+        manager.pause(DATABASE, "paused");
+        awaitIdle();
+        List<TileDownloadProgress> jobs = getJobs();
+        assertEquals("A paused download keeps its place in the queue", 1, jobs.size());
+        assertEquals(TileDownloadProgress.State.PAUSED, jobs.get(0).getState());
+        assertEquals(TileDownloadProgress.State.PAUSED, getEndedState("paused"));
+        assertFalse(manager.isQueued(DATABASE, "paused"));
+
+        released.countDown();
+        manager.resume(activity, viewModel, DATABASE, "paused");
+        awaitIdle();
+
+        assertEquals(TILE_COUNT, countTiles("paused"));
+        assertEquals(TileDownloadProgress.State.FINISHED, getEndedState("paused"));
+        assertTrue(getJobs().isEmpty());
+    }
+
+    @Test
+    public void testResumesDownloadsCutShortByKill() throws Exception {
+        // Stopping the download leaves the partial layer and journal a killed download would
+        loadTiles("killed");
+        awaitRequests(1);
+        manager.pause(DATABASE, "killed");
+        awaitIdle();
+        assertTrue(countTiles("killed") < TILE_COUNT);
+
+        // What the queue remembered when the app was killed while the download was running
+        SharedPreferences remembered = context.getSharedPreferences("tile_download_jobs",
+                Context.MODE_PRIVATE);
+        remembered.edit().clear().putInt(DATABASE + "\n" + "killed", 0).commit();
+
+        released.countDown();
+        manager.resumeInterrupted(activity, viewModel);
+        assertTrue(remembered.getAll().isEmpty());
+        awaitIdle();
+
+        assertEquals(TILE_COUNT, countTiles("killed"));
+        assertEquals(TileDownloadProgress.State.FINISHED, getEndedState("killed"));
+    }
+
+    private void loadTiles(String tableName) {
+        BoundingBox world = new BoundingBox(-180.0,
+                -ProjectionConstants.WEB_MERCATOR_MAX_LAT_RANGE, 180.0,
+                ProjectionConstants.WEB_MERCATOR_MAX_LAT_RANGE);
+        LoadTilesTask.loadTiles(activity, viewModel, DATABASE, tableName,
+                server.url("/" + tableName + "/").toString() + "{z}/{x}/{y}.png", 0, MAX_ZOOM,
+                null, null, true, world, null, ProjectionConstants.AUTHORITY_EPSG,
+                String.valueOf(ProjectionConstants.EPSG_WEB_MERCATOR), null);
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (server.getRequestCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("The download never sent a request", server.getRequestCount() >= count);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (manager.isDownloading() && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+        assertFalse("The downloads never ended", manager.isDownloading());
+        // Deliver the progress posted to the main thread
+        Thread.sleep(100);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private List<TileDownloadProgress> getJobs() {
+        shadowOf(Looper.getMainLooper()).idle();
+        return manager.getJobs().getValue();
+    }
+
+    private TileDownloadProgress.State getEndedState(String tableName) {
+        shadowOf(Looper.getMainLooper()).idle();
+        List<TileDownloadProgress> ended = new ArrayList<>(manager.getEnded().getValue());
+        TileDownloadProgress.State state = null;
+        for (TileDownloadProgress progress : ended) {
+            if (progress.getTableName().equals(tableName)) {
+                state = progress.getState();
+            }
+        }
+        return state;
+    }
+
+    private int countTiles(String tableName) {
+        return viewModel.getGeoPackage(DATABASE).getTileDao(tableName).count();
+    }
+
+    private static byte[] createTile() {
+        Bitmap bitmap = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.GREEN);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+        bitmap.recycle();
+        return stream.toByteArray();
+    }
+}
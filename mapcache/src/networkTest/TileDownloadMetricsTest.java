@@ -0,0 +1,57 @@
+import mil.nga.mapcache.load.TileDownloadMetrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TileDownloadMetricsTest {
+
+    @Test
+    public void testLatency() {
+        TileDownloadMetrics metrics = new TileDownloadMetrics(0);
+        for (int latency = 1; latency <= 100; latency++) {
+            metrics.recordResponse(latency, 1000);
+        }
+        metrics.recordResponse(-1, 1000);
+
+        TileDownloadMetrics.Summary summary = metrics.getSummary(101, 101, 1000);
+        assertEquals(50.5, summary.getAverageLatencyMillis(), 0.001);
+        assertTrue("The p95 should be at least the 95th latency",
+                summary.getP95LatencyMillis() >= 95);
+        assertTrue("The p95 should be within a bucket of the 95th latency",
+                summary.getP95LatencyMillis() <= 95 * 1.2);
+        assertEquals(101000, summary.getBytes());
+    }
+
+    @Test
+    public void testRates() {
+        TileDownloadMetrics metrics = new TileDownloadMetrics(0);
+        metrics.recordResponse(10, 50000);
+        metrics.recordRetry();
+        metrics.recordFailure();
+
+        TileDownloadMetrics.Summary summary = metrics.getSummary(10, 100, 2000);
+        assertEquals(5.0, summary.getTilesPerSecond(), 0.001);
+        assertEquals(25000.0, summary.getBytesPerSecond(), 0.001);
+        assertEquals(18000, summary.getEtaMillis());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals(1, summary.getRetryCount());
+    }
+
+    @Test
+    public void testRecentRate() {
+        TileDownloadMetrics metrics = new TileDownloadMetrics(0);
+        for (int second = 0; second <= 10; second++) {
+            metrics.getSummary(second * 10, 1000, second * 1000L);
+        }
+        TileDownloadMetrics.Summary summary = null;
+        for (int second = 11; second <= 20; second++) {
+            summary = metrics.getSummary(100 + second - 10, 1000, second * 1000L);
+        }
+
+        assertEquals("The rate should follow the server slowing down",
+                1.0, summary.getTilesPerSecond(), 0.001);
+        assertEquals(890000, summary.getEtaMillis());
+    }
+}
@@ -0,0 +1,58 @@
+import mil.nga.mapcache.load.TileDownloadException;
+import mil.nga.mapcache.load.TileRetryPolicy;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileRetryPolicyTest {
+
+    @Test
+    public void testTransient(){
+        TileRetryPolicy policy = new TileRetryPolicy(3, 500, 30000);
+        assertTrue("429 should be retried", policy.isTransient(429, null));
+        assertTrue("503 should be retried", policy.isTransient(503, null));
+        assertTrue("408 should be retried", policy.isTransient(408, null));
+        assertFalse("404 should not be retried", policy.isTransient(404, null));
+        assertTrue("Timeouts should be retried", policy.isTransient(-1, new SocketTimeoutException()));
+        assertTrue("Network errors should be retried", policy.isTransient(-1, new IOException()));
+        assertFalse("Missing tiles should not be retried",
+                policy.isTransient(-1, new TileDownloadException("missing", 404)));
+    }
+
+    @Test
+    public void testShouldRetry(){
+        TileRetryPolicy policy = new TileRetryPolicy(2, 500, 30000);
+        assertTrue(policy.shouldRetry(0, 503, null));
+        assertTrue(policy.shouldRetry(1, 503, null));
+        assertFalse("Retries should stop at the maximum", policy.shouldRetry(2, 503, null));
+    }
+
+    @Test
+    public void testDelay(){
+        TileRetryPolicy policy = new TileRetryPolicy(10, 500, 4000, new Random(0));
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long ceiling = Math.min(4000, 500L << attempt);
+            long delay = policy.getDelayMillis(attempt, null);
+            assertTrue("Delay " + delay + " outside of backoff range", delay >= 0 && delay <= ceiling);
+        }
+        assertEquals("Retry-After should be honored", 3000, policy.getDelayMillis(0, 3000L));
+        assertEquals("Retry-After should be capped", 4000, policy.getDelayMillis(0, 60000L));
+    }
+
+    @Test
+    public void testParseRetryAfter(){
+        assertEquals(Long.valueOf(120000), TileRetryPolicy.parseRetryAfter("120", 0));
+        assertEquals(Long.valueOf(5000), TileRetryPolicy.parseRetryAfter(
+                "Thu, 01 Jan 1970 00:00:10 GMT", 5000));
+        assertNull(TileRetryPolicy.parseRetryAfter("soon", 0));
+        assertNull(TileRetryPolicy.parseRetryAfter(null, 0));
+    }
+}
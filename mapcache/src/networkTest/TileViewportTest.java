@@ -0,0 +1,74 @@
+import mil.nga.mapcache.view.map.overlays.TileViewport;
+import mil.nga.mapcache.view.map.overlays.ViewportFillTimer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileViewportTest {
+
+    @Test
+    public void testEverythingVisibleUntilMoved() {
+        TileViewport viewport = new TileViewport();
+        assertTrue(viewport.isVisible(1000, 1000, 15));
+    }
+
+    @Test
+    public void testVisibleTiles() {
+        TileViewport viewport = new TileViewport();
+        // The north east quarter of the world at zoom 4 covers tiles x 8 to 15, y 0 to 7
+        viewport.moved(4.3, 0.0, 0.0, 179.9, 85.0);
+
+        assertTrue(viewport.isVisible(8, 0, 4));
+        assertTrue(viewport.isVisible(15, 7, 4));
+        assertTrue("Tiles just off the edge are kept", viewport.isVisible(7, 8, 4));
+        assertFalse(viewport.isVisible(5, 3, 4));
+        assertFalse(viewport.isVisible(10, 10, 4));
+
+        assertTrue(viewport.isVisible(16, 2, 5));
+        assertFalse("Tiles of zoom levels the map left are skipped", viewport.isVisible(64, 8, 7));
+        assertTrue("Low zoom tiles are always kept", viewport.isVisible(0, 1, 2));
+    }
+
+    @Test
+    public void testAntimeridian() {
+        TileViewport viewport = new TileViewport();
+        viewport.moved(5, 170.0, -10.0, -170.0, 10.0);
+
+        assertTrue(viewport.isVisible(31, 15, 5));
+        assertTrue(viewport.isVisible(0, 16, 5));
+        assertFalse(viewport.isVisible(16, 16, 5));
+    }
+
+    @Test
+    public void testFillTime() {
+        ViewportFillTimer timer = new ViewportFillTimer();
+        timer.started(1000);
+        timer.started(1000);
+        assertEquals(-1, timer.finished(1000, 1100));
+        assertEquals(200, timer.finished(1000, 1200));
+        assertEquals(200, timer.getLastFillMillis());
+
+        // A tile requested later for the same viewport doesn't fill it again
+        timer.started(1000);
+        assertEquals(-1, timer.finished(1000, 1500));
+
+        // Tiles still fetching when the camera stops again count toward the next viewport
+        timer.started(1000);
+        timer.started(2000);
+        assertEquals(-1, timer.finished(2000, 2100));
+        assertEquals(300, timer.finished(2000, 2300));
+        assertEquals(250, timer.getAverageFillMillis());
+    }
+
+    @Test
+    public void testNotTimedBeforeCameraStops() {
+        ViewportFillTimer timer = new ViewportFillTimer();
+        timer.started(0);
+        assertEquals(-1, timer.finished(0, 500));
+        assertEquals(-1, timer.getLastFillMillis());
+        assertEquals(-1, timer.getAverageFillMillis());
+    }
+}
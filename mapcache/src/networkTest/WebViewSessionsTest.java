@@ -0,0 +1,66 @@
+import mil.nga.mapcache.io.network.WebViewSessions;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WebViewSessionsTest {
+
+    private static final String HOST = "imagery.example.com";
+
+    @Test
+    public void testHarvestedSession() {
+        WebViewSessions sessions = new WebViewSessions();
+        assertNull(sessions.getState(HOST));
+        assertFalse(sessions.requiresWebView(HOST));
+
+        assertEquals(WebViewSessions.State.WEB_VIEW, sessions.loginRequired(HOST, 100));
+        assertTrue(sessions.requiresWebView(HOST));
+
+        assertTrue(sessions.webViewSucceeded(HOST, 200));
+        assertFalse("Only the first web view response harvests",
+                sessions.webViewSucceeded(HOST, 250));
+        assertFalse(sessions.requiresWebView(HOST));
+
+        sessions.nativeSucceeded(HOST);
+        assertEquals(WebViewSessions.State.NATIVE, sessions.getState(HOST));
+    }
+
+    @Test
+    public void testExpiredSession() {
+        WebViewSessions sessions = new WebViewSessions();
+        sessions.loginRequired(HOST, 100);
+        sessions.webViewSucceeded(HOST, 200);
+        sessions.nativeSucceeded(HOST);
+
+        assertEquals(WebViewSessions.State.WEB_VIEW, sessions.loginRequired(HOST, 5000));
+        assertTrue(sessions.webViewSucceeded(HOST, 6000));
+        assertEquals(WebViewSessions.State.HARVESTED, sessions.getState(HOST));
+    }
+
+    @Test
+    public void testSessionOnlyWorksInWebView() {
+        WebViewSessions sessions = new WebViewSessions();
+        sessions.loginRequired(HOST, 100);
+        sessions.webViewSucceeded(HOST, 200);
+
+        assertEquals("A request sent before the harvest doesn't count",
+                WebViewSessions.State.HARVESTED, sessions.loginRequired(HOST, 150));
+        assertEquals(WebViewSessions.State.WEB_VIEW_ONLY, sessions.loginRequired(HOST, 300));
+        assertTrue(sessions.requiresWebView(HOST));
+        assertFalse(sessions.webViewSucceeded(HOST, 400));
+        sessions.nativeSucceeded(HOST);
+        assertEquals(WebViewSessions.State.WEB_VIEW_ONLY, sessions.getState(HOST));
+    }
+
+    @Test
+    public void testNativeHost() {
+        WebViewSessions sessions = new WebViewSessions();
+        sessions.nativeSucceeded(HOST);
+        assertFalse(sessions.webViewSucceeded(HOST, 100));
+        assertNull(sessions.getState(HOST));
+    }
+}